@@ -19,17 +19,28 @@ import uk.ac.leeds.ccg.grids.memory.Grids_Memory;
 import uk.ac.leeds.ccg.grids.memory.Grids_MemoryManager;
 import uk.ac.leeds.ccg.grids.memory.Grids_AccountDetail;
 import uk.ac.leeds.ccg.grids.memory.Grids_Account;
+import uk.ac.leeds.ccg.grids.memory.Grids_ChunkPins;
+import uk.ac.leeds.ccg.grids.memory.Grids_CompressedTier;
+import uk.ac.leeds.ccg.grids.memory.Grids_EvictionPolicy;
+import uk.ac.leeds.ccg.grids.memory.Grids_EvictionPolicyLRU;
+import uk.ac.leeds.ccg.grids.memory.Grids_WriteBehind;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCompressor;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import uk.ac.leeds.ccg.generic.core.Generic_Environment;
 import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
 import uk.ac.leeds.ccg.io.IO_Path;
@@ -106,8 +117,13 @@ public class Grids_Environment extends Grids_MemoryManager
      * What is best to do depends on many factors, but generally what is wanted
      * is a good solution or a solution that works rather than the best solution
      * - the one that creates a result in the fastest and most efficient way.
+     *
+     * This is a concurrent map of concurrent sets so that it can be changed by
+     * different threads. Sets of chunk IDs passed in are copied rather than
+     * retained. For pins that are counted, so that different threads can
+     * protect the same chunk independently, see {@link #pins}.
      */
-    protected transient HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToClear;
+    protected transient Map<Grids_Grid, Set<Grids_2D_ID_int>> notToClear;
 
     /**
      * For storing a {@link Math_BigDecimal} instance.
@@ -129,6 +145,93 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     public transient final Generic_Environment env;
 
+    /**
+     * For selecting which chunks to swap. This is initialised as a
+     * {@link Grids_EvictionPolicyLRU}.
+     */
+    protected transient Grids_EvictionPolicy evictionPolicy;
+
+    /**
+     * For issuing access stamps which are recorded each time a chunk is got.
+     */
+    protected transient AtomicLong accessClock;
+
+    /**
+     * For writing chunks that are swapped in the background. If this is
+     * {@code null} (the default), then chunks are written by the thread that
+     * swaps them before they are cleared.
+     */
+    protected transient Grids_WriteBehind writeBehind;
+
+    /**
+     * The default number of threads of {@link #prefetchExecutor}.
+     */
+    public static final int DEFAULT_PREFETCH_THREADS = 2;
+
+    /**
+     * For reading chunks that are prefetched in the background. This is
+     * initialised by {@link #getPrefetchExecutor()}.
+     */
+    protected transient ExecutorService prefetchExecutor;
+
+    /**
+     * The default value of {@link #prefetchLimit}.
+     */
+    public static final int DEFAULT_PREFETCH_LIMIT = 16;
+
+    /**
+     * The maximum number of chunks of each grid that can be prefetched and
+     * not yet loaded at any one time.
+     */
+    protected int prefetchLimit = DEFAULT_PREFETCH_LIMIT;
+
+    /**
+     * For changing the representation of chunks to the smallest one before
+     * they are cached. If this is {@code null} (the default), then chunks are
+     * cached as they are.
+     */
+    protected transient Grids_ChunkOptimizer chunkOptimizer;
+
+    /**
+     * For compressing chunks when they are cached. If this is {@code null}
+     * (the default), then chunks are cached uncompressed.
+     */
+    protected transient Grids_ChunkCompressor chunkCompressor;
+
+    /**
+     * For holding compressed chunks in memory. If this is not {@code null},
+     * then chunks that are swapped are compressed and put here and are only
+     * written when this is full. If this is {@code null} (the default), then
+     * chunks that are swapped are written. The memory used by this is limited
+     * by {@link Grids_CompressedTier#getMaxBytes()} and is included in
+     * {@link #getResidentBytes()}.
+     */
+    protected transient Grids_CompressedTier compressedTier;
+
+    /**
+     * For pinning chunks so that they are not swapped. Unlike
+     * {@link #notToClear} this can be used by any thread.
+     */
+    protected transient Grids_ChunkPins pins;
+
+    /**
+     * The number of bytes that the chunks of all the {@link #grids} are
+     * allowed to retain (see {@link #getResidentBytes()}). When this is
+     * exceeded, chunks are swapped by {@link #checkAndMaybeFreeMemory()}
+     * before the free memory is checked. If this is zero (the default), then
+     * there is no budget and memory is only freed when the free memory is
+     * low.
+     */
+    protected volatile long memoryBudget;
+
+    /**
+     * The number of bytes retained by the chunks in the chunk tables of grids
+     * in this environment and by the chunks they have prefetched. This is
+     * kept up to date as chunks are loaded and evicted (see
+     * {@link #addResidentBytes(long)}).
+     */
+    protected transient AtomicLong residentBytes;
+
     /**
      * Creates a new Grids_Environment.
      *
@@ -168,6 +271,10 @@ public class Grids_Environment extends Grids_MemoryManager
         initMemoryReserve(Default_Memory_Threshold, e);
         initGrids();
         initNotToClear();
+        evictionPolicy = new Grids_EvictionPolicyLRU();
+        accessClock = new AtomicLong();
+        pins = new Grids_ChunkPins();
+        residentBytes = new AtomicLong();
         Path p = e.getLogDir(Grids_Strings.s_grids);
         files = new Grids_Files(new Generic_Defaults(Paths.get(dir.toString(),
                 Grids_Strings.s_grids)));
@@ -192,13 +299,274 @@ public class Grids_Environment extends Grids_MemoryManager
         return processor;
     }
 
+    /**
+     * @return {@link #evictionPolicy}
+     */
+    public Grids_EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Sets {@link #evictionPolicy} to {@code p} and tells it about the chunks
+     * of {@link #grids} that are in the fast access memory.
+     *
+     * @param p What {@link #evictionPolicy} is set to.
+     */
+    public void setEvictionPolicy(Grids_EvictionPolicy p) {
+        evictionPolicy = p;
+        for (Grids_Grid g : grids) {
+            g.getData().forEach((i, c) -> {
+                if (c != null) {
+                    p.loaded(g, i);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return {@link #writeBehind}
+     */
+    public Grids_WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Sets {@link #writeBehind}. Setting this to {@code null} switches off
+     * write behind, any chunks already in flight are still written.
+     *
+     * @param w What {@link #writeBehind} is set to.
+     */
+    public void setWriteBehind(Grids_WriteBehind w) {
+        writeBehind = w;
+    }
+
+    /**
+     * @return {@link #chunkOptimizer}
+     */
+    public Grids_ChunkOptimizer getChunkOptimizer() {
+        return chunkOptimizer;
+    }
+
+    /**
+     * @param o What {@link #chunkOptimizer} is set to.
+     */
+    public void setChunkOptimizer(Grids_ChunkOptimizer o) {
+        chunkOptimizer = o;
+    }
+
+    /**
+     * @return {@link #chunkCompressor}
+     */
+    public Grids_ChunkCompressor getChunkCompressor() {
+        return chunkCompressor;
+    }
+
+    /**
+     * @param c What {@link #chunkCompressor} is set to.
+     */
+    public void setChunkCompressor(Grids_ChunkCompressor c) {
+        chunkCompressor = c;
+    }
+
+    /**
+     * @return {@link #compressedTier}
+     */
+    public Grids_CompressedTier getCompressedTier() {
+        return compressedTier;
+    }
+
+    /**
+     * Sets {@link #compressedTier}. Any chunks in the compressed tier being
+     * replaced are written. This should not be called whilst other threads
+     * are swapping chunks.
+     *
+     * @param t What {@link #compressedTier} is set to.
+     * @throws IOException If encountered.
+     */
+    public void setCompressedTier(Grids_CompressedTier t) throws IOException {
+        Grids_CompressedTier t0 = compressedTier;
+        compressedTier = t;
+        if (t0 != null && t0 != t) {
+            t0.flush();
+        }
+    }
+
+    /**
+     * @return {@link #pins}
+     */
+    public Grids_ChunkPins getPins() {
+        return pins;
+    }
+
+    /**
+     * @return {@link #memoryBudget}
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param b What {@link #memoryBudget} is set to. Zero switches the budget
+     * off.
+     */
+    public void setMemoryBudget(long b) {
+        if (b < 0L) {
+            throw new IllegalArgumentException("b < 0");
+        }
+        memoryBudget = b;
+    }
+
+    /**
+     * Adds {@code d} to {@link #residentBytes}. This is called by grids when
+     * the bytes recorded in their chunk tables (see
+     * {@link Grids_ChunkTable#getBytes()}) or the bytes of the chunks they
+     * have prefetched (see {@link Grids_Grid#getPrefetchedBytes()}) change.
+     *
+     * @param d The change in the number of bytes.
+     */
+    public void addResidentBytes(long d) {
+        residentBytes.addAndGet(d);
+    }
+
+    /**
+     * @return The number of bytes retained by chunks in memory. This is the
+     * sum of {@link #residentBytes}, the bytes of chunks that are being
+     * written by {@link #writeBehind} and the bytes of the compressed chunks
+     * held in {@link #compressedTier}.
+     */
+    public long getResidentBytes() {
+        long r = residentBytes.get();
+        Grids_WriteBehind w = writeBehind;
+        if (w != null) {
+            r += w.getPendingBytes();
+        }
+        Grids_CompressedTier t = compressedTier;
+        if (t != null) {
+            r += t.getBytes();
+        }
+        return r;
+    }
+
+    /**
+     * Swaps chunks that are not in {@link #notToClear} until there is room in
+     * {@link #memoryBudget} for another {@code bytes} bytes. This is for
+     * calling before allocating chunks, so that memory is freed
+     * deterministically rather than when the free memory is found to be low.
+     * A chunk selected by {@link #evictionPolicy} that cannot be swapped (for
+     * instance because it is pinned or another thread holds its lock) is
+     * passed over and the next one is tried. If there is no budget this
+     * simply returns {@code true}.
+     *
+     * @param bytes The number of bytes wanted.
+     * @return {@code true} if there is room for {@code bytes} in
+     * {@link #memoryBudget} and {@code false} otherwise.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public boolean reserve(long bytes) throws IOException, Exception {
+        long mb = memoryBudget;
+        if (mb == 0L) {
+            return true;
+        }
+        long b = mb - bytes;
+        Map<Grids_Grid, Set<Grids_2D_ID_int>> m = notToClear;
+        boolean copied = false;
+        while (getResidentBytes() > b) {
+            Grids_EvictionPolicy.Victim v = evictionPolicy.select(grids, m);
+            if (v == null) {
+                return false;
+            }
+            if (!v.g.swapChunk(v.i)) {
+                if (!copied) {
+                    m = copy(m);
+                    copied = true;
+                }
+                m.computeIfAbsent(v.g, k -> new HashSet<>()).add(v.i);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param m The map to copy. May be {@code null}.
+     * @return A copy of {@code m} with copies of the sets so that chunk IDs
+     * can be added without changing {@code m}.
+     */
+    private static Map<Grids_Grid, Set<Grids_2D_ID_int>> copy(
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) {
+        Map<Grids_Grid, Set<Grids_2D_ID_int>> r = new ConcurrentHashMap<>();
+        if (m == null) {
+            return r;
+        }
+        for (Map.Entry<Grids_Grid, Set<Grids_2D_ID_int>> x : m.entrySet()) {
+            r.put(x.getKey(), new HashSet<>(x.getValue()));
+        }
+        return r;
+    }
+
+    /**
+     * If {@link #prefetchExecutor} is {@code null}, then it is initialised as
+     * a pool of {@link #DEFAULT_PREFETCH_THREADS} virtual threads.
+     *
+     * @return {@link #prefetchExecutor}
+     */
+    public synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newFixedThreadPool(
+                    DEFAULT_PREFETCH_THREADS,
+                    Thread.ofVirtual().name("grids-prefetch-", 0).factory());
+        }
+        return prefetchExecutor;
+    }
+
+    /**
+     * @param x What {@link #prefetchExecutor} is set to.
+     */
+    public synchronized void setPrefetchExecutor(ExecutorService x) {
+        prefetchExecutor = x;
+    }
+
+    /**
+     * @return {@link #prefetchLimit}
+     */
+    public int getPrefetchLimit() {
+        return prefetchLimit;
+    }
+
+    /**
+     * @param n What {@link #prefetchLimit} is set to.
+     */
+    public void setPrefetchLimit(int n) {
+        prefetchLimit = n;
+    }
+
+    /**
+     * Waits for all chunks of all {@link #grids} that are being written in the
+     * background to be written.
+     *
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void awaitWrites() throws IOException, Exception {
+        for (Grids_Grid g : grids) {
+            g.awaitWrites();
+        }
+    }
+
+    /**
+     * @return The next access stamp from {@link #accessClock}.
+     */
+    public long nextAccessStamp() {
+        return accessClock.incrementAndGet();
+    }
+
     /**
      * If {@link #grids} is {@code null} it is initialised as a new
      * {@link java.util.Set}.
      */
     protected final void initGrids() {
         if (grids == null) {
-            grids = new HashSet<>();
+            grids = ConcurrentHashMap.newKeySet();
         }
     }
 
@@ -207,7 +575,17 @@ public class Grids_Environment extends Grids_MemoryManager
      * ideally not be cleared.
      */
     public final void initNotToClear() {
-        notToClear = new HashMap<>();
+        notToClear = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param g The grid.
+     * @return The set of chunk IDs of {@code g} in {@link #notToClear} which
+     * is added if there is not one already.
+     */
+    protected final Set<Grids_2D_ID_int> getNotToClear(Grids_Grid g) {
+        return notToClear.computeIfAbsent(g,
+                k -> ConcurrentHashMap.newKeySet());
     }
 
     /**
@@ -216,7 +594,9 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param g The grid to add to {@link #notToClear}.
      */
     public final void addToNotToClear(Grids_Grid g) {
-        notToClear.put(g, g.getChunkIDs());
+        Set<Grids_2D_ID_int> s = ConcurrentHashMap.newKeySet();
+        s.addAll(g.getChunkIDs());
+        notToClear.put(g, s);
     }
 
     /**
@@ -263,13 +643,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param i The chunk ID to add to {@link #notToClear}.
      */
     public final void addToNotToClear(Grids_Grid g, Grids_2D_ID_int i) {
-        if (notToClear.containsKey(g)) {
-            notToClear.get(g).add(i);
-        } else {
-            Set<Grids_2D_ID_int> chunkIDs = new HashSet<>();
-            chunkIDs.add(i);
-            notToClear.put(g, chunkIDs);
-        }
+        getNotToClear(g).add(i);
     }
 
     /**
@@ -292,16 +666,8 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param m The map contents to add to {@link #notToClear}.
      */
     public final void addToNotToClear(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) {
-        Iterator<Grids_Grid> ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            Grids_Grid g = ite.next();
-            if (notToClear.containsKey(g)) {
-                notToClear.get(g).addAll(m.get(g));
-            } else {
-                notToClear.put(g, m.get(g));
-            }
-        }
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) {
+        m.forEach((g, s) -> getNotToClear(g).addAll(s));
     }
 
     /**
@@ -326,8 +692,9 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param s The chunk IDs to add to {@link #notToClear}.
      */
     public final void removeFromNotToClear(Grids_Grid g, Set<Grids_2D_ID_int> s) {
-        if (notToClear.containsKey(g)) {
-            notToClear.get(g).removeAll(s);
+        Set<Grids_2D_ID_int> s2 = notToClear.get(g);
+        if (s2 != null) {
+            s2.removeAll(s);
         }
     }
 
@@ -337,14 +704,8 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param m The map contents to remove from {@link #notToClear}.
      */
     public final void removeFromNotToClear(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) {
-        Iterator<Grids_Grid> ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            Grids_Grid g = ite.next();
-            if (notToClear.containsKey(g)) {
-                notToClear.get(g).removeAll(m.get(g));
-            }
-        }
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) {
+        m.forEach((g, s) -> removeFromNotToClear(g, s));
     }
 
     /**
@@ -355,11 +716,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param s The chunk IDs to add to {@link #notToClear}.
      */
     public final void addToNotToClear(Grids_Grid g, Set<Grids_2D_ID_int> s) {
-        if (notToClear.containsKey(g)) {
-            notToClear.get(g).addAll(s);
-        } else {
-            notToClear.put(g, s);
-        }
+        getNotToClear(g).addAll(s);
     }
 
     /**
@@ -371,14 +728,17 @@ public class Grids_Environment extends Grids_MemoryManager
      * @param i The chunk ID of {@code g} to remove from {@link #notToClear}.
      */
     public final void removeFromNotToClear(Grids_Grid g, Grids_2D_ID_int i) {
-        if (notToClear.containsKey(g)) {
+        Set<Grids_2D_ID_int> s = notToClear.get(g);
+        if (s != null) {
             /**
              * Decided that it is best not to remove g from notToClear if
              * notToClear.get(g).isEmpty(). So the empty Set remains and this
              * takes up a small amount of resource, but it is probably better to
-             * keep it in case it is re-used rather than destroying it.
+             * keep it in case it is re-used rather than destroying it. This
+             * also means that a set got by another thread is never detached
+             * from notToClear.
              */
-            notToClear.get(g).remove(i);
+            s.remove(i);
 //            Set<Grids_2D_ID_int> chunkIDs = notToClear.get(g);
 //            chunkIDs.remove(chunkID);
 //            if (chunkIDs.isEmpty()) {
@@ -407,13 +767,7 @@ public class Grids_Environment extends Grids_MemoryManager
     public final void addToNotToClear(Grids_Grid g, Grids_2D_ID_int i,
             int chunkRow, int chunkCol, int chunkNRows, int chunkNCols,
             int cellDistance) {
-        Set<Grids_2D_ID_int> s;
-        if (notToClear.containsKey(g)) {
-            s = notToClear.get(g);
-        } else {
-            s = new HashSet<>();
-            notToClear.put(g, s);
-        }
+        Set<Grids_2D_ID_int> s = getNotToClear(g);
         int t;
         int r = 0;
         t = 0;
@@ -442,14 +796,14 @@ public class Grids_Environment extends Grids_MemoryManager
      * Initialises {@link #grids}.
      *
      * @param grids Used to initialise {@link #grids} unless it is {@code null}
-     * in which case {@link #grids} is initialised as a new {@code HashSet}.
+     * in which case {@link #grids} is initialised as a new concurrent set.
      */
     protected void initGrids(Set<Grids_Grid> grids) {
         if (this.grids == null) {
             this.grids = grids;
         } else {
             if (grids == null) {
-                this.grids = new HashSet<>();
+                this.grids = ConcurrentHashMap.newKeySet();
             } else {
                 this.grids = grids;
             }
@@ -473,12 +827,34 @@ public class Grids_Environment extends Grids_MemoryManager
     }
 
     /**
-     * Remove {@code g} from {@link #grids}.
+     * Remove {@code g} from {@link #grids}, tell {@link #evictionPolicy} and
+     * stop counting the bytes of any of its chunks that remain in
+     * {@link #residentBytes}. This does not close {@code g} (see
+     * {@link #closeGrid(Grids_Grid)}).
      *
      * @param g The grid to remove from {@link #grids}.
      */
     public void removeGrid(Grids_Grid g) {
         grids.remove(g);
+        evictionPolicy.removed(g);
+        Grids_ChunkTable t = g.getData();
+        if (t != null) {
+            t.setGrid(null);
+        }
+    }
+
+    /**
+     * Remove {@code g} (see {@link #removeGrid(Grids_Grid)}) and close it (see
+     * {@link Grids_Grid#close()}). This should be used before deleting the
+     * files of {@code g}.
+     *
+     * @param g The grid to remove from {@link #grids} and close.
+     * @throws java.io.IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void closeGrid(Grids_Grid g) throws IOException, Exception {
+        removeGrid(g);
+        g.close();
     }
 
     /**
@@ -907,7 +1283,7 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     @Override
     public Grids_Account initMemoryReserve_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
             throws IOException, Exception {
         try {
             initMemoryReserve(env);
@@ -1049,7 +1425,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws java.io.IOException If encountered.
      */
     @Override
-    public void initMemoryReserve(HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m,
+    public void initMemoryReserve(Map<Grids_Grid, Set<Grids_2D_ID_int>> m,
             boolean hoome) throws IOException, Exception {
         try {
             initMemoryReserve(env);
@@ -1083,7 +1459,7 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     @Override
     public Grids_AccountDetail initMemoryReserve_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m,
             boolean hoome) throws IOException, Exception {
         try {
             initMemoryReserve(env);
@@ -1156,10 +1532,13 @@ public class Grids_Environment extends Grids_MemoryManager
 
     /**
      * A method to check and maybe free fast access memory by clearing chunks
-     * from memory. If available fast access memory is not low then this simply
-     * returns {@code true}. If available fast access memory is low, then an
-     * attempt is made to cache some chunks. Chunks in {@link #notToClear} are
-     * not cleared unless desperate.
+     * from memory. First, if there is a {@link #memoryBudget}, chunks are
+     * swapped until the chunks in memory fit in it (see
+     * {@link #reserve(long)}). Then if available
+     * fast access memory is not low this simply returns {@code true}. If
+     * available fast access memory is low, then an attempt is made to cache
+     * some chunks. Chunks in {@link #notToClear} are not cleared unless
+     * desperate.
      *
      * @return {@code true} if there is sufficient memory to continue and
      * {@code false} otherwise.
@@ -1167,6 +1546,7 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     @Override
     public boolean checkAndMaybeFreeMemory() throws IOException, Exception {
+        reserve(0L);
         if (getTotalFreeMemory() < Memory_Threshold) {
             if (notToClear.isEmpty()) {
                 return checkAndMaybeFreeMemory_ClearAny();
@@ -1271,7 +1651,7 @@ public class Grids_Environment extends Grids_MemoryManager
     protected boolean checkAndMaybeFreeMemory(Grids_Grid g) throws IOException,
             Exception {
         if (getTotalFreeMemory() < Memory_Threshold) {
-            notToClear.put(g, g.getChunkIDs());
+            addToNotToClear(g);
             do {
                 if (!swapChunkExcept(notToClear)) {
                     break;
@@ -1495,7 +1875,7 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     @Override
     public boolean checkAndMaybeFreeMemory(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m,
             boolean hoome) throws IOException, Exception {
         try {
             if (!checkAndMaybeFreeMemory(m)) {
@@ -1541,7 +1921,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     protected boolean checkAndMaybeFreeMemory(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
             Exception {
         if (getTotalFreeMemory() < Memory_Threshold) {
             addToNotToClear(m);
@@ -2013,7 +2393,7 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     @Override
     public Grids_Account checkAndMaybeFreeMemory_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
             throws IOException, Exception {
         try {
             Grids_Account r = checkAndMaybeFreeMemory_Account(m);
@@ -2054,7 +2434,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     public Grids_Account checkAndMaybeFreeMemory_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
             Exception {
         if (getTotalFreeMemory() < Memory_Threshold) {
             Grids_Account r = new Grids_Account();
@@ -2550,7 +2930,7 @@ public class Grids_Environment extends Grids_MemoryManager
      */
     @Override
     public Grids_AccountDetail checkAndMaybeFreeMemory_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
             throws IOException, Exception {
         try {
             Grids_AccountDetail r = checkAndMaybeFreeMemory_AccountDetail(m);
@@ -2592,7 +2972,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     protected Grids_AccountDetail checkAndMaybeFreeMemory_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
             Exception {
         if (getTotalFreeMemory() < Memory_Threshold) {
             Grids_AccountDetail r = new Grids_AccountDetail();
@@ -2792,7 +3172,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     protected Grids_AccountDetail swapChunks_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
             Exception {
         Grids_AccountDetail r = new Grids_AccountDetail();
         Iterator<Grids_Grid> ite = grids.iterator();
@@ -3009,30 +3389,16 @@ public class Grids_Environment extends Grids_MemoryManager
     }
 
     /**
-     * Attempts to swap a chunk in {@link #grids} trying first not to cache any
-     * in {@link #notToClear}.
+     * Attempts to swap a chunk in {@link #grids} that is not in
+     * {@link #notToClear}. The chunk is selected by {@link #evictionPolicy}.
      *
      * @return {@code true} if a chunk is swapped.
      * @throws IOException If encountered.
      * @throws Exception If encountered.
      */
     protected boolean swapChunk() throws IOException, Exception {
-        Iterator<Grids_Grid> ite = grids.iterator();
-        while (ite.hasNext()) {
-            Grids_Grid g = ite.next();
-            if (notToClear.containsKey(g)) {
-                Set<Grids_2D_ID_int> s = notToClear.get(g);
-                if (!s.isEmpty()) {
-                    Grids_2D_ID_int i = g.swapChunkExcept_AccountChunk(s);
-                    if (i != null) {
-                        return true;
-                    }
-                }
-            } else {
-                if (g.swapChunk() != null) {
-                    return true;
-                }
-            }
+        if (swapChunkExcept(notToClear)) {
+            return true;
         }
         dataToClear = false;
         return false;
@@ -3301,7 +3667,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     public Grids_AccountDetail swapChunkExcept_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m, boolean hoome)
             throws IOException, Exception {
         try {
             Grids_AccountDetail r = swapChunkExcept_AccountDetail(m);
@@ -3346,7 +3712,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     protected Grids_AccountDetail swapChunkExcept_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
             Exception {
         Grids_AccountDetail r = new Grids_AccountDetail();
         Iterator<Grids_Grid> ite = grids.iterator();
@@ -3504,7 +3870,11 @@ public class Grids_Environment extends Grids_MemoryManager
     }
 
     /**
-     * Swap a chunk in {@link #grids} except those in {@code m}.
+     * Swap a chunk in {@link #grids} except those in {@code m}. The chunk is
+     * selected from across all {@link #grids} by {@link #evictionPolicy}. As
+     * in {@link #reserve(long)}, a chunk that cannot be swapped (for instance
+     * because it is pinned or another thread holds its lock) is passed over
+     * and the next one selected is tried.
      *
      * @param m Identifies the chunks not to be swapped.
      * @return {@code true} if a chunk was swapped and {@code false} otherwise.
@@ -3512,23 +3882,23 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      *
      */
-    protected boolean swapChunkExcept(HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m)
+    protected boolean swapChunkExcept(Map<Grids_Grid, Set<Grids_2D_ID_int>> m)
             throws IOException, Exception {
-        Iterator<Grids_Grid> ite = grids.iterator();
-        while (ite.hasNext()) {
-            Grids_Grid g = ite.next();
-            if (m.containsKey(g)) {
-                Grids_2D_ID_int i = g.swapChunkExcept_AccountChunk(m.get(g));
-                if (i != null) {
-                    return true;
-                }
+        boolean copied = false;
+        while (true) {
+            Grids_EvictionPolicy.Victim v = evictionPolicy.select(grids, m);
+            if (v == null) {
+                return false; // If here then nothing could be cleared!
             }
-            Grids_2D_ID_int i = g.swapChunk_AccountChunk();
-            if (i != null) {
+            if (v.g.swapChunk(v.i)) {
                 return true;
             }
+            if (!copied) {
+                m = copy(m);
+                copied = true;
+            }
+            m.computeIfAbsent(v.g, k -> new HashSet<>()).add(v.i);
         }
-        return false; // If here then nothing could be cleared!
     }
 
     /**
@@ -3605,7 +3975,7 @@ public class Grids_Environment extends Grids_MemoryManager
         while (ite.hasNext()) {
             Grids_Grid g2 = ite.next();
             if (g2 != g) {
-                TreeMap<Grids_2D_ID_int, Grids_Chunk> m = g2.getData();
+                Grids_ChunkTable m = g2.getData();
                 Set<Grids_2D_ID_int> s2 = m.keySet();
                 Iterator<Grids_2D_ID_int> iteb = s2.iterator();
                 while (iteb.hasNext()) {
@@ -4218,7 +4588,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     public Grids_Account swapChunksExcept_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m,
             boolean hoome) throws IOException, Exception {
         try {
             Grids_Account r = swapChunksExcept_Account(m);
@@ -4264,7 +4634,7 @@ public class Grids_Environment extends Grids_MemoryManager
      * @throws Exception If encountered.
      */
     protected Grids_Account swapChunksExcept_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> m) throws IOException,
             Exception {
         Grids_Account r = new Grids_Account();
         Iterator<Grids_Grid> ite = grids.iterator();
@@ -4468,7 +4838,7 @@ public class Grids_Environment extends Grids_MemoryManager
     /**
      * @return {@link #notToClear}
      */
-    public HashMap<Grids_Grid, Set<Grids_2D_ID_int>> getNotToClear() {
+    public Map<Grids_Grid, Set<Grids_2D_ID_int>> getNotToClear() {
         return notToClear;
     }
 
@@ -28,6 +28,12 @@ public abstract class Grids_Chunk extends Grids_Object {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The estimated number of bytes for the header and fields of a chunk
+     * excluding any arrays or other objects it references.
+     */
+    public static final int OBJECT = 48;
+
     /**
      * A reference to the grid.
      */
@@ -49,9 +55,13 @@ public abstract class Grids_Chunk extends Grids_Object {
     protected int chunkNCols;
 
     /**
-     * Indicator for whether the cache of this chunk is upToDate.
+     * Indicator for whether the cache of this chunk is upToDate. This is
+     * volatile so that a change to the chunk by one thread is seen by another
+     * thread that is caching it. The cache is marked as up to date before the
+     * chunk is written so that if the chunk is changed during the write, then
+     * the cache is marked as not up to date again.
      */
-    protected transient boolean cacheUpToDate;
+    protected transient volatile boolean cacheUpToDate;
 
     /**
      * Indicator for whether the cache of this chunk is upToDate.
@@ -101,6 +111,29 @@ public abstract class Grids_Chunk extends Grids_Object {
         //return id;
     }
 
+    /**
+     * @return {@link #chunkNRows}
+     */
+    public int getChunkNRows() {
+        return chunkNRows;
+    }
+
+    /**
+     * @return {@link #chunkNCols}
+     */
+    public int getChunkNCols() {
+        return chunkNCols;
+    }
+
+    /**
+     * @return An estimate of the number of bytes of fast access memory
+     * retained by this. Subclasses override this to count the arrays they
+     * actually hold. This implementation assumes eight bytes for each cell.
+     */
+    public long getSize() {
+        return OBJECT + 8L * chunkNRows * chunkNCols;
+    }
+
     /**
      * This method is public so that it can be accessed in memory management
      * without checking there is enough memory to continue.
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntCodec;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * For encoding and decoding chunks in a compact raw little-endian binary form
+ * so that they can be cached and loaded without using Java serialization.
+ *
+ * Each family of chunks has a codec. The codecs for the chunks of this
+ * library are registered when a codec is first looked up, so chunks can be
+ * decoded before any chunk factory has been constructed. Other codecs are
+ * registered (via {@link #register(Grids_ChunkCodec)}) when a
+ * {@link Grids_ChunkFactory} that returns one from
+ * {@link Grids_ChunkFactory#getCodec()} is constructed. Codecs are looked up
+ * by {@link #id} when decoding and by chunk class (see
+ * {@link #getChunkClasses()}) when encoding. An encoded chunk comprises a
+ * header of {@link #HEADER_SIZE} bytes and a codec specific payload. The
+ * header comprises: {@link #MAGIC}; the codec {@link #id}; the number of rows
+ * in the chunk; and, the number of columns in the chunk.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public abstract class Grids_ChunkCodec {
+
+    /**
+     * The first four bytes of every encoded chunk. This cannot be confused
+     * with the start of a Java serialization stream.
+     */
+    public static final int MAGIC = 0x43444347;
+
+    /**
+     * The number of bytes in the header of an encoded chunk.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * For storing the registered codecs indexed by {@link #id}.
+     */
+    private static final Map<Integer, Grids_ChunkCodec> CODECS
+            = new ConcurrentHashMap<>();
+
+    /**
+     * For storing the registered codecs indexed by the classes of chunk they
+     * encode.
+     */
+    private static final Map<Class<?>, Grids_ChunkCodec> BY_CLASS
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The identifier of this codec which is written in the header of every
+     * chunk encoded with it.
+     */
+    public final int id;
+
+    /**
+     * @param id What {@link #id} is set to.
+     */
+    protected Grids_ChunkCodec(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return The classes of chunk this codec can encode.
+     */
+    public abstract Class<?>[] getChunkClasses();
+
+    /**
+     * @param c The chunk to test.
+     * @return {@code true} iff this codec can encode {@code c}.
+     */
+    public boolean canEncode(Grids_Chunk c) {
+        for (Class<?> t : getChunkClasses()) {
+            if (t == c.getClass()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param c The chunk.
+     * @return The number of bytes needed to encode the payload of {@code c}.
+     */
+    public abstract int getPayloadSize(Grids_Chunk c);
+
+    /**
+     * Encodes the payload of {@code c} into {@code b} which is little-endian
+     * and has at least {@link #getPayloadSize(Grids_Chunk)} bytes remaining.
+     *
+     * @param c The chunk to encode.
+     * @param b The buffer to encode into.
+     */
+    public abstract void encode(Grids_Chunk c, ByteBuffer b);
+
+    /**
+     * Decodes a chunk from the payload in {@code b} which is little-endian.
+     *
+     * @param g The grid the chunk is a part of.
+     * @param i The chunk ID.
+     * @param b The buffer to decode from.
+     * @return The chunk decoded.
+     * @throws IOException If the payload is not valid.
+     */
+    public abstract Grids_Chunk decode(Grids_Grid g, Grids_2D_ID_int i,
+            ByteBuffer b) throws IOException;
+
+    /**
+     * @param nrows The number of rows.
+     * @param ncols The number of columns.
+     * @return The number of bytes (including the header) needed to encode an
+     * array chunk with {@code nrows} rows and {@code ncols} columns.
+     */
+    public abstract int getArraySize(int nrows, int ncols);
+
+    /**
+     * For transforming the values of encoded chunks before they are
+     * compressed (see {@link Grids_ChunkCompressor}). This implementation
+     * returns {@code 0}.
+     *
+     * @param type The first byte of the payload.
+     * @return The number of bytes of each value if the rest of the payload
+     * comprises only values in row major order and {@code 0} otherwise.
+     */
+    public int getValueSize(byte type) {
+        return 0;
+    }
+
+    /**
+     * @return {@code true} iff the values (see {@link #getValueSize(byte)})
+     * are floating point numbers. This implementation returns {@code false}.
+     */
+    public boolean isFloatingPoint() {
+        return false;
+    }
+
+    /**
+     * @return The number of bytes needed to encode {@code c} including the
+     * header.
+     * @param c The chunk.
+     */
+    public int getSize(Grids_Chunk c) {
+        return HEADER_SIZE + getPayloadSize(c);
+    }
+
+    /**
+     * Encodes {@code c} including the header into {@code b}.
+     *
+     * @param c The chunk to encode.
+     * @param b The buffer to encode into.
+     */
+    public void encodeWithHeader(Grids_Chunk c, ByteBuffer b) {
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(MAGIC);
+        b.putInt(id);
+        b.putInt(c.chunkNRows);
+        b.putInt(c.chunkNCols);
+        encode(c, b);
+    }
+
+    /**
+     * Registers {@code c} so that chunks it encodes can be decoded.
+     *
+     * @param c The codec to register.
+     */
+    public static void register(Grids_ChunkCodec c) {
+        Grids_ChunkCodec r = CODECS.putIfAbsent(c.id, c);
+        if (r != null && r.getClass() != c.getClass()) {
+            throw new IllegalArgumentException("A codec of "
+                    + r.getClass().getName() + " is already registered with"
+                    + " id " + c.id);
+        }
+        if (r == null) {
+            for (Class<?> t : c.getChunkClasses()) {
+                BY_CLASS.putIfAbsent(t, c);
+            }
+        }
+    }
+
+    /**
+     * @param id The codec identifier.
+     * @return The registered codec with {@link #id} equal to {@code id} or
+     * {@code null} if there is no such codec.
+     */
+    public static Grids_ChunkCodec getCodec(int id) {
+        BuiltIn.init();
+        return CODECS.get(id);
+    }
+
+    /**
+     * @param c The chunk.
+     * @return The registered codec for the class of {@code c} or {@code null}
+     * if there is no such codec.
+     */
+    public static Grids_ChunkCodec getCodec(Grids_Chunk c) {
+        BuiltIn.init();
+        return BY_CLASS.get(c.getClass());
+    }
+
+    /**
+     * Writes {@code c} to the file {@code f} if there is a registered codec
+     * for it.
+     *
+     * @param c The chunk to write.
+     * @param f The file to write to.
+     * @return {@code true} iff {@code c} was written.
+     * @throws IOException If encountered.
+     */
+    public static boolean write(Grids_Chunk c, Path f) throws IOException {
+        Grids_ChunkCodec codec = getCodec(c);
+        if (codec == null) {
+            return false;
+        }
+        ByteBuffer b = ByteBuffer.allocate(codec.getSize(c));
+        codec.encodeWithHeader(c, b);
+        b.flip();
+        try (FileChannel fc = FileChannel.open(f, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (b.hasRemaining()) {
+                fc.write(b);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param f The file to test.
+     * @return {@code true} iff {@code f} starts with {@link #MAGIC} or
+     * {@link Grids_ChunkCompressor#MAGIC}.
+     * @throws IOException If encountered.
+     */
+    public static boolean isEncoded(Path f) throws IOException {
+        try (FileChannel fc = FileChannel.open(f, StandardOpenOption.READ)) {
+            if (fc.size() < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer b = ByteBuffer.allocate(4).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            while (b.hasRemaining()) {
+                if (fc.read(b) < 0) {
+                    return false;
+                }
+            }
+            int m = b.getInt(0);
+            return m == MAGIC || m == Grids_ChunkCompressor.MAGIC;
+        }
+    }
+
+    /**
+     * Reads a chunk from the file {@code f}.
+     *
+     * @param g The grid the chunk is a part of.
+     * @param i The chunk ID.
+     * @param f The file to read.
+     * @return The chunk read.
+     * @throws IOException If {@code f} does not contain an encoded chunk or if
+     * there is no registered codec for it.
+     */
+    public static Grids_Chunk read(Grids_Grid g, Grids_2D_ID_int i, Path f)
+            throws IOException {
+        ByteBuffer b;
+        try (FileChannel fc = FileChannel.open(f, StandardOpenOption.READ)) {
+            b = ByteBuffer.allocate((int) fc.size());
+            while (b.hasRemaining()) {
+                if (fc.read(b) < 0) {
+                    break;
+                }
+            }
+        }
+        b.flip();
+        return decodeWithHeader(g, i, b);
+    }
+
+    /**
+     * Decodes a chunk including the header from {@code b} decompressing it
+     * first if it was compressed by a {@link Grids_ChunkCompressor}.
+     *
+     * @param g The grid the chunk is a part of.
+     * @param i The chunk ID.
+     * @param b The buffer to decode from.
+     * @return The chunk decoded.
+     * @throws IOException If {@code b} does not contain an encoded chunk of
+     * the expected dimensions or if there is no registered codec for it.
+     */
+    public static Grids_Chunk decodeWithHeader(Grids_Grid g,
+            Grids_2D_ID_int i, ByteBuffer b) throws IOException {
+        if (Grids_ChunkCompressor.isCompressed(b)) {
+            b = Grids_ChunkCompressor.decompress(b);
+        }
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        if (b.remaining() < HEADER_SIZE || b.getInt() != MAGIC) {
+            throw new IOException("Not an encoded chunk " + i);
+        }
+        int cid = b.getInt();
+        Grids_ChunkCodec codec = getCodec(cid);
+        if (codec == null) {
+            throw new IOException("No codec registered with id " + cid);
+        }
+        int nrows = b.getInt();
+        int ncols = b.getInt();
+        if (nrows != g.getChunkNRows(i) || ncols != g.getChunkNCols(i)) {
+            throw new IOException("Encoded chunk " + i + " has dimensions "
+                    + nrows + "x" + ncols + " but expected "
+                    + g.getChunkNRows(i) + "x" + g.getChunkNCols(i));
+        }
+        return codec.decode(g, i, b);
+    }
+
+    /**
+     * For registering the codecs of this library the first time a codec is
+     * looked up. This is a separate class so that the codecs are not
+     * constructed whilst {@link Grids_ChunkCodec} is being initialised.
+     */
+    private static class BuiltIn {
+
+        static {
+            register(Grids_ChunkDoubleCodec.INSTANCE);
+            register(Grids_ChunkIntCodec.INSTANCE);
+            register(Grids_ChunkBinaryCodec.INSTANCE);
+            register(Grids_ChunkBooleanCodec.INSTANCE);
+        }
+
+        /**
+         * Does nothing, but calling it ensures this class is initialised.
+         */
+        static void init() {
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * For compressing and decompressing chunks encoded by a
+ * {@link Grids_ChunkCodec}. Where the payload of an encoded chunk is values
+ * in row major order (see {@link Grids_ChunkCodec#getValueSize(byte)}), the
+ * values can first be transformed so that they compress better:
+ * <ul>
+ * <li>Delta coding replaces each value with the difference between it and the
+ * previous value (for integer values) or with the exclusive or of the bits of
+ * it and the previous value (for floating point values). For smooth surfaces
+ * such as elevation or density surfaces the results are mostly small or have
+ * many leading zero bits.</li>
+ * <li>Byte shuffling groups the first bytes of all the values, then the second
+ * bytes and so on, so that runs of similar bytes are next to each other.</li>
+ * </ul>
+ * The result is then compressed using a {@link Deflater}.
+ *
+ * A compressed chunk comprises a header of {@link #HEADER_SIZE} bytes and the
+ * deflated encoded chunk. The header comprises: {@link #MAGIC}; the number of
+ * bytes of the encoded chunk; the transforms applied; and, the number of bytes
+ * of each value transformed. Compressed chunks are decompressed by
+ * {@link Grids_ChunkCodec#decodeWithHeader} so they can be read wherever
+ * encoded chunks can.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkCompressor {
+
+    /**
+     * The first four bytes of every compressed chunk. This differs from
+     * {@link Grids_ChunkCodec#MAGIC}.
+     */
+    public static final int MAGIC = 0x5A444347;
+
+    /**
+     * The number of bytes in the header of a compressed chunk.
+     */
+    public static final int HEADER_SIZE = 12;
+
+    /**
+     * Indicates that the values were delta coded.
+     */
+    protected static final byte DELTA = 1;
+
+    /**
+     * Indicates that the values were delta coded using exclusive or.
+     */
+    protected static final byte DELTA_XOR = 2;
+
+    /**
+     * Indicates that the bytes of the values were shuffled.
+     */
+    protected static final byte SHUFFLE = 4;
+
+    /**
+     * The default for {@link #level}.
+     */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * The deflate compression level. This is between
+     * {@link Deflater#NO_COMPRESSION} and {@link Deflater#BEST_COMPRESSION} or
+     * is {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    protected final int level;
+
+    /**
+     * Whether the values are delta coded.
+     */
+    protected final boolean delta;
+
+    /**
+     * Whether the bytes of the values are shuffled.
+     */
+    protected final boolean shuffle;
+
+    /**
+     * Creates a new instance with {@link #DEFAULT_LEVEL} that delta codes and
+     * shuffles the values.
+     */
+    public Grids_ChunkCompressor() {
+        this(DEFAULT_LEVEL, true, true);
+    }
+
+    /**
+     * @param level What {@link #level} is set to.
+     * @param delta What {@link #delta} is set to.
+     * @param shuffle What {@link #shuffle} is set to.
+     */
+    public Grids_ChunkCompressor(int level, boolean delta, boolean shuffle) {
+        if ((level < Deflater.NO_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION)
+                && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("level " + level);
+        }
+        this.level = level;
+        this.delta = delta;
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * @return {@link #level}
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return {@link #delta}
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * @return {@link #shuffle}
+     */
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * Encodes and compresses {@code c}.
+     *
+     * @param c The chunk to compress.
+     * @return The compressed chunk or {@code null} if there is no registered
+     * codec for {@code c}.
+     */
+    public byte[] compress(Grids_Chunk c) {
+        Grids_ChunkCodec codec = Grids_ChunkCodec.getCodec(c);
+        if (codec == null) {
+            return null;
+        }
+        ByteBuffer b = ByteBuffer.allocate(codec.getSize(c));
+        codec.encodeWithHeader(c, b);
+        return compress(codec, b.array());
+    }
+
+    /**
+     * Compresses {@code b}. The values in {@code b} may be transformed in
+     * place.
+     *
+     * @param codec The codec {@code b} was encoded with.
+     * @param b An encoded chunk including the header.
+     * @return The compressed chunk.
+     */
+    protected byte[] compress(Grids_ChunkCodec codec, byte[] b) {
+        int start = Grids_ChunkCodec.HEADER_SIZE + 1;
+        int w = 0;
+        byte flags = 0;
+        if (b.length > start) {
+            w = codec.getValueSize(b[Grids_ChunkCodec.HEADER_SIZE]);
+        }
+        if (w > 0 && (b.length - start) % w == 0) {
+            if (delta) {
+                flags |= DELTA;
+                if (codec.isFloatingPoint()) {
+                    flags |= DELTA_XOR;
+                }
+                delta(b, start, w, (flags & DELTA_XOR) != 0);
+            }
+            if (shuffle) {
+                flags |= SHUFFLE;
+                b = shuffle(b, start, w);
+            }
+        } else {
+            w = 0;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(b.length / 2
+                + HEADER_SIZE);
+        ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        h.putInt(MAGIC);
+        h.putInt(b.length);
+        h.put(flags);
+        h.put((byte) w);
+        out.write(h.array(), 0, HEADER_SIZE);
+        Deflater d = new Deflater(level);
+        try {
+            d.setInput(b);
+            d.finish();
+            byte[] buf = new byte[8192];
+            while (!d.finished()) {
+                int n = d.deflate(buf);
+                out.write(buf, 0, n);
+            }
+        } finally {
+            d.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param b The buffer to test.
+     * @return {@code true} iff the bytes remaining in {@code b} start with
+     * {@link #MAGIC}.
+     */
+    public static boolean isCompressed(ByteBuffer b) {
+        if (b.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        int m = b.getInt(b.position());
+        if (b.order() != ByteOrder.LITTLE_ENDIAN) {
+            m = Integer.reverseBytes(m);
+        }
+        return m == MAGIC;
+    }
+
+    /**
+     * Decompresses the compressed chunk remaining in {@code b}.
+     *
+     * @param b The buffer containing the compressed chunk.
+     * @return A little-endian buffer containing the encoded chunk.
+     * @throws IOException If {@code b} does not contain a valid compressed
+     * chunk.
+     */
+    public static ByteBuffer decompress(ByteBuffer b) throws IOException {
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        if (!isCompressed(b)) {
+            throw new IOException("Not a compressed chunk");
+        }
+        b.getInt();
+        int length = b.getInt();
+        byte flags = b.get();
+        int w = b.get();
+        b.position(b.position() + 2);
+        byte[] r = new byte[length];
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(b);
+            int n = 0;
+            while (n < length && !inf.finished()) {
+                int k = inf.inflate(r, n, length - n);
+                if (k == 0 && (inf.needsInput() || inf.needsDictionary())) {
+                    break;
+                }
+                n += k;
+            }
+            if (n != length) {
+                throw new IOException("Compressed chunk is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inf.end();
+        }
+        int start = Grids_ChunkCodec.HEADER_SIZE + 1;
+        if (w > 0) {
+            if ((flags & SHUFFLE) != 0) {
+                r = unshuffle(r, start, w);
+            }
+            if ((flags & DELTA) != 0) {
+                undelta(r, start, w, (flags & DELTA_XOR) != 0);
+            }
+        }
+        return ByteBuffer.wrap(r).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Delta codes the little-endian values of {@code w} bytes in {@code b}
+     * from {@code start} in place.
+     *
+     * @param b The bytes.
+     * @param start The index of the first value.
+     * @param w The number of bytes of each value (4 or 8).
+     * @param xor If {@code true} then values are coded using exclusive or and
+     * otherwise using subtraction.
+     */
+    private static void delta(byte[] b, int start, int w, boolean xor) {
+        ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+        long p = 0L;
+        for (int k = start; k < b.length; k += w) {
+            long v = w == Long.BYTES ? bb.getLong(k) : bb.getInt(k);
+            long d = xor ? v ^ p : v - p;
+            if (w == Long.BYTES) {
+                bb.putLong(k, d);
+            } else {
+                bb.putInt(k, (int) d);
+            }
+            p = v;
+        }
+    }
+
+    /**
+     * Reverses {@link #delta(byte[], int, int, boolean)}.
+     *
+     * @param b The bytes.
+     * @param start The index of the first value.
+     * @param w The number of bytes of each value (4 or 8).
+     * @param xor If {@code true} then values were coded using exclusive or and
+     * otherwise using subtraction.
+     */
+    private static void undelta(byte[] b, int start, int w, boolean xor) {
+        ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+        long p = 0L;
+        for (int k = start; k < b.length; k += w) {
+            long d = w == Long.BYTES ? bb.getLong(k) : bb.getInt(k);
+            long v = xor ? d ^ p : d + p;
+            if (w == Long.BYTES) {
+                bb.putLong(k, v);
+            } else {
+                bb.putInt(k, (int) v);
+                v = (int) v;
+            }
+            p = v;
+        }
+    }
+
+    /**
+     * @param b The bytes.
+     * @param start The index of the first value.
+     * @param w The number of bytes of each value.
+     * @return A copy of {@code b} in which the bytes of the values from
+     * {@code start} are grouped by their position in the value.
+     */
+    private static byte[] shuffle(byte[] b, int start, int w) {
+        byte[] r = b.clone();
+        int n = (b.length - start) / w;
+        for (int k = 0; k < n; k++) {
+            for (int j = 0; j < w; j++) {
+                r[start + j * n + k] = b[start + k * w + j];
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Reverses {@link #shuffle(byte[], int, int)}.
+     *
+     * @param b The bytes.
+     * @param start The index of the first value.
+     * @param w The number of bytes of each value.
+     * @return A copy of {@code b} in which the bytes of the values from
+     * {@code start} are in their original order.
+     */
+    private static byte[] unshuffle(byte[] b, int start, int w) {
+        byte[] r = b.clone();
+        int n = (b.length - start) / w;
+        for (int k = 0; k < n; k++) {
+            for (int j = 0; j < w; j++) {
+                r[start + k * w + j] = b[start + j * n + k];
+            }
+        }
+        return r;
+    }
+}
@@ -28,8 +28,26 @@ public abstract class Grids_ChunkFactory implements Serializable {
     private static final long serialVersionUID = 1L;
     
     /**
-     * Create a new instance.
+     * Create a new instance and register the codec returned by
+     * {@link #getCodec()} (if there is one).
      */
-    protected Grids_ChunkFactory(){}
+    protected Grids_ChunkFactory(){
+        Grids_ChunkCodec c = getCodec();
+        if (c != null) {
+            Grids_ChunkCodec.register(c);
+        }
+    }
+
+    /**
+     * Chunks created by this factory are cached using the codec returned. If
+     * {@code null} is returned then chunks are cached using Java
+     * serialization. This implementation returns {@code null}.
+     *
+     * @return The codec for caching chunks created by this factory or
+     * {@code null}.
+     */
+    public Grids_ChunkCodec getCodec() {
+        return null;
+    }
 
 }
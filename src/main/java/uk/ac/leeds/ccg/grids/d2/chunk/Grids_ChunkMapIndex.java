@@ -0,0 +1,295 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * For map chunks to index cells that have a value other than the default
+ * value. A cell is identified by its position {@code row * chunkNCols + col}
+ * and its value is identified by a slot. The slots index arrays of values held
+ * by the map chunk. The mapping from position to slot is an open addressing
+ * hash table of primitive ints using linear probing, so a cell costs two ints
+ * and there are no boxed keys or cell ID objects. The number of cells mapped
+ * to each slot is also kept.
+ *
+ * Slots are allocated with {@link #newSlot()} and are freed with
+ * {@link #freeSlot(int)} when they are no longer used so that they can be
+ * reused.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkMapIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * For indicating an empty entry in {@link #positions} and a cell that is
+     * not in the index.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * The positions of the cells in the hash table.
+     */
+    protected int[] positions;
+
+    /**
+     * The slots of the cells in the hash table.
+     */
+    protected int[] slots;
+
+    /**
+     * The number of cells in the index.
+     */
+    protected int size;
+
+    /**
+     * The number of cells mapped to each slot.
+     */
+    protected int[] counts;
+
+    /**
+     * The number of slots that have been allocated.
+     */
+    protected int nSlots;
+
+    /**
+     * For storing slots that have been freed.
+     */
+    protected int[] free;
+
+    /**
+     * The number of slots in {@link #free}.
+     */
+    protected int nFree;
+
+    /**
+     * Create a new empty index.
+     */
+    public Grids_ChunkMapIndex() {
+        positions = new int[16];
+        Arrays.fill(positions, NONE);
+        slots = new int[16];
+        counts = new int[4];
+        free = new int[4];
+    }
+
+    /**
+     * @return An estimate of the number of bytes of the arrays of this.
+     */
+    public long getSize() {
+        return Grids_ChunkOptimizer.getArraySize(positions.length, Integer.BYTES)
+                + Grids_ChunkOptimizer.getArraySize(slots.length, Integer.BYTES)
+                + Grids_ChunkOptimizer.getArraySize(counts.length, Integer.BYTES)
+                + Grids_ChunkOptimizer.getArraySize(free.length, Integer.BYTES);
+    }
+
+    /**
+     * @param p The position.
+     * @return A hash of {@code p}.
+     */
+    private static int hash(int p) {
+        int h = p * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param p The position.
+     * @return The index in {@link #positions} of {@code p} or of the empty
+     * entry where it would be put.
+     */
+    private int find(int p) {
+        int mask = positions.length - 1;
+        int i = hash(p) & mask;
+        while (positions[i] != NONE && positions[i] != p) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * @param p The position of a cell.
+     * @return The slot of the cell at position {@code p} or {@link #NONE} if
+     * the cell is not in the index.
+     */
+    public int getSlot(int p) {
+        int i = find(p);
+        return positions[i] == NONE ? NONE : slots[i];
+    }
+
+    /**
+     * Maps the cell at position {@code p} to slot {@code s} and updates the
+     * counts.
+     *
+     * @param p The position of a cell.
+     * @param s The slot or {@link #NONE} to remove the cell from the index.
+     * @return The slot the cell was mapped to or {@link #NONE} if it was not
+     * in the index.
+     */
+    public int setSlot(int p, int s) {
+        int i = find(p);
+        int r;
+        if (positions[i] == NONE) {
+            if (s == NONE) {
+                return NONE;
+            }
+            r = NONE;
+            positions[i] = p;
+            slots[i] = s;
+            size++;
+            if (size * 2 > positions.length) {
+                rehash(positions.length * 2);
+            }
+        } else {
+            r = slots[i];
+            if (s == NONE) {
+                remove(i);
+            } else {
+                slots[i] = s;
+            }
+            counts[r]--;
+        }
+        if (s != NONE) {
+            counts[s]++;
+        }
+        return r;
+    }
+
+    /**
+     * Removes the entry at index {@code i} of the hash table by shifting back
+     * any entries that follow it in the same probe sequence.
+     *
+     * @param i The index.
+     */
+    private void remove(int i) {
+        int mask = positions.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (positions[j] == NONE) {
+                break;
+            }
+            int k = hash(positions[j]) & mask;
+            if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+                continue;
+            }
+            positions[i] = positions[j];
+            slots[i] = slots[j];
+            i = j;
+        }
+        positions[i] = NONE;
+        size--;
+    }
+
+    /**
+     * @param n The new length of the hash table (a power of two).
+     */
+    private void rehash(int n) {
+        int[] ps = positions;
+        int[] ss = slots;
+        positions = new int[n];
+        Arrays.fill(positions, NONE);
+        slots = new int[n];
+        for (int i = 0; i < ps.length; i++) {
+            if (ps[i] != NONE) {
+                int j = find(ps[i]);
+                positions[j] = ps[i];
+                slots[j] = ss[i];
+            }
+        }
+    }
+
+    /**
+     * @return A slot with a count of zero. This may be a slot that was freed.
+     */
+    public int newSlot() {
+        if (nFree > 0) {
+            nFree--;
+            return free[nFree];
+        }
+        if (nSlots == counts.length) {
+            counts = Arrays.copyOf(counts, nSlots * 2);
+        }
+        int r = nSlots;
+        nSlots++;
+        return r;
+    }
+
+    /**
+     * Frees slot {@code s} for reuse. It should have a count of zero.
+     *
+     * @param s The slot.
+     */
+    public void freeSlot(int s) {
+        if (nFree == free.length) {
+            free = Arrays.copyOf(free, nFree * 2);
+        }
+        free[nFree] = s;
+        nFree++;
+    }
+
+    /**
+     * @return The number of slots that the arrays of values indexed by slot
+     * must be able to hold.
+     */
+    public int getSlotsLength() {
+        return counts.length;
+    }
+
+    /**
+     * @param s The slot.
+     * @return The number of cells mapped to slot {@code s}.
+     */
+    public int getCount(int s) {
+        return counts[s];
+    }
+
+    /**
+     * @return The number of cells in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls {@code f} for each cell in the index in no particular order.
+     *
+     * @param f The function to call with the position and slot of each cell.
+     */
+    public void forEach(PositionSlotConsumer f) {
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] != NONE) {
+                f.accept(positions[i], slots[i]);
+            }
+        }
+    }
+
+    /**
+     * For passing to {@link #forEach(PositionSlotConsumer)}.
+     */
+    @FunctionalInterface
+    public interface PositionSlotConsumer {
+
+        /**
+         * @param p The position of a cell.
+         * @param s The slot of the cell.
+         */
+        void accept(int p, int s);
+    }
+}
@@ -31,37 +31,22 @@ public abstract class Grids_ChunkNumberMapASpatialIterator
      * numberOfCells
      */
     protected int numberOfCells;
-    
-    /**
-     * defaultValueIndex
-     */
-    protected int defaultValueIndex;
-    
-    /**
-     * noDataValueIndex
-     */
-    protected int noDataValueIndex;
-    
-    /**
-     * dataMapBitSetIndex
-     */
-    protected int dataMapBitSetIndex;
-    
+
     /**
-     * dataMapBitSetNumberOfValues
+     * The number of different values to iterate over.
      */
-    protected int dataMapBitSetNumberOfValues;
-    
+    protected int nValues;
+
     /**
-     * dataMapHashSetNumberOfValues
+     * The index of the value being returned in ascending order of value.
      */
-    protected int dataMapHashSetNumberOfValues;
-    
+    protected int valueIndex;
+
     /**
-     * dataMapHashSetIndex
+     * The number of times the value being returned has been returned.
      */
-    protected int dataMapHashSetIndex;
-    
+    protected int valueCountIndex;
+
     /**
      * hasNext
      */
@@ -75,12 +60,8 @@ public abstract class Grids_ChunkNumberMapASpatialIterator
     public Grids_ChunkNumberMapASpatialIterator(Grids_Chunk chunk) {
         super(chunk);
         numberOfCells = chunk.chunkNRows * chunk.chunkNCols;
-        //NumberOfDefaultValues = chunk.getNumberOfDefaultValues(numberOfCells);
-        defaultValueIndex = 0;
-        hasNext = true;
-        //NumberOfNoDataValues = numberOfCells - NumberOfDefaultValues;
-        dataMapBitSetIndex = 0;
-        dataMapHashSetIndex = 0;
+        valueIndex = 0;
+        valueCountIndex = 0;
     }
 
     /**
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.util.Arrays;
+import java.util.HashSet;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinary;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBoolean;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBR;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRSinglet;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleOffHeap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntOffHeap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntSinglet;
+import uk.ac.leeds.ccg.grids.memory.Grids_AccountDetail;
+
+/**
+ * For choosing the smallest representation of a chunk from the number of
+ * different values in it and how common the most common value is. A chunk
+ * with a single value is represented as a singlet. Otherwise a double, int or
+ * BigRational chunk is represented as a map (with the most common value as
+ * the default value) if that is estimated to be smaller than an array, and
+ * otherwise as an array (a flat array for double and int chunks). A binary or
+ * boolean chunk is represented as a bit packed array (singlets are not used
+ * for these as binary and boolean grids expect array chunks).
+ *
+ * The sizes compared are estimates of the number of bytes used to store the
+ * values. They assume {@link #ARRAY} bytes for the header of each array and
+ * {@link #REFERENCE} bytes for each reference. The BigRational values are
+ * not counted as the different values have to be stored in any
+ * representation.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkOptimizer {
+
+    /**
+     * The estimated number of bytes for the header of an array.
+     */
+    public static final int ARRAY = 16;
+
+    /**
+     * The estimated number of bytes for a reference.
+     */
+    public static final int REFERENCE = 4;
+
+    /**
+     * Create a new instance.
+     */
+    public Grids_ChunkOptimizer() {
+    }
+
+    /**
+     * Returns the smallest representation of {@code c}. If that is not the
+     * representation of {@code c} then a new chunk is created with the same
+     * values, the same grid and the same chunk ID as {@code c}. The caller is
+     * responsible for putting the new chunk in the grid in place of {@code c}.
+     *
+     * @param c The chunk.
+     * @param a If this is not {@code null}, then if a new chunk is returned its
+     * chunk ID is added to {@code a.detail} and the estimated number of bytes
+     * saved is added to {@code a.bytesSaved}.
+     * @return Either {@code c} or a new chunk with the same values.
+     * @throws Exception If encountered.
+     */
+    public Grids_Chunk optimize(Grids_Chunk c, Grids_AccountDetail a)
+            throws Exception {
+        int nrows = c.getChunkNRows();
+        int ncols = c.getChunkNCols();
+        long[] sizes = new long[2];
+        Grids_Chunk r;
+        if (c instanceof Grids_ChunkDouble) {
+            r = optimize((Grids_ChunkDouble) c, nrows, ncols, sizes);
+        } else if (c instanceof Grids_ChunkInt) {
+            r = optimize((Grids_ChunkInt) c, nrows, ncols, sizes);
+        } else if (c instanceof Grids_ChunkBR) {
+            r = optimize((Grids_ChunkBR) c, nrows, ncols, sizes);
+        } else if (c instanceof Grids_ChunkBinary) {
+            r = optimize((Grids_ChunkBinary) c, nrows, ncols, sizes);
+        } else if (c instanceof Grids_ChunkBoolean) {
+            r = optimize((Grids_ChunkBoolean) c, nrows, ncols, sizes);
+        } else {
+            return c;
+        }
+        if (r != c && a != null) {
+            a.detail.computeIfAbsent(c.getGrid(), k -> new HashSet<>())
+                    .add(c.getId());
+            a.bytesSaved += sizes[0] - sizes[1];
+        }
+        return r;
+    }
+
+    /**
+     * @param c The chunk.
+     * @param nrows The number of rows in {@code c}.
+     * @param ncols The number of columns in {@code c}.
+     * @param sizes For returning the estimated size of {@code c} and of the
+     * result.
+     * @return {@code c} or a new chunk with the same values.
+     * @throws Exception If encountered.
+     */
+    protected Grids_Chunk optimize(Grids_ChunkDouble c, int nrows, int ncols,
+            long[] sizes) throws Exception {
+        if (c instanceof Grids_ChunkDoubleSinglet) {
+            return c;
+        }
+        int n = nrows * ncols;
+        double[] vs = new double[n];
+        int k = 0;
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                vs[k] = c.getCell(row, col);
+                k++;
+            }
+        }
+        Arrays.sort(vs);
+        // Count the different values and find the most common.
+        int nv = 0;
+        int modeCount = 0;
+        double mode = vs[0];
+        for (k = 0; k < n;) {
+            int j = k + 1;
+            while (j < n && Double.compare(vs[j], vs[k]) == 0) {
+                j++;
+            }
+            nv++;
+            if (j - k > modeCount) {
+                modeCount = j - k;
+                mode = vs[k];
+            }
+            k = j;
+        }
+        if (c instanceof Grids_ChunkDoubleMap) {
+            Grids_ChunkDoubleMap m = (Grids_ChunkDoubleMap) c;
+            int nd = m.getNumberOfDefaultValues(n);
+            sizes[0] = getMapSize(n - nd, nd > 0 ? nv - 1 : nv, Double.BYTES);
+        } else if (c instanceof Grids_ChunkDoubleArray) {
+            sizes[0] = getArraySize(nrows, ncols, Double.BYTES);
+        } else {
+            sizes[0] = getArraySize(n, Double.BYTES);
+        }
+        Grids_2D_ID_int i = c.getId();
+        if (nv == 1) {
+            sizes[1] = 0;
+            return new Grids_ChunkDoubleSinglet(c.getGrid(), i, mode);
+        }
+        long mapSize = getMapSize(n - modeCount, nv - 1, Double.BYTES);
+        if (mapSize < getArraySize(n, Double.BYTES)) {
+            if (c instanceof Grids_ChunkDoubleMap && Double.compare(
+                    ((Grids_ChunkDoubleMap) c).defaultValue, mode) == 0) {
+                return c;
+            }
+            sizes[1] = mapSize;
+            return new Grids_ChunkDoubleFactoryMap().create(c, i, mode);
+        }
+        if (c instanceof Grids_ChunkDoubleArray
+                || c instanceof Grids_ChunkDoubleArrayFlat
+                || c instanceof Grids_ChunkDoubleOffHeap) {
+            return c;
+        }
+        sizes[1] = getArraySize(n, Double.BYTES);
+        return new Grids_ChunkDoubleFactoryArrayFlat().create(c, i);
+    }
+
+    /**
+     * @param c The chunk.
+     * @param nrows The number of rows in {@code c}.
+     * @param ncols The number of columns in {@code c}.
+     * @param sizes For returning the estimated size of {@code c} and of the
+     * result.
+     * @return {@code c} or a new chunk with the same values.
+     * @throws Exception If encountered.
+     */
+    protected Grids_Chunk optimize(Grids_ChunkInt c, int nrows, int ncols,
+            long[] sizes) throws Exception {
+        if (c instanceof Grids_ChunkIntSinglet) {
+            return c;
+        }
+        int n = nrows * ncols;
+        int[] vs = new int[n];
+        int k = 0;
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                vs[k] = c.getCell(row, col);
+                k++;
+            }
+        }
+        Arrays.sort(vs);
+        // Count the different values and find the most common.
+        int nv = 0;
+        int modeCount = 0;
+        int mode = vs[0];
+        for (k = 0; k < n;) {
+            int j = k + 1;
+            while (j < n && vs[j] == vs[k]) {
+                j++;
+            }
+            nv++;
+            if (j - k > modeCount) {
+                modeCount = j - k;
+                mode = vs[k];
+            }
+            k = j;
+        }
+        if (c instanceof Grids_ChunkIntMap) {
+            Grids_ChunkIntMap m = (Grids_ChunkIntMap) c;
+            int nd = m.getNumberOfDefaultValues(n);
+            sizes[0] = getMapSize(n - nd, nd > 0 ? nv - 1 : nv, Integer.BYTES);
+        } else if (c instanceof Grids_ChunkIntArray) {
+            sizes[0] = getArraySize(nrows, ncols, Integer.BYTES);
+        } else {
+            sizes[0] = getArraySize(n, Integer.BYTES);
+        }
+        Grids_2D_ID_int i = c.getId();
+        if (nv == 1) {
+            sizes[1] = 0;
+            return new Grids_ChunkIntSinglet(c.getGrid(), i, mode);
+        }
+        long mapSize = getMapSize(n - modeCount, nv - 1, Integer.BYTES);
+        if (mapSize < getArraySize(n, Integer.BYTES)) {
+            if (c instanceof Grids_ChunkIntMap
+                    && ((Grids_ChunkIntMap) c).defaultValue == mode) {
+                return c;
+            }
+            sizes[1] = mapSize;
+            return new Grids_ChunkIntFactoryMap().create(c, i, mode);
+        }
+        if (c instanceof Grids_ChunkIntArray
+                || c instanceof Grids_ChunkIntArrayFlat
+                || c instanceof Grids_ChunkIntOffHeap) {
+            return c;
+        }
+        sizes[1] = getArraySize(n, Integer.BYTES);
+        return new Grids_ChunkIntFactoryArrayFlat().create(c, i);
+    }
+
+    /**
+     * @param c The chunk.
+     * @param nrows The number of rows in {@code c}.
+     * @param ncols The number of columns in {@code c}.
+     * @param sizes For returning the estimated size of {@code c} and of the
+     * result.
+     * @return {@code c} or a new chunk with the same values.
+     * @throws Exception If encountered.
+     */
+    protected Grids_Chunk optimize(Grids_ChunkBR c, int nrows, int ncols,
+            long[] sizes) throws Exception {
+        if (c instanceof Grids_ChunkBRSinglet) {
+            return c;
+        }
+        int n = nrows * ncols;
+        BigRational[] vs = new BigRational[n];
+        int k = 0;
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                vs[k] = c.getCell(row, col);
+                k++;
+            }
+        }
+        Arrays.sort(vs);
+        // Count the different values and find the most common.
+        int nv = 0;
+        int modeCount = 0;
+        BigRational mode = vs[0];
+        for (k = 0; k < n;) {
+            int j = k + 1;
+            while (j < n && vs[j].compareTo(vs[k]) == 0) {
+                j++;
+            }
+            nv++;
+            if (j - k > modeCount) {
+                modeCount = j - k;
+                mode = vs[k];
+            }
+            k = j;
+        }
+        if (c instanceof Grids_ChunkBRMap) {
+            Grids_ChunkBRMap m = (Grids_ChunkBRMap) c;
+            int nd = m.getNumberOfDefaultValues(n);
+            sizes[0] = getMapSize(n - nd, nd > 0 ? nv - 1 : nv, REFERENCE);
+        } else {
+            sizes[0] = getArraySize(nrows, ncols, REFERENCE);
+        }
+        Grids_2D_ID_int i = c.getId();
+        if (nv == 1) {
+            sizes[1] = 0;
+            return new Grids_ChunkBRSinglet(c.getGrid(), i, mode);
+        }
+        long mapSize = getMapSize(n - modeCount, nv - 1, REFERENCE);
+        if (mapSize < getArraySize(nrows, ncols, REFERENCE)) {
+            if (c instanceof Grids_ChunkBRMap && ((Grids_ChunkBRMap) c)
+                    .defaultValue.compareTo(mode) == 0) {
+                return c;
+            }
+            sizes[1] = mapSize;
+            return new Grids_ChunkBRFactoryMap().create(c, i, mode);
+        }
+        if (c instanceof Grids_ChunkBRArray) {
+            return c;
+        }
+        sizes[1] = getArraySize(nrows, ncols, REFERENCE);
+        return new Grids_ChunkBRFactoryArray().create(c, i);
+    }
+
+    /**
+     * @param c The chunk.
+     * @param nrows The number of rows in {@code c}.
+     * @param ncols The number of columns in {@code c}.
+     * @param sizes For returning the estimated size of {@code c} and of the
+     * result.
+     * @return {@code c} or a new chunk with the same values.
+     * @throws Exception If encountered.
+     */
+    protected Grids_Chunk optimize(Grids_ChunkBinary c, int nrows, int ncols,
+            long[] sizes) throws Exception {
+        if (!(c instanceof Grids_ChunkBinaryArray)
+                || c instanceof Grids_ChunkBinaryArrayPacked) {
+            return c;
+        }
+        int n = nrows * ncols;
+        if (c instanceof Grids_ChunkBinaryArrayFlat) {
+            sizes[0] = getArraySize(n, 1);
+        } else {
+            sizes[0] = getArraySize(nrows, ncols, 1);
+        }
+        sizes[1] = getArraySize(Grids_ChunkBinaryArrayPacked.getNWords(n),
+                Long.BYTES);
+        return new Grids_ChunkBinaryFactoryArrayPacked().create(c, c.getId());
+    }
+
+    /**
+     * @param c The chunk.
+     * @param nrows The number of rows in {@code c}.
+     * @param ncols The number of columns in {@code c}.
+     * @param sizes For returning the estimated size of {@code c} and of the
+     * result.
+     * @return {@code c} or a new chunk with the same values.
+     * @throws Exception If encountered.
+     */
+    protected Grids_Chunk optimize(Grids_ChunkBoolean c, int nrows, int ncols,
+            long[] sizes) throws Exception {
+        if (!(c instanceof Grids_ChunkBooleanArray)
+                || c instanceof Grids_ChunkBooleanArrayPacked) {
+            return c;
+        }
+        sizes[0] = getArraySize(nrows, ncols, REFERENCE);
+        sizes[1] = 2 * getArraySize(Grids_ChunkBinaryArrayPacked.getNWords(
+                nrows * ncols), Long.BYTES);
+        return new Grids_ChunkBooleanFactoryArrayPacked().create(c, c.getId());
+    }
+
+    /**
+     * @param n The number of values.
+     * @param bytes The number of bytes for each value.
+     * @return An estimate of the number of bytes used to store {@code n}
+     * values in a one dimensional array.
+     */
+    public static long getArraySize(int n, int bytes) {
+        return ARRAY + (long) bytes * n;
+    }
+
+    /**
+     * @param nrows The number of rows.
+     * @param ncols The number of columns.
+     * @param bytes The number of bytes for each value.
+     * @return An estimate of the number of bytes used to store
+     * {@code nrows * ncols} values in a two dimensional array.
+     */
+    public static long getArraySize(int nrows, int ncols, int bytes) {
+        return ARRAY + (long) REFERENCE * nrows
+                + nrows * getArraySize(ncols, bytes);
+    }
+
+    /**
+     * @param n The number of cells that do not have the default value.
+     * @param nv The number of different values other than the default value.
+     * @param bytes The number of bytes for each value.
+     * @return An estimate of the number of bytes used to store the values in a
+     * map chunk. This follows the growth of the arrays in
+     * {@link Grids_ChunkMapIndex}.
+     */
+    public static long getMapSize(int n, int nv, int bytes) {
+        int capacity = 16;
+        while (n * 2 > capacity) {
+            capacity <<= 1;
+        }
+        int slots = 4;
+        while (nv > slots) {
+            slots <<= 1;
+        }
+        // Positions and slots in the index.
+        long r = 2 * getArraySize(capacity, Integer.BYTES);
+        // Counts and free slots in the index and order in the chunk.
+        r += 3 * getArraySize(slots, Integer.BYTES);
+        // Values in the chunk.
+        r += getArraySize(slots, bytes);
+        return r;
+    }
+}
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * A single memory mapped file for caching all the chunks of a grid.
+ *
+ * The file comprises: a header of {@link #HEADER_SIZE} bytes; an index with
+ * an entry of {@link #ENTRY_SIZE} bytes for each chunk; and, the chunk data.
+ * Each chunk has a fixed slot of {@link #slotSize} bytes in the chunk data
+ * located by its chunk row and chunk column. If the encoding of a chunk does
+ * not fit in its slot, then it is written in an overflow extent that is
+ * allocated after all the slots. Each index entry comprises the offset of the
+ * extent relative to {@link #dataStart}, the number of bytes of the encoded
+ * chunk and the capacity of the extent. A length of zero indicates that the
+ * chunk is not stored. Overflow extents that are no longer used are kept in
+ * {@link #free} and reused, and any at the end of the chunk data are
+ * truncated.
+ *
+ * The chunk data is mapped in segments of {@link #segmentSize} bytes which
+ * are only mapped when needed. No slot or extent spans more than one segment.
+ * Chunks are encoded and decoded using {@link Grids_ChunkCodec} directly into
+ * and out of the mapped segments. Chunks compressed by a
+ * {@link Grids_ChunkCompressor} are written as they are and decompressed when
+ * they are read.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkStore {
+
+    /**
+     * The first eight bytes of the file.
+     */
+    public static final long MAGIC = 0x524F545344495247L;
+
+    /**
+     * The number of bytes in the header.
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * The number of bytes in each index entry.
+     */
+    public static final int ENTRY_SIZE = 16;
+
+    /**
+     * The size segments are set to unless {@link #slotSize} is larger.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 27;
+
+    /**
+     * The file.
+     */
+    protected final Path file;
+
+    /**
+     * For reading and writing {@link #file}.
+     */
+    protected final FileChannel fc;
+
+    /**
+     * The number of chunk rows.
+     */
+    protected final int nChunkRows;
+
+    /**
+     * The number of chunk columns.
+     */
+    protected final int nChunkCols;
+
+    /**
+     * The number of bytes in each fixed slot. If this is zero then all chunks
+     * are stored in overflow extents.
+     */
+    protected final int slotSize;
+
+    /**
+     * The number of bytes in each mapped segment. This is a multiple of
+     * {@link #slotSize}.
+     */
+    protected final long segmentSize;
+
+    /**
+     * The position in {@link #file} of the start of the chunk data.
+     */
+    protected final long dataStart;
+
+    /**
+     * The mapped header and index.
+     */
+    protected final MappedByteBuffer index;
+
+    /**
+     * The mapped segments of the chunk data (which are mapped as needed).
+     */
+    protected MappedByteBuffer[] segments;
+
+    /**
+     * The offset relative to {@link #dataStart} at which the next overflow
+     * extent may be allocated.
+     */
+    protected long end;
+
+    /**
+     * The overflow extents that are not in use keyed by their offset relative
+     * to {@link #dataStart} with values being their capacity. No free extent
+     * spans more than one segment.
+     */
+    protected final TreeMap<Long, Integer> free;
+
+    /**
+     * Opens the store in {@code file} creating or recreating it if it does not
+     * exist or if it is not a store for the same number of chunk rows, chunk
+     * columns and slot size.
+     *
+     * @param file What {@link #file} is set to.
+     * @param nChunkRows What {@link #nChunkRows} is set to.
+     * @param nChunkCols What {@link #nChunkCols} is set to.
+     * @param slotSize What {@link #slotSize} is set to.
+     * @throws IOException If encountered.
+     */
+    public Grids_ChunkStore(Path file, int nChunkRows, int nChunkCols,
+            int slotSize) throws IOException {
+        this.file = file;
+        this.nChunkRows = nChunkRows;
+        this.nChunkCols = nChunkCols;
+        this.slotSize = slotSize;
+        if (slotSize > 0) {
+            segmentSize = (long) slotSize * Math.max(1L,
+                    DEFAULT_SEGMENT_SIZE / slotSize);
+        } else {
+            segmentSize = DEFAULT_SEGMENT_SIZE;
+        }
+        long nSlots = (long) nChunkRows * (long) nChunkCols;
+        long indexEnd = HEADER_SIZE + nSlots * ENTRY_SIZE;
+        dataStart = ((indexEnd + 4095L) / 4096L) * 4096L;
+        boolean exists = Files.exists(file);
+        fc = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists && !isCompatible()) {
+            fc.truncate(0L);
+            exists = false;
+        }
+        index = fc.map(FileChannel.MapMode.READ_WRITE, 0L, dataStart);
+        index.order(ByteOrder.LITTLE_ENDIAN);
+        long nSegments = (getSlotsEnd() + segmentSize - 1) / segmentSize;
+        segments = new MappedByteBuffer[(int) Math.max(1L, nSegments)];
+        free = new TreeMap<>();
+        if (exists) {
+            end = index.getLong(24);
+            initFree();
+        } else {
+            index.putLong(0, MAGIC);
+            index.putInt(8, nChunkRows);
+            index.putInt(12, nChunkCols);
+            index.putInt(16, slotSize);
+            end = getSlotsEnd();
+            index.putLong(24, end);
+            // Pre-size the file so that all the slots are allocated.
+            long size = dataStart + getSlotsEnd();
+            if (fc.size() < size) {
+                fc.write(ByteBuffer.allocate(1), size - 1);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} iff the header in {@link #file} is for a store
+     * with the same number of chunk rows, chunk columns and slot size.
+     * @throws IOException If encountered.
+     */
+    private boolean isCompatible() throws IOException {
+        if (fc.size() < dataStart) {
+            return false;
+        }
+        ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE).order(
+                ByteOrder.LITTLE_ENDIAN);
+        while (h.hasRemaining()) {
+            if (fc.read(h, h.position()) < 0) {
+                return false;
+            }
+        }
+        return h.getLong(0) == MAGIC && h.getInt(8) == nChunkRows
+                && h.getInt(12) == nChunkCols && h.getInt(16) == slotSize;
+    }
+
+    /**
+     * Initialises {@link #free} from the gaps between the overflow extents in
+     * the index. Extents of chunks that are not stored are freed.
+     */
+    private void initFree() {
+        long slotsEnd = getSlotsEnd();
+        List<long[]> used = new ArrayList<>();
+        int n = nChunkRows * nChunkCols;
+        for (int k = 0; k < n; k++) {
+            int e = HEADER_SIZE + k * ENTRY_SIZE;
+            long offset = index.getLong(e);
+            int capacity = index.getInt(e + 12);
+            if (offset >= slotsEnd && capacity > 0) {
+                if (index.getInt(e + 8) > 0) {
+                    used.add(new long[]{offset, capacity});
+                } else {
+                    index.putLong(e, 0L);
+                    index.putInt(e + 12, 0);
+                }
+            }
+        }
+        used.sort((a, b) -> Long.compare(a[0], b[0]));
+        long p = slotsEnd;
+        for (long[] u : used) {
+            addFree(p, u[0]);
+            p = Math.max(p, u[0] + u[1]);
+        }
+        end = p;
+        index.putLong(24, end);
+    }
+
+    /**
+     * Adds the bytes from {@code from} to {@code to} to {@link #free} split so
+     * that no free extent spans more than one segment.
+     *
+     * @param from The start offset relative to {@link #dataStart}.
+     * @param to The end offset relative to {@link #dataStart}.
+     */
+    private void addFree(long from, long to) {
+        while (from < to) {
+            long b = Math.min(to, (from / segmentSize + 1) * segmentSize);
+            free.put(from, (int) (b - from));
+            from = b;
+        }
+    }
+
+    /**
+     * Frees the overflow extent at {@code offset}. If it is at the end of the
+     * chunk data then {@link #end} is reduced, otherwise it is merged with any
+     * adjacent free extents in the same segment and added to {@link #free}.
+     *
+     * @param offset The offset of the extent relative to {@link #dataStart}.
+     * @param capacity The capacity of the extent.
+     */
+    private void release(long offset, int capacity) {
+        Map.Entry<Long, Integer> h = free.ceilingEntry(offset + capacity);
+        if (h != null && h.getKey() == offset + capacity
+                && h.getKey() % segmentSize != 0) {
+            free.remove(h.getKey());
+            capacity += h.getValue();
+        }
+        Map.Entry<Long, Integer> l = free.floorEntry(offset);
+        if (l != null && l.getKey() + l.getValue() == offset
+                && offset % segmentSize != 0) {
+            free.remove(l.getKey());
+            offset = l.getKey();
+            capacity += l.getValue();
+        }
+        if (offset + capacity == end) {
+            end = offset;
+            Map.Entry<Long, Integer> last = free.lastEntry();
+            while (last != null && last.getKey() + last.getValue() == end) {
+                free.remove(last.getKey());
+                end = last.getKey();
+                last = free.lastEntry();
+            }
+            end = Math.max(end, getSlotsEnd());
+            index.putLong(24, end);
+        } else {
+            free.put(offset, capacity);
+        }
+    }
+
+    /**
+     * Takes the first free extent that has a capacity of at least
+     * {@code length} from {@link #free}. Any remainder stays free.
+     *
+     * @param length The number of bytes.
+     * @return The offset of the extent relative to {@link #dataStart} or
+     * {@code -1} if there is no free extent large enough.
+     */
+    private long take(int length) {
+        Iterator<Map.Entry<Long, Integer>> ite = free.entrySet().iterator();
+        while (ite.hasNext()) {
+            Map.Entry<Long, Integer> f = ite.next();
+            int capacity = f.getValue();
+            if (capacity >= length) {
+                long offset = f.getKey();
+                ite.remove();
+                if (capacity > length) {
+                    free.put(offset + length, capacity - length);
+                }
+                return offset;
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * @return The number of bytes after the fixed slots that are allocated
+     * for overflow extents including those that are free.
+     */
+    public synchronized long getOverflowSize() {
+        return end - getSlotsEnd();
+    }
+
+    /**
+     * @return The number of bytes in free overflow extents.
+     */
+    public synchronized long getFreeSize() {
+        long r = 0L;
+        for (int capacity : free.values()) {
+            r += capacity;
+        }
+        return r;
+    }
+
+    /**
+     * @return The offset relative to {@link #dataStart} of the end of the
+     * fixed slots.
+     */
+    private long getSlotsEnd() {
+        return (long) nChunkRows * (long) nChunkCols * (long) slotSize;
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @return The position in {@link #index} of the entry for {@code i}.
+     */
+    private int getEntry(Grids_2D_ID_int i) {
+        return HEADER_SIZE + (i.getRow() * nChunkCols + i.getCol())
+                * ENTRY_SIZE;
+    }
+
+    /**
+     * @param offset An offset relative to {@link #dataStart}.
+     * @param length The number of bytes.
+     * @return A little-endian buffer for the {@code length} bytes at
+     * {@code offset}.
+     * @throws IOException If encountered.
+     */
+    private ByteBuffer getBuffer(long offset, int length) throws IOException {
+        int k = (int) (offset / segmentSize);
+        if (k >= segments.length) {
+            MappedByteBuffer[] s = new MappedByteBuffer[Math.max(k + 1,
+                    segments.length * 2)];
+            System.arraycopy(segments, 0, s, 0, segments.length);
+            segments = s;
+        }
+        if (segments[k] == null) {
+            segments[k] = fc.map(FileChannel.MapMode.READ_WRITE,
+                    dataStart + k * segmentSize, segmentSize);
+        }
+        return segments[k].slice((int) (offset - k * segmentSize), length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @return {@code true} iff the chunk with ID {@code i} is stored.
+     */
+    public synchronized boolean contains(Grids_2D_ID_int i) {
+        return index.getInt(getEntry(i) + 8) > 0;
+    }
+
+    /**
+     * Writes {@code c} into the store if there is a registered codec for it.
+     *
+     * @param c The chunk to write.
+     * @param i The chunk ID.
+     * @return {@code true} iff {@code c} was written.
+     * @throws IOException If encountered.
+     */
+    public synchronized boolean write(Grids_Chunk c, Grids_2D_ID_int i)
+            throws IOException {
+        Grids_ChunkCodec codec = Grids_ChunkCodec.getCodec(c);
+        if (codec == null) {
+            return false;
+        }
+        int length = codec.getSize(c);
+        if (length > segmentSize) {
+            return false;
+        }
+        codec.encodeWithHeader(c, getBuffer(allocate(i, length), length));
+        index.putInt(getEntry(i) + 8, length);
+        return true;
+    }
+
+    /**
+     * Writes {@code b} into the store as the chunk with ID {@code i}. This is
+     * for writing chunks that are already encoded or compressed (see
+     * {@link Grids_ChunkCompressor}).
+     *
+     * @param i The chunk ID.
+     * @param b The encoded or compressed chunk.
+     * @return {@code true} iff {@code b} was written.
+     * @throws IOException If encountered.
+     */
+    public synchronized boolean write(Grids_2D_ID_int i, byte[] b)
+            throws IOException {
+        int length = b.length;
+        if (length == 0 || length > segmentSize) {
+            return false;
+        }
+        getBuffer(allocate(i, length), length).put(b);
+        index.putInt(getEntry(i) + 8, length);
+        return true;
+    }
+
+    /**
+     * Finds an extent for {@code length} bytes for the chunk with ID
+     * {@code i}. This is its fixed slot if {@code length} fits, otherwise its
+     * current overflow extent if {@code length} fits, otherwise a free
+     * overflow extent or a new one. Any overflow extent the chunk no longer
+     * uses is released. The offset and capacity in the index entry are
+     * updated but the length is not.
+     *
+     * @param i The chunk ID.
+     * @param length The number of bytes.
+     * @return The offset of the extent relative to {@link #dataStart}.
+     */
+    private long allocate(Grids_2D_ID_int i, int length) {
+        int e = getEntry(i);
+        long offset = index.getLong(e);
+        int capacity = index.getInt(e + 12);
+        boolean overflow = offset >= getSlotsEnd() && capacity > 0;
+        if (length <= slotSize) {
+            if (overflow) {
+                release(offset, capacity);
+            }
+            offset = (long) (i.getRow() * nChunkCols + i.getCol()) * slotSize;
+            capacity = slotSize;
+        } else if (length > capacity || !overflow) {
+            if (overflow) {
+                release(offset, capacity);
+            }
+            offset = take(length);
+            if (offset < 0L) {
+                long r = end % segmentSize;
+                if (r + length > segmentSize) {
+                    addFree(end, end + segmentSize - r);
+                    end += segmentSize - r;
+                }
+                offset = end;
+                end += length;
+                index.putLong(24, end);
+            }
+            capacity = length;
+        }
+        index.putLong(e, offset);
+        index.putInt(e + 12, capacity);
+        return offset;
+    }
+
+    /**
+     * Reads the chunk with ID {@code i} from the store.
+     *
+     * @param g The grid the chunk is a part of.
+     * @param i The chunk ID.
+     * @return The chunk read or {@code null} if it is not stored.
+     * @throws IOException If encountered.
+     */
+    public synchronized Grids_Chunk read(Grids_Grid g, Grids_2D_ID_int i)
+            throws IOException {
+        int e = getEntry(i);
+        int length = index.getInt(e + 8);
+        if (length == 0) {
+            return null;
+        }
+        return Grids_ChunkCodec.decodeWithHeader(g, i,
+                getBuffer(index.getLong(e), length));
+    }
+
+    /**
+     * Removes the chunk with ID {@code i} from the store. If it is in an
+     * overflow extent then the extent is released for reuse.
+     *
+     * @param i The chunk ID.
+     */
+    public synchronized void remove(Grids_2D_ID_int i) {
+        int e = getEntry(i);
+        long offset = index.getLong(e);
+        int capacity = index.getInt(e + 12);
+        if (offset >= getSlotsEnd() && capacity > 0) {
+            release(offset, capacity);
+            index.putLong(e, 0L);
+            index.putInt(e + 12, 0);
+        }
+        index.putInt(e + 8, 0);
+    }
+
+    /**
+     * Forces any changes to the mapped index and segments to be written to
+     * {@link #file}.
+     */
+    public synchronized void flush() {
+        index.force();
+        for (MappedByteBuffer s : segments) {
+            if (s != null) {
+                s.force();
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes the store.
+     *
+     * @throws IOException If encountered.
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        segments = new MappedByteBuffer[segments.length];
+        fc.close();
+    }
+}
@@ -15,6 +15,7 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.b;
 
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
 
@@ -76,10 +77,11 @@ public class Grids_ChunkBinaryArray extends Grids_ChunkBinaryArrayOrMap {
     }
     
     /**
-     * Initialise {@link #data}.
+     * Initialise {@link #data}. This is called from the constructors and is
+     * overridden in {@link Grids_ChunkBinaryArrayFlat}.
      */
     @Override
-    protected final void initData() {
+    protected void initData() {
         Grids_GridBinary g = getGrid();
         int chunkNrows = g.getChunkNRows(id);
         int chunkNcols = g.getChunkNCols(id);
@@ -140,6 +142,15 @@ public class Grids_ChunkBinaryArray extends Grids_ChunkBinaryArrayOrMap {
         data = null;
     }
 
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #data}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : Grids_ChunkOptimizer.getArraySize(chunkNRows, chunkNCols, 1));
+    }
+
     /**
      * @return {@link #data} 
      */
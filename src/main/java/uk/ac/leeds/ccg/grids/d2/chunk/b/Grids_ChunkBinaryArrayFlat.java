@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b;
+
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+
+/**
+ * Stores the data in a single {@code boolean[]} in row major order. The value
+ * of chunk cell row {@code row}, chunk cell column {@code col} is at index
+ * {@code row * chunkNCols + col}. This extends {@link Grids_ChunkBinaryArray}
+ * so that it can be used wherever that is, but {@link #data} is not used and
+ * is {@code null}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkBinaryArrayFlat extends Grids_ChunkBinaryArray {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * For storing values in row major order.
+     */
+    protected boolean[] values;
+
+    /**
+     * Create a new instance.
+     *
+     * @param g The grid.
+     * @param i The ID.
+     */
+    public Grids_ChunkBinaryArrayFlat(Grids_GridBinary g, Grids_2D_ID_int i) {
+        super(g, i);
+    }
+
+    /**
+     * @param c The chunk that's values will be duplicated.
+     * @param i The chunkID.
+     */
+    protected Grids_ChunkBinaryArrayFlat(Grids_ChunkBinary c,
+            Grids_2D_ID_int i) {
+        super(c.getGrid(), i);
+        int k = 0;
+        for (int row = 0; row < chunkNRows; row++) {
+            for (int col = 0; col < chunkNCols; col++) {
+                values[k] = c.getCell(row, col);
+                k++;
+            }
+        }
+        cacheUpToDate = false;
+    }
+
+    /**
+     * Initialise {@link #values}.
+     */
+    @Override
+    protected final void initData() {
+        Grids_GridBinary g = getGrid();
+        values = new boolean[g.getChunkNRows(id) * g.getChunkNCols(id)];
+    }
+
+    /**
+     * Returns the value at {@code row}, {@code col}.
+     *
+     * @param row The row of the cell w.r.t. the origin of this chunk.
+     * @param col The column of the cell w.r.t. the origin of this chunk.
+     * @return The value at {@code row}, {@code col}.
+     */
+    @Override
+    public boolean getCell(int row, int col) {
+        return values[row * chunkNCols + col];
+    }
+
+    /**
+     * Returns the value at {@code row}, {@code col} and sets it to value
+     * {@code v}.
+     *
+     * @param row The chunk cell row index.
+     * @param col The chunk cell column index.
+     * @param v The value the cell is to be set to.
+     * @return The value at {@code row}, {@code col} before it is set to
+     * {@code v}.
+     */
+    @Override
+    public boolean setCell(int row, int col, boolean v) {
+        int k = row * chunkNCols + col;
+        boolean v0 = values[k];
+        values[k] = v;
+        if (isCacheUpToDate()) {
+            if (v != v0) {
+                setCacheUpToDate(false);
+            }
+        }
+        return v0;
+    }
+
+    /**
+     * Initialises the value at {@code row}, {@code col} to {@code v}.
+     *
+     * @param row The row of the cell w.r.t. the origin of this chunk.
+     * @param col The column of the cell w.r.t. the origin of this chunk.
+     * @param v The value to initialise.
+     */
+    @Override
+    public void initCell(int row, int col, boolean v) {
+        values[row * chunkNCols + col] = v;
+    }
+
+    /**
+     * For clearing the data associated with this.
+     */
+    @Override
+    protected void clearData() {
+        values = null;
+    }
+
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #values}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (values == null ? 0L : Grids_ChunkOptimizer.getArraySize(values.length, 1));
+    }
+
+    /**
+     * @return A copy of {@link #values} arranged in rows and columns.
+     */
+    @Override
+    protected boolean[][] getData() {
+        boolean[][] r = new boolean[chunkNRows][];
+        for (int row = 0; row < chunkNRows; row++) {
+            r[row] = Arrays.copyOfRange(values, row * chunkNCols,
+                    (row + 1) * chunkNCols);
+        }
+        return r;
+    }
+
+    /**
+     * @return {@link #values}
+     */
+    protected boolean[] getValues() {
+        return values;
+    }
+
+    /**
+     * Copies the values in chunk cell row {@code row} into {@code dst}.
+     *
+     * @param row The chunk cell row.
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} of the first value copied.
+     */
+    public void getRow(int row, boolean[] dst, int off) {
+        System.arraycopy(values, row * chunkNCols, dst, off, chunkNCols);
+    }
+
+    /**
+     * Sets the values in chunk cell row {@code row} from {@code src}.
+     *
+     * @param row The chunk cell row.
+     * @param src The array to copy from.
+     * @param off The index in {@code src} of the first value copied.
+     */
+    public void setRow(int row, boolean[] src, int off) {
+        System.arraycopy(src, off, values, row * chunkNCols, chunkNCols);
+        setCacheUpToDate(false);
+    }
+
+    /**
+     * Copies all the values in row major order into {@code dst}.
+     *
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} of the first value copied.
+     */
+    public void copyTo(boolean[] dst, int off) {
+        System.arraycopy(values, 0, dst, off, chunkNRows * chunkNCols);
+    }
+
+    /**
+     * @return All the values in row major order as a boolean[].
+     */
+    @Override
+    public boolean[] toArrayIncludingNoDataValues() {
+        return Arrays.copyOf(values, chunkNRows * chunkNCols);
+    }
+
+    /**
+     * @return The number of cells with true values.
+     */
+    @Override
+    public Long getN() {
+        long n = 0;
+        int nc = chunkNRows * chunkNCols;
+        for (int k = 0; k < nc; k++) {
+            if (values[k]) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
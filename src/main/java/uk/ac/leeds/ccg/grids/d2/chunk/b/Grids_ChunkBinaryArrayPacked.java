@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b;
+
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+
+/**
+ * Stores the data as bits packed into a {@code long[]} in row major order, so
+ * a value takes one bit rather than the byte it takes in a
+ * {@link Grids_ChunkBinaryArray}. The value of chunk cell row {@code row},
+ * chunk cell column {@code col} is bit {@code k % 64} of word {@code k / 64}
+ * where {@code k = row * chunkNCols + col}. Bits beyond the last cell are
+ * always zero.
+ *
+ * Whole words are operated on in {@link #getN()}, {@link #fill(boolean)},
+ * {@link #and(Grids_ChunkBinaryArrayPacked)},
+ * {@link #or(Grids_ChunkBinaryArrayPacked)},
+ * {@link #xor(Grids_ChunkBinaryArrayPacked)} and {@link #not()}.
+ *
+ * This extends {@link Grids_ChunkBinaryArray} so that it can be used wherever
+ * that is, but {@link #data} is not used and is {@code null}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkBinaryArrayPacked extends Grids_ChunkBinaryArray {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * For storing the values as bits.
+     */
+    protected long[] words;
+
+    /**
+     * Create a new instance with all values {@code false}.
+     *
+     * @param g The grid.
+     * @param i The ID.
+     */
+    public Grids_ChunkBinaryArrayPacked(Grids_GridBinary g, Grids_2D_ID_int i) {
+        super(g, i);
+    }
+
+    /**
+     * @param c The chunk that's values will be duplicated.
+     * @param i The chunkID.
+     */
+    protected Grids_ChunkBinaryArrayPacked(Grids_ChunkBinary c,
+            Grids_2D_ID_int i) {
+        super(c.getGrid(), i);
+        if (c instanceof Grids_ChunkBinaryArrayPacked
+                && c.getChunkNRows() == chunkNRows
+                && c.getChunkNCols() == chunkNCols) {
+            long[] w = ((Grids_ChunkBinaryArrayPacked) c).words;
+            System.arraycopy(w, 0, words, 0, words.length);
+        } else {
+            int k = 0;
+            for (int row = 0; row < chunkNRows; row++) {
+                for (int col = 0; col < chunkNCols; col++) {
+                    if (c.getCell(row, col)) {
+                        words[k >>> 6] |= 1L << k;
+                    }
+                    k++;
+                }
+            }
+        }
+        cacheUpToDate = false;
+    }
+
+    /**
+     * Initialise {@link #words}.
+     */
+    @Override
+    protected final void initData() {
+        Grids_GridBinary g = getGrid();
+        words = new long[getNWords(g.getChunkNRows(id) * g.getChunkNCols(id))];
+    }
+
+    /**
+     * @param n The number of bits.
+     * @return The number of words needed to store {@code n} bits.
+     */
+    public static int getNWords(int n) {
+        return (n + Long.SIZE - 1) >>> 6;
+    }
+
+    /**
+     * @return A mask for the bits of the last word that are for cells.
+     */
+    private long getLastWordMask() {
+        int r = (chunkNRows * chunkNCols) & (Long.SIZE - 1);
+        return r == 0 ? -1L : (1L << r) - 1L;
+    }
+
+    /**
+     * Returns the value at {@code row}, {@code col}.
+     *
+     * @param row The row of the cell w.r.t. the origin of this chunk.
+     * @param col The column of the cell w.r.t. the origin of this chunk.
+     * @return The value at {@code row}, {@code col}.
+     */
+    @Override
+    public boolean getCell(int row, int col) {
+        int k = row * chunkNCols + col;
+        return (words[k >>> 6] & (1L << k)) != 0L;
+    }
+
+    /**
+     * Returns the value at {@code row}, {@code col} and sets it to value
+     * {@code v}.
+     *
+     * @param row The chunk cell row index.
+     * @param col The chunk cell column index.
+     * @param v The value the cell is to be set to.
+     * @return The value at {@code row}, {@code col} before it is set to
+     * {@code v}.
+     */
+    @Override
+    public boolean setCell(int row, int col, boolean v) {
+        int k = row * chunkNCols + col;
+        long w = words[k >>> 6];
+        long b = 1L << k;
+        boolean v0 = (w & b) != 0L;
+        if (v != v0) {
+            words[k >>> 6] = w ^ b;
+            if (isCacheUpToDate()) {
+                setCacheUpToDate(false);
+            }
+        }
+        return v0;
+    }
+
+    /**
+     * Initialises the value at {@code row}, {@code col} to {@code v}.
+     *
+     * @param row The row of the cell w.r.t. the origin of this chunk.
+     * @param col The column of the cell w.r.t. the origin of this chunk.
+     * @param v The value to initialise.
+     */
+    @Override
+    public void initCell(int row, int col, boolean v) {
+        int k = row * chunkNCols + col;
+        if (v) {
+            words[k >>> 6] |= 1L << k;
+        } else {
+            words[k >>> 6] &= ~(1L << k);
+        }
+    }
+
+    /**
+     * For clearing the data associated with this.
+     */
+    @Override
+    protected void clearData() {
+        words = null;
+    }
+
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #words}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (words == null ? 0L : Grids_ChunkOptimizer.getArraySize(words.length, Long.BYTES));
+    }
+
+    /**
+     * @return A copy of the values arranged in rows and columns.
+     */
+    @Override
+    protected boolean[][] getData() {
+        boolean[][] r = new boolean[chunkNRows][chunkNCols];
+        for (int row = 0; row < chunkNRows; row++) {
+            for (int col = 0; col < chunkNCols; col++) {
+                r[row][col] = getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @return {@link #words}
+     */
+    protected long[] getWords() {
+        return words;
+    }
+
+    /**
+     * @return The number of cells with true values.
+     */
+    @Override
+    public Long getN() {
+        long n = 0;
+        for (long w : words) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+
+    /**
+     * Sets all values to {@code v}.
+     *
+     * @param v The value.
+     */
+    public void fill(boolean v) {
+        if (v) {
+            Arrays.fill(words, -1L);
+            words[words.length - 1] &= getLastWordMask();
+        } else {
+            Arrays.fill(words, 0L);
+        }
+        setCacheUpToDate(false);
+    }
+
+    /**
+     * Sets each value to the logical and of it and the coincident value in
+     * {@code c}.
+     *
+     * @param c A chunk with the same number of rows and columns as this.
+     */
+    public void and(Grids_ChunkBinaryArrayPacked c) {
+        long[] w = c.words;
+        for (int k = 0; k < words.length; k++) {
+            words[k] &= w[k];
+        }
+        setCacheUpToDate(false);
+    }
+
+    /**
+     * Sets each value to the logical or of it and the coincident value in
+     * {@code c}.
+     *
+     * @param c A chunk with the same number of rows and columns as this.
+     */
+    public void or(Grids_ChunkBinaryArrayPacked c) {
+        long[] w = c.words;
+        for (int k = 0; k < words.length; k++) {
+            words[k] |= w[k];
+        }
+        setCacheUpToDate(false);
+    }
+
+    /**
+     * Sets each value to the logical exclusive or of it and the coincident
+     * value in {@code c}.
+     *
+     * @param c A chunk with the same number of rows and columns as this.
+     */
+    public void xor(Grids_ChunkBinaryArrayPacked c) {
+        long[] w = c.words;
+        for (int k = 0; k < words.length; k++) {
+            words[k] ^= w[k];
+        }
+        setCacheUpToDate(false);
+    }
+
+    /**
+     * Sets each value to its logical negation.
+     */
+    public void not() {
+        for (int k = 0; k < words.length; k++) {
+            words[k] = ~words[k];
+        }
+        words[words.length - 1] &= getLastWordMask();
+        setCacheUpToDate(false);
+    }
+}
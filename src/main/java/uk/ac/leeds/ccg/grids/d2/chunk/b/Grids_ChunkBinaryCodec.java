@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+
+/**
+ * A codec for {@link Grids_ChunkBinaryArray},
+ * {@link Grids_ChunkBinaryArrayFlat}, {@link Grids_ChunkBinaryArrayPacked} and
+ * {@link Grids_ChunkBinarySinglet} instances. The payload starts with a byte
+ * indicating the type of chunk. For an array, flat array or packed array
+ * chunk this is followed by the values in row major order packed into longs
+ * with 64 values in each. For a singlet chunk this is followed by a byte that
+ * is {@code 1} for {@code true} and {@code 0} for {@code false}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkBinaryCodec extends Grids_ChunkCodec {
+
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 3;
+
+    /**
+     * The codec instance.
+     */
+    public static final Grids_ChunkBinaryCodec INSTANCE
+            = new Grids_ChunkBinaryCodec();
+
+    /**
+     * Indicates an array chunk.
+     */
+    protected static final byte ARRAY = 0;
+
+    /**
+     * Indicates a singlet chunk.
+     */
+    protected static final byte SINGLET = 2;
+
+    /**
+     * Indicates a flat array chunk.
+     */
+    protected static final byte ARRAY_FLAT = 3;
+
+    /**
+     * Indicates a packed array chunk.
+     */
+    protected static final byte ARRAY_PACKED = 4;
+
+    /**
+     * Create a new instance.
+     */
+    protected Grids_ChunkBinaryCodec() {
+        super(ID);
+    }
+
+    @Override
+    public Class<?>[] getChunkClasses() {
+        return new Class<?>[]{
+                Grids_ChunkBinaryArray.class,
+                Grids_ChunkBinaryArrayFlat.class,
+                Grids_ChunkBinaryArrayPacked.class,
+                Grids_ChunkBinarySinglet.class};
+    }
+
+    @Override
+    public int getPayloadSize(Grids_Chunk c) {
+        if (c instanceof Grids_ChunkBinarySinglet) {
+            return 2;
+        }
+        return 1 + getNWords(c.getChunkNRows() * c.getChunkNCols())
+                * Long.BYTES;
+    }
+
+    @Override
+    public int getArraySize(int nrows, int ncols) {
+        return HEADER_SIZE + 1 + getNWords(nrows * ncols) * Long.BYTES;
+    }
+
+    @Override
+    public void encode(Grids_Chunk c, ByteBuffer b) {
+        if (c instanceof Grids_ChunkBinarySinglet) {
+            b.put(SINGLET);
+            b.put(((Grids_ChunkBinarySinglet) c).v ? (byte) 1 : (byte) 0);
+            return;
+        }
+        if (c instanceof Grids_ChunkBinaryArrayPacked) {
+            b.put(ARRAY_PACKED);
+            putWords(b, ((Grids_ChunkBinaryArrayPacked) c).words);
+            return;
+        }
+        if (c instanceof Grids_ChunkBinaryArrayFlat) {
+            b.put(ARRAY_FLAT);
+            putBits(b, ((Grids_ChunkBinaryArrayFlat) c).values,
+                    c.getChunkNRows() * c.getChunkNCols());
+            return;
+        }
+        b.put(ARRAY);
+        boolean[][] data = ((Grids_ChunkBinaryArray) c).data;
+        putBits(b, data, c.getChunkNRows(), c.getChunkNCols());
+    }
+
+    @Override
+    public Grids_ChunkBinary decode(Grids_Grid g, Grids_2D_ID_int i,
+            ByteBuffer b) throws IOException {
+        Grids_GridBinary gb = (Grids_GridBinary) g;
+        byte type = b.get();
+        switch (type) {
+            case SINGLET:
+                return new Grids_ChunkBinarySinglet(gb, i, b.get() == 1);
+            case ARRAY:
+                Grids_ChunkBinaryArray r = new Grids_ChunkBinaryArray(gb, i);
+                getBits(b, r.data, g.getChunkNRows(i), g.getChunkNCols(i));
+                return r;
+            case ARRAY_FLAT:
+                Grids_ChunkBinaryArrayFlat f
+                        = new Grids_ChunkBinaryArrayFlat(gb, i);
+                getBits(b, f.values, g.getChunkNRows(i) * g.getChunkNCols(i));
+                return f;
+            case ARRAY_PACKED:
+                Grids_ChunkBinaryArrayPacked p
+                        = new Grids_ChunkBinaryArrayPacked(gb, i);
+                getWords(b, p.words);
+                return p;
+            default:
+                throw new IOException("Unrecognised binary chunk type " + type);
+        }
+    }
+
+    /**
+     * @param n The number of bits.
+     * @return The number of longs needed to store {@code n} bits.
+     */
+    protected static int getNWords(int n) {
+        return (n + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Puts all of {@code words} into {@code b}.
+     *
+     * @param b The buffer.
+     * @param words The words.
+     */
+    protected static void putWords(ByteBuffer b, long[] words) {
+        b.asLongBuffer().put(words);
+        b.position(b.position() + words.length * Long.BYTES);
+    }
+
+    /**
+     * Gets {@code words.length} longs from {@code b} into {@code words}.
+     *
+     * @param b The buffer.
+     * @param words The words.
+     */
+    protected static void getWords(ByteBuffer b, long[] words) {
+        b.asLongBuffer().get(words);
+        b.position(b.position() + words.length * Long.BYTES);
+    }
+
+    /**
+     * Packs {@code data} in row major order into longs and puts these into
+     * {@code b}.
+     *
+     * @param b The buffer.
+     * @param data The values.
+     * @param nrows The number of rows in {@code data}.
+     * @param ncols The number of columns in {@code data}.
+     */
+    protected static void putBits(ByteBuffer b, boolean[][] data, int nrows,
+            int ncols) {
+        long w = 0L;
+        int k = 0;
+        for (int row = 0; row < nrows; row++) {
+            boolean[] r = data[row];
+            for (int col = 0; col < ncols; col++) {
+                if (r[col]) {
+                    w |= 1L << k;
+                }
+                k++;
+                if (k == Long.SIZE) {
+                    b.putLong(w);
+                    w = 0L;
+                    k = 0;
+                }
+            }
+        }
+        if (k > 0) {
+            b.putLong(w);
+        }
+    }
+
+    /**
+     * Packs the first {@code n} values of {@code values} into longs and puts
+     * these into {@code b}.
+     *
+     * @param b The buffer.
+     * @param values The values.
+     * @param n The number of values.
+     */
+    protected static void putBits(ByteBuffer b, boolean[] values, int n) {
+        long w = 0L;
+        int k = 0;
+        for (int x = 0; x < n; x++) {
+            if (values[x]) {
+                w |= 1L << k;
+            }
+            k++;
+            if (k == Long.SIZE) {
+                b.putLong(w);
+                w = 0L;
+                k = 0;
+            }
+        }
+        if (k > 0) {
+            b.putLong(w);
+        }
+    }
+
+    /**
+     * Gets longs from {@code b} and unpacks these in row major order into
+     * {@code data}.
+     *
+     * @param b The buffer.
+     * @param data The values.
+     * @param nrows The number of rows in {@code data}.
+     * @param ncols The number of columns in {@code data}.
+     */
+    protected static void getBits(ByteBuffer b, boolean[][] data, int nrows,
+            int ncols) {
+        long w = 0L;
+        int k = Long.SIZE;
+        for (int row = 0; row < nrows; row++) {
+            boolean[] r = data[row];
+            for (int col = 0; col < ncols; col++) {
+                if (k == Long.SIZE) {
+                    w = b.getLong();
+                    k = 0;
+                }
+                r[col] = (w & (1L << k)) != 0L;
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Gets longs from {@code b} and unpacks these into the first {@code n}
+     * values of {@code values}.
+     *
+     * @param b The buffer.
+     * @param values The values.
+     * @param n The number of values.
+     */
+    protected static void getBits(ByteBuffer b, boolean[] values, int n) {
+        long w = 0L;
+        int k = Long.SIZE;
+        for (int x = 0; x < n; x++) {
+            if (k == Long.SIZE) {
+                w = b.getLong();
+                k = 0;
+            }
+            values[x] = (w & (1L << k)) != 0L;
+            k++;
+        }
+    }
+}
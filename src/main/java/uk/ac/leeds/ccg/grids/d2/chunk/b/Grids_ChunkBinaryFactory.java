@@ -35,6 +35,14 @@ public abstract class Grids_ChunkBinaryFactory extends Grids_ChunkFactory {
     public Grids_ChunkBinaryFactory() {
     }
 
+    /**
+     * @return {@link Grids_ChunkBinaryCodec#INSTANCE}
+     */
+    @Override
+    public Grids_ChunkBinaryCodec getCodec() {
+        return Grids_ChunkBinaryCodec.INSTANCE;
+    }
+
     /**
      * For creating a grid chunk from another.
      * @param grid The grid to be created from.
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b;
+
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+
+/**
+ * A factory for constructing {@link Grids_ChunkBinaryArrayFlat} instances.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkBinaryFactoryArrayFlat extends Grids_ChunkBinaryFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a new instance.
+     */
+    public Grids_ChunkBinaryFactoryArrayFlat() {
+    }
+
+    @Override
+    public Grids_ChunkBinaryArrayFlat create(Grids_GridBinary g, Grids_2D_ID_int i) {
+        return new Grids_ChunkBinaryArrayFlat(g, i);
+    }
+
+    @Override
+    public Grids_ChunkBinaryArrayFlat create(Grids_ChunkBinary chunk, Grids_2D_ID_int i) {
+        return new Grids_ChunkBinaryArrayFlat(chunk, i);
+    }
+
+}
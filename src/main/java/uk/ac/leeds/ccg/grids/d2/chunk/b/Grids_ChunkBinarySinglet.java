@@ -61,6 +61,14 @@ public class Grids_ChunkBinarySinglet extends Grids_ChunkBinary {
     protected void clearData() {
     }
 
+    /**
+     * @return {@link #OBJECT} as the value is held in a field.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT;
+    }
+
     /**
      * Beware OutOfMemoryErrors being thrown if calling this method.
      *
@@ -15,7 +15,7 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.b;
 
-import java.util.Arrays;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import java.util.Objects;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBoolean;
@@ -49,10 +49,7 @@ public class Grids_ChunkBooleanArray extends Grids_ChunkBooleanArrayOrMap {
      */
     public Grids_ChunkBooleanArray(Grids_GridBoolean g, Grids_2D_ID_int i) {
         super(g, i);
-        data = new Boolean[chunkNRows][chunkNCols];
-        for (int row = 0; row < chunkNRows; row++) {
-            Arrays.fill(data[row], null);
-        }
+        initData();
         cacheUpToDate = false;
     }
 
@@ -71,8 +68,13 @@ public class Grids_ChunkBooleanArray extends Grids_ChunkBooleanArrayOrMap {
         cacheUpToDate = false;
     }
     
+    /**
+     * Initialise {@link #data} with all values {@code null}. This is called
+     * from the constructors and is overridden in
+     * {@link Grids_ChunkBooleanArrayPacked}.
+     */
     @Override
-    protected final void initData() {
+    protected void initData() {
         Grids_GridBoolean g = getGrid();
         int chunkNrows = g.getChunkNRows(id);
         int chunkNcols = g.getChunkNCols(id);
@@ -133,6 +135,16 @@ public class Grids_ChunkBooleanArray extends Grids_ChunkBooleanArrayOrMap {
         data = null;
     }
 
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #data} (the Boolean values are shared so are not counted).
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : Grids_ChunkOptimizer.getArraySize(chunkNRows, chunkNCols,
+                Grids_ChunkOptimizer.REFERENCE));
+    }
+
     /**
      * @return {@link #data} 
      */
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b;
+
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import java.util.Arrays;
+import java.util.Objects;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBoolean;
+
+/**
+ * Stores the data as two sets of bits packed into {@code long[]}s in row
+ * major order: {@link #notNull} has a bit set for each cell with a value that
+ * is not {@code null}; {@link #isTrue} has a bit set for each cell with a
+ * value that is {@code true}. The bits for cell {@code k = row * chunkNCols +
+ * col} are bit {@code k % 64} of word {@code k / 64}. Bits beyond the last
+ * cell are always zero, and a bit is only set in {@link #isTrue} if it is set
+ * in {@link #notNull}.
+ *
+ * This extends {@link Grids_ChunkBooleanArray} so that it can be used
+ * wherever that is, but {@link #data} is not used and is {@code null}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkBooleanArrayPacked extends Grids_ChunkBooleanArray {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * For storing which values are not {@code null} as bits.
+     */
+    protected long[] notNull;
+
+    /**
+     * For storing which values are {@code true} as bits.
+     */
+    protected long[] isTrue;
+
+    /**
+     * Create a new instance with all values {@code null}.
+     *
+     * @param g The grid.
+     * @param i The ID.
+     */
+    public Grids_ChunkBooleanArrayPacked(Grids_GridBoolean g,
+            Grids_2D_ID_int i) {
+        super(g, i);
+    }
+
+    /**
+     * @param c The chunk that's values will be duplicated.
+     * @param i The chunkID.
+     */
+    protected Grids_ChunkBooleanArrayPacked(Grids_ChunkBoolean c,
+            Grids_2D_ID_int i) {
+        super(c.getGrid(), i);
+        for (int row = 0; row < chunkNRows; row++) {
+            for (int col = 0; col < chunkNCols; col++) {
+                initCell(row, col, c.getCell(row, col));
+            }
+        }
+        cacheUpToDate = false;
+    }
+
+    /**
+     * Initialise {@link #notNull} and {@link #isTrue}.
+     */
+    @Override
+    protected final void initData() {
+        Grids_GridBoolean g = getGrid();
+        int n = Grids_ChunkBinaryArrayPacked.getNWords(g.getChunkNRows(id)
+                * g.getChunkNCols(id));
+        notNull = new long[n];
+        isTrue = new long[n];
+    }
+
+    /**
+     * Returns the value at {@code row}, {@code col}.
+     *
+     * @param row The row of the cell w.r.t. the origin of this chunk.
+     * @param col The column of the cell w.r.t. the origin of this chunk.
+     * @return The value at {@code row}, {@code col}.
+     */
+    @Override
+    public Boolean getCell(int row, int col) {
+        int k = row * chunkNCols + col;
+        long b = 1L << k;
+        if ((notNull[k >>> 6] & b) == 0L) {
+            return null;
+        }
+        return (isTrue[k >>> 6] & b) != 0L;
+    }
+
+    /**
+     * Returns the value at {@code row}, {@code col} and sets it to value
+     * {@code v}.
+     *
+     * @param row The chunk cell row index.
+     * @param col The chunk cell column index.
+     * @param v The value the cell is to be set to.
+     * @return The value at {@code row}, {@code col} before it is set to
+     * {@code v}.
+     */
+    @Override
+    public Boolean setCell(int row, int col, Boolean v) {
+        Boolean v0 = getCell(row, col);
+        if (!Objects.equals(v, v0)) {
+            initCell(row, col, v);
+            if (isCacheUpToDate()) {
+                setCacheUpToDate(false);
+            }
+        }
+        return v0;
+    }
+
+    /**
+     * Initialises the value at {@code row}, {@code col} to {@code v}.
+     *
+     * @param row The row of the cell w.r.t. the origin of this chunk.
+     * @param col The column of the cell w.r.t. the origin of this chunk.
+     * @param v The value to initialise.
+     */
+    @Override
+    public void initCell(int row, int col, Boolean v) {
+        int k = row * chunkNCols + col;
+        int w = k >>> 6;
+        long b = 1L << k;
+        if (v == null) {
+            notNull[w] &= ~b;
+            isTrue[w] &= ~b;
+        } else {
+            notNull[w] |= b;
+            if (v) {
+                isTrue[w] |= b;
+            } else {
+                isTrue[w] &= ~b;
+            }
+        }
+    }
+
+    /**
+     * For clearing the data associated with this.
+     */
+    @Override
+    protected void clearData() {
+        notNull = null;
+        isTrue = null;
+    }
+
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #notNull} and {@link #isTrue}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (notNull == null ? 0L : Grids_ChunkOptimizer.getArraySize(notNull.length,
+                Long.BYTES) + Grids_ChunkOptimizer.getArraySize(isTrue.length, Long.BYTES));
+    }
+
+    /**
+     * @return A copy of the values arranged in rows and columns.
+     */
+    @Override
+    protected Boolean[][] getData() {
+        Boolean[][] r = new Boolean[chunkNRows][chunkNCols];
+        for (int row = 0; row < chunkNRows; row++) {
+            for (int col = 0; col < chunkNCols; col++) {
+                r[row][col] = getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @return {@link #notNull}
+     */
+    protected long[] getNotNull() {
+        return notNull;
+    }
+
+    /**
+     * @return {@link #isTrue}
+     */
+    protected long[] getIsTrue() {
+        return isTrue;
+    }
+
+    /**
+     * @return The number of cells with values that are not {@code null}.
+     */
+    @Override
+    public Long getN() {
+        long n = 0;
+        for (long w : notNull) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+
+    /**
+     * Sets all values to {@code v}.
+     *
+     * @param v The value.
+     */
+    public void fill(Boolean v) {
+        if (v == null) {
+            Arrays.fill(notNull, 0L);
+            Arrays.fill(isTrue, 0L);
+        } else {
+            int r = (chunkNRows * chunkNCols) & (Long.SIZE - 1);
+            long mask = r == 0 ? -1L : (1L << r) - 1L;
+            Arrays.fill(notNull, -1L);
+            notNull[notNull.length - 1] &= mask;
+            if (v) {
+                System.arraycopy(notNull, 0, isTrue, 0, notNull.length);
+            } else {
+                Arrays.fill(isTrue, 0L);
+            }
+        }
+        setCacheUpToDate(false);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBoolean;
+
+/**
+ * A codec for {@link Grids_ChunkBooleanArray},
+ * {@link Grids_ChunkBooleanArrayPacked} and {@link Grids_ChunkBooleanSinglet}
+ * instances. The payload starts with a byte indicating the type of chunk. For
+ * an array or packed array chunk this is followed by two sets of longs with 64
+ * values in each long packed in row major order: the first indicates which
+ * values are not {@code null}; the second indicates which values are
+ * {@code true}. For a singlet chunk this is followed by a
+ * byte that is {@code 1} for {@code true}, {@code 0} for {@code false} and
+ * {@code -1} for {@code null}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkBooleanCodec extends Grids_ChunkCodec {
+
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 4;
+
+    /**
+     * The codec instance.
+     */
+    public static final Grids_ChunkBooleanCodec INSTANCE
+            = new Grids_ChunkBooleanCodec();
+
+    /**
+     * Indicates an array chunk.
+     */
+    protected static final byte ARRAY = 0;
+
+    /**
+     * Indicates a singlet chunk.
+     */
+    protected static final byte SINGLET = 2;
+
+    /**
+     * Indicates a packed array chunk.
+     */
+    protected static final byte ARRAY_PACKED = 4;
+
+    /**
+     * Create a new instance.
+     */
+    protected Grids_ChunkBooleanCodec() {
+        super(ID);
+    }
+
+    @Override
+    public Class<?>[] getChunkClasses() {
+        return new Class<?>[]{
+                Grids_ChunkBooleanArray.class,
+                Grids_ChunkBooleanArrayPacked.class,
+                Grids_ChunkBooleanSinglet.class};
+    }
+
+    @Override
+    public int getPayloadSize(Grids_Chunk c) {
+        if (c instanceof Grids_ChunkBooleanSinglet) {
+            return 2;
+        }
+        return 1 + 2 * Grids_ChunkBinaryCodec.getNWords(c.getChunkNRows()
+                * c.getChunkNCols()) * Long.BYTES;
+    }
+
+    @Override
+    public int getArraySize(int nrows, int ncols) {
+        return HEADER_SIZE + 1 + 2 * Grids_ChunkBinaryCodec.getNWords(nrows
+                * ncols) * Long.BYTES;
+    }
+
+    @Override
+    public void encode(Grids_Chunk c, ByteBuffer b) {
+        if (c instanceof Grids_ChunkBooleanSinglet) {
+            b.put(SINGLET);
+            Boolean v = ((Grids_ChunkBooleanSinglet) c).v;
+            b.put(v == null ? (byte) -1 : v ? (byte) 1 : (byte) 0);
+            return;
+        }
+        if (c instanceof Grids_ChunkBooleanArrayPacked) {
+            Grids_ChunkBooleanArrayPacked p = (Grids_ChunkBooleanArrayPacked) c;
+            b.put(ARRAY_PACKED);
+            Grids_ChunkBinaryCodec.putWords(b, p.notNull);
+            Grids_ChunkBinaryCodec.putWords(b, p.isTrue);
+            return;
+        }
+        b.put(ARRAY);
+        Boolean[][] data = ((Grids_ChunkBooleanArray) c).data;
+        int nrows = c.getChunkNRows();
+        int ncols = c.getChunkNCols();
+        boolean[][] notNull = new boolean[nrows][ncols];
+        boolean[][] isTrue = new boolean[nrows][ncols];
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                Boolean v = data[row][col];
+                if (v != null) {
+                    notNull[row][col] = true;
+                    isTrue[row][col] = v;
+                }
+            }
+        }
+        Grids_ChunkBinaryCodec.putBits(b, notNull, nrows, ncols);
+        Grids_ChunkBinaryCodec.putBits(b, isTrue, nrows, ncols);
+    }
+
+    @Override
+    public Grids_ChunkBoolean decode(Grids_Grid g, Grids_2D_ID_int i,
+            ByteBuffer b) throws IOException {
+        Grids_GridBoolean gb = (Grids_GridBoolean) g;
+        byte type = b.get();
+        switch (type) {
+            case SINGLET:
+                byte v = b.get();
+                return new Grids_ChunkBooleanSinglet(gb, i,
+                        v == -1 ? null : v == 1);
+            case ARRAY:
+                int nrows = g.getChunkNRows(i);
+                int ncols = g.getChunkNCols(i);
+                boolean[][] notNull = new boolean[nrows][ncols];
+                boolean[][] isTrue = new boolean[nrows][ncols];
+                Grids_ChunkBinaryCodec.getBits(b, notNull, nrows, ncols);
+                Grids_ChunkBinaryCodec.getBits(b, isTrue, nrows, ncols);
+                Grids_ChunkBooleanArray r = new Grids_ChunkBooleanArray(gb, i);
+                for (int row = 0; row < nrows; row++) {
+                    for (int col = 0; col < ncols; col++) {
+                        if (notNull[row][col]) {
+                            r.data[row][col] = isTrue[row][col];
+                        }
+                    }
+                }
+                return r;
+            case ARRAY_PACKED:
+                Grids_ChunkBooleanArrayPacked p
+                        = new Grids_ChunkBooleanArrayPacked(gb, i);
+                Grids_ChunkBinaryCodec.getWords(b, p.notNull);
+                Grids_ChunkBinaryCodec.getWords(b, p.isTrue);
+                return p;
+            default:
+                throw new IOException("Unrecognised boolean chunk type "
+                        + type);
+        }
+    }
+}
@@ -35,6 +35,14 @@ public abstract class Grids_ChunkBooleanFactory extends Grids_ChunkFactory {
     public Grids_ChunkBooleanFactory() {
     }
 
+    /**
+     * @return {@link Grids_ChunkBooleanCodec#INSTANCE}
+     */
+    @Override
+    public Grids_ChunkBooleanCodec getCodec() {
+        return Grids_ChunkBooleanCodec.INSTANCE;
+    }
+
     /**
      * Create a new instance.
      * 
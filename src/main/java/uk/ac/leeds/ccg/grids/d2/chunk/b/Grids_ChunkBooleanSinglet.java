@@ -62,6 +62,14 @@ public class Grids_ChunkBooleanSinglet extends Grids_ChunkBoolean {
     protected void clearData() {
     }
 
+    /**
+     * @return {@link #OBJECT} as the value is held in a field.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT;
+    }
+
     /**
      * Beware OutOfMemoryErrors being thrown if calling this method.
      *
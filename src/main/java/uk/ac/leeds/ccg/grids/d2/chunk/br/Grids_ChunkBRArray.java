@@ -15,6 +15,7 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.br;
 
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import ch.obermuhlner.math.big.BigRational;
 import java.math.BigDecimal;
 import uk.ac.leeds.ccg.grids.d2.grid.br.Grids_GridBR;
@@ -93,6 +94,16 @@ public class Grids_ChunkBRArray extends Grids_ChunkBRArrayOrMap {
         //System.gc();
     }
 
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #data} (the BigRational values are not counted).
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : Grids_ChunkOptimizer.getArraySize(chunkNRows, chunkNCols,
+                Grids_ChunkOptimizer.REFERENCE));
+    }
+
     /**
      * @param row The row index of the cell w.r.t. the origin of this chunk.
      * @param col The column index of the cell w.r.t. the origin of this chunk.
@@ -16,104 +16,44 @@
 package uk.ac.leeds.ccg.grids.d2.chunk.br;
 
 import ch.obermuhlner.math.big.BigRational;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
-import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkNumberMapASpatialIterator;
-import uk.ac.leeds.ccg.grids.d2.chunk.Grids_OffsetBitSet;
 
 /**
  * For iterating through the values in a Grids_GridChunkBRMap instance. The
- * values are not returned in any particular spatial order.
-*
+ * values are not returned in any particular spatial order, they are returned
+ * in ascending order. No data values are not returned.
+ *
  * @author Andy Turner
  * @version 1.0.0
  */
-public class Grids_ChunkBRIteratorMapASpatial 
+public class Grids_ChunkBRIteratorMapASpatial
         extends Grids_ChunkNumberMapASpatialIterator {
 
     private static final long serialVersionUID = 1L;
 
     /**
-     * For storing the number of Default values.
-     */
-    protected int numberOfDefaultValues;
-
-    /**
-     * For storing the number of NoDataValues.
+     * The different values in ascending order.
      */
-    protected int numberOfNoDataValues;
+    protected BigRational[] values;
 
     /**
-     * For storing the default value.
-     */
-    protected BigRational defaultValue;
-    
-    /**
-     * The data.
-     */
-    protected Grids_ChunkBRMap.GridChunkBRMapData data;
-    
-    /**
-     * The dataMapBitSet.
-     */
-    protected TreeMap<BigRational, Grids_OffsetBitSet> dataMapBitSet;
-    
-    /**
-     * The dataMapBitSetIte.
-     */
-    protected Iterator<BigRational> dataMapBitSetIte;
-    
-    /**
-     * The dataMapBitSetValue.
-     */
-    protected BigRational dataMapBitSetValue;
-    
-    /**
-     * The dataMapHashSet.
+     * The number of cells with each value in {@link #values}.
      */
-    protected TreeMap<BigRational, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-    
-    /**
-     * The dataMapHashSetIte.
-     */
-    protected Iterator<BigRational> dataMapHashSetIte;
-    
-    /**
-     * The dataMapHashSetValue.
-     */
-    protected BigRational dataMapHashSetValue;
+    protected int[] counts;
 
     /**
      * Create a new instance.
-     * @param chunk The chunk.
+     *
+     * @param chunk Chunk
      */
     public Grids_ChunkBRIteratorMapASpatial(
             Grids_ChunkBRMap chunk) {
         super(chunk);
-        data = chunk.getData();
-        dataMapBitSet = data.DataMapBitSet;
-        dataMapHashSet = data.DataMapHashSet;
-        dataMapBitSetNumberOfValues = 0;
-        dataMapBitSetIte = dataMapBitSet.keySet().iterator();
-        if (dataMapBitSetIte.hasNext()) {
-            hasNext = true;
-            dataMapBitSetValue = dataMapBitSetIte.next();
-            dataMapBitSetNumberOfValues += dataMapBitSet.get(dataMapBitSetValue).bitSet.cardinality();
-        }
-        numberOfNoDataValues -= dataMapBitSetNumberOfValues;
-        dataMapBitSetIte = dataMapBitSet.keySet().iterator();
-        dataMapHashSetNumberOfValues = 0;
-        dataMapHashSetIte = dataMapHashSet.keySet().iterator();
-        if (dataMapHashSetIte.hasNext()) {
-            hasNext = true;
-            dataMapHashSetValue = dataMapHashSetIte.next();
-            dataMapHashSetNumberOfValues += dataMapHashSet.get(dataMapHashSetValue).size();
-        }
-        numberOfNoDataValues -= dataMapHashSetNumberOfValues;
-        dataMapHashSetIte = dataMapHashSet.keySet().iterator();
+        values = new BigRational[chunk.getNValues() + 1];
+        counts = new int[values.length];
+        nValues = chunk.getValuesAndCounts(values, counts);
+        hasNext = nValues > 0;
     }
 
     @Override
@@ -122,48 +62,22 @@ public class Grids_ChunkBRIteratorMapASpatial
     }
 
     /**
-     * Returns the next element in the iteration. First all the default values
-     * are returned then all the values in DataMapBitSet, then all the values in
-     * DataMapHashSet.
+     * Returns the next element in the iteration.
      *
-     * @return the next element in the iteration or null.
+     * @return the next element in the iteration.
      * @exception NoSuchElementException iteration has no more elements.
      */
     public BigRational next() {
-        if (hasNext) {
-            if (defaultValueIndex == numberOfDefaultValues - 1) {
-                if (dataMapBitSetIndex == dataMapBitSetNumberOfValues - 1) {
-                    if (dataMapBitSetIte.hasNext()) {
-                        dataMapBitSetValue = dataMapBitSetIte.next();
-                        dataMapBitSetNumberOfValues = dataMapBitSet.get(dataMapBitSetValue).bitSet.cardinality();
-                        dataMapBitSetIndex = 0;
-                        return dataMapBitSetValue;
-                    } else {
-                        if (dataMapHashSetIndex == dataMapHashSetNumberOfValues - 1) {
-                            if (dataMapHashSetIte.hasNext()) {
-                                dataMapHashSetValue = dataMapHashSetIte.next();
-                                dataMapHashSetNumberOfValues = dataMapHashSet.get(dataMapHashSetValue).size();
-                                dataMapHashSetIndex = 0;
-                                return dataMapHashSetValue;
-                            } else {
-                                hasNext = false;
-                                return null;
-                            }
-                        } else {
-                            dataMapHashSetIndex++;
-                            return dataMapHashSetValue;
-                        }
-                    }
-                } else {
-                    dataMapBitSetIndex++;
-                    return dataMapBitSetValue;
-                }
-            } else {
-                defaultValueIndex++;
-                return defaultValue;
-            }
-        } else {
-            return null;
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        BigRational r = values[valueIndex];
+        valueCountIndex++;
+        if (valueCountIndex == counts[valueIndex]) {
+            valueIndex++;
+            valueCountIndex = 0;
+            hasNext = valueIndex < nValues;
         }
+        return r;
     }
 }
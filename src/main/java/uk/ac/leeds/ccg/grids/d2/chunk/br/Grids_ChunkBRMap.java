@@ -1,5 +1,5 @@
 /*
- * Copyright 2025 Andy Turner, University of Leeds.
+ * Copyright 2019 Andy Turner, University of Leeds.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,47 +15,40 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.br;
 
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import ch.obermuhlner.math.big.BigRational;
 import uk.ac.leeds.ccg.grids.d2.grid.br.Grids_GridBR;
 import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
-import java.math.RoundingMode;
-import uk.ac.leeds.ccg.grids.d2.chunk.Grids_OffsetBitSet;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkMapIndex;
 import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
 
 /**
- * Stores cell values in: a TreeMap with keys as cell values and values as
- * BitSets giving their locations; a TreeMap with keys as cell values and values
- * as a TreeSet&LT;Grids_2D_ID_int&GT; giving the locations of these values.
- * There is a default value for all values that are not in these maps and that
- * are not no data values. The locations of no data values are given in a
- * BitSet. The complexity of this data store allows for some efficiencies in
- * statistical calculations and storage all depending on the distribution and
- * commonalities in the data values. Until all the data is read in and processed
- * it is not known how is the best way to store it for speed and efficiency. If
- * the chunk values are mutable and do not change it is perhaps worth changing
- * into an efficient data storage in terms of what is stored in each map and
- * what the default value is. It may also be worth considering changing to a
- * different chunk altogether. The class might be improved with the use of more
- * efficient and lightweight collections that might be available from third
- * parties.
+ * Stores cell values that are not {@link #defaultValue} in a
+ * {@link Grids_ChunkMapIndex} which maps the position of each such cell
+ * ({@code row * chunkNCols + col}) to a slot in {@link #values}. Each
+ * different value is stored once and the number of cells with each value is
+ * kept in the index. The slots are also kept in ascending order of value in
+ * {@link #order}, so the number of cells with a value, the minimum, maximum,
+ * sum, mode, median and standard deviation are calculated from the different
+ * values and their counts rather than from every cell. No data values are
+ * stored like any other value.
+ *
+ * A cell costs two ints in the index, so this is most efficient if the
+ * default value is the most common value and there are not many cells with
+ * other values. If this is not the case it may be worth changing to a
+ * different chunk altogether.
  *
  * In the past GNU Trove was used as it provided a stable lightweight
  * collections framework that was appropriate for storing primitive maps in this
- * and associated classes. The Eclipse Collections Framework was considered as a
- * replacement for GNU Trove. GNU Trove worked well, but I decided to remove
- * this dependency at a time of rationalising the Grids library in 2017. The
- * rationalisation involved reducing dependencies generally. This
- * rationalisation also removed a dependency on JAI which was used to provide an
- * alternative storage for chunks.
+ * and associated classes. This dependency was removed at a time of
+ * rationalising the Grids library in 2017.
  *
  * @author Andy Turner
- * @version 1.1
+ * @version 1.0.0
  */
 public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
 
@@ -64,38 +57,40 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
     /**
      * A value initialised with grid that can be used to optimise storage.
      * Storage is optimised with the defaultValue set to the most common value.
-     * The location of all DefaultValues can be calculated from the converse of
-     * the intersection of NoData, InDataMapHashSet and InDataMapBitSet.
+     * The cells with the default value are those not in {@link #index}.
      */
     public BigRational defaultValue;
 
     /**
-     * The NoDataValue.
+     * The NoDataValue. This is a copy of getGrid().getNoDataValue() for
+     * convenience.
      */
     public final BigRational ndv;
-    
+
     /**
-     * Identifies the locations of all noDataValues.
+     * For indexing the cells with values that are not {@link #defaultValue}.
      */
-    private BitSet noData;
+    protected Grids_ChunkMapIndex index;
 
     /**
-     * Identifies which cells are stored in DataMapHashSet.
+     * The different values indexed by slot.
      */
-    private BitSet inDataMapHashSet;
+    protected BigRational[] values;
 
     /**
-     * Identifies which cells are stored in DataMapBitSet.
+     * The slots of the different values in ascending order of value. Only the
+     * first {@link #nValues} are used.
      */
-    private BitSet inDataMapBitSet;
+    protected int[] order;
 
     /**
-     * For storing the data of this chunk.
+     * The number of different values in {@link #values} which is the number of
+     * slots in use.
      */
-    private GridChunkBRMapData Data;
+    protected int nValues;
 
     /**
-     * {@link #defaultValue} is set to {@code 0.0d}.
+     * {@link #defaultValue} is set to {@link BigRational#ZERO}.
      *
      * @param g What {@link #grid} is set to.
      * @param i What {@link #id} is set to.
@@ -114,8 +109,8 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
     protected Grids_ChunkBRMap(Grids_GridBR g, Grids_2D_ID_int i, BigRational dv) {
         super(g, i);
         defaultValue = dv;
+        ndv = g.getNoDataValue();
         initData();
-        ndv = BigRational.valueOf(-Double.MAX_VALUE);
         cacheUpToDate = false;
     }
 
@@ -131,6 +126,7 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
             BigRational dv) {
         super(c.getGrid(), i);
         defaultValue = dv;
+        ndv = getGrid().getNoDataValue();
         initData();
         for (int row = 0; row < chunkNRows; row++) {
             for (int col = 0; col < chunkNCols; col++) {
@@ -138,210 +134,78 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
                 initCell(row, col, value);
             }
         }
-        ndv = BigRational.valueOf(-Double.MAX_VALUE);
         cacheUpToDate = false;
     }
 
     /**
-     * Initialises {@link #Data}.
+     * Initialises {@link #index}, {@link #values} and {@link #order}.
      */
     @Override
     protected final void initData() {
-        Data = new GridChunkBRMapData(new TreeMap<>(), new TreeMap<>());
-        noData = new BitSet(chunkNCols * chunkNRows);
-        inDataMapHashSet = new BitSet(chunkNCols * chunkNRows);
-        inDataMapBitSet = new BitSet(chunkNCols * chunkNRows);
+        index = new Grids_ChunkMapIndex();
+        values = new BigRational[index.getSlotsLength()];
+        order = new int[values.length];
+        nValues = 0;
     }
 
     /**
-     * @return {@link #Data}.
+     * Sets {@link #index}, {@link #values} and {@link #order} to {@code null}.
      */
-    protected GridChunkBRMapData getData() {
-        return Data;
+    @Override
+    protected void clearData() {
+        index = null;
+        values = null;
+        order = null;
+        //System.gc();
     }
 
     /**
-     * Sets {@link #Data} to {@code null}.
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #index}, {@link #values} and {@link #order} (the
+     * BigRational values are not counted).
      */
     @Override
-    protected void clearData() {
-        Data = null;
-        //System.gc();
+    public long getSize() {
+        return OBJECT + (index == null ? 0L : index.getSize()
+                + Grids_ChunkOptimizer.getArraySize(values.length, Grids_ChunkOptimizer.REFERENCE)
+                + Grids_ChunkOptimizer.getArraySize(order.length, Integer.BYTES));
     }
 
     /**
-     * @return Values as a double[][] indexed by row and column.
+     * @return Values as a BigRational[][] indexed by row and column.
      */
     BigRational[][] to2DBRArray() {
-        Grids_GridBR g = getGrid();
-        int nrows = g.getChunkNRows(id);
-        int ncols = g.getChunkNCols(id);
-        BigRational[][] r = new BigRational[nrows][ncols];
-        Arrays.fill(r, defaultValue);
-        /**
-         * Mask
-         */
-        int i = 0;
-        for (int row = 0; row < nrows; row++) {
-            for (int col = 0; col < ncols; col++) {
-                if (noData.get(i)) {
-                    r[row][col] = g.ndv;
-                }
-                i++;
-            }
-        }
-        Iterator<BigRational> ite;
-        /**
-         * Populate result with all mappings from data.DataMapBitSet.
-         */
-        TreeMap<BigRational, Grids_OffsetBitSet> dataMapBitSet = Data.DataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        int col = 0;
-        int row = 0;
-        while (ite.hasNext()) {
-            BigRational value = ite.next();
-            Grids_OffsetBitSet offsetBitSet = dataMapBitSet.get(value);
-            BitSet bitSet = offsetBitSet.bitSet;
-            int offset = offsetBitSet.offset;
-            int bitSetLength = bitSet.length();
-            for (i = 0; i < offset; i++) {
-                col++;
-                if (col == ncols - 1) {
-                    row++;
-                    col = 0;
-                }
-            }
-            for (i = offset; i < bitSetLength + offset; i++) {
-                col++;
-                if (col == ncols - 1) {
-                    row++;
-                    col = 0;
-                }
-                if (bitSet.get(i)) {
-                    r[row][col] = value;
-                }
-            }
-        }
-        /**
-         * Populate result with all mappings from data.DataMapHashSet.
-         */
-        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-        dataMapHashSet = Data.DataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational value = ite.next();
-            HashSet<Grids_2D_ID_int> cellIDs = dataMapHashSet.get(value);
-            Iterator<Grids_2D_ID_int> ite2 = cellIDs.iterator();
-            while (ite2.hasNext()) {
-                Grids_2D_ID_int cellID = ite2.next();
-                row = cellID.getRow();
-                col = cellID.getCol();
-                r[row][col] = value;
-            }
+        BigRational[][] r = new BigRational[chunkNRows][chunkNCols];
+        for (BigRational[] row : r) {
+            Arrays.fill(row, defaultValue);
         }
+        index.forEach((p, s) -> r[p / chunkNCols][p % chunkNCols] = values[s]);
         return r;
     }
 
     /**
-     * @return Values in row major order as a double[].
+     * @return Values in row major order as a BigRational[].
      */
     @Override
     public BigRational[] toArrayIncludingNoDataValues() {
-        Grids_GridBR g = getGrid();
-        int nrows = g.getChunkNRows(id);
-        int ncols = g.getChunkNCols(id);
-        BigRational[] r = new BigRational[nrows * ncols];
-        Arrays.fill(r, g.ndv);
-        Iterator<BigRational> ite;
-        /**
-         * Populate result with all mappings from data.DataMapBitSet.
-         */
-        TreeMap<BigRational, Grids_OffsetBitSet> dataMapBitSet = Data.DataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = dataMapBitSet.get(v);
-            int offset = offsetBitSet.offset;
-            BitSet bitSet = offsetBitSet.bitSet;
-            int bitSetLength = bitSet.length();
-            for (int i = 0; i < bitSetLength; i++) {
-                if (bitSet.get(i)) {
-                    r[i + offset] = v;
-                }
-            }
-        }
-        /**
-         * Populate result with all mappings from data.DataMapHashSet.
-         */
-        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-        dataMapHashSet = Data.DataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            HashSet<Grids_2D_ID_int> cellIDs = dataMapHashSet.get(v);
-            Iterator<Grids_2D_ID_int> ite2 = cellIDs.iterator();
-            while (ite2.hasNext()) {
-                Grids_2D_ID_int cellID = ite2.next();
-                r[(cellID.getRow() * chunkNCols) + cellID.getCol()] = v;
-            }
-        }
+        BigRational[] r = new BigRational[chunkNRows * chunkNCols];
+        Arrays.fill(r, defaultValue);
+        index.forEach((p, s) -> r[p] = values[s]);
         return r;
     }
 
     /**
-     * @return Values excluding noDataValues in row major order as a double[].
+     * @return Values excluding noDataValues in row major order as a BigRational[].
      */
     @Override
     public BigRational[] toArrayNotIncludingNoDataValues() {
-        BigRational[] r;
-        Iterator<BigRational> ite;
-        TreeMap<BigRational, Grids_OffsetBitSet> dataMapBitSet;
-        Grids_OffsetBitSet offsetBitSet;
-        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-        HashSet<Grids_2D_ID_int> cellIDs;
-        /**
-         * Count all mappings and initialise result;
-         */
+        BigRational[] a = toArrayIncludingNoDataValues();
+        BigRational[] r = new BigRational[getN().intValue()];
         int n = 0;
-        // Count from Data.DataMapBitSet.
-        dataMapBitSet = Data.DataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            n += dataMapBitSet.get(ite.next()).bitSet.cardinality();
-        }
-        // Count from Data.DataMapBitSet.
-        dataMapHashSet = Data.DataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            n += dataMapHashSet.get(ite.next()).size();
-        }
-        r = new BigRational[n];
-        /**
-         * Populate result with all mappings from data.DataMapBitSet.
-         */
-        dataMapBitSet = Data.DataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        int i;
-        n = 0;
-        while (ite.hasNext()) {
-            BigRational value = ite.next();
-            offsetBitSet = dataMapBitSet.get(value);
-            for (i = 0; i < offsetBitSet.bitSet.cardinality(); i++) {
-                n++;
-                r[n] = value;
-            }
-        }
-        /**
-         * Populate result with all mappings from data.DataMapHashSet.
-         */
-        dataMapHashSet = Data.DataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational value = ite.next();
-            cellIDs = dataMapHashSet.get(value);
-            for (i = 0; i < cellIDs.size(); i++) {
+        for (BigRational v : a) {
+            if (v.compareTo(ndv) != 0) {
+                r[n] = v;
                 n++;
-                r[n] = value;
             }
         }
         return r;
@@ -355,80 +219,18 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public BigRational getCell(int row, int col) {
-        int pos = (row * chunkNCols) + col;
-        if (noData.get(pos)) {
-            return ndv;
-        } else if (inDataMapBitSet.get(pos)) {
-            BigRational r = getCell(pos);
-            if (r.compareTo(ndv) != 0) {
-                return r;
-            }
-        } else if (inDataMapHashSet.get(pos)) {
-            BigRational r = getCell(new Grids_2D_ID_int(row, col));
-            if (r.compareTo(ndv) != 0) {
-                return r;
-            }
-        }
-        return defaultValue;
+        int s = index.getSlot(row * chunkNCols + col);
+        return s == Grids_ChunkMapIndex.NONE ? defaultValue : values[s];
     }
 
     /**
      * @param row The row index of the cell w.r.t. the origin of this chunk.
      * @param col The column index of the cell w.r.t. the origin of this chunk.
-     * @param i The cell ID.
+     * @param i The cell ID. This is not needed.
      * @return The value at position given by: row, col.
      */
     protected BigRational getCell(int row, int col, Grids_2D_ID_int i) {
-        int pos = (row * chunkNCols) + col;
-        if (noData.get(pos)) {
-            return ndv;
-        } else if (inDataMapBitSet.get(pos)) {
-            BigRational r = getCell(pos);
-            if (r.compareTo(ndv) != 0) {
-                return r;
-            }
-        } else if (inDataMapHashSet.get(pos)) {
-            BigRational r = getCell(i);
-            if (r.compareTo(ndv) != 0) {
-                return r;
-            }
-        }
-        return defaultValue;
-    }
-
-    /**
-     * Look in data.DataMapBitSet.
-     */
-    private BigRational getCell(int position) {
-        TreeMap<BigRational, Grids_OffsetBitSet> m = Data.DataMapBitSet;
-        Iterator<BigRational> ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = m.get(v);
-            BitSet bitSet = offsetBitSet.bitSet;
-            int pos = position - offsetBitSet.offset;
-            if (pos > 0 && pos < bitSet.length()) {
-                if (bitSet.get(pos)) {
-                    return v;
-                }
-            }
-        }
-        return ndv;
-    }
-
-    /**
-     * Look in data.DataMapHashSet.
-     */
-    private BigRational getCell(Grids_2D_ID_int cellID) {
-        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> m = Data.DataMapHashSet;
-        Iterator<BigRational> ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            if (m.get(v).contains(cellID)) {
-                return v;
-            }
-        }
-        return ndv;
+        return getCell(row, col);
     }
 
     /**
@@ -441,7 +243,7 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public final void initCell(int row, int col, BigRational v) {
-        initCell(row, col, new Grids_2D_ID_int(row, col), v);
+        set(row * chunkNCols + col, v);
     }
 
     /**
@@ -450,51 +252,11 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      *
      * @param row The row index of the cell w.r.t. the origin of this chunk.
      * @param col The column index of the cell w.r.t. the origin of this chunk.
-     * @param i The cell ID of the cell to be initialised.
+     * @param i The cell ID of the cell to be initialised. This is not needed.
      * @param v The value with which the cell is initialised.
      */
     protected void initCell(int row, int col, Grids_2D_ID_int i, BigRational v) {
-        if (v != defaultValue) {
-            int pos = (row * chunkNCols) + col;
-            if (v.compareTo(ndv) == 0) {
-                noData.set(pos);
-            } else {
-                /**
-                 * Look in data.DataMapBitSet or dataMapHashSet
-                 */
-                TreeMap<BigRational, Grids_OffsetBitSet> m = Data.DataMapBitSet;
-                if (m.containsKey(v)) {
-                    Grids_OffsetBitSet offsetBitSet = m.get(v);
-                    BitSet bitSet = offsetBitSet.bitSet;
-                    bitSet.set(pos);
-                    inDataMapBitSet.set(pos);
-                } else {
-                    TreeMap<BigRational, HashSet<Grids_2D_ID_int>> m2
-                            = Data.DataMapHashSet;
-                    if (m2.containsKey(v)) {
-                        m2.get(v).add(i);
-                        inDataMapHashSet.set(pos);
-                    } else {
-                        /**
-                         * If the chunk is looking sparse so far then add to
-                         * dataMapHashSet, otherwise add to dataMapBitSet
-                         */
-                        if ((pos - noData.cardinality()) / (double) pos < 0.5) {
-                            HashSet<Grids_2D_ID_int> s = new HashSet<>();
-                            s.add(i);
-                            m2.put(v, s);
-                            inDataMapHashSet.set(pos);
-                        } else {
-                            Grids_OffsetBitSet offsetBitSet;
-                            offsetBitSet = new Grids_OffsetBitSet(pos);
-                            offsetBitSet.bitSet.set(0);
-                            m.put(v, offsetBitSet);
-                            inDataMapBitSet.set(pos);
-                        }
-                    }
-                }
-            }
-        }
+        set(row * chunkNCols + col, v);
     }
 
     /**
@@ -509,7 +271,13 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public BigRational setCell(int row, int col, BigRational v) {
-        return setCell(row, col, new Grids_2D_ID_int(row, col), v);
+        BigRational r = set(row * chunkNCols + col, v);
+        if (r.compareTo(v) != 0) {
+            if (isCacheUpToDate()) {
+                setCacheUpToDate(false);
+            }
+        }
+        return r;
     }
 
     /**
@@ -518,138 +286,160 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      *
      * @param row The chunk row.
      * @param col The chunk column.
-     * @param i The chunk cell ID of the cell to be initialised.
+     * @param i The chunk cell ID of the cell to be initialised. This is not
+     * needed.
      * @param v The value the cell is to be set to.
      * @return The value at position given by: row, col before it is set to
      * {@code v}.
      */
     public BigRational setCell(int row, int col, Grids_2D_ID_int i, BigRational v) {
-        BigRational r = getCell(row, col, i);
-        if (r == v) {
+        return setCell(row, col, v);
+    }
+
+    /**
+     * Sets the value of the cell at position {@code p} to {@code v}.
+     *
+     * @param p The position of the cell.
+     * @param v The value.
+     * @return The value of the cell before it is set to {@code v}.
+     */
+    private BigRational set(int p, BigRational v) {
+        int s0 = index.getSlot(p);
+        BigRational r = s0 == Grids_ChunkMapIndex.NONE ? defaultValue : values[s0];
+        if (r.compareTo(v) == 0) {
             return r;
         }
-        if (v != defaultValue) {
-            int pos = (row * chunkNCols) + col;
-            if (v.compareTo(ndv) == 0) {
-                noData.set(pos);
-                if (r == defaultValue) {
-                    return defaultValue;
-                } else if (inDataMapBitSet.get(pos)) {
-                    TreeMap<BigRational, Grids_OffsetBitSet> m = Data.DataMapBitSet;
-                    Grids_OffsetBitSet offsetBitSet = m.get(r);
-                    BitSet bitSet = offsetBitSet.bitSet;
-                    bitSet.flip(pos);
-                    if (bitSet.cardinality() == 0) {
-                        m.remove(r);
-                    }
-                    return r;
-                } else {
-                    TreeMap<BigRational, HashSet<Grids_2D_ID_int>> m2
-                            = Data.DataMapHashSet;
-                    HashSet<Grids_2D_ID_int> s = m2.get(r);
-                    s.remove(i);
-                    if (s.isEmpty()) {
-                        m2.remove(r);
-                    }
-                    return r;
-                }
+        int s = Grids_ChunkMapIndex.NONE;
+        if (v.compareTo(defaultValue) != 0) {
+            s = getSlot(v);
+        }
+        index.setSlot(p, s);
+        if (s0 != Grids_ChunkMapIndex.NONE && index.getCount(s0) == 0) {
+            int k = search(r);
+            nValues--;
+            System.arraycopy(order, k + 1, order, k, nValues - k);
+            index.freeSlot(s0);
+        }
+        return r;
+    }
+
+    /**
+     * @param v The value to search for.
+     * @return The index of {@code v} in {@link #order} or
+     * {@code (-(insertion point) - 1)} if it is not there.
+     */
+    private int search(BigRational v) {
+        int lo = 0;
+        int hi = nValues - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = values[order[mid]].compareTo(v);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
             } else {
-                if (r == defaultValue) {
-                    TreeMap<BigRational, Grids_OffsetBitSet> m2 = Data.DataMapBitSet;
-                    if (m2.containsKey(v)) {
-                        Grids_OffsetBitSet offsetBitSet = m2.get(v);
-                        BitSet bitSet = offsetBitSet.bitSet;
-                        bitSet.set(pos);
-                        inDataMapHashSet.set(pos);
-                        return r;
-                    } else {
-                        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> m3
-                                = Data.DataMapHashSet;
-                        if (m3.containsKey(v)) {
-                            HashSet<Grids_2D_ID_int> s = m3.get(v);
-                            s.add(i);
-                            inDataMapHashSet.set(pos);
-                            return r;
-                        } else {
-                            Grids_OffsetBitSet offsetBitSet = new Grids_OffsetBitSet(pos);
-                            offsetBitSet.bitSet.set(0);
-                            m2.put(v, offsetBitSet);
-                            inDataMapBitSet.set(pos);
-                            return r;
-                        }
-                    }
-                } else {
-                    // result is a value
-                    TreeMap<BigRational, Grids_OffsetBitSet> m2 = Data.DataMapBitSet;
-                    if (m2.containsKey(v)) {
-                        Grids_OffsetBitSet offsetBitSet;
-                        BitSet bitSet;
-                        // Remove result.
-                        if (m2.containsKey(r)) {
-                            offsetBitSet = m2.get(v);
-                            bitSet = offsetBitSet.bitSet;
-                            bitSet.flip(pos);
-                            if (bitSet.cardinality() == 0) {
-                                m2.remove(r);
-                            }
-                        }
-                        // Add valueToSet.
-                        offsetBitSet = m2.get(v);
-                        bitSet = offsetBitSet.bitSet;
-                        bitSet.set(pos);
-                        return r;
-                    } else {
-                        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> m3
-                                = Data.DataMapHashSet;
-                        if (m3.containsKey(v)) {
-                            HashSet<Grids_2D_ID_int> s;
-                            // Remove result.
-                            s = m3.get(r);
-                            s.remove(i);
-                            if (s.isEmpty()) {
-                                m3.remove(r);
-                            }
-                            // Add valueToSet
-                            s = m3.get(v);
-                            s.add(i);
-                            return r;
-                        } else {
-//                            /**
-//                             * If the chunk is sparse then add to
-//                             * dataMapHashSet, otherwise add to dataMapBitSet
-//                             */
-//                            double sparseness;
-//                            sparseness = (InDataMapHashSet.cardinality()
-//                                    + InDataMapBitSet.cardinality())
-//                                    / (double) (chunkNRows * chunkNCols);
-//                            if (sparseness < 0.5) {
-//                                HashSet<Grids_2D_ID_int> s = new HashSet<>();
-//                                s.add(chunkCellID);
-//                                dataMapHashSet.put(valueToSet, s);
-//                                InDataMapHashSet.set(position);
-//                            } else {
-//                                Grids_OffsetBitSet offsetBitSet;
-//                                offsetBitSet = new Grids_OffsetBitSet(position);
-//                                offsetBitSet.bitSet.set(0);
-//                                dataMapBitSet.put(valueToSet, offsetBitSet);
-//                                InDataMapBitSet.set(position);
-//                            }
-                            // Regardless of sparseness add to dataMapBitSet
-                            Grids_OffsetBitSet offsetBitSet;
-                            offsetBitSet = new Grids_OffsetBitSet(pos);
-                            offsetBitSet.bitSet.set(0);
-                            m2.put(v, offsetBitSet);
-                            inDataMapBitSet.set(pos);
-                            return r;
-                        }
-                    }
-                }
+                return mid;
             }
         }
-        if (isCacheUpToDate()) {
-            setCacheUpToDate(false);
+        return -(lo + 1);
+    }
+
+    /**
+     * @param v The value.
+     * @return The slot of {@code v} which is allocated if {@code v} is not
+     * already one of {@link #values}.
+     */
+    private int getSlot(BigRational v) {
+        int k = search(v);
+        if (k >= 0) {
+            return order[k];
+        }
+        k = -(k + 1);
+        int s = index.newSlot();
+        if (index.getSlotsLength() > values.length) {
+            values = Arrays.copyOf(values, index.getSlotsLength());
+            order = Arrays.copyOf(order, values.length);
         }
-        return r;
+        values[s] = v;
+        System.arraycopy(order, k, order, k + 1, nValues - k);
+        order[k] = s;
+        nValues++;
+        return s;
+    }
+
+    /**
+     * @return The number of different values other than {@link #defaultValue}
+     * (which may include the noDataValue).
+     */
+    protected int getNValues() {
+        return nValues;
+    }
+
+    /**
+     * @param k The index of the value in ascending order of value.
+     * @return The {@code k}th smallest value other than {@link #defaultValue}.
+     */
+    protected BigRational getValue(int k) {
+        return values[order[k]];
+    }
+
+    /**
+     * @param k The index of the value in ascending order of value.
+     * @return The number of cells with the {@code k}th smallest value other
+     * than {@link #defaultValue}.
+     */
+    protected int getCount(int k) {
+        return index.getCount(order[k]);
+    }
+
+    /**
+     * @param v The value.
+     * @return The number of cells with value {@code v}.
+     */
+    protected int getValueCount(BigRational v) {
+        if (v.compareTo(defaultValue) == 0) {
+            return getNumberOfDefaultValues(chunkNRows * chunkNCols);
+        }
+        int k = search(v);
+        return k < 0 ? 0 : getCount(k);
+    }
+
+    /**
+     * For getting the different data values and the number of cells with
+     * each. The no data value is excluded.
+     *
+     * @param vs The array to put the values in (in ascending order). This must
+     * have a length of at least {@code getNValues() + 1}.
+     * @param cs The array to put the number of cells with each value in. This
+     * must have a length of at least {@code getNValues() + 1}.
+     * @return The number of different values.
+     */
+    protected int getValuesAndCounts(BigRational[] vs, int[] cs) {
+        int nd = getNumberOfDefaultValues(chunkNRows * chunkNCols);
+        boolean addDefault = nd > 0
+                && defaultValue.compareTo(ndv) != 0;
+        int n = 0;
+        for (int k = 0; k < nValues; k++) {
+            BigRational v = getValue(k);
+            if (addDefault && defaultValue.compareTo(v) < 0) {
+                vs[n] = defaultValue;
+                cs[n] = nd;
+                n++;
+                addDefault = false;
+            }
+            if (v.compareTo(ndv) != 0) {
+                vs[n] = v;
+                cs[n] = getCount(k);
+                n++;
+            }
+        }
+        if (addDefault) {
+            vs[n] = defaultValue;
+            cs[n] = nd;
+            n++;
+        }
+        return n;
     }
 
     /**
@@ -657,7 +447,7 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public Long getN() {
-        return ((long) chunkNRows * (long) chunkNCols) - noData.cardinality();
+        return ((long) chunkNRows * (long) chunkNCols) - getValueCount(ndv);
     }
 
     /**
@@ -665,12 +455,7 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      * @return The number of cell values equal to {@link #defaultValue}.
      */
     public int getNumberOfDefaultValues(int n) {
-        BitSet s = new BitSet(n);
-        s.flip(0, n - 1);
-        s.and(inDataMapHashSet);
-        s.or(inDataMapBitSet);
-        s.xor(noData);
-        return n - s.cardinality();
+        return n - index.size();
     }
 
     @Override
@@ -687,28 +472,15 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     protected BigRational getSumBigRational(int n, int numberOfDefaultValues) {
         BigRational r = BigRational.ZERO;
-        r = r.add(defaultValue.multiply(BigRational.valueOf(numberOfDefaultValues)));
-        Iterator<BigRational> ite;
-        /**
-         * Add from data.DataMapBitSet;
-         */
-        TreeMap<BigRational, Grids_OffsetBitSet> m = Data.DataMapBitSet;
-        ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = m.get(v);
-            n = offsetBitSet.bitSet.size();
-            r = r.add(v.multiply(BigRational.valueOf(n)));
+        if (defaultValue.compareTo(ndv) != 0) {
+            r = r.add(defaultValue.multiply(
+                    BigRational.valueOf(numberOfDefaultValues)));
         }
-        /**
-         * Add from data.DataMapHashSet.
-         */
-        TreeMap<BigRational, HashSet<Grids_2D_ID_int>> m2 = Data.DataMapHashSet;
-        ite = m2.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            n = m2.get(v).size();
-            r = r.add(v.multiply(BigRational.valueOf(n)));
+        for (int k = 0; k < nValues; k++) {
+            BigRational v = getValue(k);
+            if (v.compareTo(ndv) != 0) {
+                r = r.add(v.multiply(BigRational.valueOf(getCount(k))));
+            }
         }
         return r;
     }
@@ -718,16 +490,9 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public BigRational getMin() {
-        BigRational min;
-        int n = chunkNRows * chunkNCols;
-        if (getNumberOfDefaultValues(n) > 0) {
-            min = defaultValue;
-            min = min.min(Data.DataMapBitSet.firstKey());
-        } else {
-            min = Data.DataMapBitSet.firstKey();
-        }
-        min = min.min(Data.DataMapHashSet.firstKey());
-        return min;
+        BigRational[] vs = new BigRational[nValues + 1];
+        int n = getValuesAndCounts(vs, new int[vs.length]);
+        return n == 0 ? ndv : vs[0];
     }
 
     /**
@@ -735,16 +500,9 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public BigRational getMax() {
-        BigRational max;
-        int n = chunkNRows * chunkNCols;
-        if (getNumberOfDefaultValues(n) > 0) {
-            max = defaultValue;
-            max = max.max(Data.DataMapBitSet.lastKey());
-        } else {
-            max = Data.DataMapBitSet.lastKey();
-        }
-        max = max.max(Data.DataMapHashSet.lastKey());
-        return max;
+        BigRational[] vs = new BigRational[nValues + 1];
+        int n = getValuesAndCounts(vs, new int[vs.length]);
+        return n == 0 ? ndv : vs[n - 1];
     }
 
     /**
@@ -753,32 +511,17 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
     @Override
     protected HashSet<BigRational> getMode() {
         HashSet<BigRational> mode = new HashSet<>();
-        int n = chunkNCols * chunkNRows;
-        int numberOfDefaultValues = getNumberOfDefaultValues(n);
-        int numberOfMostCommonValue = numberOfDefaultValues;
-        mode.add(defaultValue);
-        Iterator<BigRational> ite;
-        ite = Data.DataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = Data.DataMapBitSet.get(v);
-            int numberOfValues = offsetBitSet.bitSet.cardinality();
-            if (numberOfValues < numberOfMostCommonValue) {
-                mode = new HashSet<>();
-                mode.add(v);
-            } else if (numberOfValues == numberOfMostCommonValue) {
-                mode.add(v);
-            }
-        }
-        ite = Data.DataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            int numberOfValues = Data.DataMapHashSet.get(v).size();
-            if (numberOfValues < numberOfMostCommonValue) {
-                mode = new HashSet<>();
-                mode.add(v);
-            } else if (numberOfValues == numberOfMostCommonValue) {
-                mode.add(v);
+        BigRational[] vs = new BigRational[nValues + 1];
+        int[] cs = new int[vs.length];
+        int n = getValuesAndCounts(vs, cs);
+        int modeCount = 0;
+        for (int k = 0; k < n; k++) {
+            if (cs[k] > modeCount) {
+                mode.clear();
+                mode.add(vs[k]);
+                modeCount = cs[k];
+            } else if (cs[k] == modeCount) {
+                mode.add(vs[k]);
             }
         }
         return mode;
@@ -789,93 +532,60 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      */
     @Override
     public BigRational getMedian() {
-        TreeMap<BigRational, Integer> valueCount = new TreeMap<>();
-        int nCells = chunkNCols * chunkNRows;
-        int numberOfDefaultValues = getNumberOfDefaultValues(nCells);
-        valueCount.put(defaultValue, numberOfDefaultValues);
-        Iterator<BigRational> ite = Data.DataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            valueCount.put(v, Data.DataMapBitSet.get(v).bitSet.cardinality());
-        }
-        ite = Data.DataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            valueCount.put(v, Data.DataMapHashSet.get(v).size());
-        }
-        long n = getN();
-        if (n > 0) {
-            if (n % 2L == 0L) {
-                // Need arithmetic mean of ( ( nonNoDataValueCount / 2 ) - 1 )th
-                // and ( nonNoDataValueCount / 2 )th values
-                long requiredIndex = (n / 2L) - 1L;
-                int i = 0;
-                ite = valueCount.keySet().iterator();
-                while (ite.hasNext()) {
-                    BigRational v = ite.next();
-                    i += valueCount.get(v);
-                    if (i > requiredIndex && i > requiredIndex + 1) {
-                        return v;
-                    } else {
-                        return (v.add(ite.next())).divide(BigRational.valueOf(2));
-                    }
-                }
+        BigRational[] vs = new BigRational[nValues + 1];
+        int[] cs = new int[vs.length];
+        int n = getValuesAndCounts(vs, cs);
+        long nv = getN();
+        if (nv > 0) {
+            if (nv % 2L == 0L) {
+                // Need arithmetic mean of ( ( nv / 2 ) - 1 )th and ( nv / 2 )th
+                // values
+                return getValue(vs, cs, n, (nv / 2L) - 1L).add(
+                        getValue(vs, cs, n, nv / 2L)).divide(BigRational.valueOf(2));
             } else {
-                // Need ( ( nonNoDataValueCount ) / 2 )th value
-                long requiredIndex = n / 2L;
-                int i = 0;
-                ite = valueCount.keySet().iterator();
-                while (ite.hasNext()) {
-                    BigRational v = ite.next();
-                    i += valueCount.get(v);
-                    if (i > requiredIndex) {
-                        return v;
-                    }
-                }
+                // Need ( nv / 2 )th value
+                return getValue(vs, cs, n, nv / 2L);
             }
         }
         return getGrid().getNoDataValue();
     }
 
     /**
-     * 
-     * @return The standard deviation.
+     * @param vs The values in ascending order.
+     * @param cs The number of cells with each value.
+     * @param n The number of values.
+     * @param i The index.
+     * @return The {@code i}th value if all the values were in ascending order.
      */
+    private static BigRational getValue(BigRational[] vs, int[] cs, int n, long i) {
+        long c = 0;
+        for (int k = 0; k < n; k++) {
+            c += cs[k];
+            if (c > i) {
+                return vs[k];
+            }
+        }
+        return vs[n - 1];
+    }
+
     @Override
     protected BigRational getStandardDeviation(int oom, RoundingMode rm) {
         BigRational r = BigRational.ZERO;
         BigRational mean = getArithmeticMean();
-        // Calculate the number of default values
-        int n = chunkNRows * chunkNCols;
-        int nValues = getNumberOfDefaultValues(n);
-        r = r.add(defaultValue.subtract(mean).pow(2)).multiply(BigRational.valueOf(nValues));
-        Iterator<BigRational> ite;
-        /**
-         * Add from data.DataMapBitSet;
-         */
-        ite = Data.DataMapBitSet.keySet().iterator();
-        Grids_OffsetBitSet offsetBitSet;
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            offsetBitSet = Data.DataMapBitSet.get(v);
-            n = offsetBitSet.bitSet.size();
-            nValues += n;
-            r = r.add(v.subtract(mean).pow(2)).multiply(BigRational.valueOf(n));
-        }
-        /**
-         * Add from data.DataMapHashSet.
-         */
-        ite = Data.DataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            BigRational v = ite.next();
-            n = Data.DataMapHashSet.get(v).size();
-            nValues += n;
-            r = r.add((v.subtract(mean).pow(2)).multiply(BigRational.valueOf(n)));
-        }
-        if ((nValues - 1L) > 0L) {
-            return new Math_BigRationalSqrt(r.divide(nValues - 1), oom, rm).getSqrt(oom, rm);
+        BigRational[] vs = new BigRational[nValues + 1];
+        int[] cs = new int[vs.length];
+        int n = getValuesAndCounts(vs, cs);
+        long count = 0;
+        for (int k = 0; k < n; k++) {
+            r = r.add((vs[k].subtract(mean).pow(2))
+                    .multiply(BigRational.valueOf(cs[k])));
+            count += cs[k];
+        }
+        if ((count - 1L) > 0L) {
+            return new Math_BigRationalSqrt(r.divide(
+                    BigInteger.valueOf(count - 1L)), oom, rm).getSqrt(oom, rm);
         } else {
-            return r;
+            return BigRational.ZERO;
         }
     }
 
@@ -883,8 +593,8 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
      * @return The number of different values.
      */
     protected BigInteger getDiversityBigInteger() {
-        return BigInteger.valueOf(Data.DataMapBitSet.size()
-                + Data.DataMapHashSet.size() + 1);
+        BigRational[] vs = new BigRational[nValues + 1];
+        return BigInteger.valueOf(getValuesAndCounts(vs, new int[vs.length]));
     }
 
     /**
@@ -896,55 +606,11 @@ public class Grids_ChunkBRMap extends Grids_ChunkBRArrayOrMap {
 
     @Override
     public BigRational getMin(boolean update) {
-        BigRational min;
-        if (defaultValue.compareTo(ndv) != 0) {
-            min = defaultValue.min(Data.DataMapBitSet.firstKey());
-        } else {
-            min = Data.DataMapBitSet.firstKey();
-        }
-        min = min.min(Data.DataMapHashSet.firstKey());
-        return min;
+        return getMin();
     }
 
     @Override
     public BigRational getMax(boolean update) {
-        BigRational max;
-        if (defaultValue.compareTo(ndv) != 0) {
-            max = defaultValue.max(Data.DataMapBitSet.firstKey());
-        } else {
-            max = Data.DataMapBitSet.firstKey();
-        }
-        max = max.max(Data.DataMapHashSet.lastKey());
-        return max;
-    }
-
-    /**
-     * Simple inner class for wrapping an int and a bitSet.
-     */
-    public class GridChunkBRMapData {
-
-        /**
-         * For more common values.
-         */
-        public final TreeMap<BigRational, Grids_OffsetBitSet> DataMapBitSet;
-
-        /**
-         * For less common and more distributed values.
-         */
-        public final TreeMap<BigRational, HashSet<Grids_2D_ID_int>> DataMapHashSet;
-
-        /**
-         * Create a new instance.
-         * 
-         * @param dataMapBitSet What {@link #DataMapBitSet} is set to.
-         * @param dataMapHashSet What {@link #DataMapHashSet} is set to. 
-         */
-        public GridChunkBRMapData(
-                TreeMap<BigRational, Grids_OffsetBitSet> dataMapBitSet,
-                TreeMap<BigRational, HashSet<Grids_2D_ID_int>> dataMapHashSet) {
-            DataMapBitSet = dataMapBitSet;
-            DataMapHashSet = dataMapHashSet;
-        }
+        return getMax();
     }
-
 }
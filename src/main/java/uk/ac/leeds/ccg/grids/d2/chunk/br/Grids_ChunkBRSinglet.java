@@ -62,6 +62,14 @@ public class Grids_ChunkBRSinglet extends Grids_ChunkBR {
     protected void clearData() {
     }
 
+    /**
+     * @return {@link #OBJECT} as the value is held in a field.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT;
+    }
+
     /**
      * Beware OutOfMemoryErrors being thrown if calling this method.
      *
@@ -23,6 +23,7 @@ import java.math.RoundingMode;
 import java.util.HashSet;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkNumber;
+import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsDoubleSummary;
 import java.util.Arrays;
 import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
 
@@ -37,6 +38,13 @@ public abstract class Grids_ChunkDouble extends Grids_ChunkNumber {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * A summary of the data values for calculating statistics. This is
+     * calculated when it is needed and set to {@code null} when a value
+     * changes.
+     */
+    protected transient Grids_StatsDoubleSummary summary;
+
     /**
      * @param g What {@link #grid} is set to.
      * @param i What {@link #id} is set to.
@@ -97,6 +105,48 @@ public abstract class Grids_ChunkDouble extends Grids_ChunkNumber {
      */
     public abstract double setCell(int r, int c, double v) throws Exception;
 
+    /**
+     * @return {@link #summary} which is {@code null} if it has not been
+     * calculated since a value last changed.
+     */
+    public Grids_StatsDoubleSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Returns {@link #summary} calculating it first if it is {@code null} or
+     * if {@code exact} is {@code true} and it does not have an exact sum.
+     *
+     * @param exact If {@code true} then the summary has an exact sum.
+     * @return A summary of the data values.
+     */
+    public Grids_StatsDoubleSummary getSummary(boolean exact) {
+        Grids_StatsDoubleSummary r = summary;
+        if (r == null || (exact && !r.isExact())) {
+            r = computeSummary(exact);
+            summary = r;
+        }
+        return r;
+    }
+
+    /**
+     * @param exact If {@code true} then the summary has an exact sum.
+     * @return A new summary of the finite data values.
+     */
+    protected Grids_StatsDoubleSummary computeSummary(boolean exact) {
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(exact);
+        double ndv = getGrid().getNoDataValue();
+        for (int row = 0; row < chunkNRows; row++) {
+            for (int col = 0; col < chunkNCols; col++) {
+                double v = getCell(row, col);
+                if (v != ndv && Double.isFinite(v)) {
+                    r.add(v);
+                }
+            }
+        }
+        return r;
+    }
+
     /**
      * @return All the values including noDataValue's in row major order as a
      * double[].
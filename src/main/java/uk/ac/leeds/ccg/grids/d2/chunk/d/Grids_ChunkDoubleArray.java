@@ -15,6 +15,7 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.d;
 
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import java.util.Arrays;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
@@ -52,6 +53,20 @@ public class Grids_ChunkDoubleArray extends Grids_ChunkDoubleArrayOrMap {
         cacheUpToDate = false;
     }
 
+    /**
+     * Creates a new instance with {@link #data} set to {@code data}.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @param data What {@link #data} is set to. This is not copied.
+     */
+    protected Grids_ChunkDoubleArray(Grids_GridDouble g, Grids_2D_ID_int i,
+            double[][] data) {
+        super(g, i);
+        this.data = data;
+        cacheUpToDate = false;
+    }
+
     /**
      * TODO: Optimise for different types of chunk. A fast toArray() could be
      * coded then a constructor based on an double[] or double[][] might be
@@ -97,6 +112,16 @@ public class Grids_ChunkDoubleArray extends Grids_ChunkDoubleArrayOrMap {
         //System.gc();
     }
 
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #data}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : Grids_ChunkOptimizer.getArraySize(chunkNRows, chunkNCols,
+                Double.BYTES));
+    }
+
     /**
      * @param row The row index of the cell w.r.t. the origin of this chunk.
      * @param col The column index of the cell w.r.t. the origin of this chunk.
@@ -118,6 +143,7 @@ public class Grids_ChunkDoubleArray extends Grids_ChunkDoubleArrayOrMap {
     @Override
     public void initCell(int row, int col, double v) {
         data[row][col] = v;
+        summary = null;
     }
 
     /**
@@ -133,6 +159,7 @@ public class Grids_ChunkDoubleArray extends Grids_ChunkDoubleArrayOrMap {
     public double setCell(int row, int col, double v) {
         double oldValue = data[row][col];
         data[row][col] = v;
+        summary = null;
         if (isCacheUpToDate()) {
             if (v != oldValue) {
                 setCacheUpToDate(false);
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.d;
+
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+
+/**
+ * Grids_ChunkDouble extension that stores cell values in a single double[] in
+ * row major order. The value of chunk cell row {@code row}, chunk cell column
+ * {@code col} is at index {@code row * chunkNCols + col}. Compared with a
+ * {@link Grids_ChunkDoubleArray} this has no per row object overhead and the
+ * values are contiguous, so whole rows or the whole chunk can be copied in
+ * bulk (see {@link #getRow(int, double[], int)},
+ * {@link #setRow(int, double[], int)} and {@link #copyTo(double[], int)}).
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkDoubleArrayFlat extends Grids_ChunkDoubleArrayOrMap {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * For storing values in row major order.
+     */
+    private double[] data;
+
+    /**
+     * Creates a new chunk filled with noDataValues.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     */
+    protected Grids_ChunkDoubleArrayFlat(Grids_GridDouble g,
+            Grids_2D_ID_int i) {
+        super(g, i);
+        initData();
+        Arrays.fill(data, g.getNoDataValue());
+        cacheUpToDate = false;
+    }
+
+    /**
+     * Creates a new instance with {@link #data} set to {@code data}.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @param data What {@link #data} is set to. This is not copied and must
+     * have a length of at least chunkNRows * chunkNCols.
+     */
+    protected Grids_ChunkDoubleArrayFlat(Grids_GridDouble g,
+            Grids_2D_ID_int i, double[] data) {
+        super(g, i);
+        this.data = data;
+        cacheUpToDate = false;
+    }
+
+    /**
+     * @param c The chunk that's values will be duplicated.
+     * @param i The chunk ID.
+     */
+    protected Grids_ChunkDoubleArrayFlat(Grids_ChunkDouble c,
+            Grids_2D_ID_int i) {
+        super(c.getGrid(), i);
+        initData();
+        if (c instanceof Grids_ChunkDoubleArrayFlat
+                && c.getChunkNCols() == chunkNCols
+                && c.getChunkNRows() == chunkNRows) {
+            ((Grids_ChunkDoubleArrayFlat) c).copyTo(data, 0);
+        } else {
+            int k = 0;
+            for (int row = 0; row < chunkNRows; row++) {
+                for (int col = 0; col < chunkNCols; col++) {
+                    data[k] = c.getCell(row, col);
+                    k++;
+                }
+            }
+        }
+        cacheUpToDate = false;
+    }
+
+    /**
+     * Initialises {@link #data}.
+     */
+    @Override
+    protected final void initData() {
+        data = new double[chunkNRows * chunkNCols];
+    }
+
+    /**
+     * @return {@link #data}.
+     */
+    protected double[] getData() {
+        return data;
+    }
+
+    /**
+     * Sets {@link #data} to {@code null}.
+     */
+    @Override
+    protected void clearData() {
+        data = null;
+    }
+
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #data}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : Grids_ChunkOptimizer.getArraySize(data.length, Double.BYTES));
+    }
+
+    /**
+     * @param row The row index of the cell w.r.t. the origin of this chunk.
+     * @param col The column index of the cell w.r.t. the origin of this chunk.
+     * @return The value at position given by: chunk cell row {@code row}; chunk
+     * cell column {@code col}.
+     */
+    @Override
+    public double getCell(int row, int col) {
+        return data[row * chunkNCols + col];
+    }
+
+    /**
+     * Initialises the value at position given by: row, col.
+     *
+     * @param row The row index of the cell w.r.t. the origin of this chunk.
+     * @param col The column index of the cell w.r.t. the origin of this chunk.
+     * @param v The value initialised.
+     */
+    @Override
+    public void initCell(int row, int col, double v) {
+        data[row * chunkNCols + col] = v;
+        summary = null;
+    }
+
+    /**
+     * Sets the value at position given by: chunk cell row {@code row}; chunk
+     * cell row {@code col} to {@code v}.
+     *
+     * @param row The row index of the cell w.r.t. the origin of this chunk.
+     * @param col The column index of the cell w.r.t. the origin of this chunk.
+     * @param v The value set.
+     * @return The value at position given by: chunk cell row {@code row};
+     * chunk cell row {@code col} prior to it being set to {@code v}.
+     */
+    @Override
+    public double setCell(int row, int col, double v) {
+        int k = row * chunkNCols + col;
+        double oldValue = data[k];
+        data[k] = v;
+        summary = null;
+        if (isCacheUpToDate()) {
+            if (v != oldValue) {
+                setCacheUpToDate(false);
+            }
+        }
+        return oldValue;
+    }
+
+    /**
+     * Copies the values in chunk cell row {@code row} into {@code dst}.
+     *
+     * @param row The chunk cell row.
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} of the first value copied.
+     */
+    public void getRow(int row, double[] dst, int off) {
+        System.arraycopy(data, row * chunkNCols, dst, off, chunkNCols);
+    }
+
+    /**
+     * Sets the values in chunk cell row {@code row} from {@code src} and
+     * counts a change to this chunk in {@link #grid} (see
+     * {@link Grids_Grid#changed(Grids_2D_ID_int)}).
+     *
+     * @param row The chunk cell row.
+     * @param src The array to copy from.
+     * @param off The index in {@code src} of the first value copied.
+     */
+    public void setRow(int row, double[] src, int off) {
+        System.arraycopy(src, off, data, row * chunkNCols, chunkNCols);
+        summary = null;
+        setCacheUpToDate(false);
+        if (grid != null) {
+            grid.changed(id);
+        }
+    }
+
+    /**
+     * Copies all the values in row major order into {@code dst}.
+     *
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} of the first value copied.
+     */
+    public void copyTo(double[] dst, int off) {
+        System.arraycopy(data, 0, dst, off, chunkNRows * chunkNCols);
+    }
+
+    /**
+     * @return All the values including noDataValue's in row major order as a
+     * double[].
+     */
+    @Override
+    public double[] toArrayIncludingNoDataValues() {
+        return Arrays.copyOf(data, chunkNRows * chunkNCols);
+    }
+
+    /**
+     * @return An iterator for iterating over the cells in this.
+     */
+    public Grids_ChunkDoubleIteratorArrayOrMap iterator() {
+        return new Grids_ChunkDoubleIteratorArrayOrMap(this);
+    }
+
+    @Override
+    public Double getMin(boolean update) {
+        double noDataValue = getGrid().getNoDataValue();
+        double r = Double.POSITIVE_INFINITY;
+        int n = chunkNRows * chunkNCols;
+        for (int k = 0; k < n; k++) {
+            double v = data[k];
+            if (v != noDataValue) {
+                r = Math.min(r, v);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public Double getMax(boolean update) {
+        double noDataValue = getGrid().getNoDataValue();
+        double r = Double.NEGATIVE_INFINITY;
+        int n = chunkNRows * chunkNCols;
+        for (int k = 0; k < n; k++) {
+            double v = data[k];
+            if (v != noDataValue) {
+                r = Math.max(r, v);
+            }
+        }
+        return r;
+    }
+}
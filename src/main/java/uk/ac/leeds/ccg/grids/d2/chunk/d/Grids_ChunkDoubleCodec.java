@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.d;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+
+/**
+ * A codec for {@link Grids_ChunkDoubleArray}, {@link Grids_ChunkDoubleArrayFlat},
+ * {@link Grids_ChunkDoubleOffHeap}, {@link Grids_ChunkDoubleMap} and
+ * {@link Grids_ChunkDoubleSinglet} instances. The payload starts with a byte
+ * indicating the type of chunk. For an array, flat array or off heap chunk
+ * this is followed by the values in row major order. The values of an off
+ * heap chunk are copied in bulk between its memory segment and the buffer.
+ * For a map chunk this is followed by: the
+ * default value; the number of cells with values that are not the default
+ * value; the positions (row major) of those cells; and, the values of those
+ * cells. For a singlet chunk this is followed by the value.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkDoubleCodec extends Grids_ChunkCodec {
+
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 1;
+
+    /**
+     * The codec instance.
+     */
+    public static final Grids_ChunkDoubleCodec INSTANCE
+            = new Grids_ChunkDoubleCodec();
+
+    /**
+     * Indicates an array chunk.
+     */
+    protected static final byte ARRAY = 0;
+
+    /**
+     * Indicates a map chunk.
+     */
+    protected static final byte MAP = 1;
+
+    /**
+     * Indicates a singlet chunk.
+     */
+    protected static final byte SINGLET = 2;
+
+    /**
+     * Indicates a flat array chunk.
+     */
+    protected static final byte ARRAY_FLAT = 3;
+
+    /**
+     * Indicates an off heap chunk.
+     */
+    protected static final byte OFF_HEAP = 4;
+
+    /**
+     * Create a new instance.
+     */
+    protected Grids_ChunkDoubleCodec() {
+        super(ID);
+    }
+
+    @Override
+    public Class<?>[] getChunkClasses() {
+        return new Class<?>[]{
+                Grids_ChunkDoubleArray.class,
+                Grids_ChunkDoubleArrayFlat.class,
+                Grids_ChunkDoubleOffHeap.class,
+                Grids_ChunkDoubleMap.class,
+                Grids_ChunkDoubleSinglet.class};
+    }
+
+    @Override
+    public int getPayloadSize(Grids_Chunk c) {
+        if (c instanceof Grids_ChunkDoubleSinglet) {
+            return 1 + Double.BYTES;
+        }
+        int nrows = c.getChunkNRows();
+        int ncols = c.getChunkNCols();
+        if (c instanceof Grids_ChunkDoubleMap) {
+            int n = countNotDefault((Grids_ChunkDoubleMap) c, nrows, ncols);
+            return 1 + Double.BYTES + Integer.BYTES
+                    + n * (Integer.BYTES + Double.BYTES);
+        }
+        return 1 + nrows * ncols * Double.BYTES;
+    }
+
+    @Override
+    public int getValueSize(byte type) {
+        if (type == ARRAY || type == ARRAY_FLAT || type == OFF_HEAP) {
+            return Double.BYTES;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isFloatingPoint() {
+        return true;
+    }
+
+    @Override
+    public int getArraySize(int nrows, int ncols) {
+        return HEADER_SIZE + 1 + nrows * ncols * Double.BYTES;
+    }
+
+    @Override
+    public void encode(Grids_Chunk c, ByteBuffer b) {
+        if (c instanceof Grids_ChunkDoubleSinglet) {
+            b.put(SINGLET);
+            b.putDouble(((Grids_ChunkDoubleSinglet) c).getV());
+            return;
+        }
+        int nrows = c.getChunkNRows();
+        int ncols = c.getChunkNCols();
+        if (c instanceof Grids_ChunkDoubleMap) {
+            Grids_ChunkDoubleMap m = (Grids_ChunkDoubleMap) c;
+            b.put(MAP);
+            double dv = m.defaultValue;
+            b.putDouble(dv);
+            int n = countNotDefault(m, nrows, ncols);
+            b.putInt(n);
+            double[] vs = new double[n];
+            int k = 0;
+            for (int row = 0; row < nrows; row++) {
+                for (int col = 0; col < ncols; col++) {
+                    double v = m.getCell(row, col);
+                    if (Double.compare(v, dv) != 0) {
+                        b.putInt(row * ncols + col);
+                        vs[k] = v;
+                        k++;
+                    }
+                }
+            }
+            for (double v : vs) {
+                b.putDouble(v);
+            }
+            return;
+        }
+        if (c instanceof Grids_ChunkDoubleOffHeap) {
+            b.put(OFF_HEAP);
+            int n = nrows * ncols;
+            MemorySegment.copy(((Grids_ChunkDoubleOffHeap) c).getData(),
+                    Grids_ChunkDoubleOffHeap.LAYOUT, 0L, MemorySegment.ofBuffer(b),
+                    getLayout(b), 0L, n);
+            b.position(b.position() + n * Double.BYTES);
+            return;
+        }
+        if (c instanceof Grids_ChunkDoubleArrayFlat) {
+            b.put(ARRAY_FLAT);
+            b.asDoubleBuffer().put(((Grids_ChunkDoubleArrayFlat) c).getData(), 0,
+                    nrows * ncols);
+            b.position(b.position() + nrows * ncols * Double.BYTES);
+            return;
+        }
+        b.put(ARRAY);
+        double[][] data = ((Grids_ChunkDoubleArray) c).getData();
+        DoubleBuffer db = b.asDoubleBuffer();
+        for (int row = 0; row < nrows; row++) {
+            db.put(data[row], 0, ncols);
+        }
+        b.position(b.position() + nrows * ncols * Double.BYTES);
+    }
+
+    @Override
+    public Grids_ChunkDouble decode(Grids_Grid g, Grids_2D_ID_int i,
+            ByteBuffer b) throws IOException {
+        Grids_GridDouble gd = (Grids_GridDouble) g;
+        byte type = b.get();
+        switch (type) {
+            case SINGLET:
+                return new Grids_ChunkDoubleSinglet(gd, i, b.getDouble());
+            case MAP: {
+                int ncols = g.getChunkNCols(i);
+                Grids_ChunkDoubleMap r = new Grids_ChunkDoubleMap(gd, i,
+                        b.getDouble());
+                int n = b.getInt();
+                int[] ps = new int[n];
+                for (int k = 0; k < n; k++) {
+                    ps[k] = b.getInt();
+                }
+                for (int k = 0; k < n; k++) {
+                    r.initCell(ps[k] / ncols, ps[k] % ncols, b.getDouble());
+                }
+                return r;
+            }
+            case ARRAY: {
+                int nrows = g.getChunkNRows(i);
+                int ncols = g.getChunkNCols(i);
+                double[][] data = new double[nrows][ncols];
+                DoubleBuffer db = b.asDoubleBuffer();
+                for (int row = 0; row < nrows; row++) {
+                    db.get(data[row]);
+                }
+                b.position(b.position() + nrows * ncols * Double.BYTES);
+                return new Grids_ChunkDoubleArray(gd, i, data);
+            }
+            case ARRAY_FLAT: {
+                int n = g.getChunkNRows(i) * g.getChunkNCols(i);
+                double[] data = new double[n];
+                b.asDoubleBuffer().get(data);
+                b.position(b.position() + n * Double.BYTES);
+                return new Grids_ChunkDoubleArrayFlat(gd, i, data);
+            }
+            case OFF_HEAP: {
+                int n = g.getChunkNRows(i) * g.getChunkNCols(i);
+                MemorySegment data = Grids_ChunkDoubleOffHeap.allocate(n);
+                MemorySegment.copy(MemorySegment.ofBuffer(b), getLayout(b),
+                        0L, data, Grids_ChunkDoubleOffHeap.LAYOUT, 0L, n);
+                b.position(b.position() + n * Double.BYTES);
+                return new Grids_ChunkDoubleOffHeap(gd, i, data);
+            }
+            default:
+                throw new IOException("Unrecognised double chunk type " + type);
+        }
+    }
+
+    /**
+     * @param b The buffer.
+     * @return The layout of the values in {@code b} which may not be
+     * aligned.
+     */
+    private static ValueLayout.OfDouble getLayout(ByteBuffer b) {
+        return ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(b.order());
+    }
+
+    /**
+     * @param m The map chunk.
+     * @param nrows The number of rows in {@code m}.
+     * @param ncols The number of columns in {@code m}.
+     * @return The number of cells in {@code m} with a value that is not the
+     * default value.
+     */
+    private static int countNotDefault(Grids_ChunkDoubleMap m, int nrows,
+            int ncols) {
+        int n = nrows * ncols;
+        return n - m.getNumberOfDefaultValues(n);
+    }
+}
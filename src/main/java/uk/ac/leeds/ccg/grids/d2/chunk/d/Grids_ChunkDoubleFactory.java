@@ -34,6 +34,14 @@ public abstract class Grids_ChunkDoubleFactory extends Grids_ChunkFactory {
      */
     protected Grids_ChunkDoubleFactory(){}
     
+    /**
+     * @return {@link Grids_ChunkDoubleCodec#INSTANCE}
+     */
+    @Override
+    public Grids_ChunkDoubleCodec getCodec() {
+        return Grids_ChunkDoubleCodec.INSTANCE;
+    }
+
     /**
      * Creates a chunk containing no data values. The chunk is put (as a value)
      * with {@code i} (as the key) into {@code g.chunkIDChunkMap}.
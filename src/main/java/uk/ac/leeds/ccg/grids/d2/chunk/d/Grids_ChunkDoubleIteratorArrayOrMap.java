@@ -35,6 +35,14 @@ public class Grids_ChunkDoubleIteratorArrayOrMap
      */
     protected double[][] data;
 
+    /**
+     * A reference to the data to iterate over if this is for a
+     * {@link Grids_ChunkDoubleArrayFlat} or a copy of the data to iterate over if
+     * this is for a {@link Grids_ChunkDoubleOffHeap} (in which case {@link #data}
+     * is {@code null}).
+     */
+    protected double[] flatData;
+
     /**
      * Create a new instance.
      * 
@@ -42,7 +50,12 @@ public class Grids_ChunkDoubleIteratorArrayOrMap
      */
     public Grids_ChunkDoubleIteratorArrayOrMap(Grids_ChunkDoubleArrayOrMap c) {
         super(c);
-        if (c instanceof Grids_ChunkDoubleArray) {
+        if (c instanceof Grids_ChunkDoubleArrayFlat) {
+            flatData = ((Grids_ChunkDoubleArrayFlat) c).getData();
+        } else if (c instanceof Grids_ChunkDoubleOffHeap) {
+            flatData = ((Grids_ChunkDoubleOffHeap) c)
+                    .toArrayIncludingNoDataValues();
+        } else if (c instanceof Grids_ChunkDoubleArray) {
             data = ((Grids_ChunkDoubleArray) c).getData();
         } else {
             data = ((Grids_ChunkDoubleMap) c).to2DDoubleArray();
@@ -56,6 +69,9 @@ public class Grids_ChunkDoubleIteratorArrayOrMap
      */
     public Double next() {
         next0();
+        if (flatData != null) {
+            return flatData[row * nCols + col];
+        }
         return data[row][col];
     }
 
@@ -63,6 +79,11 @@ public class Grids_ChunkDoubleIteratorArrayOrMap
      * Set the value to NoDataValue.
      */
     public void remove() {
+        if (flatData != null) {
+            flatData[row * nCols + col] = ((Grids_GridDouble) grid)
+                    .getNoDataValue();
+            return;
+        }
         data[row][col] = ((Grids_GridDouble) grid).getNoDataValue();
     }
 }
@@ -15,17 +15,13 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.d;
 
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
-import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkNumberMapASpatialIterator;
-import uk.ac.leeds.ccg.grids.d2.chunk.Grids_OffsetBitSet;
 
 /**
  * For iterating through the values in a Grids_GridChunkDoubleMap instance. The
- * values are not returned in any particular spatial order.
+ * values are not returned in any particular spatial order, they are returned
+ * in ascending order. No data values are not returned.
  *
  * @author Andy Turner
  * @version 1.0.0
@@ -36,54 +32,14 @@ public class Grids_ChunkDoubleIteratorMapASpatial
     private static final long serialVersionUID = 1L;
 
     /**
-     * numberOfDefaultValues
+     * The different values in ascending order.
      */
-    protected int numberOfDefaultValues;
+    protected double[] values;
 
     /**
-     * numberOfNoDataValues
+     * The number of cells with each value in {@link #values}.
      */
-    protected int numberOfNoDataValues;
-
-    /**
-     * defaultValue
-     */
-    protected double defaultValue;
-
-    /**
-     * data
-     */
-    protected Grids_ChunkDoubleMap.GridChunkDoubleMapData data;
-
-    /**
-     * dataMapBitSet
-     */
-    protected TreeMap<Double, Grids_OffsetBitSet> dataMapBitSet;
-
-    /**
-     * dataMapBitSetIte
-     */
-    protected Iterator<Double> dataMapBitSetIte;
-
-    /**
-     * dataMapBitSetValue
-     */
-    protected double dataMapBitSetValue;
-
-    /**
-     * dataMapHashSet
-     */
-    protected TreeMap<Double, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-
-    /**
-     * dataMapHashSetIte
-     */
-    protected Iterator<Double> dataMapHashSetIte;
-
-    /**
-     * dataMapHashSetValue
-     */
-    protected double dataMapHashSetValue;
+    protected int[] counts;
 
     /**
      * Create a new instance.
@@ -93,27 +49,10 @@ public class Grids_ChunkDoubleIteratorMapASpatial
     public Grids_ChunkDoubleIteratorMapASpatial(
             Grids_ChunkDoubleMap chunk) {
         super(chunk);
-        data = chunk.getData();
-        dataMapBitSet = data.dataMapBitSet;
-        dataMapHashSet = data.dataMapHashSet;
-        dataMapBitSetNumberOfValues = 0;
-        dataMapBitSetIte = dataMapBitSet.keySet().iterator();
-        if (dataMapBitSetIte.hasNext()) {
-            hasNext = true;
-            dataMapBitSetValue = dataMapBitSetIte.next();
-            dataMapBitSetNumberOfValues += dataMapBitSet.get(dataMapBitSetValue).bitSet.cardinality();
-        }
-        numberOfNoDataValues -= dataMapBitSetNumberOfValues;
-        dataMapBitSetIte = dataMapBitSet.keySet().iterator();
-        dataMapHashSetNumberOfValues = 0;
-        dataMapHashSetIte = dataMapHashSet.keySet().iterator();
-        if (dataMapHashSetIte.hasNext()) {
-            hasNext = true;
-            dataMapHashSetValue = dataMapHashSetIte.next();
-            dataMapHashSetNumberOfValues += dataMapHashSet.get(dataMapHashSetValue).size();
-        }
-        numberOfNoDataValues -= dataMapHashSetNumberOfValues;
-        dataMapHashSetIte = dataMapHashSet.keySet().iterator();
+        values = new double[chunk.getNValues() + 1];
+        counts = new int[values.length];
+        nValues = chunk.getValuesAndCounts(values, counts);
+        hasNext = nValues > 0;
     }
 
     @Override
@@ -122,48 +61,22 @@ public class Grids_ChunkDoubleIteratorMapASpatial
     }
 
     /**
-     * Returns the next element in the iteration. First all the default values
-     * are returned then all the values in DataMapBitSet, then all the values in
-     * DataMapHashSet.
+     * Returns the next element in the iteration.
      *
-     * @return the next element in the iteration or null.
+     * @return the next element in the iteration.
      * @exception NoSuchElementException iteration has no more elements.
      */
     public Double next() {
-        if (hasNext) {
-            if (defaultValueIndex == numberOfDefaultValues - 1) {
-                if (dataMapBitSetIndex == dataMapBitSetNumberOfValues - 1) {
-                    if (dataMapBitSetIte.hasNext()) {
-                        dataMapBitSetValue = dataMapBitSetIte.next();
-                        dataMapBitSetNumberOfValues = dataMapBitSet.get(dataMapBitSetValue).bitSet.cardinality();
-                        dataMapBitSetIndex = 0;
-                        return dataMapBitSetValue;
-                    } else {
-                        if (dataMapHashSetIndex == dataMapHashSetNumberOfValues - 1) {
-                            if (dataMapHashSetIte.hasNext()) {
-                                dataMapHashSetValue = dataMapHashSetIte.next();
-                                dataMapHashSetNumberOfValues = dataMapHashSet.get(dataMapHashSetValue).size();
-                                dataMapHashSetIndex = 0;
-                                return dataMapHashSetValue;
-                            } else {
-                                hasNext = false;
-                                return null;
-                            }
-                        } else {
-                            dataMapHashSetIndex++;
-                            return dataMapHashSetValue;
-                        }
-                    }
-                } else {
-                    dataMapBitSetIndex++;
-                    return dataMapBitSetValue;
-                }
-            } else {
-                defaultValueIndex++;
-                return defaultValue;
-            }
-        } else {
-            return null;
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        double r = values[valueIndex];
+        valueCountIndex++;
+        if (valueCountIndex == counts[valueIndex]) {
+            valueIndex++;
+            valueCountIndex = 0;
+            hasNext = valueIndex < nValues;
         }
+        return r;
     }
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.d;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+
+/**
+ * Grids_ChunkDouble extension that stores cell values outside of the Java heap
+ * in a {@link MemorySegment} in row major order. The value of chunk cell row
+ * {@code row}, chunk cell column {@code col} is at index
+ * {@code row * chunkNCols + col}. As the values are not on the heap, they are
+ * not copied or scanned by the garbage collector.
+ *
+ * The segment is allocated from an automatic {@link Arena} of its own, so the
+ * memory is released once the chunk has been swapped and is no longer
+ * referenced. When the chunk is cached the segment is copied in bulk (see
+ * {@link Grids_ChunkDoubleCodec}).
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkDoubleOffHeap extends Grids_ChunkDoubleArrayOrMap {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The layout of the values in {@link #data}.
+     */
+    public static final ValueLayout.OfDouble LAYOUT = ValueLayout.JAVA_DOUBLE;
+
+    /**
+     * For storing values in row major order.
+     */
+    private transient MemorySegment data;
+
+    /**
+     * Creates a new chunk filled with noDataValues.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     */
+    protected Grids_ChunkDoubleOffHeap(Grids_GridDouble g, Grids_2D_ID_int i) {
+        super(g, i);
+        initData();
+        double ndv = g.getNoDataValue();
+        long n = data.byteSize() / LAYOUT.byteSize();
+        for (long k = 0; k < n; k++) {
+            data.setAtIndex(LAYOUT, k, ndv);
+        }
+        cacheUpToDate = false;
+    }
+
+    /**
+     * Creates a new instance with {@link #data} set to {@code data}.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @param data What {@link #data} is set to. This is not copied and must
+     * have space for at least chunkNRows * chunkNCols values.
+     */
+    protected Grids_ChunkDoubleOffHeap(Grids_GridDouble g, Grids_2D_ID_int i,
+            MemorySegment data) {
+        super(g, i);
+        this.data = data;
+        cacheUpToDate = false;
+    }
+
+    /**
+     * @param c The chunk that's values will be duplicated.
+     * @param i The chunk ID.
+     */
+    protected Grids_ChunkDoubleOffHeap(Grids_ChunkDouble c, Grids_2D_ID_int i) {
+        super(c.getGrid(), i);
+        initData();
+        if (c instanceof Grids_ChunkDoubleArrayFlat
+                && c.getChunkNCols() == chunkNCols
+                && c.getChunkNRows() == chunkNRows) {
+            MemorySegment.copy(((Grids_ChunkDoubleArrayFlat) c).getData(), 0,
+                    data, LAYOUT, 0L, chunkNRows * chunkNCols);
+        } else if (c instanceof Grids_ChunkDoubleOffHeap
+                && c.getChunkNCols() == chunkNCols
+                && c.getChunkNRows() == chunkNRows) {
+            MemorySegment.copy(((Grids_ChunkDoubleOffHeap) c).getData(), 0L,
+                    data, 0L, data.byteSize());
+        } else {
+            long k = 0;
+            for (int row = 0; row < chunkNRows; row++) {
+                for (int col = 0; col < chunkNCols; col++) {
+                    data.setAtIndex(LAYOUT, k, c.getCell(row, col));
+                    k++;
+                }
+            }
+        }
+        cacheUpToDate = false;
+    }
+
+    /**
+     * @param n The number of values.
+     * @return A new segment for {@code n} values allocated from a new
+     * automatic arena.
+     */
+    public static MemorySegment allocate(int n) {
+        return Arena.ofAuto().allocate(LAYOUT.byteSize() * n,
+                LAYOUT.byteAlignment());
+    }
+
+    /**
+     * Initialises {@link #data}.
+     */
+    @Override
+    protected final void initData() {
+        data = allocate(chunkNRows * chunkNCols);
+    }
+
+    /**
+     * @return {@link #data}.
+     */
+    protected MemorySegment getData() {
+        return data;
+    }
+
+    /**
+     * Sets {@link #data} to {@code null}. The memory is released once it is
+     * no longer referenced.
+     */
+    @Override
+    protected void clearData() {
+        data = null;
+    }
+
+    /**
+     * @return {@link #OBJECT} plus the number of bytes of {@link #data} which
+     * are outside the Java heap.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : data.byteSize());
+    }
+
+    /**
+     * @param row The row index of the cell w.r.t. the origin of this chunk.
+     * @param col The column index of the cell w.r.t. the origin of this chunk.
+     * @return The value at position given by: chunk cell row {@code row}; chunk
+     * cell column {@code col}.
+     */
+    @Override
+    public double getCell(int row, int col) {
+        return data.getAtIndex(LAYOUT, (long) row * chunkNCols + col);
+    }
+
+    /**
+     * Initialises the value at position given by: row, col.
+     *
+     * @param row The row index of the cell w.r.t. the origin of this chunk.
+     * @param col The column index of the cell w.r.t. the origin of this chunk.
+     * @param v The value initialised.
+     */
+    @Override
+    public void initCell(int row, int col, double v) {
+        data.setAtIndex(LAYOUT, (long) row * chunkNCols + col, v);
+        summary = null;
+    }
+
+    /**
+     * Sets the value at position given by: chunk cell row {@code row}; chunk
+     * cell row {@code col} to {@code v}.
+     *
+     * @param row The row index of the cell w.r.t. the origin of this chunk.
+     * @param col The column index of the cell w.r.t. the origin of this chunk.
+     * @param v The value set.
+     * @return The value at position given by: chunk cell row {@code row};
+     * chunk cell row {@code col} prior to it being set to {@code v}.
+     */
+    @Override
+    public double setCell(int row, int col, double v) {
+        long k = (long) row * chunkNCols + col;
+        double oldValue = data.getAtIndex(LAYOUT, k);
+        data.setAtIndex(LAYOUT, k, v);
+        summary = null;
+        if (isCacheUpToDate()) {
+            if (v != oldValue) {
+                setCacheUpToDate(false);
+            }
+        }
+        return oldValue;
+    }
+
+    /**
+     * Copies the values in chunk cell row {@code row} into {@code dst}.
+     *
+     * @param row The chunk cell row.
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} of the first value copied.
+     */
+    public void getRow(int row, double[] dst, int off) {
+        MemorySegment.copy(data, LAYOUT, (long) row * chunkNCols
+                * LAYOUT.byteSize(), dst, off, chunkNCols);
+    }
+
+    /**
+     * Sets the values in chunk cell row {@code row} from {@code src}.
+     *
+     * @param row The chunk cell row.
+     * @param src The array to copy from.
+     * @param off The index in {@code src} of the first value copied.
+     */
+    public void setRow(int row, double[] src, int off) {
+        MemorySegment.copy(src, off, data, LAYOUT, (long) row * chunkNCols
+                * LAYOUT.byteSize(), chunkNCols);
+        summary = null;
+        setCacheUpToDate(false);
+    }
+
+    /**
+     * Copies all the values in row major order into {@code dst}.
+     *
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} of the first value copied.
+     */
+    public void copyTo(double[] dst, int off) {
+        MemorySegment.copy(data, LAYOUT, 0L, dst, off,
+                chunkNRows * chunkNCols);
+    }
+
+    /**
+     * @return All the values including noDataValue's in row major order as a
+     * double[].
+     */
+    @Override
+    public double[] toArrayIncludingNoDataValues() {
+        double[] r = new double[chunkNRows * chunkNCols];
+        copyTo(r, 0);
+        return r;
+    }
+
+    /**
+     * @return An iterator for iterating over the cells in this.
+     */
+    public Grids_ChunkDoubleIteratorArrayOrMap iterator() {
+        return new Grids_ChunkDoubleIteratorArrayOrMap(this);
+    }
+
+    @Override
+    public Double getMin(boolean update) {
+        double noDataValue = getGrid().getNoDataValue();
+        double r = Double.POSITIVE_INFINITY;
+        long n = (long) chunkNRows * chunkNCols;
+        for (long k = 0; k < n; k++) {
+            double v = data.getAtIndex(LAYOUT, k);
+            if (v != noDataValue) {
+                r = Math.min(r, v);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public Double getMax(boolean update) {
+        double noDataValue = getGrid().getNoDataValue();
+        double r = Double.NEGATIVE_INFINITY;
+        long n = (long) chunkNRows * chunkNCols;
+        for (long k = 0; k < n; k++) {
+            double v = data.getAtIndex(LAYOUT, k);
+            if (v != noDataValue) {
+                r = Math.max(r, v);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Writes the values of {@link #data} as a double[] after the other
+     * fields.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If encountered.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(toArrayIncludingNoDataValues());
+    }
+
+    /**
+     * Reads the fields and copies the values into a new {@link #data}.
+     *
+     * @param in The stream to read from.
+     * @throws IOException If encountered.
+     * @throws ClassNotFoundException If encountered.
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        double[] vs = (double[]) in.readObject();
+        data = allocate(vs.length);
+        MemorySegment.copy(vs, 0, data, LAYOUT, 0L, vs.length);
+    }
+}
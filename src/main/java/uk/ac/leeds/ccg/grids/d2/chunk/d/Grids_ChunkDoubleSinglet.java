@@ -18,6 +18,7 @@ package uk.ac.leeds.ccg.grids.d2.chunk.d;
 import ch.obermuhlner.math.big.BigRational;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsDoubleSummary;
 
 /**
  * Grids_ChunkDouble extension for which all values are the same.
@@ -62,6 +63,14 @@ public class Grids_ChunkDoubleSinglet extends Grids_ChunkDouble {
     protected void clearData() {
     }
 
+    /**
+     * @return {@link #OBJECT} as the value is held in a field.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT;
+    }
+
     /**
      * Beware OutOfMemoryErrors being thrown if calling this method.
      *
@@ -74,6 +83,19 @@ public class Grids_ChunkDoubleSinglet extends Grids_ChunkDouble {
         return v;
     }
 
+    /**
+     * @param exact If {@code true} then the summary has an exact sum.
+     * @return A new summary of the finite data values.
+     */
+    @Override
+    protected Grids_StatsDoubleSummary computeSummary(boolean exact) {
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(exact);
+        if (v != getGrid().getNoDataValue() && Double.isFinite(v)) {
+            r.add(v, (long) chunkNRows * (long) chunkNCols);
+        }
+        return r;
+    }
+
     /**
      * Returns the v at position given by: row, col and sets it to valueToSet.
      *
@@ -15,6 +15,7 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.i;
 
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
 import java.util.Arrays;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
@@ -51,6 +52,20 @@ public class Grids_ChunkIntArray extends Grids_ChunkIntArrayOrMap {
         cacheUpToDate = false;
     }
 
+    /**
+     * Creates a new instance with {@link #data} set to {@code data}.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @param data What {@link #data} is set to. This is not copied.
+     */
+    protected Grids_ChunkIntArray(Grids_GridInt g, Grids_2D_ID_int i,
+            int[][] data) {
+        super(g, i);
+        this.data = data;
+        cacheUpToDate = false;
+    }
+
     /**
      * @param c The chunk that's values will be duplicated.
      * @param i The chunk ID.
@@ -90,6 +105,16 @@ public class Grids_ChunkIntArray extends Grids_ChunkIntArrayOrMap {
         //System.gc();
     }
 
+    /**
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #data}.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT + (data == null ? 0L : Grids_ChunkOptimizer.getArraySize(chunkNRows, chunkNCols,
+                Integer.BYTES));
+    }
+
     /**
      * @param row The row.
      * @param col The column.
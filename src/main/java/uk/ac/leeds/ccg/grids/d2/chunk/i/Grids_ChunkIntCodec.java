@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.i;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+
+/**
+ * A codec for {@link Grids_ChunkIntArray}, {@link Grids_ChunkIntArrayFlat},
+ * {@link Grids_ChunkIntOffHeap}, {@link Grids_ChunkIntMap} and
+ * {@link Grids_ChunkIntSinglet} instances. The payload starts with a byte
+ * indicating the type of chunk. For an array, flat array or off heap chunk
+ * this is followed by the values in row major order. The values of an off
+ * heap chunk are copied in bulk between its memory segment and the buffer.
+ * For a map chunk this is followed by: the
+ * default value; the number of cells with values that are not the default
+ * value; the positions (row major) of those cells; and, the values of those
+ * cells. For a singlet chunk this is followed by the value.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkIntCodec extends Grids_ChunkCodec {
+
+    /**
+     * The identifier of this codec.
+     */
+    public static final int ID = 2;
+
+    /**
+     * The codec instance.
+     */
+    public static final Grids_ChunkIntCodec INSTANCE
+            = new Grids_ChunkIntCodec();
+
+    /**
+     * Indicates an array chunk.
+     */
+    protected static final byte ARRAY = 0;
+
+    /**
+     * Indicates a map chunk.
+     */
+    protected static final byte MAP = 1;
+
+    /**
+     * Indicates a singlet chunk.
+     */
+    protected static final byte SINGLET = 2;
+
+    /**
+     * Indicates a flat array chunk.
+     */
+    protected static final byte ARRAY_FLAT = 3;
+
+    /**
+     * Indicates an off heap chunk.
+     */
+    protected static final byte OFF_HEAP = 4;
+
+    /**
+     * Create a new instance.
+     */
+    protected Grids_ChunkIntCodec() {
+        super(ID);
+    }
+
+    @Override
+    public Class<?>[] getChunkClasses() {
+        return new Class<?>[]{
+                Grids_ChunkIntArray.class,
+                Grids_ChunkIntArrayFlat.class,
+                Grids_ChunkIntOffHeap.class,
+                Grids_ChunkIntMap.class,
+                Grids_ChunkIntSinglet.class};
+    }
+
+    @Override
+    public int getPayloadSize(Grids_Chunk c) {
+        if (c instanceof Grids_ChunkIntSinglet) {
+            return 1 + Integer.BYTES;
+        }
+        int nrows = c.getChunkNRows();
+        int ncols = c.getChunkNCols();
+        if (c instanceof Grids_ChunkIntMap) {
+            int n = countNotDefault((Grids_ChunkIntMap) c, nrows, ncols);
+            return 1 + Integer.BYTES + Integer.BYTES
+                    + n * (Integer.BYTES + Integer.BYTES);
+        }
+        return 1 + nrows * ncols * Integer.BYTES;
+    }
+
+    @Override
+    public int getValueSize(byte type) {
+        if (type == ARRAY || type == ARRAY_FLAT || type == OFF_HEAP) {
+            return Integer.BYTES;
+        }
+        return 0;
+    }
+
+    @Override
+    public int getArraySize(int nrows, int ncols) {
+        return HEADER_SIZE + 1 + nrows * ncols * Integer.BYTES;
+    }
+
+    @Override
+    public void encode(Grids_Chunk c, ByteBuffer b) {
+        if (c instanceof Grids_ChunkIntSinglet) {
+            b.put(SINGLET);
+            b.putInt(((Grids_ChunkIntSinglet) c).getV());
+            return;
+        }
+        int nrows = c.getChunkNRows();
+        int ncols = c.getChunkNCols();
+        if (c instanceof Grids_ChunkIntMap) {
+            Grids_ChunkIntMap m = (Grids_ChunkIntMap) c;
+            b.put(MAP);
+            int dv = m.defaultValue;
+            b.putInt(dv);
+            int n = countNotDefault(m, nrows, ncols);
+            b.putInt(n);
+            int[] vs = new int[n];
+            int k = 0;
+            for (int row = 0; row < nrows; row++) {
+                for (int col = 0; col < ncols; col++) {
+                    int v = m.getCell(row, col);
+                    if (v != dv) {
+                        b.putInt(row * ncols + col);
+                        vs[k] = v;
+                        k++;
+                    }
+                }
+            }
+            for (int v : vs) {
+                b.putInt(v);
+            }
+            return;
+        }
+        if (c instanceof Grids_ChunkIntOffHeap) {
+            b.put(OFF_HEAP);
+            int n = nrows * ncols;
+            MemorySegment.copy(((Grids_ChunkIntOffHeap) c).getData(),
+                    Grids_ChunkIntOffHeap.LAYOUT, 0L, MemorySegment.ofBuffer(b),
+                    getLayout(b), 0L, n);
+            b.position(b.position() + n * Integer.BYTES);
+            return;
+        }
+        if (c instanceof Grids_ChunkIntArrayFlat) {
+            b.put(ARRAY_FLAT);
+            b.asIntBuffer().put(((Grids_ChunkIntArrayFlat) c).getData(), 0,
+                    nrows * ncols);
+            b.position(b.position() + nrows * ncols * Integer.BYTES);
+            return;
+        }
+        b.put(ARRAY);
+        int[][] data = ((Grids_ChunkIntArray) c).getData();
+        IntBuffer db = b.asIntBuffer();
+        for (int row = 0; row < nrows; row++) {
+            db.put(data[row], 0, ncols);
+        }
+        b.position(b.position() + nrows * ncols * Integer.BYTES);
+    }
+
+    @Override
+    public Grids_ChunkInt decode(Grids_Grid g, Grids_2D_ID_int i,
+            ByteBuffer b) throws IOException {
+        Grids_GridInt gd = (Grids_GridInt) g;
+        byte type = b.get();
+        switch (type) {
+            case SINGLET:
+                return new Grids_ChunkIntSinglet(gd, i, b.getInt());
+            case MAP: {
+                int ncols = g.getChunkNCols(i);
+                Grids_ChunkIntMap r = new Grids_ChunkIntMap(gd, i,
+                        b.getInt());
+                int n = b.getInt();
+                int[] ps = new int[n];
+                for (int k = 0; k < n; k++) {
+                    ps[k] = b.getInt();
+                }
+                for (int k = 0; k < n; k++) {
+                    r.initCell(ps[k] / ncols, ps[k] % ncols, b.getInt());
+                }
+                return r;
+            }
+            case ARRAY: {
+                int nrows = g.getChunkNRows(i);
+                int ncols = g.getChunkNCols(i);
+                int[][] data = new int[nrows][ncols];
+                IntBuffer db = b.asIntBuffer();
+                for (int row = 0; row < nrows; row++) {
+                    db.get(data[row]);
+                }
+                b.position(b.position() + nrows * ncols * Integer.BYTES);
+                return new Grids_ChunkIntArray(gd, i, data);
+            }
+            case ARRAY_FLAT: {
+                int n = g.getChunkNRows(i) * g.getChunkNCols(i);
+                int[] data = new int[n];
+                b.asIntBuffer().get(data);
+                b.position(b.position() + n * Integer.BYTES);
+                return new Grids_ChunkIntArrayFlat(gd, i, data);
+            }
+            case OFF_HEAP: {
+                int n = g.getChunkNRows(i) * g.getChunkNCols(i);
+                MemorySegment data = Grids_ChunkIntOffHeap.allocate(n);
+                MemorySegment.copy(MemorySegment.ofBuffer(b), getLayout(b),
+                        0L, data, Grids_ChunkIntOffHeap.LAYOUT, 0L, n);
+                b.position(b.position() + n * Integer.BYTES);
+                return new Grids_ChunkIntOffHeap(gd, i, data);
+            }
+            default:
+                throw new IOException("Unrecognised int chunk type " + type);
+        }
+    }
+
+    /**
+     * @param b The buffer.
+     * @return The layout of the values in {@code b} which may not be
+     * aligned.
+     */
+    private static ValueLayout.OfInt getLayout(ByteBuffer b) {
+        return ValueLayout.JAVA_INT_UNALIGNED.withOrder(b.order());
+    }
+
+    /**
+     * @param m The map chunk.
+     * @param nrows The number of rows in {@code m}.
+     * @param ncols The number of columns in {@code m}.
+     * @return The number of cells in {@code m} with a value that is not the
+     * default value.
+     */
+    private static int countNotDefault(Grids_ChunkIntMap m, int nrows,
+            int ncols) {
+        int n = nrows * ncols;
+        return n - m.getNumberOfDefaultValues(n);
+    }
+}
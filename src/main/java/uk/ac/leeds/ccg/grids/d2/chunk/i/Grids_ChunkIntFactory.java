@@ -34,6 +34,14 @@ public abstract class Grids_ChunkIntFactory extends Grids_ChunkFactory {
      */
     protected Grids_ChunkIntFactory(){}
     
+    /**
+     * @return {@link Grids_ChunkIntCodec#INSTANCE}
+     */
+    @Override
+    public Grids_ChunkIntCodec getCodec() {
+        return Grids_ChunkIntCodec.INSTANCE;
+    }
+
     /**
      * Creates a chunk containing no data values. The chunk is put (as a value)
      * with {@code i} (as the key) into {@code g.chunkIDChunkMap}.
@@ -35,6 +35,14 @@ public class Grids_ChunkIntIteratorArrayOrMap
      */
     protected int[][] data;
 
+    /**
+     * A reference to the data to iterate over if this is for a
+     * {@link Grids_ChunkIntArrayFlat} or a copy of the data to iterate over if
+     * this is for a {@link Grids_ChunkIntOffHeap} (in which case {@link #data}
+     * is {@code null}).
+     */
+    protected int[] flatData;
+
     /**
      * Create a new instance.
      * 
@@ -42,7 +50,12 @@ public class Grids_ChunkIntIteratorArrayOrMap
      */
     public Grids_ChunkIntIteratorArrayOrMap(Grids_ChunkIntArrayOrMap c) {
         super(c);
-        if (c instanceof Grids_ChunkIntArray) {
+        if (c instanceof Grids_ChunkIntArrayFlat) {
+            flatData = ((Grids_ChunkIntArrayFlat) c).getData();
+        } else if (c instanceof Grids_ChunkIntOffHeap) {
+            flatData = ((Grids_ChunkIntOffHeap) c)
+                    .toArrayIncludingNoDataValues();
+        } else if (c instanceof Grids_ChunkIntArray) {
             data = ((Grids_ChunkIntArray) c).getData();
         } else {
             data = ((Grids_ChunkIntMap) c).to2DIntArray();
@@ -56,6 +69,9 @@ public class Grids_ChunkIntIteratorArrayOrMap
      */
     public Integer next() {
         next0();
+        if (flatData != null) {
+            return flatData[row * nCols + col];
+        }
         return data[row][col];
     }
 
@@ -63,6 +79,11 @@ public class Grids_ChunkIntIteratorArrayOrMap
      * Set value to NoDataValue.
      */
     public void remove() {
+        if (flatData != null) {
+            flatData[row * nCols + col] = ((Grids_GridInt) grid)
+                    .getNoDataValue();
+            return;
+        }
         data[row][col] = ((Grids_GridInt) grid).getNoDataValue();
     }
 }
@@ -15,45 +15,38 @@
  */
 package uk.ac.leeds.ccg.grids.d2.chunk.i;
 
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import ch.obermuhlner.math.big.BigRational;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
-import uk.ac.leeds.ccg.grids.d2.chunk.Grids_OffsetBitSet;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkMapIndex;
 import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
 
 /**
- * Stores cell values in: a TreeMap with keys as cell values and values as
- * BitSets giving their locations; a TreeMap with keys as cell values and values
- * as a HashSet&LT;Grids_2D_ID_int&GT; giving the locations of these values.
- * There is a default value for all values that are not in these maps and that
- * are not no data values. The locations of no data values are given in a
- * BitSet. The complexity of this data store allows for some efficiencies in
- * statistical calculations and storage all depending on the distribution and
- * commonalities in the data values. Until all the data is read in and processed
- * it is not known how is the best way to store it for speed and efficiency. If
- * the chunk values are mutable and do not change it is perhaps worth changing
- * into an efficient data storage in terms of what is stored in each map and
- * what the default value is. It may also be worth considering changing to a
- * different chunk altogether. The class might be improved with the use of more
- * efficient and lightweight collections that might be available from third
- * parties.
+ * Stores cell values that are not {@link #defaultValue} in a
+ * {@link Grids_ChunkMapIndex} which maps the position of each such cell
+ * ({@code row * chunkNCols + col}) to a slot in {@link #values}. Each
+ * different value is stored once and the number of cells with each value is
+ * kept in the index. The slots are also kept in ascending order of value in
+ * {@link #order}, so the number of cells with a value, the minimum, maximum,
+ * sum, mode, median and standard deviation are calculated from the different
+ * values and their counts rather than from every cell. No data values are
+ * stored like any other value.
+ *
+ * A cell costs two ints in the index, so this is most efficient if the
+ * default value is the most common value and there are not many cells with
+ * other values. If this is not the case it may be worth changing to a
+ * different chunk altogether.
  *
  * In the past GNU Trove was used as it provided a stable lightweight
  * collections framework that was appropriate for storing primitive maps in this
- * and associated classes. The Eclipse Collections Framework was considered as a
- * replacement for GNU Trove. GNU Trove worked well, but I decided to remove
- * this dependency at a time of rationalising the Grids library in 2017. The
- * rationalisation involved reducing dependencies generally. This
- * rationalisation also removed a dependency on JAI which was used to provide an
- * alternative storage for chunks.
+ * and associated classes. This dependency was removed at a time of
+ * rationalising the Grids library in 2017.
  *
  * @author Andy Turner
  * @version 1.0.0
@@ -65,8 +58,7 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
     /**
      * A value initialised with grid that can be used to optimise storage.
      * Storage is optimised with the defaultValue set to the most common value.
-     * The location of all DefaultValues can be calculated from the converse of
-     * the intersection of NoData, InDataMapHashSet and InDataMapBitSet.
+     * The cells with the default value are those not in {@link #index}.
      */
     public int defaultValue;
 
@@ -76,24 +68,26 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
     private final int noDataValue;
 
     /**
-     * Identifies the locations of all noDataValues.
+     * For indexing the cells with values that are not {@link #defaultValue}.
      */
-    private BitSet noData;
+    protected Grids_ChunkMapIndex index;
 
     /**
-     * Identifies which cells are stored in dataMapHashSet.
+     * The different values indexed by slot.
      */
-    private BitSet inDataMapHashSet;
+    protected int[] values;
 
     /**
-     * Identifies which cells are stored in dataMapBitSet.
+     * The slots of the different values in ascending order of value. Only the
+     * first {@link #nValues} are used.
      */
-    private BitSet inDataMapBitSet;
+    protected int[] order;
 
     /**
-     * For storing the data of this chunk.
+     * The number of different values in {@link #values} which is the number of
+     * slots in use.
      */
-    private GridChunkIntMapData data;
+    protected int nValues;
 
     /**
      * {@link #defaultValue} is set to {@code 0}.
@@ -128,7 +122,8 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      * @param i The chunkID.
      * @param dv The default value.
      */
-    protected Grids_ChunkIntMap(Grids_ChunkInt c, Grids_2D_ID_int i, int dv) {
+    protected Grids_ChunkIntMap(Grids_ChunkInt c, Grids_2D_ID_int i,
+            int dv) {
         super(c.getGrid(), i);
         defaultValue = dv;
         noDataValue = getGrid().getNoDataValue();
@@ -139,106 +134,51 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
                 initCell(row, col, value);
             }
         }
-        this.cacheUpToDate = false;
+        cacheUpToDate = false;
     }
 
     /**
-     * Initialises {@link #data}.
+     * Initialises {@link #index}, {@link #values} and {@link #order}.
      */
     @Override
     protected final void initData() {
-        data = new GridChunkIntMapData(new TreeMap<>(), new TreeMap<>());
-        noData = new BitSet(chunkNCols * chunkNRows);
-        inDataMapHashSet = new BitSet(chunkNCols * chunkNRows);
-        inDataMapBitSet = new BitSet(chunkNCols * chunkNRows);
+        index = new Grids_ChunkMapIndex();
+        values = new int[index.getSlotsLength()];
+        order = new int[values.length];
+        nValues = 0;
     }
 
     /**
-     * @return {@link #data}.
+     * Sets {@link #index}, {@link #values} and {@link #order} to {@code null}.
      */
-    protected GridChunkIntMapData getData() {
-        return data;
+    @Override
+    protected void clearData() {
+        index = null;
+        values = null;
+        order = null;
+        //System.gc();
     }
 
     /**
-     * Sets {@link #data} to {@code null}.
+     * @return {@link #OBJECT} plus the estimated number of bytes of
+     * {@link #index}, {@link #values} and {@link #order}.
      */
     @Override
-    protected void clearData() {
-        data = null;
-        //System.gc();
+    public long getSize() {
+        return OBJECT + (index == null ? 0L : index.getSize()
+                + Grids_ChunkOptimizer.getArraySize(values.length, Integer.BYTES)
+                + Grids_ChunkOptimizer.getArraySize(order.length, Integer.BYTES));
     }
 
     /**
-     * @return Values as a double[][] indexed by row and column.
+     * @return Values as an int[][] indexed by row and column.
      */
     int[][] to2DIntArray() {
-        Grids_GridInt g = getGrid();
-        int nrows = g.getChunkNRows(id);
-        int ncols = g.getChunkNCols(id);
-        int ndv = g.getNoDataValue();
-        int[][] r = new int[nrows][ncols];
-        Arrays.fill(r, defaultValue);
-        /**
-         * Mask
-         */
-        int i = 0;
-        for (int row = 0; row < nrows; row++) {
-            for (int col = 0; col < ncols; col++) {
-                if (noData.get(i)) {
-                    r[row][col] = ndv;
-                }
-                i++;
-            }
-        }
-        Iterator<Integer> ite;
-        /**
-         * Populate result with all mappings from data.DataMapBitSet.
-         */
-        TreeMap<Integer, Grids_OffsetBitSet> dataMapBitSet;
-        dataMapBitSet = data.dataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        int row = 0;
-        int col = 0;
-        while (ite.hasNext()) {
-            Integer value = ite.next();
-            Grids_OffsetBitSet offsetBitSet = dataMapBitSet.get(value);
-            BitSet bitSet = offsetBitSet.bitSet;
-            int offset = offsetBitSet.offset;
-            int bitSetLength = bitSet.length();
-            for (i = 0; i < offset; i++) {
-                col++;
-                if (col == ncols - 1) {
-                    row++;
-                    col = 0;
-                }
-            }
-            for (i = offset; i < bitSetLength + offset; i++) {
-                col++;
-                if (col == ncols - 1) {
-                    row++;
-                    col = 0;
-                }
-                if (bitSet.get(i)) {
-                    r[row][col] = value;
-                }
-            }
-        }
-        /**
-         * Populate result with all mappings from data.DataMapHashSet.
-         */
-        TreeMap<Integer, HashSet<Grids_2D_ID_int>> m = data.dataMapHashSet;
-        ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            Integer value = ite.next();
-            Iterator<Grids_2D_ID_int> ite2 = m.get(value).iterator();
-            while (ite2.hasNext()) {
-                Grids_2D_ID_int i2 = ite2.next();
-                row = i2.getRow();
-                col = i2.getCol();
-                r[row][col] = value;
-            }
+        int[][] r = new int[chunkNRows][chunkNCols];
+        for (int[] row : r) {
+            Arrays.fill(row, defaultValue);
         }
+        index.forEach((p, s) -> r[p / chunkNCols][p % chunkNCols] = values[s]);
         return r;
     }
 
@@ -247,44 +187,9 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     protected int[] toArrayIncludingNoDataValues() {
-        Grids_GridInt g = getGrid();
-        int nrows = g.getChunkNRows(id);
-        int ncols = g.getChunkNCols(id);
-        int[] r = new int[nrows * ncols];
-        Arrays.fill(r, g.getNoDataValue());
-        Iterator<Integer> ite;
-        /**
-         * Populate result with all mappings from data.DataMapBitSet.
-         */
-        TreeMap<Integer, Grids_OffsetBitSet> dataMapBitSet = data.dataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            Integer v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = dataMapBitSet.get(v);
-            int offset = offsetBitSet.offset;
-            BitSet bitSet = offsetBitSet.bitSet;
-            int bitSetLength = bitSet.length();
-            for (int i = 0; i < bitSetLength; i++) {
-                if (bitSet.get(i)) {
-                    r[i + offset] = v;
-                }
-            }
-        }
-        /**
-         * Populate result with all mappings from data.DataMapHashSet.
-         */
-        TreeMap<Integer, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-        dataMapHashSet = data.dataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            Integer v = ite.next();
-            HashSet<Grids_2D_ID_int> cellIDs = dataMapHashSet.get(v);
-            Iterator<Grids_2D_ID_int> ite2 = cellIDs.iterator();
-            while (ite2.hasNext()) {
-                Grids_2D_ID_int cellID = ite2.next();
-                r[(cellID.getRow() * chunkNCols) + cellID.getCol()] = v;
-            }
-        }
+        int[] r = new int[chunkNRows * chunkNCols];
+        Arrays.fill(r, defaultValue);
+        index.forEach((p, s) -> r[p] = values[s]);
         return r;
     }
 
@@ -293,53 +198,13 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     protected int[] toArrayNotIncludingNoDataValues() {
-        int[] r;
-        Iterator<Integer> ite;
-        TreeMap<Integer, Grids_OffsetBitSet> dataMapBitSet;
-        TreeMap<Integer, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-        /**
-         * Count all mappings and initialise result;
-         */
+        int[] a = toArrayIncludingNoDataValues();
+        int[] r = new int[getN().intValue()];
         int n = 0;
-        // Count from data.dataMapBitSet.
-        dataMapBitSet = data.dataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            n += dataMapBitSet.get(ite.next()).bitSet.cardinality();
-        }
-        // Count from data.dataMapBitSet.
-        dataMapHashSet = data.dataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            n += dataMapHashSet.get(ite.next()).size();
-        }
-        r = new int[n];
-        /**
-         * Populate result with all mappings from data.DataMapBitSet.
-         */
-        dataMapBitSet = data.dataMapBitSet;
-        ite = dataMapBitSet.keySet().iterator();
-        int i;
-        n = 0;
-        while (ite.hasNext()) {
-            Integer value = ite.next();
-            Grids_OffsetBitSet offsetBitSet = dataMapBitSet.get(value);
-            for (i = 0; i < offsetBitSet.bitSet.cardinality(); i++) {
+        for (int v : a) {
+            if (v != noDataValue) {
+                r[n] = v;
                 n++;
-                r[n] = value;
-            }
-        }
-        /**
-         * Populate result with all mappings from data.DataMapHashSet.
-         */
-        dataMapHashSet = data.dataMapHashSet;
-        ite = dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            Integer value = ite.next();
-            HashSet<Grids_2D_ID_int> cellIDs = dataMapHashSet.get(value);
-            for (i = 0; i < cellIDs.size(); i++) {
-                n++;
-                r[n] = value;
             }
         }
         return r;
@@ -353,80 +218,18 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     public int getCell(int row, int col) {
-        int position = (row * chunkNCols) + col;
-        if (noData.get(position)) {
-            return noDataValue;
-        } else if (inDataMapBitSet.get(position)) {
-            int r = getCell(position);
-            if (r != noDataValue) {
-                return r;
-            }
-        } else if (inDataMapHashSet.get(position)) {
-            int r = getCell(new Grids_2D_ID_int(row, col));
-            if (r != noDataValue) {
-                return r;
-            }
-        }
-        return defaultValue;
+        int s = index.getSlot(row * chunkNCols + col);
+        return s == Grids_ChunkMapIndex.NONE ? defaultValue : values[s];
     }
 
     /**
      * @param row The row index of the cell w.r.t. the origin of this chunk.
      * @param col The column index of the cell w.r.t. the origin of this chunk.
-     * @param i The cell ID.
+     * @param i The cell ID. This is not needed.
      * @return The value at position given by: row, col.
      */
     protected int getCell(int row, int col, Grids_2D_ID_int i) {
-        int pos = (row * chunkNCols) + col;
-        if (noData.get(pos)) {
-            return noDataValue;
-        } else if (inDataMapBitSet.get(pos)) {
-            int r = getCell(pos);
-            if (r != noDataValue) {
-                return r;
-            }
-        } else if (inDataMapHashSet.get(pos)) {
-            int r = getCell(i);
-            if (r != noDataValue) {
-                return r;
-            }
-        }
-        return defaultValue;
-    }
-
-    /**
-     * Look in data.dataMapBitSet.
-     */
-    private int getCell(int position) {
-        TreeMap<Integer, Grids_OffsetBitSet> m = data.dataMapBitSet;
-        Iterator<Integer> ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = m.get(v);
-            BitSet bitSet = offsetBitSet.bitSet;
-            int pos = position - offsetBitSet.offset;
-            if (pos > 0 && pos < bitSet.length()) {
-                if (bitSet.get(pos)) {
-                    return v;
-                }
-            }
-        }
-        return noDataValue;
-    }
-
-    /**
-     * Look in data.dataMapHashSet.
-     */
-    private int getCell(Grids_2D_ID_int cellID) {
-        TreeMap<Integer, HashSet<Grids_2D_ID_int>> m = data.dataMapHashSet;
-        Iterator<Integer> ite = m.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            if (m.get(v).contains(cellID)) {
-                return v;
-            }
-        }
-        return noDataValue;
+        return getCell(row, col);
     }
 
     /**
@@ -439,7 +242,7 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     public final void initCell(int row, int col, int v) {
-        initCell(row, col, new Grids_2D_ID_int(row, col), v);
+        set(row * chunkNCols + col, v);
     }
 
     /**
@@ -448,51 +251,11 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      *
      * @param row The row index of the cell w.r.t. the origin of this chunk.
      * @param col The column index of the cell w.r.t. the origin of this chunk.
-     * @param i The cell ID of the cell to be initialised.
+     * @param i The cell ID of the cell to be initialised. This is not needed.
      * @param v The value with which the cell is initialised.
      */
     protected void initCell(int row, int col, Grids_2D_ID_int i, int v) {
-        if (v != defaultValue) {
-            int ndv = getGrid().getNoDataValue();
-            int pos = (row * chunkNCols) + col;
-            if (v == ndv) {
-                noData.set(pos);
-            } else {
-                /**
-                 * Look in data.DataMapBitSet;
-                 */
-                TreeMap<Integer, Grids_OffsetBitSet> m = data.dataMapBitSet;
-                if (m.containsKey(v)) {
-                    Grids_OffsetBitSet offsetBitSet = m.get(v);
-                    BitSet bitSet = offsetBitSet.bitSet;
-                    bitSet.set(pos);
-                    inDataMapBitSet.set(pos);
-                } else {
-                    TreeMap<Integer, HashSet<Grids_2D_ID_int>> m2
-                            = data.dataMapHashSet;
-                    if (m2.containsKey(v)) {
-                        m2.get(v).add(i);
-                        inDataMapHashSet.set(pos);
-                    } else {
-                        /**
-                         * If the chunk is looking sparse so far then add to
-                         * dataMapHashSet, otherwise add to dataMapBitSet
-                         */
-                        if ((pos - noData.cardinality()) / (double) pos < 0.5) {
-                            HashSet<Grids_2D_ID_int> s = new HashSet<>();
-                            s.add(i);
-                            m2.put(v, s);
-                            inDataMapHashSet.set(pos);
-                        } else {
-                            Grids_OffsetBitSet offsetBitSet = new Grids_OffsetBitSet(pos);
-                            offsetBitSet.bitSet.set(0);
-                            m.put(v, offsetBitSet);
-                            inDataMapBitSet.set(pos);
-                        }
-                    }
-                }
-            }
-        }
+        set(row * chunkNCols + col, v);
     }
 
     /**
@@ -507,147 +270,174 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     public int setCell(int row, int col, int v) {
-        return setCell(row, col, new Grids_2D_ID_int(row, col), v);
+        int r = set(row * chunkNCols + col, v);
+        if (r != v) {
+            if (isCacheUpToDate()) {
+                setCacheUpToDate(false);
+            }
+        }
+        return r;
     }
 
     /**
-     * Returns the value at position given by: chunk cell row row; chunk cell
-     * column col and sets it to value.
+     * Returns the value at position given by: row, col and sets it to
+     * {@code v}.
      *
      * @param row The chunk row.
      * @param col The chunk column.
-     * @param i The chunk cell ID of the cell to be initialised.
+     * @param i The chunk cell ID of the cell to be initialised. This is not
+     * needed.
      * @param v The value the cell is to be set to.
      * @return The value at position given by: row, col before it is set to
      * {@code v}.
      */
     protected int setCell(int row, int col, Grids_2D_ID_int i, int v) {
-        int r = getCell(row, col, i);
+        return setCell(row, col, v);
+    }
+
+    /**
+     * Sets the value of the cell at position {@code p} to {@code v}.
+     *
+     * @param p The position of the cell.
+     * @param v The value.
+     * @return The value of the cell before it is set to {@code v}.
+     */
+    private int set(int p, int v) {
+        int s0 = index.getSlot(p);
+        int r = s0 == Grids_ChunkMapIndex.NONE ? defaultValue : values[s0];
         if (r == v) {
             return r;
         }
+        int s = Grids_ChunkMapIndex.NONE;
         if (v != defaultValue) {
-            int pos = (row * chunkNCols) + col;
-            if (v == noDataValue) {
-                noData.set(pos);
-                if (r == defaultValue) {
-                    return defaultValue;
-                } else if (inDataMapBitSet.get(pos)) {
-                    TreeMap<Integer, Grids_OffsetBitSet> m = data.dataMapBitSet;
-                    Grids_OffsetBitSet offsetBitSet = m.get(r);
-                    BitSet bitSet = offsetBitSet.bitSet;
-                    bitSet.flip(pos);
-                    if (bitSet.cardinality() == 0) {
-                        m.remove(r);
-                    }
-                    return r;
-                } else {
-                    TreeMap<Integer, HashSet<Grids_2D_ID_int>> m2
-                            = data.dataMapHashSet;
-                    HashSet<Grids_2D_ID_int> s = m2.get(r);
-                    s.remove(i);
-                    if (s.isEmpty()) {
-                        m2.remove(r);
-                    }
-                    return r;
-                }
+            s = getSlot(v);
+        }
+        index.setSlot(p, s);
+        if (s0 != Grids_ChunkMapIndex.NONE && index.getCount(s0) == 0) {
+            int k = search(r);
+            nValues--;
+            System.arraycopy(order, k + 1, order, k, nValues - k);
+            index.freeSlot(s0);
+        }
+        return r;
+    }
+
+    /**
+     * @param v The value to search for.
+     * @return The index of {@code v} in {@link #order} or
+     * {@code (-(insertion point) - 1)} if it is not there.
+     */
+    private int search(int v) {
+        int lo = 0;
+        int hi = nValues - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Integer.compare(values[order[mid]], v);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
             } else {
-                if (r == defaultValue) {
-                    TreeMap<Integer, Grids_OffsetBitSet> m2 = data.dataMapBitSet;
-                    if (m2.containsKey(v)) {
-                        Grids_OffsetBitSet offsetBitSet = m2.get(v);
-                        BitSet bitSet = offsetBitSet.bitSet;
-                        bitSet.set(pos);
-                        inDataMapHashSet.set(pos);
-                        return r;
-                    } else {
-                        TreeMap<Integer, HashSet<Grids_2D_ID_int>> m3
-                                = data.dataMapHashSet;
-                        if (m3.containsKey(v)) {
-                            HashSet<Grids_2D_ID_int> s = m3.get(v);
-                            s.add(i);
-                            inDataMapHashSet.set(pos);
-                            return r;
-                        } else {
-                            Grids_OffsetBitSet offsetBitSet = new Grids_OffsetBitSet(pos);
-                            offsetBitSet.bitSet.set(0);
-                            m2.put(v, offsetBitSet);
-                            inDataMapBitSet.set(pos);
-                            return r;
-                        }
-                    }
-                } else {
-                    // result is a value
-                    TreeMap<Integer, Grids_OffsetBitSet> m2 = data.dataMapBitSet;
-                    if (m2.containsKey(v)) {
-                        Grids_OffsetBitSet offsetBitSet;
-                        BitSet bitSet;
-                        // Remove result.
-                        if (m2.containsKey(r)) {
-                            offsetBitSet = m2.get(v);
-                            bitSet = offsetBitSet.bitSet;
-                            bitSet.flip(pos);
-                            if (bitSet.cardinality() == 0) {
-                                m2.remove(r);
-                            }
-                        }
-                        // Add valueToSet.
-                        offsetBitSet = m2.get(v);
-                        bitSet = offsetBitSet.bitSet;
-                        bitSet.set(pos);
-                        return r;
-                    } else {
-                        TreeMap<Integer, HashSet<Grids_2D_ID_int>> m3
-                                = data.dataMapHashSet;
-                        if (m3.containsKey(v)) {
-                            HashSet<Grids_2D_ID_int> s;
-                            // Remove result.
-                            s = m3.get(r);
-                            s.remove(i);
-                            if (s.isEmpty()) {
-                                m3.remove(r);
-                            }
-                            // Add valueToSet
-                            s = m3.get(v);
-                            s.add(i);
-                            return r;
-                        } else {
-//                            /**
-//                             * If the chunk is sparse then add to
-//                             * dataMapHashSet, otherwise add to dataMapBitSet
-//                             */
-//                            double sparseness;
-//                            sparseness = (InDataMapHashSet.cardinality()
-//                                    + InDataMapBitSet.cardinality())
-//                                    / (double) (chunkNRows * chunkNCols);
-//                            if (sparseness < 0.5) {
-//                                HashSet<Grids_2D_ID_int> s = new HashSet<>();
-//                                s.add(chunkCellID);
-//                                dataMapHashSet.put(valueToSet, s);
-//                                InDataMapHashSet.set(position);
-//                            } else {
-//                                Grids_OffsetBitSet offsetBitSet;
-//                                offsetBitSet = new Grids_OffsetBitSet(position);
-//                                offsetBitSet.bitSet.set(0);
-//                                dataMapBitSet.put(valueToSet, offsetBitSet);
-//                                InDataMapBitSet.set(position);
-//                            }
-                            // Regardless of sparseness add to dataMapBitSet
-                            Grids_OffsetBitSet offsetBitSet;
-                            offsetBitSet = new Grids_OffsetBitSet(pos);
-                            offsetBitSet.bitSet.set(0);
-                            m2.put(v, offsetBitSet);
-                            inDataMapBitSet.set(pos);
-                            return r;
-                        }
-                    }
-                }
+                return mid;
             }
         }
-        if (isCacheUpToDate()) {
-            setCacheUpToDate(false);
+        return -(lo + 1);
+    }
+
+    /**
+     * @param v The value.
+     * @return The slot of {@code v} which is allocated if {@code v} is not
+     * already one of {@link #values}.
+     */
+    private int getSlot(int v) {
+        int k = search(v);
+        if (k >= 0) {
+            return order[k];
         }
-        return r;
+        k = -(k + 1);
+        int s = index.newSlot();
+        if (index.getSlotsLength() > values.length) {
+            values = Arrays.copyOf(values, index.getSlotsLength());
+            order = Arrays.copyOf(order, values.length);
+        }
+        values[s] = v;
+        System.arraycopy(order, k, order, k + 1, nValues - k);
+        order[k] = s;
+        nValues++;
+        return s;
+    }
+
+    /**
+     * @return The number of different values other than {@link #defaultValue}
+     * (which may include the noDataValue).
+     */
+    protected int getNValues() {
+        return nValues;
+    }
+
+    /**
+     * @param k The index of the value in ascending order of value.
+     * @return The {@code k}th smallest value other than {@link #defaultValue}.
+     */
+    protected int getValue(int k) {
+        return values[order[k]];
+    }
+
+    /**
+     * @param k The index of the value in ascending order of value.
+     * @return The number of cells with the {@code k}th smallest value other
+     * than {@link #defaultValue}.
+     */
+    protected int getCount(int k) {
+        return index.getCount(order[k]);
+    }
+
+    /**
+     * @param v The value.
+     * @return The number of cells with value {@code v}.
+     */
+    protected int getValueCount(int v) {
+        if (v == defaultValue) {
+            return getNumberOfDefaultValues(chunkNRows * chunkNCols);
+        }
+        int k = search(v);
+        return k < 0 ? 0 : getCount(k);
+    }
+
+    /**
+     * For getting the different data values and the number of cells with
+     * each. The no data value is excluded.
+     *
+     * @param vs The array to put the values in (in ascending order). This must
+     * have a length of at least {@code getNValues() + 1}.
+     * @param cs The array to put the number of cells with each value in. This
+     * must have a length of at least {@code getNValues() + 1}.
+     * @return The number of different values.
+     */
+    protected int getValuesAndCounts(int[] vs, int[] cs) {
+        int nd = getNumberOfDefaultValues(chunkNRows * chunkNCols);
+        boolean addDefault = nd > 0 && defaultValue != noDataValue;
+        int n = 0;
+        for (int k = 0; k < nValues; k++) {
+            int v = getValue(k);
+            if (addDefault && defaultValue < v) {
+                vs[n] = defaultValue;
+                cs[n] = nd;
+                n++;
+                addDefault = false;
+            }
+            if (v != noDataValue) {
+                vs[n] = v;
+                cs[n] = getCount(k);
+                n++;
+            }
+        }
+        if (addDefault) {
+            vs[n] = defaultValue;
+            cs[n] = nd;
+            n++;
+        }
+        return n;
     }
 
     /**
@@ -655,7 +445,7 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     public Long getN() {
-        return ((long) chunkNRows * (long) chunkNCols) - noData.cardinality();
+        return ((long) chunkNRows * (long) chunkNCols) - getValueCount(noDataValue);
     }
 
     /**
@@ -663,12 +453,7 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      * @return The number of cell values equal to {@link #defaultValue}.
      */
     public int getNumberOfDefaultValues(int n) {
-        BitSet s = new BitSet(n);
-        s.flip(0, n - 1);
-        s.and(inDataMapHashSet);
-        s.or(inDataMapBitSet);
-        s.xor(noData);
-        return n - s.cardinality();
+        return n - index.size();
     }
 
     /**
@@ -677,33 +462,27 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
     @Override
     public BigRational getSum() {
         int n = chunkNRows * chunkNCols;
-        return getSum(n, getNumberOfDefaultValues(n));
+        int numberOfDefaultValues = getNumberOfDefaultValues(n);
+        return getSum(n, numberOfDefaultValues);
     }
 
     /**
-     * Get the sum of all values as a BigDecimal.
      * @param n n
      * @param numberOfDefaultValues numberOfDefaultValues
-     * @return The sum of all values as a BigDecimal.
+     * @return Sum of all values as a BigDecimal.
      */
     protected BigRational getSum(int n, int numberOfDefaultValues) {
         BigRational r = BigRational.ZERO;
-        r = r.add(BigRational.valueOf(defaultValue)
-                .multiply(BigRational.valueOf(numberOfDefaultValues)));
-        /**
-         * Add from data.DataMapBitSet;
-         */
-        for (Integer v : data.dataMapBitSet.keySet()) {
-            Grids_OffsetBitSet offsetBitSet = data.dataMapBitSet.get(v);
-            n = offsetBitSet.bitSet.size();
-            r = r.add(BigRational.valueOf(v).multiply(BigRational.valueOf(n)));
-        }
-        /**
-         * Add from data.DataMapHashSet.
-         */
-        for(Integer v : data.dataMapHashSet.keySet()) {
-            n = data.dataMapHashSet.get(v).size();
-            r = r.add(BigRational.valueOf(v).multiply(BigRational.valueOf(n)));
+        if (defaultValue != noDataValue) {
+            r = r.add(BigRational.valueOf(defaultValue)
+                    .multiply(BigRational.valueOf(numberOfDefaultValues)));
+        }
+        for (int k = 0; k < nValues; k++) {
+            int v = getValue(k);
+            if (v != noDataValue) {
+                r = r.add(BigRational.valueOf(v).multiply(
+                        BigRational.valueOf(getCount(k))));
+            }
         }
         return r;
     }
@@ -713,16 +492,9 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     public Integer getMin() {
-        int min;
-        int n = chunkNRows * chunkNCols;
-        if (getNumberOfDefaultValues(n) > 0) {
-            min = defaultValue;
-        } else {
-            min = Integer.MIN_VALUE;
-        }
-        min = Math.min(min, data.dataMapBitSet.firstKey());
-        min = Math.min(min, data.dataMapHashSet.firstKey());
-        return min;
+        int[] vs = new int[nValues + 1];
+        int n = getValuesAndCounts(vs, new int[vs.length]);
+        return n == 0 ? Integer.MAX_VALUE : vs[0];
     }
 
     /**
@@ -730,148 +502,90 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      */
     @Override
     public Integer getMax() {
-        int max;
-        int n = chunkNRows * chunkNCols;
-        if (getNumberOfDefaultValues(n) > 0) {
-            max = defaultValue;
-        } else {
-            max = Integer.MIN_VALUE;
-        }
-        max = Math.max(max, data.dataMapBitSet.lastKey());
-        max = Math.max(max, data.dataMapHashSet.lastKey());
-        return max;
+        int[] vs = new int[nValues + 1];
+        int n = getValuesAndCounts(vs, new int[vs.length]);
+        return n == 0 ? Integer.MIN_VALUE : vs[n - 1];
     }
 
     /**
-     * @return The mode of all data values.
+     * @return The mode.
      */
     @Override
     protected HashSet<Integer> getMode() {
         HashSet<Integer> mode = new HashSet<>();
-        int n = chunkNCols * chunkNRows;
-        int numberOfDefaultValues = getNumberOfDefaultValues(n);
-        int numberOfMostCommonValue = numberOfDefaultValues;
-        mode.add(defaultValue);
-        Iterator<Integer> ite = data.dataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            Grids_OffsetBitSet offsetBitSet = data.dataMapBitSet.get(v);
-            int numberOfValues = offsetBitSet.bitSet.cardinality();
-            if (numberOfValues < numberOfMostCommonValue) {
-                mode = new HashSet<>();
-                mode.add(v);
-            } else if (numberOfValues == numberOfMostCommonValue) {
-                mode.add(v);
-            }
-        }
-        ite = data.dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            int numberOfValues = data.dataMapHashSet.get(v).size();
-            if (numberOfValues < numberOfMostCommonValue) {
-                mode = new HashSet<>();
-                mode.add(v);
-            } else if (numberOfValues == numberOfMostCommonValue) {
-                mode.add(v);
+        int[] vs = new int[nValues + 1];
+        int[] cs = new int[vs.length];
+        int n = getValuesAndCounts(vs, cs);
+        int modeCount = 0;
+        for (int k = 0; k < n; k++) {
+            if (cs[k] > modeCount) {
+                mode.clear();
+                mode.add(vs[k]);
+                modeCount = cs[k];
+            } else if (cs[k] == modeCount) {
+                mode.add(vs[k]);
             }
         }
         return mode;
     }
 
     /**
-     * @return The median of all data values.
+     * @return The median.
      */
     @Override
     public double getMedian() {
-        TreeMap<Integer, Integer> valueCount = new TreeMap<>();
-        int n = chunkNCols * chunkNRows;
-        int numberOfDefaultValues = getNumberOfDefaultValues(n);
-        valueCount.put(defaultValue, numberOfDefaultValues);
-        Iterator<Integer> ite;
-        ite = data.dataMapBitSet.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            valueCount.put(v, data.dataMapBitSet.get(v).bitSet.cardinality());
-        }
-        ite = data.dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            valueCount.put(v, data.dataMapHashSet.get(v).size());
-        }
-        long nonNoDataValueCount = getN();
-        if (nonNoDataValueCount > 0) {
-            if (nonNoDataValueCount % 2L == 0L) {
-                // Need arithmetic mean of ( ( nonNoDataValueCount / 2 ) - 1 )th
-                // and ( nonNoDataValueCount / 2 )th values
-                long requiredIndex = (nonNoDataValueCount / 2L) - 1L;
-                int i = 0;
-                ite = valueCount.keySet().iterator();
-                while (ite.hasNext()) {
-                    int v = ite.next();
-                    i += valueCount.get(v);
-                    if (i > requiredIndex && i > requiredIndex + 1) {
-                        return v;
-                    } else {
-                        return (v + ite.next()) / 2.0d;
-                    }
-                }
+        int[] vs = new int[nValues + 1];
+        int[] cs = new int[vs.length];
+        int n = getValuesAndCounts(vs, cs);
+        long nv = getN();
+        if (nv > 0) {
+            if (nv % 2L == 0L) {
+                // Need arithmetic mean of ( ( nv / 2 ) - 1 )th and ( nv / 2 )th
+                // values
+                return ((double) getValue(vs, cs, n, (nv / 2L) - 1L)
+                        + getValue(vs, cs, n, nv / 2L)) / 2.0d;
             } else {
-                // Need ( ( nonNoDataValueCount ) / 2 )th value
-                long requiredIndex = nonNoDataValueCount / 2L;
-                int i = 0;
-                ite = valueCount.keySet().iterator();
-                while (ite.hasNext()) {
-                    int v = ite.next();
-                    i += valueCount.get(v);
-                    if (i > requiredIndex) {
-                        return v;
-                    }
-                }
+                // Need ( nv / 2 )th value
+                return getValue(vs, cs, n, nv / 2L);
             }
         }
         return getGrid().getNoDataValue();
     }
 
     /**
-     * @param oom The Order of Magnitude for the precision.
-     * @return The standard deviation of all data values.
+     * @param vs The values in ascending order.
+     * @param cs The number of cells with each value.
+     * @param n The number of values.
+     * @param i The index.
+     * @return The {@code i}th value if all the values were in ascending order.
      */
+    private static int getValue(int[] vs, int[] cs, int n, long i) {
+        long c = 0;
+        for (int k = 0; k < n; k++) {
+            c += cs[k];
+            if (c > i) {
+                return vs[k];
+            }
+        }
+        return vs[n - 1];
+    }
+
     @Override
     protected BigDecimal getStandardDeviation(int oom, RoundingMode rm) {
         BigRational r = BigRational.ZERO;
         BigRational mean = getArithmeticMean();
-        // Calculate the number of default values
-        int n = chunkNRows * chunkNCols;
-        int nValues = getNumberOfDefaultValues(n);
-        r = r.add((BigRational.valueOf(defaultValue).subtract(mean).pow(2))
-                .multiply(BigRational.valueOf(nValues)));
-        Iterator<Integer> ite;
-        /**
-         * Add from data.DataMapBitSet;
-         */
-        ite = data.dataMapBitSet.keySet().iterator();
-        Grids_OffsetBitSet offsetBitSet;
-        while (ite.hasNext()) {
-            int v = ite.next();
-            offsetBitSet = data.dataMapBitSet.get(v);
-            n = offsetBitSet.bitSet.size();
-            nValues += n;
-            r = r.add((BigRational.valueOf(v).subtract(mean).pow(2))
-                    .multiply(BigRational.valueOf(n)));
-        }
-        /**
-         * Add from data.DataMapHashSet.
-         */
-        ite = data.dataMapHashSet.keySet().iterator();
-        while (ite.hasNext()) {
-            int v = ite.next();
-            n = data.dataMapHashSet.get(v).size();
-            nValues += n;
-            r = r.add((BigRational.valueOf(v).subtract(mean).pow(2))
-                    .multiply(BigRational.valueOf(n)));
-        }
-        if ((nValues - 1) > 0) {
-            return new Math_BigRationalSqrt(r.divide(nValues - 1), oom, rm).toBigDecimal(oom, rm);
+        int[] vs = new int[nValues + 1];
+        int[] cs = new int[vs.length];
+        int n = getValuesAndCounts(vs, cs);
+        long count = 0;
+        for (int k = 0; k < n; k++) {
+            r = r.add((BigRational.valueOf(vs[k]).subtract(mean).pow(2))
+                    .multiply(BigRational.valueOf(cs[k])));
+            count += cs[k];
+        }
+        if ((count - 1L) > 0L) {
+            return new Math_BigRationalSqrt(r.divide(
+                    BigInteger.valueOf(count - 1L)), oom, rm).toBigDecimal(oom, rm);
         } else {
             return BigDecimal.ZERO;
         }
@@ -881,8 +595,8 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
      * @return The number of different values.
      */
     protected BigInteger getDiversityBigInteger() {
-        return BigInteger.valueOf(data.dataMapBitSet.size()
-                + data.dataMapHashSet.size() + 1);
+        int[] vs = new int[nValues + 1];
+        return BigInteger.valueOf(getValuesAndCounts(vs, new int[vs.length]));
     }
 
     /**
@@ -894,52 +608,11 @@ public class Grids_ChunkIntMap extends Grids_ChunkIntArrayOrMap {
 
     @Override
     public Integer getMin(boolean update) {
-        int min = Integer.MIN_VALUE;
-        if (defaultValue != noDataValue) {
-            min = Math.min(min, defaultValue);
-        }
-        min = Math.min(min, data.dataMapBitSet.firstKey());
-        min = Math.min(min, data.dataMapHashSet.firstKey());
-        return min;
+        return getMin();
     }
 
     @Override
     public Integer getMax(boolean update) {
-        int max = Integer.MIN_VALUE;
-        if (defaultValue != noDataValue) {
-            max = Math.max(max, defaultValue);
-        }
-        max = Math.max(max, data.dataMapBitSet.lastKey());
-        max = Math.max(max, data.dataMapHashSet.lastKey());
-        return max;
-    }
-
-    /**
-     * Simple inner class for wrapping an int and a BitSet.
-     */
-    public class GridChunkIntMapData {
-
-        /**
-         * For more common values.
-         */
-        public final TreeMap<Integer, Grids_OffsetBitSet> dataMapBitSet;
-
-        /**
-         * For less common and more distributed values.
-         */
-        public final TreeMap<Integer, HashSet<Grids_2D_ID_int>> dataMapHashSet;
-
-        /**
-         * Create a new instance.
-         * @param dataMapBitSet What {@link #dataMapBitSet} is set to.
-         * @param dataMapHashSet What {@link #dataMapHashSet} is set to. 
-         */
-        public GridChunkIntMapData(
-                TreeMap<Integer, Grids_OffsetBitSet> dataMapBitSet,
-                TreeMap<Integer, HashSet<Grids_2D_ID_int>> dataMapHashSet) {
-            this.dataMapBitSet = dataMapBitSet;
-            this.dataMapHashSet = dataMapHashSet;
-        }
+        return getMax();
     }
-
 }
@@ -62,6 +62,14 @@ public class Grids_ChunkIntSinglet extends Grids_ChunkInt {
     protected void clearData() {
     }
 
+    /**
+     * @return {@link #OBJECT} as the value is held in a field.
+     */
+    @Override
+    public long getSize() {
+        return OBJECT;
+    }
+
     @Override
     public int getCell(int row, int col) {
         return v;
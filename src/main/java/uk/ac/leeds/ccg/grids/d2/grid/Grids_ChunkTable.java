@@ -0,0 +1,621 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+
+/**
+ * A map of chunks indexed by chunk ID which is backed by flat arrays indexed
+ * by {@code chunkRow * nChunkCols + chunkCol}. As with a map, a chunk ID can
+ * be mapped to {@code null} which indicates that the chunk is not in the fast
+ * access memory. Getting a chunk by chunk row and chunk column (see
+ * {@link #get(int, int)}) neither allocates nor compares chunk IDs.
+ *
+ * The table grows as needed to fit the chunk IDs put in it. Iteration is in
+ * the natural order of {@link Grids_2D_ID_int} (which is the order in which a
+ * {@link java.util.TreeMap} would iterate). The chunk IDs put in the table are
+ * retained and are returned by the key iterator and {@link #getID(int, int)}.
+ *
+ * The table is safe for use by multiple threads. Gets do not lock and see the
+ * latest {@link #table}. Changes are made whilst holding the lock on this
+ * table. Iteration is weakly consistent as with a
+ * {@link java.util.concurrent.ConcurrentHashMap}: it never throws a
+ * {@link java.util.ConcurrentModificationException} and may or may not
+ * reflect changes made after the iterator was created.
+ *
+ * The table keeps a running total of the sizes of the chunks in it (see
+ * {@link Grids_Chunk#getSize()}). The size of a chunk is recorded when it is
+ * put in the table and can be recorded again with
+ * {@link #updateSize(Grids_2D_ID_int)} after it has changed.
+ *
+ * If {@link #grid} is set, then it is told each time a chunk ID that was
+ * mapped to {@code null} is mapped to a chunk (see
+ * {@link Grids_Grid#loaded(Grids_2D_ID_int)}) and each time a chunk ID that
+ * was mapped to a chunk is mapped to {@code null} or removed (see
+ * {@link Grids_Grid#evicted(Grids_2D_ID_int)}). This is so the eviction
+ * policy can keep track of which chunks are in the fast access memory.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkTable extends AbstractMap<Grids_2D_ID_int, Grids_Chunk>
+        implements ConcurrentMap<Grids_2D_ID_int, Grids_Chunk>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The dimensions and arrays of the table. This is replaced when the table
+     * is resized.
+     */
+    protected volatile Table table;
+
+    /**
+     * The number of chunk IDs in the table.
+     */
+    protected volatile int size;
+
+    /**
+     * The sum of the recorded sizes of the chunks in the table in bytes.
+     */
+    protected volatile long bytes;
+
+    /**
+     * The grid to tell when chunks are loaded and evicted. May be
+     * {@code null}.
+     */
+    protected transient Grids_Grid grid;
+
+    /**
+     * Creates a new empty table.
+     */
+    public Grids_ChunkTable() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates a new empty table with space for {@code nChunkRows} chunk rows
+     * and {@code nChunkCols} chunk columns.
+     *
+     * @param nChunkRows The number of chunk rows.
+     * @param nChunkCols The number of chunk columns.
+     */
+    public Grids_ChunkTable(int nChunkRows, int nChunkCols) {
+        table = new Table(nChunkRows, nChunkCols);
+    }
+
+    /**
+     * Creates a new empty table with space for {@code nChunkRows} chunk rows
+     * and {@code nChunkCols} chunk columns.
+     *
+     * @param g What {@link #grid} is set to.
+     * @param nChunkRows The number of chunk rows.
+     * @param nChunkCols The number of chunk columns.
+     */
+    public Grids_ChunkTable(Grids_Grid g, int nChunkRows, int nChunkCols) {
+        this(nChunkRows, nChunkCols);
+        grid = g;
+    }
+
+    /**
+     * Sets {@link #grid} to {@code g} and tells {@code g} about the chunks
+     * already in the table. The bytes of the table are moved from the
+     * resident bytes of any previous grid to those of {@code g}.
+     *
+     * @param g What {@link #grid} is set to.
+     */
+    public synchronized void setGrid(Grids_Grid g) {
+        Grids_Grid g0 = grid;
+        if (g0 != null) {
+            g0.addResidentBytes(-bytes);
+        }
+        grid = g;
+        if (g != null) {
+            g.addResidentBytes(bytes);
+            Table t = table;
+            for (int k = 0; k < t.ids.length(); k++) {
+                Grids_2D_ID_int i = t.ids.get(k);
+                if (i != null && t.chunks.get(k) != null) {
+                    g.loaded(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@link #grid}
+     */
+    public Grids_Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * @param k The key.
+     * @return The chunk ID {@code k} or {@code null} if {@code k} is not a
+     * chunk ID.
+     */
+    private static Grids_2D_ID_int id(Object k) {
+        if (k instanceof Grids_2D_ID_int) {
+            return (Grids_2D_ID_int) k;
+        }
+        return null;
+    }
+
+    /**
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     * @return The chunk in chunk row {@code cr}, chunk column {@code cc} or
+     * {@code null} if there is no such chunk in the table.
+     */
+    public final Grids_Chunk get(int cr, int cc) {
+        Table t = table;
+        int k = t.index(cr, cc);
+        if (k < 0) {
+            return null;
+        }
+        return t.chunks.get(k);
+    }
+
+    /**
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     * @return The chunk ID for chunk row {@code cr}, chunk column {@code cc}
+     * that is in the table or {@code null} if there is no such chunk ID in the
+     * table.
+     */
+    public final Grids_2D_ID_int getID(int cr, int cc) {
+        Table t = table;
+        int k = t.index(cr, cc);
+        if (k < 0) {
+            return null;
+        }
+        return t.ids.get(k);
+    }
+
+    /**
+     * @return The number of chunk rows in the table.
+     */
+    public final int getNChunkRows() {
+        return table.nChunkRows;
+    }
+
+    /**
+     * @return The number of chunk columns in the table.
+     */
+    public final int getNChunkCols() {
+        return table.nChunkCols;
+    }
+
+    @Override
+    public Grids_Chunk get(Object k) {
+        Grids_2D_ID_int i = id(k);
+        if (i == null) {
+            return null;
+        }
+        return get(i.getRow(), i.getCol());
+    }
+
+    @Override
+    public boolean containsKey(Object k) {
+        Grids_2D_ID_int i = id(k);
+        return i != null && getID(i.getRow(), i.getCol()) != null;
+    }
+
+    /**
+     * Resizes the table if needed to fit {@code i} and returns the index of
+     * {@code i}. This must only be called whilst holding the lock on this.
+     *
+     * @param i The chunk ID.
+     * @return The index of {@code i} in {@link #table}.
+     */
+    private int fit(Grids_2D_ID_int i) {
+        int cr = i.getRow();
+        int cc = i.getCol();
+        if (cr < 0 || cc < 0) {
+            throw new IllegalArgumentException("Negative chunk ID " + i);
+        }
+        Table t = table;
+        if (cr >= t.nChunkRows || cc >= t.nChunkCols) {
+            resize(Math.max(cr + 1, t.nChunkRows),
+                    Math.max(cc + 1, t.nChunkCols));
+            t = table;
+        }
+        return cr * t.nChunkCols + cc;
+    }
+
+    /**
+     * Maps the chunk ID at index {@code k} of {@link #table} to {@code c}.
+     * This must only be called whilst holding the lock on this.
+     *
+     * @param k The index.
+     * @param i The chunk ID.
+     * @param c The chunk.
+     * @return The chunk that was mapped to the chunk ID.
+     */
+    private Grids_Chunk setAt(int k, Grids_2D_ID_int i, Grids_Chunk c) {
+        Table t = table;
+        if (t.ids.get(k) == null) {
+            t.ids.set(k, i);
+            size++;
+        }
+        long b = c == null ? 0L : c.getSize();
+        addBytes(b - t.sizes.getAndSet(k, b));
+        Grids_Chunk r = t.chunks.getAndSet(k, c);
+        Grids_Grid g = grid;
+        if (g != null) {
+            if (r == null && c != null) {
+                g.loaded(i);
+            } else if (r != null && c == null) {
+                g.evicted(i);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public synchronized Grids_Chunk put(Grids_2D_ID_int i, Grids_Chunk c) {
+        return setAt(fit(i), i, c);
+    }
+
+    @Override
+    public synchronized Grids_Chunk putIfAbsent(Grids_2D_ID_int i,
+            Grids_Chunk c) {
+        int k = fit(i);
+        Grids_Chunk r = table.chunks.get(k);
+        if (r == null) {
+            setAt(k, i, c);
+        }
+        return r;
+    }
+
+    @Override
+    public synchronized Grids_Chunk replace(Grids_2D_ID_int i, Grids_Chunk c) {
+        if (containsKey(i)) {
+            return setAt(fit(i), i, c);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized boolean replace(Grids_2D_ID_int i, Grids_Chunk c0,
+            Grids_Chunk c) {
+        if (containsKey(i) && get(i) == c0) {
+            setAt(fit(i), i, c);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized Grids_Chunk remove(Object k) {
+        Grids_2D_ID_int i = id(k);
+        if (i == null) {
+            return null;
+        }
+        Table t = table;
+        int x = t.index(i.getRow(), i.getCol());
+        if (x < 0 || t.ids.get(x) == null) {
+            return null;
+        }
+        return removeAt(x);
+    }
+
+    @Override
+    public synchronized boolean remove(Object k, Object c) {
+        if (containsKey(k) && get(k) == c) {
+            remove(k);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This must only be called whilst holding the lock on this.
+     *
+     * @param k The index of the chunk ID to remove.
+     * @return The chunk that was mapped to the chunk ID.
+     */
+    private Grids_Chunk removeAt(int k) {
+        Table t = table;
+        Grids_2D_ID_int i = t.ids.getAndSet(k, null);
+        size--;
+        addBytes(-t.sizes.getAndSet(k, 0L));
+        Grids_Chunk r = t.chunks.getAndSet(k, null);
+        Grids_Grid g = grid;
+        if (g != null && r != null) {
+            g.evicted(i);
+        }
+        return r;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Table t = table;
+        table = new Table(t.nChunkRows, t.nChunkCols);
+        size = 0;
+        addBytes(-bytes);
+        evicted(t, 0, 0);
+    }
+
+    /**
+     * Tells {@link #grid} that the chunks in {@code t} outside the first
+     * {@code rows} chunk rows or the first {@code cols} chunk columns have
+     * been evicted.
+     *
+     * @param t The table.
+     * @param rows The number of chunk rows retained.
+     * @param cols The number of chunk columns retained.
+     */
+    private void evicted(Table t, int rows, int cols) {
+        Grids_Grid g = grid;
+        if (g == null) {
+            return;
+        }
+        for (int cr = 0; cr < t.nChunkRows; cr++) {
+            for (int cc = 0; cc < t.nChunkCols; cc++) {
+                if (cr >= rows || cc >= cols) {
+                    int k = cr * t.nChunkCols + cc;
+                    Grids_2D_ID_int i = t.ids.get(k);
+                    if (i != null && t.chunks.get(k) != null) {
+                        g.evicted(i);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds {@code d} to {@link #bytes} and tells {@link #grid}. This must
+     * only be called whilst holding the lock on this.
+     *
+     * @param d The change in the number of bytes.
+     */
+    private void addBytes(long d) {
+        bytes += d;
+        Grids_Grid g = grid;
+        if (g != null) {
+            g.addResidentBytes(d);
+        }
+    }
+
+    /**
+     * @return {@link #bytes}
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Records the size of the chunk with chunk ID {@code i} again. This is
+     * for when the chunk has changed in a way that may have changed its
+     * size.
+     *
+     * @param i The chunk ID.
+     * @return The change in {@link #bytes}.
+     */
+    public synchronized long updateSize(Grids_2D_ID_int i) {
+        Table t = table;
+        int k = t.index(i.getRow(), i.getCol());
+        if (k < 0) {
+            return 0L;
+        }
+        Grids_Chunk c = t.chunks.get(k);
+        long b = c == null ? 0L : c.getSize();
+        long d = b - t.sizes.getAndSet(k, b);
+        addBytes(d);
+        return d;
+    }
+
+    /**
+     * Resizes the table to have {@code nChunkRows} chunk rows and
+     * {@code nChunkCols} chunk columns. Any mappings outside the new
+     * dimensions are removed.
+     *
+     * @param nChunkRows The number of chunk rows.
+     * @param nChunkCols The number of chunk columns.
+     */
+    public final synchronized void resize(int nChunkRows, int nChunkCols) {
+        Table t = table;
+        Table t2 = new Table(nChunkRows, nChunkCols);
+        int n = 0;
+        long b = 0L;
+        int rows = Math.min(nChunkRows, t.nChunkRows);
+        int cols = Math.min(nChunkCols, t.nChunkCols);
+        for (int cr = 0; cr < rows; cr++) {
+            for (int cc = 0; cc < cols; cc++) {
+                int k = cr * t.nChunkCols + cc;
+                Grids_2D_ID_int i = t.ids.get(k);
+                if (i != null) {
+                    int k2 = cr * nChunkCols + cc;
+                    t2.ids.set(k2, i);
+                    t2.chunks.set(k2, t.chunks.get(k));
+                    t2.sizes.set(k2, t.sizes.get(k));
+                    b += t.sizes.get(k);
+                    n++;
+                }
+            }
+        }
+        table = t2;
+        size = n;
+        addBytes(b - bytes);
+        evicted(t, rows, cols);
+    }
+
+    @Override
+    public Set<Map.Entry<Grids_2D_ID_int, Grids_Chunk>> entrySet() {
+        return new AbstractSet<Map.Entry<Grids_2D_ID_int, Grids_Chunk>>() {
+
+            @Override
+            public Iterator<Map.Entry<Grids_2D_ID_int, Grids_Chunk>> iterator() {
+                return new Iterator<Map.Entry<Grids_2D_ID_int, Grids_Chunk>>() {
+
+                    /**
+                     * The table being iterated over.
+                     */
+                    final Table t = table;
+
+                    /**
+                     * The index of the next entry.
+                     */
+                    int next = t.ids.length() - 1;
+
+                    /**
+                     * The next entry.
+                     */
+                    Map.Entry<Grids_2D_ID_int, Grids_Chunk> e = advance();
+
+                    /**
+                     * The chunk ID of the last entry returned.
+                     */
+                    Grids_2D_ID_int last;
+
+                    /**
+                     * @return The entry at the greatest index less than or
+                     * equal to {@link #next} that has a chunk ID or
+                     * {@code null}.
+                     */
+                    private Map.Entry<Grids_2D_ID_int, Grids_Chunk> advance() {
+                        while (next >= 0) {
+                            int k = next--;
+                            Grids_2D_ID_int i = t.ids.get(k);
+                            if (i != null) {
+                                return new AbstractMap.SimpleEntry<Grids_2D_ID_int, Grids_Chunk>(
+                                        i, t.chunks.get(k)) {
+
+                                    private static final long serialVersionUID = 1L;
+
+                                    @Override
+                                    public Grids_Chunk setValue(Grids_Chunk c) {
+                                        super.setValue(c);
+                                        return replace(getKey(), c);
+                                    }
+                                };
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return e != null;
+                    }
+
+                    @Override
+                    public Map.Entry<Grids_2D_ID_int, Grids_Chunk> next() {
+                        if (e == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<Grids_2D_ID_int, Grids_Chunk> r = e;
+                        last = r.getKey();
+                        e = advance();
+                        return r;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        Grids_ChunkTable.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * The dimensions and arrays of a {@link Grids_ChunkTable}. The dimensions
+     * are fixed so that an index is always computed with the dimensions of
+     * the arrays it is used with.
+     */
+    protected static class Table implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of chunk rows.
+         */
+        protected final int nChunkRows;
+
+        /**
+         * The number of chunk columns.
+         */
+        protected final int nChunkCols;
+
+        /**
+         * The chunk IDs. A {@code null} indicates there is no mapping for that
+         * chunk ID.
+         */
+        protected final AtomicReferenceArray<Grids_2D_ID_int> ids;
+
+        /**
+         * The chunks.
+         */
+        protected final AtomicReferenceArray<Grids_Chunk> chunks;
+
+        /**
+         * The recorded sizes of the chunks in bytes.
+         */
+        protected final AtomicLongArray sizes;
+
+        /**
+         * @param nChunkRows What {@link #nChunkRows} is set to.
+         * @param nChunkCols What {@link #nChunkCols} is set to.
+         */
+        protected Table(int nChunkRows, int nChunkCols) {
+            this.nChunkRows = nChunkRows;
+            this.nChunkCols = nChunkCols;
+            int n = nChunkRows * nChunkCols;
+            ids = new AtomicReferenceArray<>(n);
+            chunks = new AtomicReferenceArray<>(n);
+            sizes = new AtomicLongArray(n);
+        }
+
+        /**
+         * @param cr The chunk row.
+         * @param cc The chunk column.
+         * @return The index of chunk row {@code cr}, chunk column {@code cc}
+         * or {@code -1} if it is outside the table.
+         */
+        protected int index(int cr, int cc) {
+            if (cr < 0 || cc < 0 || cr >= nChunkRows || cc >= nChunkCols) {
+                return -1;
+            }
+            return cr * nChunkCols + cc;
+        }
+    }
+}
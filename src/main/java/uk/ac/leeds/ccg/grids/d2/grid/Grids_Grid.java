@@ -20,22 +20,37 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.memory.Grids_Account;
 import uk.ac.leeds.ccg.grids.memory.Grids_AccountDetail;
+import uk.ac.leeds.ccg.grids.memory.Grids_CompressedTier;
+import uk.ac.leeds.ccg.grids.memory.Grids_WriteBehind;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.core.Grids_Object;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCompressor;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkStore;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntSinglet;
 import uk.ac.leeds.ccg.grids.d2.stats.Grids_Stats;
@@ -137,7 +152,11 @@ import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
  */
 public abstract class Grids_Grid extends Grids_Object {
 
-    private static final long serialVersionUID = 1L;
+    /**
+     * This is 2 since {@link #data} changed from a TreeMap to a
+     * {@link Grids_ChunkTable}. Grids serialized before then cannot be read.
+     */
+    private static final long serialVersionUID = 2L;
 
     /**
      * The file store in which this is stored.
@@ -150,16 +169,18 @@ public abstract class Grids_Grid extends Grids_Object {
     protected final long fsID;
 
     /**
-     * The data are stored in a map with chunk ID keys and values that are
+     * The data are stored in a table with chunk ID keys and values that are
      * either chunks, or {@code null} - if the chunk is not stored in the fast
      * access memory, but in the file store {@link #fs}.
      */
-    protected TreeMap<Grids_2D_ID_int, Grids_Chunk> data;
+    protected Grids_ChunkTable data;
 
     /**
      * A set of chunks worth swapping. These do not include singlet type chunks.
+     * This is a concurrent set so that chunks can be loaded and swapped by
+     * different threads.
      */
-    protected HashSet<Grids_2D_ID_int> worthSwapping;
+    protected Set<Grids_2D_ID_int> worthSwapping;
 
     /**
      * For storing the number of chunk rows.
@@ -208,6 +229,90 @@ public abstract class Grids_Grid extends Grids_Object {
      */
     protected Grids_Stats stats;
 
+    /**
+     * The name of the file in the directory of this grid in which chunks are
+     * cached by {@link #store}.
+     */
+    public static final String CHUNK_STORE_FILENAME = "chunks.dat";
+
+    /**
+     * For caching chunks in a single memory mapped file. This is initialised
+     * by {@link #getChunkStore()}.
+     */
+    protected transient Grids_ChunkStore store;
+
+    /**
+     * For storing the access stamp of each chunk, which is recorded each time
+     * the chunk is got (see {@link #recordAccess(Grids_2D_ID_int)}). These are
+     * indexed by {@code chunkRow * nChunkCols + chunkCol}. A value of zero
+     * indicates the chunk has not been got since this was initialised. This
+     * is initialised by {@link #getAccessStamps()}.
+     */
+    protected transient volatile AtomicLongArray accessStamps;
+
+    /**
+     * The chunk last got by {@link #getChunk(int, int)}. Getting this chunk
+     * again does not record another access, so a run of cell accesses in the
+     * same chunk only records an access once. This is volatile as chunks may
+     * be got by different threads.
+     */
+    protected transient volatile Grids_Chunk lastChunk;
+
+    /**
+     * For storing the chunks that have been cleared from {@link #data} but
+     * that are still being written in the background by the write behind of
+     * {@link #env} (see {@link Grids_Environment#getWriteBehind()}). Each
+     * future returns the chunk once it has been written. This is initialised
+     * when the first chunk is submitted to be written in the background.
+     */
+    protected transient volatile ConcurrentHashMap<Grids_2D_ID_int, Future<Grids_Chunk>> inFlight;
+
+    /**
+     * For storing the chunks that are being or have been read in the
+     * background by {@link #prefetch(java.util.Set)} but that have not yet
+     * been put into {@link #data}. This is initialised when the first chunk
+     * is prefetched. The number of entries is limited by
+     * {@link Grids_Environment#getPrefetchLimit()}. Entries are dropped when
+     * the chunk is loaded or evicted by other means or when a sweep no longer
+     * wants it (see {@link #dropPrefetched(Grids_2D_ID_int)}). This is
+     * synchronized on when entries are removed or completed so that
+     * {@link #prefetchedBytes} is kept consistent.
+     */
+    protected transient volatile ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> prefetched;
+
+    /**
+     * The sum of the sizes in bytes (see {@link Grids_Chunk#getSize()}) of the
+     * chunks that have been read into {@link #prefetched} and not yet taken
+     * or dropped.
+     */
+    protected transient volatile long prefetchedBytes;
+
+    /**
+     * For counting the changes to each chunk so that indexes of the values
+     * (such as {@link Grids_SummedAreaTable}) can tell which chunks have
+     * changed since they were last updated. This is {@code null} until
+     * {@link #trackChanges()} is called.
+     */
+    protected transient volatile ConcurrentHashMap<Grids_2D_ID_int, Long> changes;
+
+    /**
+     * The total of the counts in {@link #changes}.
+     */
+    protected transient AtomicLong nChanges;
+
+    /**
+     * The number of {@link #locks}.
+     */
+    public static final int N_LOCKS = 16;
+
+    /**
+     * For locking chunks whilst they are loaded, cached or swapped. Each
+     * chunk ID is mapped to one of these by {@link #getLock(Grids_2D_ID_int)}
+     * so different threads can load and swap different chunks at the same
+     * time. This is initialised when a lock is first wanted.
+     */
+    protected transient volatile ReentrantLock[] locks;
+
     /**
      * @param e The grids environment.
      * @param fs The file store in which this grid is stored.
@@ -265,8 +370,8 @@ public abstract class Grids_Grid extends Grids_Object {
         name = fs.getBaseDir().getFileName().toString() + fsID;
         initNChunkRows();
         initNChunkCols();
-        data = new TreeMap<>();
-        worthSwapping = new HashSet<>();
+        data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+        worthSwapping = ConcurrentHashMap.newKeySet();
     }
 
     /**
@@ -310,9 +415,10 @@ public abstract class Grids_Grid extends Grids_Object {
     }
 
     /**
-     * Sets the references to this in the chunks.
+     * Sets the references to this in {@link #data} and in the chunks.
      */
     protected final void setReferenceInChunks() {
+        data.setGrid(this);
         data.keySet().forEach(id -> {
             data.get(id).initGrid(this);
         });
@@ -372,6 +478,36 @@ public abstract class Grids_Grid extends Grids_Object {
         return new IO_Path(fs.getPath(fsID));
     }
 
+    /**
+     * @return The codec for caching the chunks of this grid in the chunk
+     * store or {@code null} if the chunk store is not to be used. This
+     * implementation returns {@code null}.
+     */
+    protected Grids_ChunkCodec getChunkCodec() {
+        return null;
+    }
+
+    /**
+     * Initialises {@link #store} if it is {@code null} and
+     * {@link #getChunkCodec()} does not return {@code null}.
+     *
+     * @return {@link #store}
+     * @throws IOException If encountered.
+     */
+    public synchronized Grids_ChunkStore getChunkStore() throws IOException {
+        if (store == null) {
+            Grids_ChunkCodec codec = getChunkCodec();
+            if (codec != null) {
+                Grids_ChunkCodec.register(codec);
+                store = new Grids_ChunkStore(Paths.get(
+                        getDirectory().toString(), CHUNK_STORE_FILENAME),
+                        nChunkRows, nChunkCols,
+                        codec.getArraySize(chunkNRows, chunkNCols));
+            }
+        }
+        return store;
+    }
+
     /**
      * @return {@link #name}
      */
@@ -839,12 +975,23 @@ public abstract class Grids_Grid extends Grids_Object {
      */
     public void cache() throws IOException, Exception {
         swapChunks();
+        awaitWrites();
+        Grids_CompressedTier t = env.getCompressedTier();
+        if (t != null) {
+            t.flush(this);
+        }
+        if (store != null) {
+            store.flush();
+        }
         IO_Utilities.writeObject(this, getPathThisFile(getDirectory()));
     }
 
     /**
-     * Attempts to swap a chunk in {@link #data} from {@link #worthSwapping}.
-     * This method does not consider those chunks in {@link #env}.notToClear.
+     * Attempts to swap a chunk in {@link #data} from {@link #worthSwapping}
+     * selected by the eviction policy of {@link #env}. A chunk that cannot be
+     * swapped (for instance because it is pinned or another thread holds its
+     * lock) is passed over and the next one selected is tried. This method
+     * does not consider those chunks in {@link #env}.notToClear.
      *
      * @return The chunk ID of the chunk that was cleared or {@code null} if no
      * chunk was cleared.
@@ -854,9 +1001,7 @@ public abstract class Grids_Grid extends Grids_Object {
         if (worthSwapping.isEmpty()) {
             return null;
         }
-        Grids_2D_ID_int i = worthSwapping.stream().findAny().get();
-        swapChunk(i); // This removes i from worthSwapping.
-        return i;
+        return swapChunkExcept_AccountChunk((Set<Grids_2D_ID_int>) null);
     }
 
     /**
@@ -896,21 +1041,250 @@ public abstract class Grids_Grid extends Grids_Object {
      */
     public final boolean cache(Grids_2D_ID_int i) throws IOException,
             Exception {
-        boolean r = true;
-        Grids_Chunk c = data.get(i);
-        if (c != null) {
+        ReentrantLock l = getLock(i);
+        l.lock();
+        try {
+            Grids_Chunk c = data.get(i);
+            if (c == null) {
+                return false;
+            }
             if (!c.isCacheUpToDate()) {
-                Path file = Paths.get(getDirectory().toString(),
-                        i.getRow() + "_" + i.getCol());
-                //Files.createDirectory(file.getParent());
-                IO_Utilities.writeObject(c, file);
-                //System.gc();
+                Grids_ChunkOptimizer o = env.getChunkOptimizer();
+                if (o != null) {
+                    c = optimize(i, c, o, null);
+                }
+                /**
+                 * Marked as up to date before writing so that if the chunk is
+                 * changed by another thread during the write, then it is
+                 * marked as not up to date again.
+                 */
                 c.setCacheUpToDate(true);
+                try {
+                    write(i, c);
+                } catch (IOException | RuntimeException e) {
+                    c.setCacheUpToDate(false);
+                    throw e;
+                }
+                //System.gc();
+                // The chunk may have grown or shrunk since it was put in data.
+                data.updateSize(i);
+            }
+            return true;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @return The lock for the chunk with chunk ID {@code i}.
+     */
+    public final ReentrantLock getLock(Grids_2D_ID_int i) {
+        ReentrantLock[] a = locks;
+        if (a == null) {
+            synchronized (this) {
+                a = locks;
+                if (a == null) {
+                    a = new ReentrantLock[N_LOCKS];
+                    for (int j = 0; j < N_LOCKS; j++) {
+                        a[j] = new ReentrantLock();
+                    }
+                    locks = a;
+                }
+            }
+        }
+        return a[Math.floorMod(i.getRow() * 31 + i.getCol(), N_LOCKS)];
+    }
+
+    /**
+     * Writes {@code c} into {@link #store} or, if that is not possible, into
+     * a file in the directory of this grid. If
+     * {@link Grids_Environment#getChunkCompressor()} is not {@code null} and
+     * {@code c} can be encoded, then it is compressed first.
+     *
+     * @param i The chunk ID of {@code c}.
+     * @param c The chunk to write.
+     * @throws java.io.IOException If encountered.
+     */
+    protected void write(Grids_2D_ID_int i, Grids_Chunk c) throws IOException {
+        Grids_ChunkCompressor z = env.getChunkCompressor();
+        if (z != null) {
+            byte[] b = z.compress(c);
+            if (b != null) {
+                write(i, b);
+                return;
+            }
+        }
+        Grids_ChunkStore s = getChunkStore();
+        if (s == null || !s.write(c, i)) {
+            if (s != null) {
+                s.remove(i);
+            }
+            Path file = Paths.get(getDirectory().toString(),
+                    i.getRow() + "_" + i.getCol());
+            //Files.createDirectory(file.getParent());
+            if (!Grids_ChunkCodec.write(c, file)) {
+                IO_Utilities.writeObject(c, file);
+            }
+        }
+    }
+
+    /**
+     * Writes the encoded or compressed chunk {@code b} with chunk ID {@code i}
+     * into {@link #store} or, if that is not possible, into a file in the
+     * directory of this grid.
+     *
+     * @param i The chunk ID.
+     * @param b The encoded or compressed chunk.
+     * @throws java.io.IOException If encountered.
+     */
+    public void write(Grids_2D_ID_int i, byte[] b) throws IOException {
+        Grids_ChunkStore s = getChunkStore();
+        if (s == null || !s.write(i, b)) {
+            if (s != null) {
+                s.remove(i);
+            }
+            Files.write(Paths.get(getDirectory().toString(),
+                    i.getRow() + "_" + i.getCol()), b);
+        }
+    }
+
+    /**
+     * Clears the chunk with chunk ID {@code i} from {@link #data} and submits
+     * it to be written by {@code w}. The chunk is held in {@link #inFlight}
+     * until it has been written so that it can be read through by
+     * {@link #loadChunk(Grids_2D_ID_int)}. If the write fails, then the chunk
+     * is left in {@link #inFlight} and is not lost.
+     *
+     * @param i The chunk ID.
+     * @param c The chunk.
+     * @param w The write behind.
+     * @throws InterruptedException If interrupted whilst waiting for
+     * backpressure to ease.
+     */
+    protected void writeBehind(Grids_2D_ID_int i, Grids_Chunk c,
+            Grids_WriteBehind w) throws InterruptedException {
+        ConcurrentHashMap<Grids_2D_ID_int, Future<Grids_Chunk>> m = inFlight;
+        if (m == null) {
+            synchronized (this) {
+                m = inFlight;
+                if (m == null) {
+                    m = new ConcurrentHashMap<>();
+                    inFlight = m;
+                }
+            }
+        }
+        ConcurrentHashMap<Grids_2D_ID_int, Future<Grids_Chunk>> fm = m;
+        CompletableFuture<Grids_Chunk> f = new CompletableFuture<>();
+        fm.put(i, f);
+        clearChunk(i);
+        try {
+            w.submit(c.getSize(), () -> {
+                try {
+                    c.setCacheUpToDate(true);
+                    write(i, c);
+                    fm.remove(i, f);
+                } catch (IOException e) {
+                    c.setCacheUpToDate(false);
+                    env.env.log("Failed to write chunk " + i + " of " + name
+                            + ": " + e.getMessage());
+                } finally {
+                    f.complete(c);
+                }
+                return c;
+            });
+        } catch (InterruptedException | RuntimeException e) {
+            fm.remove(i, f);
+            f.complete(c);
+            data.put(i, c);
+            worthSwapping.add(i);
+            throw e;
+        }
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @return {@code true} iff the chunk with chunk ID {@code i} is being
+     * written in the background.
+     */
+    public final boolean isInFlight(Grids_2D_ID_int i) {
+        ConcurrentHashMap<Grids_2D_ID_int, Future<Grids_Chunk>> m = inFlight;
+        return m != null && m.containsKey(i);
+    }
+
+    /**
+     * If the chunk with chunk ID {@code i} is being written in the background
+     * then this waits for the write to complete and returns the chunk.
+     *
+     * @param i The chunk ID.
+     * @return The chunk with chunk ID {@code i} if it was in flight or
+     * {@code null} otherwise.
+     * @throws java.io.IOException If interrupted.
+     */
+    protected Grids_Chunk readThrough(Grids_2D_ID_int i) throws IOException {
+        ConcurrentHashMap<Grids_2D_ID_int, Future<Grids_Chunk>> m = inFlight;
+        if (m == null) {
+            return null;
+        }
+        Future<Grids_Chunk> f = m.get(i);
+        if (f == null) {
+            return null;
+        }
+        Grids_Chunk c;
+        try {
+            c = f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        // If the write failed then the chunk is still in flight.
+        m.remove(i, f);
+        return c;
+    }
+
+    /**
+     * Waits for all the chunks of this grid that are being written in the
+     * background to be written. Any chunks that failed to be written are
+     * put back into {@link #data} and written before returning.
+     *
+     * @throws java.io.IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void awaitWrites() throws IOException, Exception {
+        ConcurrentHashMap<Grids_2D_ID_int, Future<Grids_Chunk>> m = inFlight;
+        if (m == null) {
+            return;
+        }
+        Iterator<Grids_2D_ID_int> ite = m.keySet().iterator();
+        while (ite.hasNext()) {
+            Grids_2D_ID_int i = ite.next();
+            Grids_Chunk c = readThrough(i);
+            if (c != null && !c.isCacheUpToDate()) {
+                data.put(i, c);
+                cache(i);
+            }
+        }
+    }
+
+    /**
+     * Waits for any chunks of this grid being written in the background,
+     * cancels any that are being prefetched and closes {@link #store}. The
+     * store is reopened by {@link #getChunkStore()} if it is needed again.
+     *
+     * @throws java.io.IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void close() throws IOException, Exception {
+        awaitWrites();
+        dropPrefetched();
+        synchronized (this) {
+            if (store != null) {
+                store.close();
+                store = null;
             }
-        } else {
-            r = false;
         }
-        return r;
     }
 
     /**
@@ -1122,23 +1496,34 @@ public abstract class Grids_Grid extends Grids_Object {
     }
 
     /**
-     * Swap a chunk except a chunk with chunk ID in {@code s}.
+     * Swap a chunk except a chunk with chunk ID in {@code s}. The chunk is
+     * selected by the eviction policy of {@link #env}. A chunk that cannot be
+     * swapped (for instance because it is pinned or another thread holds its
+     * lock) is passed over and the next one selected is tried.
      *
-     * @param s The set with chunk IDs not to swap.
+     * @param s The set with chunk IDs not to swap. May be {@code null}.
      * @return The chunk ID of any chunk swapped.
      * @throws IOException If encountered.
      * @throws Exception If encountered.
      */
     public Grids_2D_ID_int swapChunkExcept_AccountChunk(
             Set<Grids_2D_ID_int> s) throws IOException, Exception {
-        Iterator<Grids_2D_ID_int> ite = worthSwapping.iterator();
-        while (ite.hasNext()) {
-            Grids_2D_ID_int i = ite.next();
-            if (!s.contains(i)) {
-                cache(i);
-                clearChunk(i);
+        Set<Grids_2D_ID_int> except = s;
+        boolean copied = false;
+        while (true) {
+            Grids_2D_ID_int i = env.getEvictionPolicy().select(this, except);
+            if (i == null) {
+                return null;
+            }
+            if (swapChunk(i)) {
                 return i;
             }
+            if (!copied) {
+                except = except == null ? new HashSet<>()
+                        : new HashSet<>(except);
+                copied = true;
+            }
+            except.add(i);
         }
 //        for (chunkRow = 0; chunkRow < NChunkRows; chunkRow++) {
 //            for (chunkCol = 0; chunkCol < NChunkCols; chunkCol++) {
@@ -1152,7 +1537,6 @@ public abstract class Grids_Grid extends Grids_Object {
 //                }
 //            }
 //        }
-        return null;
     }
 
     /**
@@ -1160,8 +1544,10 @@ public abstract class Grids_Grid extends Grids_Object {
      * @return {@code true} if chunk is of a singlet type.
      */
     public boolean isChunkSingleValueChunk(Grids_2D_ID_int i) {
-        return data.get(i) instanceof Grids_ChunkDoubleSinglet
-                || data.get(i) instanceof Grids_ChunkIntSinglet;
+        Grids_Chunk c = data.get(i);
+        return c instanceof Grids_ChunkDoubleSinglet
+                || c instanceof Grids_ChunkIntSinglet
+                || c instanceof Grids_ChunkBRSinglet;
     }
 
     /**
@@ -1194,7 +1580,9 @@ public abstract class Grids_Grid extends Grids_Object {
     /**
      * Checks the chunk with chunk ID {@code i}. If there is not already an up
      * to date cache then it is cached. If the chunk is cached, then it is
-     * cleared from memory.
+     * cleared from memory. Nothing is done if the chunk is pinned or if the
+     * lock for the chunk (see {@link #getLock(Grids_2D_ID_int)}) is held by
+     * another thread.
      *
      * @param i The chunk ID of the chunk to cache (if the cache is not already
      * up to date) and anyway clear.
@@ -1203,11 +1591,78 @@ public abstract class Grids_Grid extends Grids_Object {
      */
     public boolean swapChunk(Grids_2D_ID_int i) throws IOException,
             Exception {
-        if (cache(i)) {
-            clearChunk(i);
-            return true;
+        if (isPinned(i)) {
+            return false;
+        }
+        /**
+         * The lock is not waited for as the chunk is being loaded or cached
+         * by another thread, and waiting could deadlock with that thread if
+         * it is waiting for memory to be freed.
+         */
+        ReentrantLock l = getLock(i);
+        if (!l.tryLock()) {
+            return false;
+        }
+        try {
+            Grids_CompressedTier t = env.getCompressedTier();
+            if (t != null && demote(i, t)) {
+                return true;
+            }
+            Grids_WriteBehind w = env.getWriteBehind();
+            if (w != null) {
+                Grids_Chunk c = data.get(i);
+                if (c == null) {
+                    return false;
+                }
+                if (!c.isCacheUpToDate()) {
+                    Grids_ChunkOptimizer o = env.getChunkOptimizer();
+                    if (o != null) {
+                        c = optimize(i, c, o, null);
+                    }
+                    writeBehind(i, c, w);
+                    return true;
+                }
+            }
+            if (cache(i)) {
+                clearChunk(i);
+                return true;
+            }
+            return false;
+        } finally {
+            l.unlock();
         }
-        return false;
+    }
+
+    /**
+     * Compresses the chunk with chunk ID {@code i}, clears it from
+     * {@link #data} and puts it in {@code t}. This should be called whilst
+     * holding the lock for the chunk.
+     *
+     * @param i The chunk ID.
+     * @param t The compressed tier.
+     * @return {@code true} iff the chunk was put in {@code t}.
+     * @throws java.io.IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected boolean demote(Grids_2D_ID_int i, Grids_CompressedTier t)
+            throws IOException, Exception {
+        Grids_Chunk c = data.get(i);
+        if (c == null) {
+            return false;
+        }
+        if (!c.isCacheUpToDate()) {
+            Grids_ChunkOptimizer o = env.getChunkOptimizer();
+            if (o != null) {
+                c = optimize(i, c, o, null);
+            }
+        }
+        byte[] b = t.getCompressor().compress(c);
+        if (b == null) {
+            return false;
+        }
+        clearChunk(i);
+        t.put(this, i, b, c.isCacheUpToDate());
+        return true;
     }
 
     /**
@@ -1292,9 +1747,7 @@ public abstract class Grids_Grid extends Grids_Object {
             for (int cci = 0; cci < nChunkCols; cci++) {
                 Grids_2D_ID_int bid = new Grids_2D_ID_int(cri, cci);
                 if (!bid.equals(chunkID)) {
-                    if (isWorthCaching(bid)) {
-                        cache(bid);
-                        clearChunk(bid);
+                    if (isSwappable(bid) && swapChunk(bid)) {
                         Set<Grids_2D_ID_int> chunks;
                         chunks = new HashSet<>(1);
                         chunks.add(bid);
@@ -1357,9 +1810,7 @@ public abstract class Grids_Grid extends Grids_Object {
             for (int cci = 0; cci < nChunkCols; cci++) {
                 Grids_2D_ID_int r = new Grids_2D_ID_int(cri, cci);
                 if (!r.equals(cid)) {
-                    if (isWorthCaching(r)) {
-                        cache(r);
-                        clearChunk(r);
+                    if (isSwappable(r) && swapChunk(r)) {
                         return r;
                     }
                 }
@@ -1426,9 +1877,7 @@ public abstract class Grids_Grid extends Grids_Object {
             for (int chunkCol = 0; chunkCol < nChunkCols; chunkCol++) {
                 Grids_2D_ID_int i2 = new Grids_2D_ID_int(chunkRow, chunkCol);
                 if (!i.equals(i2)) {
-                    if (isWorthCaching(i2)) {
-                        cache(i2);
-                        clearChunk(i2);
+                    if (isSwappable(i2) && swapChunk(i2)) {
                         s.add(i2);
                     }
                 }
@@ -1553,9 +2002,7 @@ public abstract class Grids_Grid extends Grids_Object {
             for (int cci = 0; cci < nChunkCols; cci++) {
                 Grids_2D_ID_int i = new Grids_2D_ID_int(cri, cci);
                 if (!s.contains(i)) {
-                    if (isWorthCaching(i)) {
-                        cache(i);
-                        clearChunk(i);
+                    if (isSwappable(i) && swapChunk(i)) {
                         s2.add(i);
                     }
                 }
@@ -1619,8 +2066,7 @@ public abstract class Grids_Grid extends Grids_Object {
      */
     public final boolean swapChunkExcept(Grids_2D_ID_int i)
             throws IOException, Exception {
-        return swapChunk(worthSwapping.stream().filter(i2 -> i2 != i).findAny()
-                .get());
+        return swapChunkExcept_AccountChunk(Set.of(i)) != null;
 //        for (int cri = 0; cri < nChunkRows; cri++) {
 //            for (int cci = 0; cci < nChunkCols; cci++) {
 //                Grids_2D_ID_int i2 = new Grids_2D_ID_int(cri, cci);
@@ -1815,9 +2261,7 @@ public abstract class Grids_Grid extends Grids_Object {
             for (int cci = 0; cci < nChunkCols; cci++) {
                 Grids_2D_ID_int i = new Grids_2D_ID_int(cri, cci);
                 if (!s.contains(i)) {
-                    if (isWorthCaching(i)) {
-                        cache(i);
-                        clearChunk(i);
+                    if (isSwappable(i) && swapChunk(i)) {
                         r.detail.put(this, s);
                         return r;
                     }
@@ -1879,9 +2323,7 @@ public abstract class Grids_Grid extends Grids_Object {
         for (int cri = 0; cri < nChunkRows; cri++) {
             for (int cci = 0; cci < nChunkCols; cci++) {
                 Grids_2D_ID_int i = new Grids_2D_ID_int(cri, cci);
-                if (isWorthCaching(i)) {
-                    cache(i);
-                    clearChunk(i);
+                if (isSwappable(i) && swapChunk(i)) {
                     s.add(i);
                 }
             }
@@ -1986,6 +2428,113 @@ public abstract class Grids_Grid extends Grids_Object {
 //        return data.containsKey(chunkID);
     }
 
+    /**
+     * Records that the chunk with ID {@code i} has been got by setting its
+     * access stamp to the next access stamp of {@link #env}.
+     *
+     * @param i The chunk ID.
+     */
+    protected final void recordAccess(Grids_2D_ID_int i) {
+        recordAccess(i.getRow(), i.getCol());
+    }
+
+    /**
+     * Records that the chunk in chunk row {@code cr}, chunk column {@code cc}
+     * has been got by setting its access stamp to the next access stamp of
+     * {@link #env} and telling the eviction policy of {@link #env}. Nothing is
+     * recorded if the chunk is not in this grid.
+     *
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     */
+    protected final void recordAccess(int cr, int cc) {
+        if (cr < 0 || cr >= nChunkRows || cc < 0 || cc >= nChunkCols) {
+            return;
+        }
+        getAccessStamps().set(cr * nChunkCols + cc, env.nextAccessStamp());
+        env.getEvictionPolicy().accessed(this, cr, cc);
+    }
+
+    /**
+     * @return {@link #accessStamps} initialising it first if it is
+     * {@code null}.
+     */
+    protected final AtomicLongArray getAccessStamps() {
+        AtomicLongArray a = accessStamps;
+        if (a == null) {
+            synchronized (this) {
+                a = accessStamps;
+                if (a == null) {
+                    a = new AtomicLongArray(nChunkRows * nChunkCols);
+                    accessStamps = a;
+                }
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Tells the eviction policy of {@link #env} that the chunk with chunk ID
+     * {@code i} has been put into {@link #data} and drops any prefetched copy
+     * of it. This is called by {@link #data}.
+     *
+     * @param i The chunk ID.
+     */
+    protected void loaded(Grids_2D_ID_int i) {
+        dropPrefetched(i);
+        if (env != null) {
+            env.getEvictionPolicy().loaded(this, i);
+        }
+    }
+
+    /**
+     * Tells the eviction policy of {@link #env} that the chunk with chunk ID
+     * {@code i} has been cleared from {@link #data} and drops any prefetched
+     * copy of it. This is called by {@link #data}.
+     *
+     * @param i The chunk ID.
+     */
+    protected void evicted(Grids_2D_ID_int i) {
+        dropPrefetched(i);
+        if (env != null) {
+            env.getEvictionPolicy().evicted(this, i);
+        }
+    }
+
+    /**
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     * @return The access stamp of the chunk in chunk row {@code cr} and chunk
+     * column {@code cc} or zero if it has not been got since this was
+     * initialised or if it is not in this grid.
+     */
+    public final long getAccessStamp(int cr, int cc) {
+        AtomicLongArray a = accessStamps;
+        if (a == null || cr < 0 || cr >= nChunkRows || cc < 0
+                || cc >= nChunkCols) {
+            return 0L;
+        }
+        return a.get(cr * nChunkCols + cc);
+    }
+
+    /**
+     * @return {@link #worthSwapping}
+     */
+    public final Set<Grids_2D_ID_int> getWorthSwapping() {
+        return worthSwapping;
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @return {@code true} iff the chunk with ID {@code i} is cached in the
+     * chunk store.
+     * @throws IOException If encountered.
+     */
+    public boolean isStored(Grids_2D_ID_int i) throws IOException {
+        Grids_ChunkStore s = getChunkStore();
+        return s != null && s.contains(i);
+    }
+
     /**
      * @return {@code true} if the chunk given by chunk ID {@code i} is worth
      * caching - as determined by whether it is a single .
@@ -1998,6 +2547,24 @@ public abstract class Grids_Grid extends Grids_Object {
         return false;
     }
 
+    /**
+     * @param i The chunk ID.
+     * @return {@code true} if the chunk with chunk ID {@code i} is pinned in
+     * {@link Grids_Environment#getPins()}.
+     */
+    public final boolean isPinned(Grids_2D_ID_int i) {
+        return env.getPins().isPinned(this, i);
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @return {@code true} if the chunk with chunk ID {@code i} is worth
+     * caching and is not pinned.
+     */
+    public final boolean isSwappable(Grids_2D_ID_int i) {
+        return isWorthCaching(i) && !isPinned(i);
+    }
+
     /**
      * For releasing a grid2DSquareCellChunk stored in memory. This is usually
      * only done after the equivalent of cacheToFileChunk(ID) has been called.
@@ -2006,17 +2573,87 @@ public abstract class Grids_Grid extends Grids_Object {
      * cleared.
      */
     public final void clearChunk(Grids_2D_ID_int chunkID) {
-        data.replace(chunkID, null);
+        Grids_Chunk c = data.replace(chunkID, null);
+        if (c != null && stats != null) {
+            stats.cleared(chunkID, c);
+        }
+        if (c == lastChunk) {
+            lastChunk = null;
+        }
         worthSwapping.remove(chunkID);
         //System.gc();
     }
 
+    /**
+     * Changes the representation of each chunk in memory to the smallest one
+     * as chosen by {@link Grids_Environment#getChunkOptimizer()} or, if that
+     * is {@code null}, by a new {@link Grids_ChunkOptimizer}.
+     *
+     * @return An account of the chunks that have been changed and an estimate
+     * of the number of bytes saved.
+     * @throws Exception If encountered.
+     */
+    public Grids_AccountDetail compact() throws Exception {
+        Grids_ChunkOptimizer o = env.getChunkOptimizer();
+        if (o == null) {
+            o = new Grids_ChunkOptimizer();
+        }
+        Grids_AccountDetail r = new Grids_AccountDetail();
+        Set<Grids_2D_ID_int> s = new HashSet<>(data.keySet());
+        for (Grids_2D_ID_int i : s) {
+            Grids_Chunk c = data.get(i);
+            if (c != null) {
+                optimize(i, c, o, r);
+            }
+        }
+        r.success = true;
+        return r;
+    }
+
+    /**
+     * Changes the representation of the chunk {@code c} with chunk ID
+     * {@code i} to the one chosen by {@code o}. If this changes, the new chunk
+     * replaces {@code c} in {@link #data}. The new chunk has the same values
+     * so if {@code c} has an up to date cache, so does the new chunk.
+     *
+     * @param i The chunk ID of {@code c}.
+     * @param c The chunk.
+     * @param o The optimizer.
+     * @param a For accounting what is changed (may be {@code null}).
+     * @return The chunk with chunk ID {@code i}.
+     * @throws Exception If encountered.
+     */
+    protected Grids_Chunk optimize(Grids_2D_ID_int i, Grids_Chunk c,
+            Grids_ChunkOptimizer o, Grids_AccountDetail a) throws Exception {
+        Grids_Chunk r = o.optimize(c, a);
+        if (r != c) {
+            r.setCacheUpToDate(c.isCacheUpToDate());
+            data.put(i, r);
+            changed(i);
+            if (lastChunk == c) {
+                lastChunk = r;
+            }
+            if (isChunkSingleValueChunk(i)) {
+                worthSwapping.remove(i);
+            } else {
+                worthSwapping.add(i);
+            }
+        }
+        return r;
+    }
+
     /**
      * Clear all chunks by setting them to null in {@link #data}.
      */
     public final void clearChunks() {
-        data.keySet().parallelStream().forEach(i -> data.replace(i, null));
-        worthSwapping = new HashSet<>();
+        data.keySet().forEach(i -> {
+            Grids_Chunk c = data.replace(i, null);
+            if (c != null && stats != null) {
+                stats.cleared(i, c);
+            }
+        });
+        lastChunk = null;
+        worthSwapping = ConcurrentHashMap.newKeySet();
         //System.gc();
     }
 
@@ -2470,7 +3107,7 @@ public abstract class Grids_Grid extends Grids_Object {
      * @throws Exception If encountered.
      */
     public void freeSomeMemoryAndResetReserve(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToClear,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> notToClear,
             OutOfMemoryError e) throws IOException, Exception {
         Iterator<Grids_Grid> ite = notToClear.keySet().iterator();
         while (ite.hasNext()) {
@@ -2548,7 +3185,7 @@ public abstract class Grids_Grid extends Grids_Object {
     /**
      * @return {@link #data}
      */
-    public TreeMap<Grids_2D_ID_int, Grids_Chunk> getData() {
+    public Grids_ChunkTable getData() {
         return data;
     }
 
@@ -2618,10 +3255,81 @@ public abstract class Grids_Grid extends Grids_Object {
     public abstract Grids_Chunk getChunk(Grids_2D_ID_int i)
             throws IOException, ClassNotFoundException, Exception;
 
+    /**
+     * Starts counting the changes to each chunk if they are not already being
+     * counted (see {@link #changed(Grids_2D_ID_int)}).
+     */
+    public synchronized void trackChanges() {
+        if (changes == null) {
+            nChanges = new AtomicLong();
+            changes = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Counts a change to the chunk with chunk ID {@code i} if changes are
+     * being counted. Setting or initialising cells via the grid, setting rows
+     * of flat array chunks, replacing chunks with optimised or decompressed
+     * ones and getting chunks using {@link #getWritableChunk(Grids_2D_ID_int)}
+     * count changes. Code that sets cells in a chunk got using
+     * {@link #getWritableChunk(Grids_2D_ID_int)} after an index of the values
+     * has been used since the chunk was got should call this once it has done
+     * so.
+     *
+     * @param i The chunk ID.
+     */
+    public void changed(Grids_2D_ID_int i) {
+        ConcurrentHashMap<Grids_2D_ID_int, Long> m = changes;
+        if (m != null) {
+            m.merge(i, 1L, Long::sum);
+            nChanges.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The number of changes to chunks counted since
+     * {@link #trackChanges()} was first called.
+     */
+    public long getNChanges() {
+        if (changes == null) {
+            return 0L;
+        }
+        return nChanges.get();
+    }
+
+    /**
+     * @return {@link #changes} which is {@code null} if changes are not being
+     * counted.
+     */
+    public Map<Grids_2D_ID_int, Long> getChanges() {
+        return changes;
+    }
+
+    /**
+     * For getting the chunk with chunk ID {@code i} so that cells can be set
+     * in it directly. Subclasses that have single value chunks which cannot
+     * have cells set in them convert these to another type of chunk first.
+     * A change to the chunk is counted (see {@link #changed(Grids_2D_ID_int)}).
+     *
+     * @return The chunk with chunk ID {@code i}.
+     * @param i The chunk ID.
+     * @throws IOException If encountered.
+     * @throws ClassNotFoundException If encountered.
+     * @throws Exception If encountered.
+     */
+    public Grids_Chunk getWritableChunk(Grids_2D_ID_int i)
+            throws IOException, ClassNotFoundException, Exception {
+        Grids_Chunk r = getChunk(i);
+        changed(i);
+        return r;
+    }
+
     /**
      * If not loaded, this attempts to load into memory the chunk with chunk ID
      * {@code i}. If it was not loaded then this means that the chunk perhaps
-     * contained only no data values.
+     * contained only no data values. The chunk is loaded whilst holding the
+     * lock for it (see {@link #getLock(Grids_2D_ID_int)}) so it is only loaded
+     * once if it is wanted by different threads at the same time.
      *
      * @param i The chunk ID of the chunk to be loaded.
      * @return {@code true} if the chunk was loaded and {@code false} otherwise.
@@ -2632,30 +3340,423 @@ public abstract class Grids_Grid extends Grids_Object {
     public boolean loadChunk(Grids_2D_ID_int i) throws IOException,
             ClassNotFoundException, Exception {
         if (!isLoaded(i)) {
-            Path f = Paths.get(getDirectory().toString(),
-                    "" + i.getRow() + "_" + i.getCol());
-            if (Files.exists(f)) {
-                //env.env.log("Loading chunk from file" + f);
-                Object o = IO_Utilities.readObject(f);
-                Grids_Chunk chunk = (Grids_Chunk) o;
-                chunk.env = env;
-                chunk.initGrid(this);
-                chunk.initChunkID(i);
-                data.put(i, chunk);
-                return true;
-            } else {
+            ReentrantLock l = getLock(i);
+            l.lock();
+            try {
+                if (isLoaded(i)) {
+                    return false;
+                }
+                Grids_Chunk c = readThrough(i);
+                if (c == null) {
+                    c = takeCompressed(i);
+                    if (c != null) {
+                        changed(i);
+                    }
+                }
+                if (c == null) {
+                    c = takePrefetched(i);
+                }
+                if (c == null) {
+                    c = readChunk(i);
+                }
+                if (c != null) {
+                    data.put(i, c);
+                    if (isWorthCaching(i)) {
+                        worthSwapping.add(i);
+                    }
+                    return true;
+                }
                 /**
                  * It is assumed that the chunk is all noDataValues so if this
                  * is called in a process which is attempting to set a value,
                  * then the chunk and value should be created without trying to
                  * load from the file.
                  */
-                return false;
+            } finally {
+                l.unlock();
             }
         }
         return false;
     }
 
+    /**
+     * If the chunk with chunk ID {@code i} is in the compressed tier of
+     * {@link #env} (see {@link Grids_Environment#getCompressedTier()}), then
+     * it is removed from there and decompressed.
+     *
+     * @param i The chunk ID.
+     * @return The chunk or {@code null} if it is not in the compressed tier.
+     * @throws IOException If encountered.
+     */
+    protected Grids_Chunk takeCompressed(Grids_2D_ID_int i)
+            throws IOException {
+        Grids_CompressedTier t = env.getCompressedTier();
+        if (t == null) {
+            return null;
+        }
+        Grids_CompressedTier.Entry e = t.take(this, i);
+        if (e == null) {
+            return null;
+        }
+        Grids_Chunk c = Grids_ChunkCodec.decodeWithHeader(this, i,
+                ByteBuffer.wrap(e.bytes));
+        c.setCacheUpToDate(e.cached);
+        return c;
+    }
+
+    /**
+     * Reads the chunk with chunk ID {@code i} from {@link #store} or from a
+     * file in the directory of this grid. This does not put the chunk into
+     * {@link #data}.
+     *
+     * @param i The chunk ID of the chunk to read.
+     * @return The chunk read or {@code null} if it is not cached.
+     * @throws IOException If encountered.
+     * @throws ClassNotFoundException If encountered.
+     */
+    protected Grids_Chunk readChunk(Grids_2D_ID_int i) throws IOException,
+            ClassNotFoundException {
+        Grids_ChunkStore s = getChunkStore();
+        if (s != null && s.contains(i)) {
+            return s.read(this, i);
+        }
+        Path f = Paths.get(getDirectory().toString(),
+                "" + i.getRow() + "_" + i.getCol());
+        if (Files.exists(f)) {
+            //env.env.log("Loading chunk from file" + f);
+            if (Grids_ChunkCodec.isEncoded(f)) {
+                return Grids_ChunkCodec.read(this, i, f);
+            }
+            Grids_Chunk chunk = (Grids_Chunk) IO_Utilities.readObject(f);
+            chunk.env = env;
+            chunk.initGrid(this);
+            chunk.initChunkID(i);
+            return chunk;
+        }
+        return null;
+    }
+
+    /**
+     * Hints that the chunks with chunk IDs in {@code s} will be wanted soon.
+     * Those that are cached and not loaded, being written or already being
+     * prefetched are read in the background using the prefetch executor of
+     * {@link #env} (see {@link Grids_Environment#getPrefetchExecutor()}).
+     * Prefetched chunks are put into {@link #data} when they are loaded (see
+     * {@link #loadChunk(Grids_2D_ID_int)}). The chunks are added to the
+     * notToClear of {@link #env} so that once loaded they are not swapped
+     * before they are used. It is up to the caller to remove them from
+     * notToClear when they are no longer wanted.
+     *
+     * @param s The chunk IDs of the chunks to prefetch.
+     * @return The number of chunks submitted to be read.
+     * @throws IOException If encountered.
+     */
+    public int prefetch(Set<Grids_2D_ID_int> s) throws IOException {
+        env.addToNotToClear(this, new HashSet<>(s));
+        return submitPrefetch(s);
+    }
+
+    /**
+     * Submits the chunks with chunk IDs in {@code s} that are cached and not
+     * loaded, being written or already being prefetched to be read in the
+     * background. No more are submitted once {@link #prefetched} has
+     * {@link Grids_Environment#getPrefetchLimit()} entries.
+     *
+     * @param s The chunk IDs of the chunks to prefetch.
+     * @return The number of chunks submitted to be read.
+     * @throws IOException If encountered.
+     */
+    private int submitPrefetch(Set<Grids_2D_ID_int> s) throws IOException {
+        ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m = prefetched;
+        if (m == null) {
+            synchronized (this) {
+                m = prefetched;
+                if (m == null) {
+                    m = new ConcurrentHashMap<>();
+                    prefetched = m;
+                }
+            }
+        }
+        ExecutorService x = env.getPrefetchExecutor();
+        Grids_ChunkStore cs = getChunkStore();
+        Grids_CompressedTier t = env.getCompressedTier();
+        int limit = env.getPrefetchLimit();
+        int r = 0;
+        for (Grids_2D_ID_int i : s) {
+            if (m.size() >= limit) {
+                break;
+            }
+            if (isLoaded(i) || isInFlight(i) || m.containsKey(i)
+                    || (t != null && t.contains(this, i))) {
+                continue;
+            }
+            if (!(cs != null && cs.contains(i)) && !Files.exists(Paths.get(
+                    getDirectory().toString(), i.getRow() + "_" + i.getCol()))) {
+                continue;
+            }
+            CompletableFuture<Grids_Chunk> f = new CompletableFuture<>();
+            if (m.putIfAbsent(i, f) == null) {
+                ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m2 = m;
+                x.execute(() -> completePrefetch(m2, i, f));
+                r++;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Reads the chunk with chunk ID {@code i} and completes {@code f} with it.
+     * Nothing is read if {@code f} has already been dropped. If {@code f} is
+     * still in {@code m} once read, then the size of the chunk is added to
+     * {@link #prefetchedBytes}.
+     *
+     * @param m {@link #prefetched}
+     * @param i The chunk ID.
+     * @param f The future for the chunk.
+     */
+    private void completePrefetch(
+            ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m,
+            Grids_2D_ID_int i, CompletableFuture<Grids_Chunk> f) {
+        if (f.isDone()) {
+            return;
+        }
+        Grids_Chunk c = null;
+        Exception e = null;
+        try {
+            c = readChunk(i);
+        } catch (Exception ex) {
+            e = ex;
+        }
+        synchronized (m) {
+            boolean held = m.get(i) == f;
+            if (e != null) {
+                f.completeExceptionally(e);
+            } else if (f.complete(c) && held && c != null) {
+                addPrefetchedBytes(c.getSize());
+            }
+        }
+    }
+
+    /**
+     * Subtracts the size of the chunk of {@code f} from
+     * {@link #prefetchedBytes} if it has been read, otherwise cancels it. This
+     * is for calling when {@code f} has been removed from {@link #prefetched}
+     * whilst synchronized on it.
+     *
+     * @param f The future for a prefetched chunk.
+     */
+    private void release(CompletableFuture<Grids_Chunk> f) {
+        if (!f.cancel(false) && !f.isCompletedExceptionally()) {
+            Grids_Chunk c = f.join();
+            if (c != null) {
+                addPrefetchedBytes(-c.getSize());
+            }
+        }
+    }
+
+    /**
+     * Drops the chunk with chunk ID {@code i} from {@link #prefetched}
+     * cancelling the read if it has not yet happened.
+     *
+     * @param i The chunk ID.
+     */
+    public void dropPrefetched(Grids_2D_ID_int i) {
+        ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m = prefetched;
+        if (m == null) {
+            return;
+        }
+        synchronized (m) {
+            CompletableFuture<Grids_Chunk> f = m.remove(i);
+            if (f != null) {
+                release(f);
+            }
+        }
+    }
+
+    /**
+     * Drops all the chunks from {@link #prefetched} cancelling any reads that
+     * have not yet happened.
+     */
+    public void dropPrefetched() {
+        ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m = prefetched;
+        if (m == null) {
+            return;
+        }
+        synchronized (m) {
+            for (CompletableFuture<Grids_Chunk> f : m.values()) {
+                release(f);
+            }
+            m.clear();
+        }
+    }
+
+    /**
+     * Adds {@code d} to {@link #prefetchedBytes} and to the resident bytes of
+     * {@link #env}. This is for calling whilst synchronized on
+     * {@link #prefetched}.
+     *
+     * @param d The change in the number of bytes.
+     */
+    private void addPrefetchedBytes(long d) {
+        prefetchedBytes += d;
+        addResidentBytes(d);
+    }
+
+    /**
+     * Adds {@code d} to the resident bytes of {@link #env} (see
+     * {@link Grids_Environment#addResidentBytes(long)}). This is called by
+     * {@link #data} when the bytes it records change.
+     *
+     * @param d The change in the number of bytes.
+     */
+    protected void addResidentBytes(long d) {
+        Grids_Environment e = env;
+        if (e != null) {
+            e.addResidentBytes(d);
+        }
+    }
+
+    /**
+     * @return {@link #prefetchedBytes}
+     */
+    public long getPrefetchedBytes() {
+        return prefetchedBytes;
+    }
+
+    /**
+     * @return The number of chunks in {@link #prefetched}.
+     */
+    public int getPrefetchedCount() {
+        ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m = prefetched;
+        return m == null ? 0 : m.size();
+    }
+
+    /**
+     * If the chunk with chunk ID {@code i} has been prefetched then this waits
+     * for it to be read and returns it.
+     *
+     * @param i The chunk ID.
+     * @return The prefetched chunk or {@code null} if it was not prefetched or
+     * if reading it in the background failed.
+     */
+    protected Grids_Chunk takePrefetched(Grids_2D_ID_int i) {
+        ConcurrentHashMap<Grids_2D_ID_int, CompletableFuture<Grids_Chunk>> m = prefetched;
+        if (m == null) {
+            return null;
+        }
+        CompletableFuture<Grids_Chunk> f;
+        synchronized (m) {
+            f = m.remove(i);
+            if (f == null) {
+                return null;
+            }
+            if (f.isDone() && !f.isCompletedExceptionally()) {
+                Grids_Chunk c = f.join();
+                if (c != null) {
+                    addPrefetchedBytes(-c.getSize());
+                }
+            }
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            env.env.log("Failed to prefetch chunk " + i + " of " + name + ": "
+                    + e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Advances sweep {@code s} to cell row {@code row}. The chunk rows
+     * covering the rows within {@link Grids_Sweep#windowRadius} of
+     * {@code row} and the next {@link Grids_Sweep#rowBand} chunk rows in the
+     * direction of the sweep are added to the notToClear of {@link #env} and
+     * any chunks previously added that are no longer wanted are removed and
+     * dropped if they were prefetched. Chunks that were already in the
+     * notToClear are not added or removed. The chunks in the next
+     * chunk rows are prefetched. This is cheap to call
+     * for every row (or cell) as it only does anything when the chunk rows
+     * covering the window change.
+     *
+     * @param s The sweep.
+     * @param row The cell row the sweep has reached.
+     * @throws IOException If encountered.
+     */
+    public void prefetch(Grids_Sweep s, long row) throws IOException {
+        long maxRow = nRows - 1L;
+        int cr0 = getChunkRow(Math.max(0L, Math.min(maxRow,
+                row - s.windowRadius)));
+        int cr1 = getChunkRow(Math.max(0L, Math.min(maxRow,
+                row + s.windowRadius)));
+        if (cr0 == s.chunkRow0 && cr1 == s.chunkRow1) {
+            return;
+        }
+        s.chunkRow0 = cr0;
+        s.chunkRow1 = cr1;
+        int b0;
+        int b1;
+        if (s.ascending) {
+            b0 = cr1 + 1;
+            b1 = Math.min(nChunkRows - 1, cr1 + s.rowBand);
+        } else {
+            b0 = Math.max(0, cr0 - s.rowBand);
+            b1 = cr0 - 1;
+        }
+        Set<Grids_2D_ID_int> wanted = new HashSet<>();
+        Set<Grids_2D_ID_int> ahead = new HashSet<>();
+        for (int cr = Math.min(cr0, b0); cr <= Math.max(cr1, b1); cr++) {
+            for (int cc = 0; cc < nChunkCols; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                wanted.add(i);
+                if (cr >= b0 && cr <= b1) {
+                    ahead.add(i);
+                }
+            }
+        }
+        Iterator<Grids_2D_ID_int> ite = s.held.iterator();
+        while (ite.hasNext()) {
+            Grids_2D_ID_int i = ite.next();
+            if (!wanted.contains(i)) {
+                env.removeFromNotToClear(this, i);
+                dropPrefetched(i);
+                ite.remove();
+            }
+        }
+        wanted.removeAll(s.held);
+        if (!wanted.isEmpty()) {
+            // Only chunks not already in notToClear are held by the sweep so
+            // that those added by others stay there when the sweep moves on.
+            Set<Grids_2D_ID_int> ntc = env.getNotToClear().get(this);
+            for (Grids_2D_ID_int i : wanted) {
+                if (ntc == null || !ntc.contains(i)) {
+                    env.addToNotToClear(this, i);
+                    s.held.add(i);
+                }
+            }
+        }
+        submitPrefetch(ahead);
+    }
+
+    /**
+     * Ends sweep {@code s} by removing the chunks it added to the notToClear
+     * of {@link #env} and dropping any of them that were prefetched and not
+     * loaded. Chunks that were in the notToClear before they were wanted by
+     * the sweep are left there. This should be called in a finally block.
+     *
+     * @param s The sweep.
+     */
+    public void endSweep(Grids_Sweep s) {
+        for (Grids_2D_ID_int i : s.held) {
+            env.removeFromNotToClear(this, i);
+            dropPrefetched(i);
+        }
+        s.held.clear();
+        s.chunkRow0 = -1;
+        s.chunkRow1 = -1;
+    }
+
     /**
      * For getting the chunk at chunk row index {@code r}, chunk col index
      * {@code c}.
@@ -2669,7 +3770,21 @@ public abstract class Grids_Grid extends Grids_Object {
      */
     public final Grids_Chunk getChunk(int cr, int cc)
             throws IOException, ClassNotFoundException, Exception {
-        return getChunk(new Grids_2D_ID_int(cr, cc));
+        Grids_Chunk c = data.get(cr, cc);
+        if (c != null) {
+            if (c != lastChunk) {
+                recordAccess(cr, cc);
+                lastChunk = c;
+            }
+            return c;
+        }
+        Grids_2D_ID_int i = data.getID(cr, cc);
+        if (i == null) {
+            i = new Grids_2D_ID_int(cr, cc);
+        }
+        c = getChunk(i);
+        lastChunk = c;
+        return c;
     }
 
     /**
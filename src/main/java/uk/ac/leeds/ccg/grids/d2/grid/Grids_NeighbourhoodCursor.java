@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid;
+
+import java.io.IOException;
+import java.util.Arrays;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleOffHeap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+
+/**
+ * For moving a square window of cells over a grid. The window of a cell is
+ * the cells within {@link #radius} rows and columns of it.
+ *
+ * The values of the {@code 2 * radius + 1} rows of the window are held in a
+ * ring buffer of whole rows. Each row is padded with {@link #radius} no data
+ * values at either end for the cells beyond the edges of the grid, and rows
+ * beyond the edges of the grid are all no data values. A row is read a chunk
+ * at a time (in bulk for array chunks) when it is first wanted. So a row
+ * major sweep of the cells of a grid reads each row once and moving along a
+ * row does not copy any values.
+ *
+ * The window is got without copying using {@link #getRows()} and
+ * {@link #getOffset()}: the value of the cell {@code p - radius} rows and
+ * {@code q - radius} columns from the cell is
+ * {@code getRows()[p][getOffset() + q]}. This is the same arrangement as the
+ * windows of {@link uk.ac.leeds.ccg.grids.process.Grids_Processor}.
+ *
+ * A cursor is for a single grid and is not safe for use by multiple threads.
+ * The values are those at the time each row was read.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_NeighbourhoodCursor {
+
+    /**
+     * The number of rows and columns either side of the cell in the window.
+     */
+    public final int radius;
+
+    /**
+     * The grid.
+     */
+    protected final Grids_GridDouble grid;
+
+    /**
+     * The no data value of {@link #grid}.
+     */
+    protected final double ndv;
+
+    /**
+     * The ring buffer of rows.
+     */
+    protected final double[][] buffer;
+
+    /**
+     * The row of {@link #grid} held in each row of {@link #buffer}.
+     */
+    protected final long[] bufferRows;
+
+    /**
+     * The rows of {@link #buffer} in the order of the rows of the window.
+     */
+    protected final double[][] rows;
+
+    /**
+     * The row of the cell.
+     */
+    protected long row;
+
+    /**
+     * The column of the cell.
+     */
+    protected long col;
+
+    /**
+     * @param g What {@link #grid} is set to.
+     * @param radius What {@link #radius} is set to.
+     */
+    public Grids_NeighbourhoodCursor(Grids_GridDouble g, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius < 0");
+        }
+        long length = g.getNCols() + 2L * radius;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The grid has too many columns.");
+        }
+        this.radius = radius;
+        grid = g;
+        ndv = g.getNoDataValue();
+        int n = 2 * radius + 1;
+        buffer = new double[n][(int) length];
+        bufferRows = new long[n];
+        Arrays.fill(bufferRows, Long.MIN_VALUE);
+        rows = new double[n][];
+        row = Long.MIN_VALUE;
+    }
+
+    /**
+     * Moves the window to the cell in row {@code row} and column {@code col}
+     * reading any rows that are wanted.
+     *
+     * @param row The row of the cell.
+     * @param col The column of the cell which must be in the grid.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void moveTo(long row, long col) throws IOException, Exception {
+        if (row != this.row) {
+            int n = rows.length;
+            for (int p = 0; p < n; p++) {
+                long r = row + p - radius;
+                int s = (int) Math.floorMod(r, (long) n);
+                if (bufferRows[s] != r) {
+                    read(buffer[s], r);
+                    bufferRows[s] = r;
+                }
+                rows[p] = buffer[s];
+            }
+            this.row = row;
+        }
+        this.col = col;
+    }
+
+    /**
+     * @return The rows of the window. These are not copies and must not be
+     * changed.
+     */
+    public double[][] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The index in each of {@link #getRows()} of the value of the
+     * first column of the window.
+     */
+    public int getOffset() {
+        return (int) col;
+    }
+
+    /**
+     * @param p The row of the window.
+     * @param q The column of the window.
+     * @return The value of the cell {@code p - radius} rows and
+     * {@code q - radius} columns from the cell.
+     */
+    public double get(int p, int q) {
+        return rows[p][(int) col + q];
+    }
+
+    /**
+     * @return {@link #row}
+     */
+    public long getRow() {
+        return row;
+    }
+
+    /**
+     * @return {@link #col}
+     */
+    public long getCol() {
+        return col;
+    }
+
+    /**
+     * Reads row {@code r} of {@link #grid} into {@code dst}.
+     *
+     * @param dst The row of {@link #buffer} to read into.
+     * @param r The row of {@link #grid}.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected void read(double[] dst, long r) throws IOException, Exception {
+        if (r < 0 || r >= grid.getNRows()) {
+            Arrays.fill(dst, ndv);
+            return;
+        }
+        Arrays.fill(dst, 0, radius, ndv);
+        Arrays.fill(dst, dst.length - radius, dst.length, ndv);
+        int cr = grid.getChunkRow(r);
+        int ccr = grid.getChunkCellRow(r);
+        int ncc = grid.getNChunkCols();
+        for (int cc = 0; cc < ncc; cc++) {
+            Grids_Chunk c = grid.getChunk(cr, cc);
+            int off = radius + (int) grid.getCol(cc, 0);
+            int nc = grid.getChunkNCols(cc);
+            if (c instanceof Grids_ChunkDoubleArrayFlat) {
+                ((Grids_ChunkDoubleArrayFlat) c).getRow(ccr, dst, off);
+            } else if (c instanceof Grids_ChunkDoubleOffHeap) {
+                ((Grids_ChunkDoubleOffHeap) c).getRow(ccr, dst, off);
+            } else if (c instanceof Grids_ChunkDoubleSinglet) {
+                Arrays.fill(dst, off, off + nc,
+                        ((Grids_ChunkDoubleSinglet) c).getV());
+            } else if (c == null) {
+                Arrays.fill(dst, off, off + nc, ndv);
+            } else {
+                Grids_ChunkDouble cd = (Grids_ChunkDouble) c;
+                for (int ccc = 0; ccc < nc; ccc++) {
+                    dst[off + ccc] = cd.getCell(ccr, ccc);
+                }
+            }
+        }
+        grid.env.checkAndMaybeFreeMemory();
+    }
+}
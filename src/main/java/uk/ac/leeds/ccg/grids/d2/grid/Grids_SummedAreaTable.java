@@ -0,0 +1,587 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBR;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.grid.br.Grids_GridBR;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntStatsNotUpdated;
+
+/**
+ * A summed-area table (integral image) index of a grid for getting the
+ * number, sum and sum of squares of the data values in any rectangular window
+ * of cells in constant time.
+ *
+ * The index has companion grids with the same dimensions and chunks as
+ * {@link #grid}, so they are cached and swapped like any other grids. Each
+ * chunk of a companion grid holds the cumulative counts, sums or sums of
+ * squares of the corresponding chunk of {@link #grid} from its first row and
+ * column. For each chunk, the cumulative values along its last row and last
+ * column and the totals of the chunks in previous rows and columns are held
+ * in memory in {@link #blocks}. Each of these is small compared with a chunk.
+ * The cumulative value for any cell is then the sum of four numbers.
+ *
+ * The changes to {@link #grid} are counted (see
+ * {@link Grids_Grid#trackChanges()}) and the index is updated lazily: when it
+ * is next used only the chunks that have changed are gone through again.
+ * Cells that are set via chunks got using
+ * {@link Grids_Grid#getWritableChunk(Grids_2D_ID_int)} are only seen once
+ * {@link Grids_Grid#changed(Grids_2D_ID_int)} has been called for the chunk.
+ *
+ * Once the index is no longer needed {@link #close()} should be called to
+ * remove the companion grids from the environment and delete their files.
+ *
+ * The sums are calculated in double precision, so the sum for a small window
+ * of a large grid may lose precision where the cumulative sums are large
+ * compared with the values in the window.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_SummedAreaTable extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The index in the arrays of a {@link Block} for the counts.
+     */
+    protected static final int COUNT = 0;
+
+    /**
+     * The index in the arrays of a {@link Block} for the sums.
+     */
+    protected static final int SUM = 1;
+
+    /**
+     * The index in the arrays of a {@link Block} for the sums of squares.
+     */
+    protected static final int SQUARES = 2;
+
+    /**
+     * The grid indexed.
+     */
+    protected final Grids_GridNumber grid;
+
+    /**
+     * The cumulative counts of the data values in each chunk of
+     * {@link #grid}.
+     */
+    protected final Grids_GridInt counts;
+
+    /**
+     * The cumulative sums of the data values in each chunk of {@link #grid}.
+     */
+    protected final Grids_GridDouble sums;
+
+    /**
+     * The cumulative sums of the squares of the data values in each chunk of
+     * {@link #grid}.
+     */
+    protected final Grids_GridDouble squares;
+
+    /**
+     * The {@link Block} for each chunk indexed by chunk row then chunk column.
+     */
+    protected final Block[][] blocks;
+
+    /**
+     * The counts of the changes to each chunk of {@link #grid} as at the last
+     * time the chunk was gone through.
+     */
+    protected final HashMap<Grids_2D_ID_int, Long> versions;
+
+    /**
+     * The number of changes to {@link #grid} as at the last update.
+     */
+    protected volatile long nChanges;
+
+    /**
+     * Set to {@code true} by {@link #close()}.
+     */
+    protected volatile boolean closed;
+
+    /**
+     * Creates a new index of {@code g}. This goes through all the chunks of
+     * {@code g}.
+     *
+     * @param g What {@link #grid} is set to.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public Grids_SummedAreaTable(Grids_GridNumber g) throws IOException,
+            Exception {
+        super(g.env);
+        grid = g;
+        g.trackChanges();
+        nChanges = g.getNChanges();
+        versions = new HashMap<>(g.getChanges());
+        long nrows = g.getNRows();
+        long ncols = g.getNCols();
+        Grids_GridDoubleFactory df = env.getProcessor().gridFactoryDouble;
+        Grids_GridIntFactory intf = env.getProcessor().gridFactoryInt;
+        int dfcnr = df.getChunkNRows();
+        int dfcnc = df.getChunkNCols();
+        int ifcnr = intf.getChunkNRows();
+        int ifcnc = intf.getChunkNCols();
+        df.setChunkNRows(g.getChunkNRows());
+        df.setChunkNCols(g.getChunkNCols());
+        intf.setChunkNRows(g.getChunkNRows());
+        intf.setChunkNCols(g.getChunkNCols());
+        try {
+            counts = intf.create(new Grids_GridIntStatsNotUpdated(env),
+                    new Grids_ChunkIntFactoryArrayFlat(), nrows, ncols,
+                    g.getDimensions());
+            sums = df.create(new Grids_GridDoubleStatsNotUpdated(env),
+                    new Grids_ChunkDoubleFactoryArrayFlat(), nrows, ncols,
+                    g.getDimensions());
+            squares = df.create(new Grids_GridDoubleStatsNotUpdated(env),
+                    new Grids_ChunkDoubleFactoryArrayFlat(), nrows, ncols,
+                    g.getDimensions());
+        } finally {
+            df.setChunkNRows(dfcnr);
+            df.setChunkNCols(dfcnc);
+            intf.setChunkNRows(ifcnr);
+            intf.setChunkNCols(ifcnc);
+        }
+        int ncr = g.getNChunkRows();
+        int ncc = g.getNChunkCols();
+        blocks = new Block[ncr][ncc];
+        for (int cr = 0; cr < ncr; cr++) {
+            for (int cc = 0; cc < ncc; cc++) {
+                build(new Grids_2D_ID_int(cr, cc));
+            }
+        }
+        accumulate();
+    }
+
+    /**
+     * @return {@link #grid}
+     */
+    public Grids_GridNumber getGrid() {
+        return grid;
+    }
+
+    /**
+     * Removes {@link #counts}, {@link #sums} and {@link #squares} from
+     * {@link #env} and deletes their directories. The index cannot be used
+     * after this.
+     *
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public synchronized void close() throws IOException, Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Grids_Grid[] gs = {counts, sums, squares};
+        for (Grids_Grid g : gs) {
+            env.closeGrid(g);
+            delete(Paths.get(g.getDirectory().toString()));
+        }
+    }
+
+    /**
+     * Deletes {@code d} and everything in it if it exists.
+     *
+     * @param d The directory.
+     * @throws IOException If encountered.
+     */
+    private static void delete(Path d) throws IOException {
+        if (!Files.exists(d)) {
+            return;
+        }
+        List<Path> ps;
+        try (Stream<Path> s = Files.walk(d)) {
+            ps = s.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+        for (Path p : ps) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    /**
+     * Goes through the chunks of {@link #grid} that have changed since they
+     * were last gone through. This is called as needed by the methods for
+     * getting counts and sums.
+     *
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public synchronized void update() throws IOException, Exception {
+        long n = grid.getNChanges();
+        if (n == nChanges) {
+            return;
+        }
+        for (Map.Entry<Grids_2D_ID_int, Long> e : grid.getChanges().entrySet()) {
+            Grids_2D_ID_int i = e.getKey();
+            Long v = e.getValue();
+            if (!v.equals(versions.get(i))) {
+                versions.put(i, v);
+                build(i);
+            }
+        }
+        accumulate();
+        nChanges = n;
+    }
+
+    /**
+     * @param r0 The first row of the window.
+     * @param c0 The first column of the window.
+     * @param r1 The last row of the window.
+     * @param c1 The last column of the window.
+     * @return The number of data values in the window. Cells of the window
+     * that are not in {@link #grid} are ignored.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public long getCount(long r0, long c0, long r1, long c1)
+            throws IOException, Exception {
+        return Math.round(get(COUNT, r0, c0, r1, c1));
+    }
+
+    /**
+     * @param r0 The first row of the window.
+     * @param c0 The first column of the window.
+     * @param r1 The last row of the window.
+     * @param c1 The last column of the window.
+     * @return The sum of the data values in the window. Cells of the window
+     * that are not in {@link #grid} are ignored.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public double getSum(long r0, long c0, long r1, long c1)
+            throws IOException, Exception {
+        return get(SUM, r0, c0, r1, c1);
+    }
+
+    /**
+     * @param r0 The first row of the window.
+     * @param c0 The first column of the window.
+     * @param r1 The last row of the window.
+     * @param c1 The last column of the window.
+     * @return The sum of the squares of the data values in the window. Cells
+     * of the window that are not in {@link #grid} are ignored.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public double getSumSquares(long r0, long c0, long r1, long c1)
+            throws IOException, Exception {
+        return get(SQUARES, r0, c0, r1, c1);
+    }
+
+    /**
+     * @param k {@link #COUNT}, {@link #SUM} or {@link #SQUARES}.
+     * @param r0 The first row of the window.
+     * @param c0 The first column of the window.
+     * @param r1 The last row of the window.
+     * @param c1 The last column of the window.
+     * @return The count or sum for the window.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected double get(int k, long r0, long c0, long r1, long c1)
+            throws IOException, Exception {
+        if (closed) {
+            throw new IllegalStateException("The index has been closed.");
+        }
+        if (grid.getNChanges() != nChanges) {
+            update();
+        }
+        r0 = Math.max(r0, 0L);
+        c0 = Math.max(c0, 0L);
+        r1 = Math.min(r1, grid.getNRows() - 1L);
+        c1 = Math.min(c1, grid.getNCols() - 1L);
+        if (r0 > r1 || c0 > c1) {
+            return 0.0d;
+        }
+        return getCumulative(k, r1, c1) - getCumulative(k, r0 - 1L, c1)
+                - getCumulative(k, r1, c0 - 1L)
+                + getCumulative(k, r0 - 1L, c0 - 1L);
+    }
+
+    /**
+     * @param k {@link #COUNT}, {@link #SUM} or {@link #SQUARES}.
+     * @param r The row.
+     * @param c The column.
+     * @return The count or sum for the cells in rows {@code 0} to {@code r}
+     * and columns {@code 0} to {@code c}.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected double getCumulative(int k, long r, long c) throws IOException,
+            Exception {
+        if (r < 0L || c < 0L) {
+            return 0.0d;
+        }
+        Block b = blocks[grid.getChunkRow(r)][grid.getChunkCol(c)];
+        int ccr = grid.getChunkCellRow(r);
+        int ccc = grid.getChunkCellCol(c);
+        double v;
+        switch (k) {
+            case COUNT:
+                v = counts.getCell(r, c);
+                break;
+            case SUM:
+                v = sums.getCell(r, c);
+                break;
+            default:
+                v = squares.getCell(r, c);
+        }
+        return b.corner[k] + b.below[k][ccc] + b.before[k][ccr] + v;
+    }
+
+    /**
+     * Goes through the chunk of {@link #grid} with chunk ID {@code i} setting
+     * the chunks of the companion grids and the edges of the {@link Block}.
+     *
+     * @param i The chunk ID.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected void build(Grids_2D_ID_int i) throws IOException, Exception {
+        int nr = grid.getChunkNRows(i);
+        int nc = grid.getChunkNCols(i);
+        Grids_Chunk c = grid.getChunk(i);
+        int[] n = new int[nr * nc];
+        double[] s = new double[nr * nc];
+        double[] q = new double[nr * nc];
+        for (int ccr = 0; ccr < nr; ccr++) {
+            int rn = 0;
+            double rs = 0.0d;
+            double rq = 0.0d;
+            for (int ccc = 0; ccc < nc; ccc++) {
+                double v = getValue(c, ccr, ccc);
+                if (!Double.isNaN(v)) {
+                    rn++;
+                    rs += v;
+                    rq += v * v;
+                }
+                int o = ccr * nc + ccc;
+                if (ccr == 0) {
+                    n[o] = rn;
+                    s[o] = rs;
+                    q[o] = rq;
+                } else {
+                    n[o] = rn + n[o - nc];
+                    s[o] = rs + s[o - nc];
+                    q[o] = rq + q[o - nc];
+                }
+            }
+        }
+        Grids_ChunkInt nChunk = counts.getWritableChunk(i);
+        Grids_ChunkDouble sChunk = sums.getWritableChunk(i);
+        Grids_ChunkDouble qChunk = squares.getWritableChunk(i);
+        for (int ccr = 0; ccr < nr; ccr++) {
+            int o = ccr * nc;
+            if (nChunk instanceof Grids_ChunkIntArrayFlat) {
+                ((Grids_ChunkIntArrayFlat) nChunk).setRow(ccr, n, o);
+            } else {
+                for (int ccc = 0; ccc < nc; ccc++) {
+                    nChunk.setCell(ccr, ccc, n[o + ccc]);
+                }
+            }
+            setRow(sChunk, ccr, s, o, nc);
+            setRow(qChunk, ccr, q, o, nc);
+        }
+        Block b = blocks[i.getRow()][i.getCol()];
+        if (b == null) {
+            b = new Block(nr, nc);
+            blocks[i.getRow()][i.getCol()] = b;
+        }
+        for (int ccc = 0; ccc < nc; ccc++) {
+            int o = (nr - 1) * nc + ccc;
+            b.row[COUNT][ccc] = n[o];
+            b.row[SUM][ccc] = s[o];
+            b.row[SQUARES][ccc] = q[o];
+        }
+        for (int ccr = 0; ccr < nr; ccr++) {
+            int o = ccr * nc + nc - 1;
+            b.col[COUNT][ccr] = n[o];
+            b.col[SUM][ccr] = s[o];
+            b.col[SQUARES][ccr] = q[o];
+        }
+        env.checkAndMaybeFreeMemory();
+    }
+
+    /**
+     * Sets chunk cell row {@code ccr} of {@code c} from {@code src}.
+     *
+     * @param c The chunk.
+     * @param ccr The chunk cell row.
+     * @param src The values.
+     * @param off The index in {@code src} of the first value.
+     * @param nc The number of columns in {@code c}.
+     * @throws Exception If encountered.
+     */
+    private static void setRow(Grids_ChunkDouble c, int ccr, double[] src,
+            int off, int nc) throws Exception {
+        if (c instanceof Grids_ChunkDoubleArrayFlat) {
+            ((Grids_ChunkDoubleArrayFlat) c).setRow(ccr, src, off);
+        } else {
+            for (int ccc = 0; ccc < nc; ccc++) {
+                c.setCell(ccr, ccc, src[off + ccc]);
+            }
+        }
+    }
+
+    /**
+     * @param c A chunk of {@link #grid}.
+     * @param ccr The chunk cell row.
+     * @param ccc The chunk cell column.
+     * @return The value as a double or {@link Double#NaN} if there is no data
+     * value or the value is not finite.
+     */
+    protected double getValue(Grids_Chunk c, int ccr, int ccc) {
+        if (grid instanceof Grids_GridDouble) {
+            double v = ((Grids_ChunkDouble) c).getCell(ccr, ccc);
+            if (v == ((Grids_GridDouble) grid).getNoDataValue()
+                    || !Double.isFinite(v)) {
+                return Double.NaN;
+            }
+            return v;
+        } else if (grid instanceof Grids_GridInt) {
+            int v = ((Grids_ChunkInt) c).getCell(ccr, ccc);
+            if (v == ((Grids_GridInt) grid).getNoDataValue()) {
+                return Double.NaN;
+            }
+            return v;
+        } else {
+            BigRational v = ((Grids_ChunkBR) c).getCell(ccr, ccc);
+            if (v.compareTo(((Grids_GridBR) grid).getNoDataValue()) == 0) {
+                return Double.NaN;
+            }
+            return v.doubleValue();
+        }
+    }
+
+    /**
+     * Sets {@link Block#below}, {@link Block#before} and
+     * {@link Block#corner} for all the blocks from the edges of the blocks.
+     */
+    protected void accumulate() {
+        for (int cr = 0; cr < blocks.length; cr++) {
+            for (int cc = 0; cc < blocks[cr].length; cc++) {
+                Block b = blocks[cr][cc];
+                for (int k = 0; k < 3; k++) {
+                    if (cr == 0) {
+                        Arrays.fill(b.below[k], 0.0d);
+                    } else {
+                        Block d = blocks[cr - 1][cc];
+                        for (int ccc = 0; ccc < b.below[k].length; ccc++) {
+                            b.below[k][ccc] = d.below[k][ccc] + d.row[k][ccc];
+                        }
+                    }
+                    if (cc == 0) {
+                        Arrays.fill(b.before[k], 0.0d);
+                    } else {
+                        Block l = blocks[cr][cc - 1];
+                        for (int ccr = 0; ccr < b.before[k].length; ccr++) {
+                            b.before[k][ccr] = l.before[k][ccr] + l.col[k][ccr];
+                        }
+                    }
+                    if (cr == 0 || cc == 0) {
+                        b.corner[k] = 0.0d;
+                    } else {
+                        Block dl = blocks[cr - 1][cc - 1];
+                        b.corner[k] = blocks[cr - 1][cc].corner[k]
+                                + blocks[cr][cc - 1].corner[k]
+                                - dl.corner[k]
+                                + dl.row[k][dl.row[k].length - 1];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * For holding the edges of the cumulative values of a chunk and the
+     * totals of the chunks in the previous chunk rows and chunk columns. The
+     * first index of each array is {@link #COUNT}, {@link #SUM} or
+     * {@link #SQUARES}.
+     */
+    protected static class Block implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The cumulative values of the last row of the chunk.
+         */
+        protected final double[][] row;
+
+        /**
+         * The cumulative values of the last column of the chunk.
+         */
+        protected final double[][] col;
+
+        /**
+         * For each column of the chunk, the total for the cells in that
+         * column in the chunks in the previous chunk rows.
+         */
+        protected final double[][] below;
+
+        /**
+         * For each row of the chunk, the total for the cells in that row in
+         * the chunks in the previous chunk columns.
+         */
+        protected final double[][] before;
+
+        /**
+         * The total for the chunks in both the previous chunk rows and the
+         * previous chunk columns.
+         */
+        protected final double[] corner;
+
+        /**
+         * @param nr The number of rows in the chunk.
+         * @param nc The number of columns in the chunk.
+         */
+        protected Block(int nr, int nc) {
+            row = new double[3][nc];
+            col = new double[3][nr];
+            below = new double[3][nc];
+            before = new double[3][nr];
+            corner = new double[3];
+        }
+    }
+}
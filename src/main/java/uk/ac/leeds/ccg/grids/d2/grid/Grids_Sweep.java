@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid;
+
+import java.util.HashSet;
+import java.util.Set;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+
+/**
+ * For describing a row major sweep over the cells of a grid so that chunks can
+ * be prefetched before they are wanted (see
+ * {@link Grids_Grid#prefetch(Grids_Sweep, long)}). At each row of the sweep,
+ * cells within {@link #windowRadius} rows are wanted. The chunks in the chunk
+ * rows covering these are kept from being cleared and the chunks in the next
+ * {@link #rowBand} chunk rows in the direction of the sweep are prefetched.
+ *
+ * A sweep is for a single grid.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_Sweep {
+
+    /**
+     * The number of rows either side of the current row that are wanted.
+     */
+    public final int windowRadius;
+
+    /**
+     * The number of chunk rows ahead of the window to prefetch.
+     */
+    public final int rowBand;
+
+    /**
+     * {@code true} if the sweep is in order of increasing row and
+     * {@code false} if it is in order of decreasing row.
+     */
+    public final boolean ascending;
+
+    /**
+     * The first chunk row of the window when last prefetched.
+     */
+    protected int chunkRow0;
+
+    /**
+     * The last chunk row of the window when last prefetched.
+     */
+    protected int chunkRow1;
+
+    /**
+     * The chunk IDs added to the notToClear of the environment by this sweep.
+     * This does not include chunk IDs that were already in the notToClear.
+     */
+    protected final Set<Grids_2D_ID_int> held;
+
+    /**
+     * Creates a new ascending sweep with a {@link #windowRadius} of zero and
+     * a {@link #rowBand} of one.
+     */
+    public Grids_Sweep() {
+        this(0, 1, true);
+    }
+
+    /**
+     * @param windowRadius What {@link #windowRadius} is set to.
+     * @param rowBand What {@link #rowBand} is set to.
+     * @param ascending What {@link #ascending} is set to.
+     */
+    public Grids_Sweep(int windowRadius, int rowBand, boolean ascending) {
+        if (windowRadius < 0) {
+            throw new IllegalArgumentException("windowRadius < 0");
+        }
+        if (rowBand < 0) {
+            throw new IllegalArgumentException("rowBand < 0");
+        }
+        this.windowRadius = windowRadius;
+        this.rowBand = rowBand;
+        this.ascending = ascending;
+        chunkRow0 = -1;
+        chunkRow1 = -1;
+        held = new HashSet<>();
+    }
+}
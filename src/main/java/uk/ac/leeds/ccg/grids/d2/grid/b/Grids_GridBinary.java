@@ -22,18 +22,22 @@ import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.io.IO_Cache;
 import uk.ac.leeds.ccg.io.IO_Path;
 import uk.ac.leeds.ccg.io.IO_Utilities;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryCodec;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.memory.Grids_ChunkPins;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArrayPacked;
 import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactory;
 import uk.ac.leeds.ccg.grids.process.Grids_Processor;
 import uk.ac.leeds.ccg.grids.d2.util.Grids_Utilities;
@@ -444,8 +448,8 @@ public class Grids_GridBinary extends Grids_GridB {
         } else {
             // Assume ESRI AsciiFile
             name = fs.getBaseDir().getFileName().toString() + fsID;
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.setGrid(this);
             String filename = gridFile.getFileName().toString();
@@ -552,6 +556,14 @@ public class Grids_GridBinary extends Grids_GridB {
         }
     }
 
+    /**
+     * @return {@link Grids_ChunkBinaryCodec#INSTANCE}
+     */
+    @Override
+    protected Grids_ChunkBinaryCodec getChunkCodec() {
+        return Grids_ChunkBinaryCodec.INSTANCE;
+    }
+
     /**
      * @return A chunk for the given chunkID.
      * @param chunkID The identifier for the chunk to return.
@@ -565,6 +577,7 @@ public class Grids_GridBinary extends Grids_GridB {
             if (data.get(chunkID) == null) {
                 loadChunk(chunkID);
             }
+            recordAccess(chunkID);
             return (Grids_ChunkBinaryArray) data.get(chunkID);
         }
         return null;
@@ -586,6 +599,7 @@ public class Grids_GridBinary extends Grids_GridB {
             if (data.get(chunkID) == null) {
                 loadChunk(chunkID);
             }
+            recordAccess(chunkID);
             return (Grids_ChunkBinaryArray) data.get(chunkID);
         }
         return null;
@@ -981,6 +995,186 @@ public class Grids_GridBinary extends Grids_GridB {
         return true;
     }
 
+    /**
+     * Sets each value in this grid to the logical and of it and the value in
+     * the same cell of {@code g}.
+     *
+     * @param g A grid with the same dimensions and chunks as this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void and(Grids_GridBinary g) throws IOException, Exception {
+        apply(g, AND);
+    }
+
+    /**
+     * Sets each value in this grid to the logical or of it and the value in
+     * the same cell of {@code g}.
+     *
+     * @param g A grid with the same dimensions and chunks as this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void or(Grids_GridBinary g) throws IOException, Exception {
+        apply(g, OR);
+    }
+
+    /**
+     * Sets each value in this grid to the logical exclusive or of it and the
+     * value in the same cell of {@code g}.
+     *
+     * @param g A grid with the same dimensions and chunks as this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void xor(Grids_GridBinary g) throws IOException, Exception {
+        apply(g, XOR);
+    }
+
+    /**
+     * Sets each value in this grid to its logical negation.
+     *
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void not() throws IOException, Exception {
+        apply(null, NOT);
+    }
+
+    /**
+     * For {@link #apply(Grids_GridBinary, int)}.
+     */
+    private static final int AND = 0;
+
+    /**
+     * For {@link #apply(Grids_GridBinary, int)}.
+     */
+    private static final int OR = 1;
+
+    /**
+     * For {@link #apply(Grids_GridBinary, int)}.
+     */
+    private static final int XOR = 2;
+
+    /**
+     * For {@link #apply(Grids_GridBinary, int)}.
+     */
+    private static final int NOT = 3;
+
+    /**
+     * Applies the logical operation {@code op} chunk by chunk. Where the
+     * chunks are {@link Grids_ChunkBinaryArrayPacked} instances the operation
+     * is done a word (64 cells) at a time, otherwise it is done cell by cell.
+     *
+     * @param g The other grid or {@code null} if {@code op} is {@link #NOT}.
+     * @param op The operation.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void apply(Grids_GridBinary g, int op) throws IOException,
+            Exception {
+        if (g != null && !isSameDimensionsAndChunks(g)) {
+            throw new IllegalArgumentException("The grids do not have the "
+                    + "same dimensions and chunks.");
+        }
+        Grids_ChunkPins pins = env.getPins();
+        long n = 0L;
+        for (int cr = 0; cr < nChunkRows; cr++) {
+            for (int cc = 0; cc < nChunkCols; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                pins.pin(this, i);
+                if (g != null) {
+                    pins.pin(g, i);
+                }
+                try {
+                    n += apply(g, op, i, cr, cc);
+                } finally {
+                    pins.unpin(this, i);
+                    if (g != null) {
+                        pins.unpin(g, i);
+                    }
+                }
+                env.checkAndMaybeFreeMemory();
+            }
+        }
+        Grids_GridBinaryStats s = getStats();
+        if (s instanceof Grids_GridBinaryStatsNotUpdated) {
+            ((Grids_GridBinaryStatsNotUpdated) s).setUpToDate(false);
+        } else {
+            s.setN(s.getN() + n);
+        }
+    }
+
+    /**
+     * Applies the logical operation {@code op} to the chunk with chunk ID
+     * {@code i}.
+     *
+     * @param g The other grid or {@code null} if {@code op} is {@link #NOT}.
+     * @param op The operation.
+     * @param i The chunk ID.
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     * @return The change in the number of {@code true} values.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private long apply(Grids_GridBinary g, int op, Grids_2D_ID_int i, int cr,
+            int cc) throws IOException, Exception {
+        Grids_ChunkBinaryArray c2 = null;
+        if (g != null) {
+            c2 = g.getChunk(i, cr, cc);
+        }
+        Grids_ChunkBinaryArray c = getChunk(i, cr, cc);
+        if (c instanceof Grids_ChunkBinaryArrayPacked
+                && (c2 == null || c2 instanceof Grids_ChunkBinaryArrayPacked)) {
+            Grids_ChunkBinaryArrayPacked p = (Grids_ChunkBinaryArrayPacked) c;
+            Grids_ChunkBinaryArrayPacked p2
+                    = (Grids_ChunkBinaryArrayPacked) c2;
+            long n0 = p.getN();
+            switch (op) {
+                case AND:
+                    p.and(p2);
+                    break;
+                case OR:
+                    p.or(p2);
+                    break;
+                case XOR:
+                    p.xor(p2);
+                    break;
+                default:
+                    p.not();
+            }
+            return p.getN() - n0;
+        }
+        long n = 0L;
+        int cnr = getChunkNRows(i);
+        int cnc = getChunkNCols(i);
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                boolean v0 = c.getCell(ccr, ccc);
+                boolean v;
+                switch (op) {
+                    case AND:
+                        v = v0 && c2.getCell(ccr, ccc);
+                        break;
+                    case OR:
+                        v = v0 || c2.getCell(ccr, ccc);
+                        break;
+                    case XOR:
+                        v = v0 ^ c2.getCell(ccr, ccc);
+                        break;
+                    default:
+                        v = !v0;
+                }
+                if (v != v0) {
+                    c.setCell(ccr, ccc, v);
+                    n += v ? 1L : -1L;
+                }
+            }
+        }
+        return n;
+    }
+
     /**
      * Used to help log a view of the grid.
      *
@@ -22,14 +22,16 @@ import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanCodec;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanArray;
 import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactory;
@@ -465,8 +467,8 @@ public class Grids_GridBoolean extends Grids_GridB {
         } else {
             // Assume ESRI AsciiFile
             name = fs.getBaseDir().getFileName().toString() + fsID;
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.setGrid(this);
             String filename = gridFile.getFileName().toString();
@@ -569,6 +571,14 @@ public class Grids_GridBoolean extends Grids_GridB {
         }
     }
 
+    /**
+     * @return {@link Grids_ChunkBooleanCodec#INSTANCE}
+     */
+    @Override
+    protected Grids_ChunkBooleanCodec getChunkCodec() {
+        return Grids_ChunkBooleanCodec.INSTANCE;
+    }
+
     /**
      * @return A chunk for the given chunkID.
      * @param chunkID The identifier for the chunk to return.
@@ -582,6 +592,7 @@ public class Grids_GridBoolean extends Grids_GridB {
             if (data.get(chunkID) == null) {
                 loadChunk(chunkID);
             }
+            recordAccess(chunkID);
             return (Grids_ChunkBooleanArray) data.get(chunkID);
         }
         return null;
@@ -602,6 +613,7 @@ public class Grids_GridBoolean extends Grids_GridB {
             if (data.get(chunkID) == null) {
                 loadChunk(chunkID);
             }
+            recordAccess(chunkID);
             return (Grids_ChunkBooleanArray) data.get(chunkID);
         }
         return null;
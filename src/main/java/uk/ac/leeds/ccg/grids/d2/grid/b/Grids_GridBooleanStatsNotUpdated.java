@@ -66,6 +66,14 @@ public class Grids_GridBooleanStatsNotUpdated extends Grids_GridBooleanStats {
         this.upToDate = b;
     }
 
+    /**
+     * Sets {@link #upToDate} to {@code false}.
+     */
+    @Override
+    public void changed() {
+        setUpToDate(false);
+    }
+
     /**
      * Updates by going through all values in {@link #grid} if the fields are
      * likely not be up to date. (NB. After calling this it is inexpensive to
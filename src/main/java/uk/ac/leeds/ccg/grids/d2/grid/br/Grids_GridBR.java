@@ -21,8 +21,8 @@ import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBR;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRFactory;
@@ -35,6 +35,7 @@ import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
 import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsBR;
@@ -452,8 +453,8 @@ public class Grids_GridBR extends Grids_GridNumber {
             name = fs.getBaseDir().getFileName().toString() + fsID;
             initNChunkRows();
             initNChunkCols();
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.grid = this;
             String filename = gridFile.getFileName().toString();
@@ -564,8 +565,8 @@ public class Grids_GridBR extends Grids_GridNumber {
         } else {
             // Assume ESRI AsciiFile
             name = fs.getBaseDir().getFileName().toString() + fsID;
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.setGrid(this);
             String filename = gridFile.getFileName().toString();
@@ -716,6 +717,7 @@ public class Grids_GridBR extends Grids_GridNumber {
             if (!(gc instanceof Grids_ChunkBRSinglet)) {
                 worthSwapping.add(i);
             }
+            changed(i);
         } else {
             Grids_Chunk c = data.get(i);
             if (c == null) {
@@ -732,6 +734,7 @@ public class Grids_GridBR extends Grids_GridNumber {
                         worthSwapping.add(i);
                     }
                     chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), value);
+                    changed(i);
                 }
             } else {
                 if (fast) {
@@ -756,6 +759,7 @@ public class Grids_GridBR extends Grids_GridNumber {
             if (data.get(i) == null) {
                 loadChunk(i);
             }
+            recordAccess(i);
             return (Grids_ChunkBR) data.get(i);
         }
         return null;
@@ -776,6 +780,7 @@ public class Grids_GridBR extends Grids_GridNumber {
             if (data.get(i) == null) {
                 loadChunk(i);
             }
+            recordAccess(i);
             return (Grids_ChunkBR) data.get(i);
         }
         return null;
@@ -1005,6 +1010,9 @@ public class Grids_GridBR extends Grids_GridNumber {
         }
         // Update stats
         if (v.compareTo(r) != 0) {
+            if (chunk != null) {
+                changed(chunk.getId());
+            }
             if (stats.isUpdated()) {
                 updateStats(v, r);
             }
@@ -1012,6 +1020,30 @@ public class Grids_GridBR extends Grids_GridNumber {
         return r;
     }
 
+
+    /**
+     * For getting the chunk with chunk ID {@code i} so that cells can be set
+     * in it directly. If the chunk is a {@link Grids_ChunkBRSinglet}, then it is
+     * converted to another type of chunk first. A change to the chunk is
+     * counted (see {@link #changed(Grids_2D_ID_int)}).
+     *
+     * @return The chunk with chunk ID {@code i}.
+     * @param i The chunk ID.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public Grids_ChunkBR getWritableChunk(Grids_2D_ID_int i)
+            throws IOException, ClassNotFoundException, Exception {
+        Grids_ChunkBR r = getChunk(i);
+        if (r instanceof Grids_ChunkBRSinglet) {
+            r = convertToAnotherTypeOfChunk(r, i);
+            worthSwapping.add(i);
+        }
+        changed(i);
+        return r;
+    }
+
     /**
      * Convert chunk to another type of chunk.
      */
@@ -1022,7 +1054,7 @@ public class Grids_GridBR extends Grids_GridNumber {
         Grids_ChunkBRFactory f = env.getProcessor().gridFactoryBR.defaultGridChunkBRFactory;
         r = f.create(chunk, chunkID);
         data.put(chunkID, r);
-        if (!(chunk instanceof Grids_ChunkBRSinglet)) {
+        if (!(r instanceof Grids_ChunkBRSinglet)) {
             worthSwapping.add(chunkID);
         }
         return r;
@@ -1055,6 +1087,7 @@ public class Grids_GridBR extends Grids_GridNumber {
                 chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), v);
             }
         }
+        changed(i);
         // Update stats
         if (v.compareTo(ndv) != 0) {
             if (!(stats instanceof Grids_GridBRStatsNotUpdated)) {
@@ -1111,6 +1144,9 @@ public class Grids_GridBR extends Grids_GridNumber {
 //        Grids_2D_ID_int chunkID = new Grids_2D_ID_int(chunkRow, chunkCol);
 //        Grids_ChunkR chunk = getChunk(chunkID);
         chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), value);
+        if (changes != null) {
+            changed(chunk.getId());
+        }
     }
 
     /**
@@ -1438,6 +1474,7 @@ public class Grids_GridBR extends Grids_GridNumber {
                     chunk.initCell(cnr, cnc, v);
                 }
             }
+            changed(i);
         }
     }
 
@@ -1485,7 +1522,7 @@ public class Grids_GridBR extends Grids_GridNumber {
         if (chunk.getClass() == Grids_ChunkBRMap.class) {
             return ((Grids_ChunkBRMap) c).getCell(cellRow, cellCol);
         }
-        return c.getGrid().ndv;
+        return c.getCell(cellRow, cellCol);
     }
 
     @Override
@@ -17,7 +17,6 @@ package uk.ac.leeds.ccg.grids.d2.grid.br;
 
 import ch.obermuhlner.math.big.BigRational;
 import java.io.IOException;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkRowMajorOrderIterator;
@@ -26,6 +25,7 @@ import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRMap;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRArray;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRIteratorSinglet;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridIterator;
 
 /**
@@ -49,7 +49,7 @@ public class Grids_GridBRIterator extends Grids_GridIterator {
     public Grids_GridBRIterator(Grids_GridBR g) throws IOException,
             ClassNotFoundException, Exception {
         super(g);
-        TreeMap<Grids_2D_ID_int, Grids_Chunk> m = g.getData();
+        Grids_ChunkTable m = g.getData();
         gridIterator = m.keySet().iterator();
         if (gridIterator.hasNext()) {
             chunkID = gridIterator.next();
@@ -16,30 +16,38 @@
 package uk.ac.leeds.ccg.grids.d2.grid.d;
 
 import ch.obermuhlner.math.big.BigRational;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleOffHeap;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
 import java.io.IOException;
 import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleCodec;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactory;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleMap;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsDouble;
+import uk.ac.leeds.ccg.grids.io.Grids_BinaryGridImporter;
 import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridImporter;
 import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridImporter.Header;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridStreamImporter;
 import uk.ac.leeds.ccg.grids.process.Grids_Processor;
 import uk.ac.leeds.ccg.grids.d2.util.Grids_Utilities;
 import uk.ac.leeds.ccg.io.IO_Utilities;
@@ -165,14 +173,21 @@ public class Grids_GridDouble extends Grids_GridNumber {
      * @param fs What {@link #fs} is set to.
      * @param id What {@link #fsID} is set to.
      * @param gridFile Either a directory, or a formatted File with a specific
-     * @param ndv The noDataValue for this. extension containing the data for
-     * this.
+     * extension containing the data for this.
+     * @param cf The factory preferred to construct chunks of this.
+     * @param chunkNRows The chunk NRows.
+     * @param chunkNCols The chunk NCols.
+     * @param ndv The noDataValue for this.
      * @throws java.io.IOException If encountered.
      */
     protected Grids_GridDouble(Grids_Environment ge, IO_Cache fs,
-            long id, IO_Path gridFile, double ndv) throws IOException, Exception {
+            long id, IO_Path gridFile, Grids_ChunkDoubleFactory cf,
+            int chunkNRows, int chunkNCols, double ndv) throws IOException,
+            Exception {
         super(ge, fs, id, BigRational.valueOf(ndv));
-        init(new Grids_GridDoubleStatsNotUpdated(ge), gridFile);
+        initNoDataValue(ndv);
+        init(new Grids_GridDoubleStatsNotUpdated(ge), gridFile, cf,
+                chunkNRows, chunkNCols);
     }
 
     @Override
@@ -478,8 +493,8 @@ public class Grids_GridDouble extends Grids_GridNumber {
             name = fs.getBaseDir().getFileName().toString() + fsID;
             initNChunkRows();
             initNChunkCols();
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.grid = this;
             String filename = gridFile.getFileName().toString();
@@ -565,13 +580,12 @@ public class Grids_GridDouble extends Grids_GridNumber {
         init();
     }
 
-    private void init(Grids_StatsDouble stats, IO_Path gridFile)
+    private void init(Grids_StatsDouble stats, IO_Path gridFile,
+            Grids_ChunkDoubleFactory cf, int chunkNRows, int chunkNCols)
             throws IOException, ClassNotFoundException, Exception {
         env.checkAndMaybeFreeMemory();
         this.stats = stats;
         this.stats.setGrid(this);
-        // Set to report every 10%
-        int reportN;
         Grids_Processor gp = env.getProcessor();
         if (Files.isDirectory(gridFile.getPath())) {
             if (true) {
@@ -590,102 +604,183 @@ public class Grids_GridDouble extends Grids_GridNumber {
         } else {
             // Assume ESRI AsciiFile
             name = fs.getBaseDir().getFileName().toString() + fsID;
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.setGrid(this);
             String filename = gridFile.getFileName().toString();
-            double value;
             if (filename.endsWith("asc") || filename.endsWith("txt")) {
-                Grids_ESRIAsciiGridImporter eagi;
-                eagi = new Grids_ESRIAsciiGridImporter(env, gridFile);
-                Header header = eagi.getHeader();
-                //long inputNcols = ( Long ) header[ 0 ];
-                //long inputNrows = ( Long ) header[ 1 ];
-                nCols = header.ncols;
-                nRows = header.nrows;
-                chunkNRows = gp.gridFactoryDouble.getChunkNRows();
-                chunkNCols = gp.gridFactoryDouble.getChunkNCols();
-                initNChunkRows();
-                initNChunkCols();
-                initDimensions(header, 0, 0);
-                reportN = (int) (nRows - 1) / 10;
-                if (reportN == 0) {
-                    reportN = 1;
+                Grids_ESRIAsciiGridStreamImporter r;
+                r = new Grids_ESRIAsciiGridStreamImporter(env, gridFile);
+                try {
+                    Header header = r.getHeader();
+                    nCols = header.ncols;
+                    nRows = header.nrows;
+                    this.chunkNRows = chunkNRows;
+                    this.chunkNCols = chunkNCols;
+                    initNChunkRows();
+                    initNChunkCols();
+                    data.resize(nChunkRows, nChunkCols);
+                    initDimensions(header, 0, 0);
+                    init(r, header.ndv.doubleValue(), cf);
+                } finally {
+                    r.close();
                 }
-                double gridFileNoDataValue = header.ndv.doubleValue();
-                long row;
-                long col;
-                // Read Data into Chunks. This starts with the last row and ends with the first.
-                if (gridFileNoDataValue == noDataValue) {
-                    if (stats.isUpdated()) {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = eagi.readDouble();
-                                initCell(row, col, value, false);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
-                            }
-                            env.checkAndMaybeFreeMemory();
-                        }
+            } else if (filename.endsWith("."
+                    + Grids_BinaryGridImporter.EXTENSION)) {
+                Grids_BinaryGridImporter r;
+                r = new Grids_BinaryGridImporter(env, gridFile);
+                try {
+                    Grids_BinaryGridImporter.Header header = r.getHeader();
+                    nCols = header.ncols;
+                    nRows = header.nrows;
+                    if (header.layout
+                            == Grids_BinaryGridImporter.LAYOUT_TILES) {
+                        // Use the tiles as chunks.
+                        this.chunkNRows = header.tileNRows;
+                        this.chunkNCols = header.tileNCols;
                     } else {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = eagi.readDouble();
-                                if (value == gridFileNoDataValue) {
-                                    value = noDataValue;
-                                }
-                                initCell(row, col, value, true);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
-                            }
-                            env.checkAndMaybeFreeMemory();
-                        }
+                        this.chunkNRows = chunkNRows;
+                        this.chunkNCols = chunkNCols;
                     }
-                } else {
-                    if (stats.isUpdated()) {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = eagi.readDouble();
-                                if (value == gridFileNoDataValue) {
-                                    value = noDataValue;
-                                }
-                                initCell(row, col, value, false);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
+                    initNChunkRows();
+                    initNChunkCols();
+                    data.resize(nChunkRows, nChunkCols);
+                    initDimensions(header, 0, 0);
+                    init(r, cf);
+                } finally {
+                    r.close();
+                }
+            }
+        }
+        init();
+    }
+
+    /**
+     * Initialises the chunks from the values read by {@code r} a chunk at a
+     * time. The values of each chunk are copied into a new
+     * {@link Grids_ChunkDoubleArrayFlat} that is then set up using
+     * {@link #initChunk}. Values that equal the no data value of the file are
+     * replaced with {@link #noDataValue}. Memory is checked and maybe freed
+     * after each chunk row and the statistics are updated at the end.
+     *
+     * @param r The importer.
+     * @param cf The factory preferred to construct chunks of this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void init(Grids_BinaryGridImporter r, Grids_ChunkDoubleFactory cf)
+            throws IOException, Exception {
+        Grids_ChunkDoubleFactoryArrayFlat f;
+        f = new Grids_ChunkDoubleFactoryArrayFlat();
+        Grids_ChunkOptimizer o = env.getChunkOptimizer();
+        double fileNoDataValue = r.getHeader().ndvDouble;
+        double[] row = new double[chunkNCols];
+        for (int cr = 0; cr < nChunkRows; cr++) {
+            int ncrr = getChunkNRows(cr);
+            for (int cc = 0; cc < nChunkCols; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                Grids_ChunkDoubleArrayFlat c = f.create(this, i);
+                int nccc = getChunkNCols(cc);
+                for (int k = 0; k < ncrr; k++) {
+                    r.readRow(getRow(cr, k), getCol(cc, 0), row, 0, nccc);
+                    if (fileNoDataValue != noDataValue) {
+                        for (int col = 0; col < nccc; col++) {
+                            if (row[col] == fileNoDataValue) {
+                                row[col] = noDataValue;
                             }
-                            env.checkAndMaybeFreeMemory();
                         }
-                    } else {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = eagi.readDouble();
-                                if (value == gridFileNoDataValue) {
-                                    value = noDataValue;
-                                }
-                                initCell(row, col, value, true);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
-                            }
-                            env.checkAndMaybeFreeMemory();
+                    }
+                    c.setRow(k, row, 0);
+                }
+                initChunk(i, c, cf, o);
+            }
+            env.checkAndMaybeFreeMemory();
+        }
+        stats.changed();
+    }
+
+    /**
+     * Initialises the chunks from the values read by {@code r} a chunk row at
+     * a time starting with the last chunk row. The values of each chunk row
+     * are read into arrays that are copied a row at a time into new
+     * {@link Grids_ChunkDoubleArrayFlat} chunks, which are then set up using
+     * {@link #initChunk}. Values that equal {@code fileNoDataValue} are
+     * replaced with {@link #noDataValue}. Memory is checked and maybe freed
+     * after each chunk row. The statistics are updated at the end.
+     *
+     * @param r The importer positioned at the first value.
+     * @param fileNoDataValue The no data value of the file.
+     * @param cf The factory preferred to construct chunks of this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void init(Grids_ESRIAsciiGridStreamImporter r,
+            double fileNoDataValue, Grids_ChunkDoubleFactory cf)
+            throws IOException, Exception {
+        Grids_ChunkDoubleFactoryArrayFlat f;
+        f = new Grids_ChunkDoubleFactoryArrayFlat();
+        Grids_ChunkOptimizer o = env.getChunkOptimizer();
+        double[][] rows = new double[chunkNRows][(int) nCols];
+        // Set to report every 10%
+        int reportN = Math.max(1, (nChunkRows - 1) / 10);
+        for (int cr = nChunkRows - 1; cr > -1; cr--) {
+            int ncrr = getChunkNRows(cr);
+            r.readRows(rows, ncrr);
+            if (fileNoDataValue != noDataValue) {
+                for (int k = 0; k < ncrr; k++) {
+                    double[] row = rows[k];
+                    for (int col = 0; col < row.length; col++) {
+                        if (row[col] == fileNoDataValue) {
+                            row[col] = noDataValue;
                         }
                     }
                 }
             }
+            for (int cc = 0; cc < nChunkCols; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                Grids_ChunkDoubleArrayFlat c = f.create(this, i);
+                int off = cc * chunkNCols;
+                // The first row read is the last row of the chunk.
+                for (int k = 0; k < ncrr; k++) {
+                    c.setRow(ncrr - 1 - k, rows[k], off);
+                }
+                initChunk(i, c, cf, o);
+            }
+            if (cr % reportN == 0) {
+                env.env.log("Done chunk row " + cr);
+            }
+            env.checkAndMaybeFreeMemory();
+        }
+        stats.changed();
+    }
+
+    /**
+     * Puts a chunk with the values of {@code c} into {@link #data} with chunk
+     * ID {@code i}. This is {@code c} if {@code cf} creates flat array chunks,
+     * otherwise it is created from {@code c} by {@code cf}. The chunk is
+     * optimised if {@code o} is not {@code null}.
+     *
+     * @param i The chunk ID.
+     * @param c The chunk with the values.
+     * @param cf The factory preferred to construct chunks of this.
+     * @param o The chunk optimiser (may be {@code null}).
+     * @throws Exception If encountered.
+     */
+    private void initChunk(Grids_2D_ID_int i, Grids_ChunkDoubleArrayFlat c,
+            Grids_ChunkDoubleFactory cf, Grids_ChunkOptimizer o)
+            throws Exception {
+        Grids_ChunkDouble chunk = c;
+        if (!(cf instanceof Grids_ChunkDoubleFactoryArrayFlat)) {
+            chunk = cf.create(c, i);
+        }
+        data.put(i, chunk);
+        if (!(chunk instanceof Grids_ChunkDoubleSinglet)) {
+            worthSwapping.add(i);
+        }
+        if (o != null) {
+            optimize(i, chunk, o, null);
         }
-        init();
     }
 
 //    /**
@@ -744,6 +839,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
             if (!(gc instanceof Grids_ChunkDoubleSinglet)) {
                 worthSwapping.add(i);
             }
+            changed(i);
         } else {
             Grids_Chunk c = data.get(i);
             if (c == null) {
@@ -760,6 +856,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
                         worthSwapping.add(i);
                     }
                     chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), value);
+                    changed(i);
                 }
             } else {
                 if (fast) {
@@ -771,6 +868,14 @@ public class Grids_GridDouble extends Grids_GridNumber {
         }
     }
 
+    /**
+     * @return {@link Grids_ChunkDoubleCodec#INSTANCE}
+     */
+    @Override
+    protected Grids_ChunkDoubleCodec getChunkCodec() {
+        return Grids_ChunkDoubleCodec.INSTANCE;
+    }
+
     /**
      * @return Grids_ChunkDouble for chunk ID {@code i}.
      * @param i The chunk ID.
@@ -784,6 +889,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
             if (data.get(i) == null) {
                 loadChunk(i);
             }
+            recordAccess(i);
             return (Grids_ChunkDouble) data.get(i);
         }
         return null;
@@ -804,6 +910,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
             if (data.get(i) == null) {
                 loadChunk(i);
             }
+            recordAccess(i);
             return (Grids_ChunkDouble) data.get(i);
         }
         return null;
@@ -825,6 +932,8 @@ public class Grids_GridDouble extends Grids_GridNumber {
             if (newValue != oldValue) {
                 ((Grids_GridDoubleStatsNotUpdated) s).setUpToDate(false);
             }
+        } else if (s instanceof Grids_GridDoubleStatsIncremental) {
+            ((Grids_GridDoubleStatsIncremental) s).replace(newValue, oldValue);
         } else {
             if (newValue != noDataValue) {
                 if (oldValue != noDataValue) {
@@ -1022,6 +1131,10 @@ public class Grids_GridDouble extends Grids_GridNumber {
         double r = noDataValue;
         if (chunk instanceof Grids_ChunkDoubleArray) {
             r = ((Grids_ChunkDoubleArray) chunk).setCell(ccr, ccc, v);
+        } else if (chunk instanceof Grids_ChunkDoubleArrayFlat) {
+            r = ((Grids_ChunkDoubleArrayFlat) chunk).setCell(ccr, ccc, v);
+        } else if (chunk instanceof Grids_ChunkDoubleOffHeap) {
+            r = ((Grids_ChunkDoubleOffHeap) chunk).setCell(ccr, ccc, v);
         } else if (chunk instanceof Grids_ChunkDoubleMap) {
             r = ((Grids_ChunkDoubleMap) chunk).setCell(ccr, ccc, v);
         } else {
@@ -1037,6 +1150,9 @@ public class Grids_GridDouble extends Grids_GridNumber {
         }
         // Update stats
         if (v != r) {
+            if (chunk != null) {
+                changed(chunk.getId());
+            }
             if (stats.isUpdated()) {
                 updateStats(v, r);
             }
@@ -1044,6 +1160,30 @@ public class Grids_GridDouble extends Grids_GridNumber {
         return r;
     }
 
+
+    /**
+     * For getting the chunk with chunk ID {@code i} so that cells can be set
+     * in it directly. If the chunk is a {@link Grids_ChunkDoubleSinglet}, then it is
+     * converted to another type of chunk first. A change to the chunk is
+     * counted (see {@link #changed(Grids_2D_ID_int)}).
+     *
+     * @return The chunk with chunk ID {@code i}.
+     * @param i The chunk ID.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public Grids_ChunkDouble getWritableChunk(Grids_2D_ID_int i)
+            throws IOException, ClassNotFoundException, Exception {
+        Grids_ChunkDouble r = getChunk(i);
+        if (r instanceof Grids_ChunkDoubleSinglet) {
+            r = convertToAnotherTypeOfChunk(r, i);
+            worthSwapping.add(i);
+        }
+        changed(i);
+        return r;
+    }
+
     /**
      * Convert chunk to another type of chunk.
      */
@@ -1054,7 +1194,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
         Grids_ChunkDoubleFactory f = env.getProcessor().gridFactoryDouble.defaultGridChunkDoubleFactory;
         r = f.create(chunk, chunkID);
         data.put(chunkID, r);
-        if (!(chunk instanceof Grids_ChunkDoubleSinglet)) {
+        if (!(r instanceof Grids_ChunkDoubleSinglet)) {
             worthSwapping.add(chunkID);
         }
         return r;
@@ -1087,6 +1227,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
                 chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), v);
             }
         }
+        changed(i);
         // Update stats
         if (v != noDataValue) {
             if (!(stats instanceof Grids_GridDoubleStatsNotUpdated)) {
@@ -1106,6 +1247,10 @@ public class Grids_GridDouble extends Grids_GridNumber {
     protected void updateStats(double value) throws IOException, Exception,
             ClassNotFoundException {
         Grids_GridDoubleStats s = getStats();
+        if (s instanceof Grids_GridDoubleStatsIncremental) {
+            ((Grids_GridDoubleStatsIncremental) s).replace(value, noDataValue);
+            return;
+        }
         if (!Double.isNaN(value) && Double.isFinite(value)) {
             s.setN(s.getN() + 1);
             s.setSum(s.getSum().add(BigRational.valueOf(value)));
@@ -1145,6 +1290,9 @@ public class Grids_GridDouble extends Grids_GridNumber {
 //        Grids_2D_ID_int chunkID = new Grids_2D_ID_int(chunkRow, chunkCol);
 //        Grids_ChunkDouble chunk = getChunk(chunkID);
         chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), value);
+        if (changes != null) {
+            changed(chunk.getId());
+        }
     }
 
     /**
@@ -1469,6 +1617,7 @@ public class Grids_GridDouble extends Grids_GridNumber {
                     chunk.initCell(cnr, cnc, v);
                 }
             }
+            changed(i);
         }
     }
 
@@ -1513,10 +1662,16 @@ public class Grids_GridDouble extends Grids_GridNumber {
         if (chunk.getClass() == Grids_ChunkDoubleArray.class) {
             return ((Grids_ChunkDoubleArray) c).getCell(cellRow, cellCol);
         }
+        if (chunk.getClass() == Grids_ChunkDoubleArrayFlat.class) {
+            return ((Grids_ChunkDoubleArrayFlat) c).getCell(cellRow, cellCol);
+        }
+        if (chunk.getClass() == Grids_ChunkDoubleOffHeap.class) {
+            return ((Grids_ChunkDoubleOffHeap) c).getCell(cellRow, cellCol);
+        }
         if (chunk.getClass() == Grids_ChunkDoubleMap.class) {
             return ((Grids_ChunkDoubleMap) c).getCell(cellRow, cellCol);
         }
-        return c.getGrid().noDataValue;
+        return c.getCell(cellRow, cellCol);
     }
 
     @Override
@@ -285,7 +285,8 @@ public class Grids_GridDoubleFactory extends Grids_GridFactory {
     public Grids_GridDouble create(IO_Path gridFile)
             throws IOException, ClassNotFoundException, Exception {
         Grids_GridDouble r = new Grids_GridDouble(env, store, store.getNextID(),
-                gridFile, noDataValue);
+                gridFile, defaultGridChunkDoubleFactory, chunkNRows, chunkNCols,
+                noDataValue);
         //store.addDir();
         return r;
     }
@@ -299,6 +300,8 @@ public class Grids_GridDoubleFactory extends Grids_GridFactory {
     private Grids_GridDoubleStats getStats(Grids_GridDoubleStats stats) {
         if (stats instanceof Grids_GridDoubleStatsNotUpdated) {
             return new Grids_GridDoubleStatsNotUpdated(env);
+        } else if (stats instanceof Grids_GridDoubleStatsIncremental) {
+            return new Grids_GridDoubleStatsIncremental(env);
         } else {
             return new Grids_GridDoubleStats(env);
         }
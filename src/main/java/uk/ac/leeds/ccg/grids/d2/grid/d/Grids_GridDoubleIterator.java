@@ -16,15 +16,17 @@
 package uk.ac.leeds.ccg.grids.d2.grid.d;
 
 import java.io.IOException;
-import java.util.TreeMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleIteratorArrayOrMap;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleMap;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkRowMajorOrderIterator;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleOffHeap;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleIteratorSinglet;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridIterator;
 
 /**
@@ -48,7 +50,7 @@ public class Grids_GridDoubleIterator extends Grids_GridIterator {
     public Grids_GridDoubleIterator(Grids_GridDouble g) throws IOException,
             ClassNotFoundException, Exception {
         super(g);
-        TreeMap<Grids_2D_ID_int, Grids_Chunk> m = g.getData();
+        Grids_ChunkTable m = g.getData();
         gridIterator = m.keySet().iterator();
         if (gridIterator.hasNext()) {
             chunkID = gridIterator.next();
@@ -66,7 +68,13 @@ public class Grids_GridDoubleIterator extends Grids_GridIterator {
      */
     @Override
     protected final void initChunkIterator() {
-        if (chunk instanceof Grids_ChunkDoubleArray) {
+        if (chunk instanceof Grids_ChunkDoubleArrayFlat) {
+            chunkIterator = new Grids_ChunkDoubleIteratorArrayOrMap(
+                    (Grids_ChunkDoubleArrayFlat) chunk);
+        } else if (chunk instanceof Grids_ChunkDoubleOffHeap) {
+            chunkIterator = new Grids_ChunkDoubleIteratorArrayOrMap(
+                    (Grids_ChunkDoubleOffHeap) chunk);
+        } else if (chunk instanceof Grids_ChunkDoubleArray) {
             chunkIterator = new Grids_ChunkDoubleIteratorArrayOrMap(
                     (Grids_ChunkDoubleArray) chunk);
         } else if (chunk instanceof Grids_ChunkDoubleMap) {
@@ -87,7 +95,13 @@ public class Grids_GridDoubleIterator extends Grids_GridIterator {
     @Override
     public Grids_ChunkRowMajorOrderIterator getChunkIterator(Grids_Chunk c)
             throws Exception {
-        if (c instanceof Grids_ChunkDoubleArray) {
+        if (c instanceof Grids_ChunkDoubleArrayFlat) {
+            return new Grids_ChunkDoubleIteratorArrayOrMap(
+                    (Grids_ChunkDoubleArrayFlat) c);
+        } else if (c instanceof Grids_ChunkDoubleOffHeap) {
+            return new Grids_ChunkDoubleIteratorArrayOrMap(
+                    (Grids_ChunkDoubleOffHeap) c);
+        } else if (c instanceof Grids_ChunkDoubleArray) {
             return new Grids_ChunkDoubleIteratorArrayOrMap(
                     (Grids_ChunkDoubleArray) c);
         } else if (c instanceof Grids_ChunkDoubleMap) {
@@ -20,9 +20,13 @@ import uk.ac.leeds.ccg.grids.d2.stats.*;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
 
@@ -39,6 +43,19 @@ public class Grids_GridDoubleStats extends Grids_StatsDouble {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The summaries of chunks that have been cleared from the memory of
+     * {@link #grid}. A chunk cannot change without being loaded, so these are
+     * used by {@link #update()} instead of reloading the chunks.
+     */
+    protected transient ConcurrentHashMap<Grids_2D_ID_int,
+            Grids_StatsDoubleSummary> summaries;
+
+    /**
+     * The summary of all the data values as at the last {@link #update()}.
+     */
+    protected transient Grids_StatsDoubleSummary summary;
+
     /**
      * Create a new instance.
      * 
@@ -77,7 +94,10 @@ public class Grids_GridDoubleStats extends Grids_StatsDouble {
     }
 
     /**
-     * Updates by going through all values in grid.
+     * Updates by merging summaries of the chunks in {@link #grid}. The
+     * summaries are cached in the chunks and in {@link #summaries} so only the
+     * chunks that have changed since they were last summarised have their
+     * values gone through. Chunks in memory are summarised in parallel.
      *
      * @throws java.io.IOException If encountered.
      * @throws java.lang.ClassNotFoundException If encountered.
@@ -86,18 +106,88 @@ public class Grids_GridDoubleStats extends Grids_StatsDouble {
     public void update() throws IOException, Exception, ClassNotFoundException {
         env.checkAndMaybeFreeMemory();
         init();
+        Grids_StatsDoubleSummary r = summarise(true);
+        n = r.getN();
+        sum = r.getExactSum();
+        if (n > 0) {
+            min = r.getMin();
+            nMin = r.getNMin();
+            max = r.getMax();
+            nMax = r.getNMax();
+        }
+    }
+
+    /**
+     * Merges summaries of all the chunks in {@link #grid} and sets
+     * {@link #summary} to the result.
+     *
+     * @param exact If {@code true} then the summaries have exact sums.
+     * @return {@link #summary}
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    protected Grids_StatsDoubleSummary summarise(boolean exact)
+            throws IOException, Exception, ClassNotFoundException {
         Grids_GridDouble g = getGrid();
-        double ndv = g.getNoDataValue();
-        // This is too slow!
-        Grids_GridDoubleIterator ite = g.iterator();
+        ConcurrentHashMap<Grids_2D_ID_int, Grids_StatsDoubleSummary> m
+                = getSummaries();
+        ArrayList<Grids_ChunkDouble> cs = new ArrayList<>();
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(exact);
+        Iterator<Grids_2D_ID_int> ite = g.getChunkIDs().iterator();
         while (ite.hasNext()) {
-            double v = ite.next();
-            if (Double.isFinite(v)) {
-                if (v != ndv) {
-                    update(v);
+            Grids_2D_ID_int i = ite.next();
+            if (g.isLoaded(i)) {
+                cs.add(g.getChunk(i));
+            } else {
+                Grids_StatsDoubleSummary s = m.get(i);
+                if (s == null || (exact && !s.isExact())) {
+                    s = g.getChunk(i).getSummary(exact);
+                    env.checkAndMaybeFreeMemory();
                 }
+                r = Grids_StatsDoubleSummary.merge(r, s);
             }
         }
+        r = Grids_StatsDoubleSummary.merge(r, cs.parallelStream()
+                .map(c -> c.getSummary(exact))
+                .reduce(new Grids_StatsDoubleSummary(exact),
+                        Grids_StatsDoubleSummary::merge));
+        summary = r;
+        return r;
+    }
+
+    /**
+     * @return {@link #summaries} initialising it first if it is {@code null}.
+     */
+    protected ConcurrentHashMap<Grids_2D_ID_int, Grids_StatsDoubleSummary>
+            getSummaries() {
+        if (summaries == null) {
+            summaries = new ConcurrentHashMap<>();
+        }
+        return summaries;
+    }
+
+    /**
+     * @return {@link #summary} which is {@code null} if there has not been an
+     * {@link #update()}.
+     */
+    public Grids_StatsDoubleSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Retains the summary of {@code c} in {@link #summaries} if it has one.
+     *
+     * @param i The chunk ID.
+     * @param c The chunk.
+     */
+    @Override
+    public void cleared(Grids_2D_ID_int i, Grids_Chunk c) {
+        Grids_StatsDoubleSummary s = ((Grids_ChunkDouble) c).getSummary();
+        if (s == null) {
+            getSummaries().remove(i);
+        } else {
+            getSummaries().put(i, s);
+        }
     }
 
     /**
@@ -126,7 +216,7 @@ public class Grids_GridDoubleStats extends Grids_StatsDouble {
     public long getN() throws IOException, Exception, ClassNotFoundException {
         long r = 0;
         Grids_GridDouble g = getGrid();
-        Iterator<Grids_2D_ID_int> ite = g.iterator().getGridIterator();
+        Iterator<Grids_2D_ID_int> ite = g.getChunkIDs().iterator();
         while (ite.hasNext()) {
             r += g.getChunk(ite.next()).getN();
             env.checkAndMaybeFreeMemory();
@@ -178,7 +268,7 @@ public class Grids_GridDoubleStats extends Grids_StatsDouble {
     public BigRational getSum() throws IOException, Exception, ClassNotFoundException {
         BigRational r = BigRational.ZERO;
         Grids_GridDouble g = getGrid();
-        Iterator<Grids_2D_ID_int> ite = g.iterator().getGridIterator();
+        Iterator<Grids_2D_ID_int> ite = g.getChunkIDs().iterator();
         while (ite.hasNext()) {
             r = r.add(g.getChunk(ite.next()).getSum());
             env.checkAndMaybeFreeMemory();
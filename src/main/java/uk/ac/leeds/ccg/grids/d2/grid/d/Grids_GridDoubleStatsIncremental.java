@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid.d;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.IOException;
+import java.math.BigInteger;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsDoubleSummary;
+
+/**
+ * Some of the statistics are kept up to date cheaply as the underlying data
+ * are changed. The number of data values, the minimum and maximum and the
+ * number of each are kept as in {@link Grids_GridDoubleStats}, but the sum is
+ * kept as a double using the Neumaier variant of Kahan summation rather than
+ * as a BigRational. When the last minimum or maximum value is replaced, the
+ * minimum or maximum is not recalculated until it is next wanted, and then it
+ * is calculated by merging the summaries of the chunks which hold the minimum
+ * and maximum and the exact sum of each chunk. The summaries are cached in
+ * the chunks and, for chunks that have been swapped, in {@link #summaries},
+ * so only the chunks that have changed since they were last summarised have
+ * their values gone through. A chunk that has changed is summarised when it
+ * is swapped (see {@link #cleared(Grids_2D_ID_int, Grids_Chunk)}), so
+ * swapped chunks never have to be reloaded to calculate the exact sum.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_GridDoubleStatsIncremental extends Grids_GridDoubleStats {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The sum of the data values without {@link #compensation}.
+     */
+    protected double doubleSum;
+
+    /**
+     * The compensation for the rounding errors in {@link #doubleSum}.
+     */
+    protected double compensation;
+
+    /**
+     * Is {@code true} if {@link #sum} is up to date and {@code false}
+     * otherwise.
+     */
+    protected boolean exact;
+
+    /**
+     * Create a new instance.
+     *
+     * @param ge Grids_Environment
+     */
+    public Grids_GridDoubleStatsIncremental(Grids_Environment ge) {
+        super(ge);
+        exact = true;
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+        doubleSum = 0d;
+        compensation = 0d;
+        exact = true;
+    }
+
+    /**
+     * Updates by merging the cached summaries of the chunks in {@link #grid}
+     * including calculating {@link #sum} exactly. Only the chunks that have
+     * changed since they were last summarised are summarised again.
+     *
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public void update() throws IOException, Exception, ClassNotFoundException {
+        env.checkAndMaybeFreeMemory();
+        Grids_StatsDoubleSummary r = summarise(true);
+        n = r.getN();
+        sum = r.getExactSum();
+        doubleSum = r.getSum();
+        compensation = 0d;
+        exact = true;
+        if (n > 0) {
+            min = r.getMin();
+            nMin = r.getNMin();
+            max = r.getMax();
+            nMax = r.getNMax();
+        } else {
+            min = Double.MAX_VALUE;
+            nMin = 0;
+            max = -Double.MAX_VALUE;
+            nMax = 0;
+        }
+    }
+
+    /**
+     * Retains an exact summary of {@code c} in {@link #summaries}, summarising
+     * it first if it has changed since it was last summarised, so that it
+     * does not have to be reloaded by {@link #update()}.
+     *
+     * @param i The chunk ID.
+     * @param c The chunk.
+     */
+    @Override
+    public void cleared(Grids_2D_ID_int i, Grids_Chunk c) {
+        getSummaries().put(i, ((Grids_ChunkDouble) c).getSummary(true));
+    }
+
+    /**
+     * Adds {@code v} to {@link #doubleSum} and updates {@link #compensation}.
+     *
+     * @param v The value to add.
+     */
+    private void addToSum(double v) {
+        double t = doubleSum + v;
+        if (Math.abs(doubleSum) >= Math.abs(v)) {
+            compensation += (doubleSum - t) + v;
+        } else {
+            compensation += (v - t) + doubleSum;
+        }
+        doubleSum = t;
+    }
+
+    /**
+     * For updating when a value in {@link #grid} is changed. Either value may
+     * be the no data value.
+     *
+     * @param v The value replacing {@code v0}.
+     * @param v0 The value being replaced.
+     */
+    public void replace(double v, double v0) {
+        double ndv = getGrid().getNoDataValue();
+        if (v0 != ndv && Double.isFinite(v0)) {
+            n--;
+            addToSum(-v0);
+            if (v0 == min && nMin > 0) {
+                nMin--;
+            }
+            if (v0 == max && nMax > 0) {
+                nMax--;
+            }
+            exact = false;
+        }
+        if (v != ndv && Double.isFinite(v)) {
+            n++;
+            addToSum(v);
+            if (v < min) {
+                nMin = 1;
+                min = v;
+            } else if (v == min) {
+                nMin++;
+            }
+            if (v > max) {
+                nMax = 1;
+                max = v;
+            } else if (v == max) {
+                nMax++;
+            }
+            exact = false;
+        }
+    }
+
+    /**
+     * @return {@link #n}
+     */
+    @Override
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @return The compensated sum of the data values.
+     */
+    public double getDoubleSum() {
+        return doubleSum + compensation;
+    }
+
+    /**
+     * @param update Is ignored.
+     * @return The exact sum of all data values. This is calculated if the data
+     * values have changed since it was last calculated.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public BigRational getSum(boolean update) throws IOException, Exception,
+            ClassNotFoundException {
+        if (!exact) {
+            update();
+        }
+        return sum;
+    }
+
+    /**
+     * Get the arithmetic mean of all data values. Throws an ArithmeticException
+     * if {@link #n} is equal to zero. If the data values have changed since
+     * {@link #sum} was last calculated this is calculated from
+     * {@link #getDoubleSum()}.
+     *
+     * @return The arithmetic mean of all data values.
+     */
+    @Override
+    public BigRational getArithmeticMean() {
+        if (exact) {
+            return super.getArithmeticMean();
+        }
+        return BigRational.valueOf(getDoubleSum()).divide(
+                BigInteger.valueOf(n));
+    }
+
+    /**
+     * @param update If true and the minimum is not known, then it is
+     * calculated by merging the summaries of the chunks (see
+     * {@link #update()}).
+     * @return The minimum of all data values in {@link #grid}.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public Double getMin(boolean update) throws IOException, Exception,
+            ClassNotFoundException {
+        if (nMin < 1 && update) {
+            update();
+        }
+        return min;
+    }
+
+    /**
+     * @param update If true and the maximum is not known, then it is
+     * calculated by merging the summaries of the chunks (see
+     * {@link #update()}).
+     * @return The maximum of all data values in {@link #grid}.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public Double getMax(boolean update) throws IOException, Exception,
+            ClassNotFoundException {
+        if (nMax < 1 && update) {
+            update();
+        }
+        return max;
+    }
+}
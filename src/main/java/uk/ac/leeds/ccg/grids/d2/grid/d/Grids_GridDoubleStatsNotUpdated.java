@@ -68,6 +68,14 @@ public class Grids_GridDoubleStatsNotUpdated extends Grids_GridDoubleStats {
         this.upToDate = b;
     }
 
+    /**
+     * Sets {@link #upToDate} to {@code false}.
+     */
+    @Override
+    public void changed() {
+        setUpToDate(false);
+    }
+
     /**
      * Updates by going through all values in the grid if the fields are likely not
      * to be up to date. (NB. After calling this it is inexpensive to convert to
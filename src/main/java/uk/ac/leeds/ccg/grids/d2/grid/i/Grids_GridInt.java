@@ -22,25 +22,33 @@ import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntOffHeap;
 import uk.ac.leeds.ccg.io.IO_Utilities;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntCodec;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactory;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntMap;
 import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsInt;
+import uk.ac.leeds.ccg.grids.io.Grids_BinaryGridImporter;
 import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridImporter;
 import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridImporter.Header;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridStreamImporter;
 import uk.ac.leeds.ccg.grids.process.Grids_Processor;
 import uk.ac.leeds.ccg.grids.d2.util.Grids_Utilities;
 import java.util.Set;
@@ -168,15 +176,21 @@ public class Grids_GridInt extends Grids_GridNumber {
      * @param id What {@link #fsID} is set to.
      * @param gridFile Either a directory, or a formatted File with a specific
      * extension containing the data for this.
+     * @param cf The factory preferred to construct chunks of this.
+     * @param chunkNRows The chunk NRows.
+     * @param chunkNCols The chunk NCols.
      * @param ndv The ndv for this.
      * @throws java.io.IOException If encountered.
      * @throws java.lang.ClassNotFoundException If encountered.
      */
     protected Grids_GridInt(Grids_Environment ge, IO_Cache fs,
-            long id, IO_Path gridFile, int ndv)
+            long id, IO_Path gridFile, Grids_ChunkIntFactory cf,
+            int chunkNRows, int chunkNCols, int ndv)
             throws IOException, ClassNotFoundException, Exception {
         super(ge, fs, id, BigRational.valueOf(ndv));
-        init(new Grids_GridIntStatsNotUpdated(ge), gridFile);
+        initNoDataValue(ndv);
+        init(new Grids_GridIntStatsNotUpdated(ge), gridFile, cf, chunkNRows,
+                chunkNCols);
     }
 
     @Override
@@ -524,8 +538,8 @@ public class Grids_GridInt extends Grids_GridNumber {
             name = fs.getBaseDir().getFileName().toString() + fsID;
             initNChunkRows();
             initNChunkCols();
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.setGrid(this);
             String filename = gridFile.getFileName().toString();
@@ -611,13 +625,12 @@ public class Grids_GridInt extends Grids_GridNumber {
         init();
     }
 
-    private void init(Grids_StatsInt stats, IO_Path gridFile)
+    private void init(Grids_StatsInt stats, IO_Path gridFile,
+            Grids_ChunkIntFactory cf, int chunkNRows, int chunkNCols)
             throws IOException, ClassNotFoundException, Exception {
         env.checkAndMaybeFreeMemory();
         this.stats = stats;
         this.stats.setGrid(this);
-        // For reporting
-        int reportN;
         Grids_Processor gp;
         gp = env.getProcessor();
         if (Files.isDirectory(gridFile.getPath())) {
@@ -637,100 +650,182 @@ public class Grids_GridInt extends Grids_GridNumber {
         } else {
             // Assume ESRI AsciiFile
             name = fs.getBaseDir().getFileName().toString() + fsID;
-            data = new TreeMap<>();
-            worthSwapping = new HashSet<>();
+            data = new Grids_ChunkTable(this, nChunkRows, nChunkCols);
+            worthSwapping = ConcurrentHashMap.newKeySet();
             this.stats = stats;
             this.stats.setGrid(this);
             String filename = gridFile.getFileName().toString();
-            int value;
             if (filename.endsWith("asc") || filename.endsWith("txt")) {
-                Grids_ESRIAsciiGridImporter eagi;
-                eagi = new Grids_ESRIAsciiGridImporter(env, gridFile);
-                Header header = eagi.getHeader();
-                //long inputNcols = ( Long ) header[ 0 ];
-                //long inputNrows = ( Long ) header[ 1 ];
-                nCols = header.nrows;
-                nRows = header.ncols;
-                chunkNRows = gp.gridFactoryDouble.getChunkNRows();
-                chunkNCols = gp.gridFactoryDouble.getChunkNCols();
-                initNChunkRows();
-                initNChunkCols();
-                initDimensions(header, 0, 0);
-                // Set to report every 10%
-                reportN = (int) (nRows - 1) / 10;
-                if (reportN == 0) {
-                    reportN = 1;
+                Grids_ESRIAsciiGridStreamImporter r;
+                r = new Grids_ESRIAsciiGridStreamImporter(env, gridFile);
+                try {
+                    Header header = r.getHeader();
+                    nCols = header.ncols;
+                    nRows = header.nrows;
+                    this.chunkNRows = chunkNRows;
+                    this.chunkNCols = chunkNCols;
+                    initNChunkRows();
+                    initNChunkCols();
+                    data.resize(nChunkRows, nChunkCols);
+                    initDimensions(header, 0, 0);
+                    init(r, header.ndv.intValue(), cf);
+                } finally {
+                    r.close();
                 }
-                double gridFileNoDataValue = header.ndv.doubleValue();
-                long row;
-                long col;
-                // Read Data into Chunks. This starts with the last row and ends with the first.
-                if (gridFileNoDataValue == ndv) {
-                    if (stats.isUpdated()) {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = (int) eagi.readDouble();
-                                initCell(row, col, value, false);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
-                            }
-                            env.checkAndMaybeFreeMemory();
-                        }
+            } else if (filename.endsWith("."
+                    + Grids_BinaryGridImporter.EXTENSION)) {
+                Grids_BinaryGridImporter r;
+                r = new Grids_BinaryGridImporter(env, gridFile);
+                try {
+                    Grids_BinaryGridImporter.Header header = r.getHeader();
+                    nCols = header.ncols;
+                    nRows = header.nrows;
+                    if (header.layout
+                            == Grids_BinaryGridImporter.LAYOUT_TILES) {
+                        // Use the tiles as chunks.
+                        this.chunkNRows = header.tileNRows;
+                        this.chunkNCols = header.tileNCols;
                     } else {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = (int) eagi.readDouble();
-                                if (value == gridFileNoDataValue) {
-                                    value = ndv;
-                                }
-                                initCell(row, col, value, true);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
-                            }
-                            env.checkAndMaybeFreeMemory();
-                        }
+                        this.chunkNRows = chunkNRows;
+                        this.chunkNCols = chunkNCols;
                     }
-                } else {
-                    if (stats.isUpdated()) {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = (int) eagi.readDouble();
-                                if (value == gridFileNoDataValue) {
-                                    value = ndv;
-                                }
-                                initCell(row, col, value, false);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
+                    initNChunkRows();
+                    initNChunkCols();
+                    data.resize(nChunkRows, nChunkCols);
+                    initDimensions(header, 0, 0);
+                    init(r, cf);
+                } finally {
+                    r.close();
+                }
+            }
+        }
+        init();
+    }
+
+    /**
+     * Initialises the chunks from the values read by {@code r} a chunk at a
+     * time. The values of each chunk are copied into a new
+     * {@link Grids_ChunkIntArrayFlat} that is then set up using
+     * {@link #initChunk}. Values that equal the no data value of the file are
+     * replaced with {@link #ndv}. Memory is checked and maybe freed after each
+     * chunk row and the statistics are updated at the end.
+     *
+     * @param r The importer.
+     * @param cf The factory preferred to construct chunks of this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void init(Grids_BinaryGridImporter r, Grids_ChunkIntFactory cf)
+            throws IOException, Exception {
+        Grids_ChunkIntFactoryArrayFlat f;
+        f = new Grids_ChunkIntFactoryArrayFlat();
+        Grids_ChunkOptimizer o = env.getChunkOptimizer();
+        int fileNoDataValue = (int) r.getHeader().ndvDouble;
+        int[] row = new int[chunkNCols];
+        for (int cr = 0; cr < nChunkRows; cr++) {
+            int ncrr = getChunkNRows(cr);
+            for (int cc = 0; cc < nChunkCols; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                Grids_ChunkIntArrayFlat c = f.create(this, i);
+                int nccc = getChunkNCols(cc);
+                for (int k = 0; k < ncrr; k++) {
+                    r.readRow(getRow(cr, k), getCol(cc, 0), row, 0, nccc);
+                    if (fileNoDataValue != ndv) {
+                        for (int col = 0; col < nccc; col++) {
+                            if (row[col] == fileNoDataValue) {
+                                row[col] = ndv;
                             }
-                            env.checkAndMaybeFreeMemory();
                         }
-                    } else {
-                        for (row = (nRows - 1); row > -1; row--) {
-                            env.checkAndMaybeFreeMemory();
-                            env.initNotToClear();
-                            for (col = 0; col < nCols; col++) {
-                                value = (int) eagi.readDouble();
-                                initCell(row, col, value, true);
-                            }
-                            if (row % reportN == 0) {
-                                env.env.log("Done row " + row);
-                            }
-                            env.checkAndMaybeFreeMemory();
+                    }
+                    c.setRow(k, row, 0);
+                }
+                initChunk(i, c, cf, o);
+            }
+            env.checkAndMaybeFreeMemory();
+        }
+        stats.changed();
+    }
+
+    /**
+     * Initialises the chunks from the values read by {@code r} a chunk row at
+     * a time starting with the last chunk row. The values of each chunk row
+     * are read into arrays that are copied a row at a time into new
+     * {@link Grids_ChunkIntArrayFlat} chunks, which are then set up using
+     * {@link #initChunk}. Values that equal {@code fileNoDataValue} are
+     * replaced with {@link #ndv}. Memory is checked and maybe freed after each
+     * chunk row. The statistics are updated at the end.
+     *
+     * @param r The importer positioned at the first value.
+     * @param fileNoDataValue The no data value of the file.
+     * @param cf The factory preferred to construct chunks of this.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void init(Grids_ESRIAsciiGridStreamImporter r,
+            int fileNoDataValue, Grids_ChunkIntFactory cf) throws IOException,
+            Exception {
+        Grids_ChunkIntFactoryArrayFlat f;
+        f = new Grids_ChunkIntFactoryArrayFlat();
+        Grids_ChunkOptimizer o = env.getChunkOptimizer();
+        int[][] rows = new int[chunkNRows][(int) nCols];
+        // Set to report every 10%
+        int reportN = Math.max(1, (nChunkRows - 1) / 10);
+        for (int cr = nChunkRows - 1; cr > -1; cr--) {
+            int ncrr = getChunkNRows(cr);
+            r.readRows(rows, ncrr);
+            if (fileNoDataValue != ndv) {
+                for (int k = 0; k < ncrr; k++) {
+                    int[] row = rows[k];
+                    for (int col = 0; col < row.length; col++) {
+                        if (row[col] == fileNoDataValue) {
+                            row[col] = ndv;
                         }
                     }
                 }
             }
+            for (int cc = 0; cc < nChunkCols; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                Grids_ChunkIntArrayFlat c = f.create(this, i);
+                int off = cc * chunkNCols;
+                // The first row read is the last row of the chunk.
+                for (int k = 0; k < ncrr; k++) {
+                    c.setRow(ncrr - 1 - k, rows[k], off);
+                }
+                initChunk(i, c, cf, o);
+            }
+            if (cr % reportN == 0) {
+                env.env.log("Done chunk row " + cr);
+            }
+            env.checkAndMaybeFreeMemory();
+        }
+        stats.changed();
+    }
+
+    /**
+     * Puts a chunk with the values of {@code c} into {@link #data} with chunk
+     * ID {@code i}. This is {@code c} if {@code cf} creates flat array chunks,
+     * otherwise it is created from {@code c} by {@code cf}. The chunk is
+     * optimised if {@code o} is not {@code null}.
+     *
+     * @param i The chunk ID.
+     * @param c The chunk with the values.
+     * @param cf The factory preferred to construct chunks of this.
+     * @param o The chunk optimiser (may be {@code null}).
+     * @throws Exception If encountered.
+     */
+    private void initChunk(Grids_2D_ID_int i, Grids_ChunkIntArrayFlat c,
+            Grids_ChunkIntFactory cf, Grids_ChunkOptimizer o) throws Exception {
+        Grids_ChunkInt chunk = c;
+        if (!(cf instanceof Grids_ChunkIntFactoryArrayFlat)) {
+            chunk = cf.create(c, i);
+        }
+        data.put(i, chunk);
+        if (!(chunk instanceof Grids_ChunkIntSinglet)) {
+            worthSwapping.add(i);
+        }
+        if (o != null) {
+            optimize(i, chunk, o, null);
         }
-        init();
     }
 
 //    /**
@@ -802,6 +897,7 @@ public class Grids_GridInt extends Grids_GridNumber {
             if (!(gc instanceof Grids_ChunkIntSinglet)) {
                 worthSwapping.add(chunkID);
             }
+            changed(chunkID);
         } else {
             Grids_Chunk c;
             c = data.get(chunkID);
@@ -820,6 +916,7 @@ public class Grids_GridInt extends Grids_GridNumber {
                     if (!(chunk instanceof Grids_ChunkIntSinglet)) {
                         worthSwapping.add(chunkID);
                     }
+                    changed(chunkID);
                 }
             } else {
                 if (fast) {
@@ -831,6 +928,14 @@ public class Grids_GridInt extends Grids_GridNumber {
         }
     }
 
+    /**
+     * @return {@link Grids_ChunkIntCodec#INSTANCE}
+     */
+    @Override
+    protected Grids_ChunkIntCodec getChunkCodec() {
+        return Grids_ChunkIntCodec.INSTANCE;
+    }
+
     /**
      * @return Grids_ChunkInt for chunk ID @code i}.
      * @param i The chunk ID.
@@ -844,6 +949,7 @@ public class Grids_GridInt extends Grids_GridNumber {
             if (data.get(i) == null) {
                 loadChunk(i);
             }
+            recordAccess(i);
             return (Grids_ChunkInt) data.get(i);
         }
         return null;
@@ -865,6 +971,7 @@ public class Grids_GridInt extends Grids_GridNumber {
             if (data.get(i) == null) {
                 loadChunk(i);
             }
+            recordAccess(i);
             return (Grids_ChunkInt) data.get(i);
         }
         return null;
@@ -1071,6 +1178,10 @@ public class Grids_GridInt extends Grids_GridNumber {
         int r = ndv;
         if (chunk instanceof Grids_ChunkIntArray) {
             r = ((Grids_ChunkIntArray) chunk).setCell(ccr, ccc, v);
+        } else if (chunk instanceof Grids_ChunkIntArrayFlat) {
+            r = ((Grids_ChunkIntArrayFlat) chunk).setCell(ccr, ccc, v);
+        } else if (chunk instanceof Grids_ChunkIntOffHeap) {
+            r = ((Grids_ChunkIntOffHeap) chunk).setCell(ccr, ccc, v);
         } else if (chunk instanceof Grids_ChunkIntMap) {
             r = ((Grids_ChunkIntMap) chunk).setCell(ccr, ccc, v);
         } else {
@@ -1087,6 +1198,9 @@ public class Grids_GridInt extends Grids_GridNumber {
         }
         // Update stats
         if (v != r) {
+            if (chunk != null) {
+                changed(chunk.getId());
+            }
             if (stats.isUpdated()) {
                 updateStats(v, r);
             }
@@ -1094,6 +1208,30 @@ public class Grids_GridInt extends Grids_GridNumber {
         return r;
     }
 
+
+    /**
+     * For getting the chunk with chunk ID {@code i} so that cells can be set
+     * in it directly. If the chunk is a {@link Grids_ChunkIntSinglet}, then it is
+     * converted to another type of chunk first. A change to the chunk is
+     * counted (see {@link #changed(Grids_2D_ID_int)}).
+     *
+     * @return The chunk with chunk ID {@code i}.
+     * @param i The chunk ID.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    @Override
+    public Grids_ChunkInt getWritableChunk(Grids_2D_ID_int i)
+            throws IOException, ClassNotFoundException, Exception {
+        Grids_ChunkInt r = getChunk(i);
+        if (r instanceof Grids_ChunkIntSinglet) {
+            r = convertToAnotherTypeOfChunk(r, i);
+            worthSwapping.add(i);
+        }
+        changed(i);
+        return r;
+    }
+
     /**
      * Convert chunk to another type of chunk.
      */
@@ -1102,6 +1240,9 @@ public class Grids_GridInt extends Grids_GridNumber {
             Exception {
         Grids_ChunkInt r = env.getProcessor().gridFactoryInt.defaultGridChunkIntFactory.create(chunk, i);
         data.put(i, r);
+        if (!(r instanceof Grids_ChunkIntSinglet)) {
+            worthSwapping.add(i);
+        }
         return r;
     }
 
@@ -1132,6 +1273,7 @@ public class Grids_GridInt extends Grids_GridNumber {
         if (chunk != null) {
             chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), v);
         }
+        changed(i);
         // Update stats
         if (v != ndv) {
             updateStats(v);
@@ -1182,6 +1324,9 @@ public class Grids_GridInt extends Grids_GridNumber {
     protected void initCellFast(Grids_ChunkInt chunk, long row, long col,
             int v) {
         chunk.initCell(getChunkCellRow(row), getChunkCellCol(col), v);
+        if (changes != null) {
+            changed(chunk.getId());
+        }
     }
 
     /**
@@ -1522,6 +1667,7 @@ public class Grids_GridInt extends Grids_GridNumber {
                     chunk.initCell(cnr, cnc, v);
                 }
             }
+            changed(i);
         }
     }
 
@@ -1561,10 +1707,16 @@ public class Grids_GridInt extends Grids_GridNumber {
         if (chunk.getClass() == Grids_ChunkIntArray.class) {
             return ((Grids_ChunkIntArray) c).getCell(ccr, ccc);
         }
+        if (chunk.getClass() == Grids_ChunkIntArrayFlat.class) {
+            return ((Grids_ChunkIntArrayFlat) c).getCell(ccr, ccc);
+        }
+        if (chunk.getClass() == Grids_ChunkIntOffHeap.class) {
+            return ((Grids_ChunkIntOffHeap) c).getCell(ccr, ccc);
+        }
         if (chunk.getClass() == Grids_ChunkIntMap.class) {
             return ((Grids_ChunkIntMap) c).getCell(ccr, ccc);
         }
-        return c.getGrid().ndv;
+        return c.getCell(ccr, ccc);
     }
 
     @Override
@@ -268,7 +268,8 @@ public class Grids_GridIntFactory extends Grids_GridFactory {
     public Grids_GridInt create(IO_Path gridFile)
             throws IOException, ClassNotFoundException, Exception {
         Grids_GridInt r = new Grids_GridInt(env, store, store.getNextID(),
-                gridFile, noDataValue);
+                gridFile, defaultGridChunkIntFactory, chunkNRows, chunkNCols,
+                noDataValue);
         //store.addDir();
         return r;
     }
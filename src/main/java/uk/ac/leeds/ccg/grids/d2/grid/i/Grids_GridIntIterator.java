@@ -16,12 +16,14 @@
 package uk.ac.leeds.ccg.grids.d2.grid.i;
 
 import java.io.IOException;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntOffHeap;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridIterator;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
 import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkRowMajorOrderIterator;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArrayFlat;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntIteratorArrayOrMap;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntIteratorSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntMap;
@@ -63,7 +65,13 @@ public class Grids_GridIntIterator extends Grids_GridIterator {
      */
     @Override
     protected final void initChunkIterator() {
-        if (chunk instanceof Grids_ChunkIntArray) {
+        if (chunk instanceof Grids_ChunkIntArrayFlat) {
+            chunkIterator = new Grids_ChunkIntIteratorArrayOrMap(
+                    (Grids_ChunkIntArrayFlat) chunk);
+        } else if (chunk instanceof Grids_ChunkIntOffHeap) {
+            chunkIterator = new Grids_ChunkIntIteratorArrayOrMap(
+                    (Grids_ChunkIntOffHeap) chunk);
+        } else if (chunk instanceof Grids_ChunkIntArray) {
             chunkIterator = new Grids_ChunkIntIteratorArrayOrMap(
                     (Grids_ChunkIntArray) chunk);
         } else if (chunk instanceof Grids_ChunkIntMap) {
@@ -81,7 +89,13 @@ public class Grids_GridIntIterator extends Grids_GridIterator {
      */
     @Override
     public Grids_ChunkRowMajorOrderIterator getChunkIterator(Grids_Chunk gc) throws Exception {
-        if (gc instanceof Grids_ChunkIntArray) {
+        if (gc instanceof Grids_ChunkIntArrayFlat) {
+            return new Grids_ChunkIntIteratorArrayOrMap(
+                    (Grids_ChunkIntArrayFlat) gc);
+        } else if (gc instanceof Grids_ChunkIntOffHeap) {
+            return new Grids_ChunkIntIteratorArrayOrMap(
+                    (Grids_ChunkIntOffHeap) gc);
+        } else if (gc instanceof Grids_ChunkIntArray) {
             return new Grids_ChunkIntIteratorArrayOrMap(
                     (Grids_ChunkIntArray) gc);
         } else if (gc instanceof Grids_ChunkIntMap) {
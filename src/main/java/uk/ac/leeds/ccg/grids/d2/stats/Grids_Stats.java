@@ -18,6 +18,8 @@ package uk.ac.leeds.ccg.grids.d2.stats;
 import java.io.IOException;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 
 /**
@@ -104,6 +106,32 @@ public abstract class Grids_Stats extends Grids_Object {
         n = stats.n;
     }
 
+    /**
+     * Called when chunk {@code c} with chunk ID {@code i} is cleared from the
+     * memory of {@link #grid}. This does nothing, but is overridden to retain
+     * anything about the chunk needed to update without reloading it.
+     *
+     * @param i The chunk ID.
+     * @param c The chunk.
+     */
+    public void cleared(Grids_2D_ID_int i, Grids_Chunk c) {
+    }
+
+    /**
+     * Called after values have been set in the chunks of {@link #grid}
+     * directly rather than via {@link #grid}, so that the statistics have not
+     * been kept up to date as the values were set. This calls
+     * {@link #update()}, but is overridden by statistics that are not kept
+     * up to date to just note that they are not.
+     *
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     */
+    public void changed() throws IOException, Exception,
+            ClassNotFoundException {
+        update();
+    }
+
     /**
      * @return {@link #grid} cast accordingly.
      */
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.stats;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.Serializable;
+
+/**
+ * A summary of a collection of double values that can be merged with other
+ * summaries. This is for summarising the values in chunks so that statistics
+ * for a grid can be calculated by merging the summaries of its chunks. The
+ * summary is of the number of values, the minimum and maximum and how many
+ * values are equal to each, the sum, and the mean and sum of squared
+ * differences from the mean (for the variance). The sum is compensated using
+ * the Neumaier variant of Kahan summation, and the mean and sum of squared
+ * differences are accumulated and merged using the methods of Welford and of
+ * Chan et al. Optionally the sum is also accumulated exactly as a
+ * BigRational.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_StatsDoubleSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of values.
+     */
+    protected long n;
+
+    /**
+     * The minimum value.
+     */
+    protected double min;
+
+    /**
+     * The number of values equal to {@link #min}.
+     */
+    protected long nMin;
+
+    /**
+     * The maximum value.
+     */
+    protected double max;
+
+    /**
+     * The number of values equal to {@link #max}.
+     */
+    protected long nMax;
+
+    /**
+     * The sum of the values without {@link #compensation}.
+     */
+    protected double sum;
+
+    /**
+     * The compensation for the rounding errors in {@link #sum}.
+     */
+    protected double compensation;
+
+    /**
+     * The mean of the values.
+     */
+    protected double mean;
+
+    /**
+     * The sum of the squared differences of the values from {@link #mean}.
+     */
+    protected double m2;
+
+    /**
+     * The exact sum of the values or {@code null} if this is not being
+     * calculated.
+     */
+    protected BigRational exactSum;
+
+    /**
+     * Create a new summary of no values.
+     *
+     * @param exact If {@code true} then the sum is also calculated exactly.
+     */
+    public Grids_StatsDoubleSummary(boolean exact) {
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        if (exact) {
+            exactSum = BigRational.ZERO;
+        }
+    }
+
+    /**
+     * Adds {@code v} to {@link #sum} and updates {@link #compensation}.
+     *
+     * @param v The value to add.
+     */
+    private void addToSum(double v) {
+        double t = sum + v;
+        if (Math.abs(sum) >= Math.abs(v)) {
+            compensation += (sum - t) + v;
+        } else {
+            compensation += (v - t) + sum;
+        }
+        sum = t;
+    }
+
+    /**
+     * Adds {@code v} to the summary.
+     *
+     * @param v The value.
+     */
+    public void add(double v) {
+        add(v, 1L);
+    }
+
+    /**
+     * Adds {@code count} values of {@code v} to the summary.
+     *
+     * @param v The value.
+     * @param count The number of values to add.
+     */
+    public void add(double v, long count) {
+        if (count < 1L) {
+            return;
+        }
+        if (v < min) {
+            min = v;
+            nMin = count;
+        } else if (v == min) {
+            nMin += count;
+        }
+        if (v > max) {
+            max = v;
+            nMax = count;
+        } else if (v == max) {
+            nMax += count;
+        }
+        if (count == 1L) {
+            addToSum(v);
+        } else {
+            addToSum(v * count);
+        }
+        long n1 = n + count;
+        double delta = v - mean;
+        mean += delta * count / n1;
+        m2 += delta * delta * n * count / n1;
+        n = n1;
+        if (exactSum != null) {
+            exactSum = exactSum.add(BigRational.valueOf(v)
+                    .multiply(BigRational.valueOf(count)));
+        }
+    }
+
+    /**
+     * Creates a new summary of the values summarised by {@code a} and
+     * {@code b}. The new summary has an exact sum only if both {@code a} and
+     * {@code b} do.
+     *
+     * @param a A summary.
+     * @param b Another summary.
+     * @return A new summary of the values of {@code a} and {@code b}.
+     */
+    public static Grids_StatsDoubleSummary merge(Grids_StatsDoubleSummary a,
+            Grids_StatsDoubleSummary b) {
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(false);
+        r.n = a.n + b.n;
+        if (a.min < b.min) {
+            r.min = a.min;
+            r.nMin = a.nMin;
+        } else if (a.min > b.min) {
+            r.min = b.min;
+            r.nMin = b.nMin;
+        } else {
+            r.min = a.min;
+            r.nMin = a.nMin + b.nMin;
+        }
+        if (a.max > b.max) {
+            r.max = a.max;
+            r.nMax = a.nMax;
+        } else if (a.max < b.max) {
+            r.max = b.max;
+            r.nMax = b.nMax;
+        } else {
+            r.max = a.max;
+            r.nMax = a.nMax + b.nMax;
+        }
+        r.sum = a.sum;
+        r.compensation = a.compensation + b.compensation;
+        r.addToSum(b.sum);
+        if (r.n > 0L) {
+            double delta = b.mean - a.mean;
+            r.mean = a.mean + delta * b.n / r.n;
+            r.m2 = a.m2 + b.m2 + delta * delta * a.n * b.n / r.n;
+        }
+        if (a.exactSum != null && b.exactSum != null) {
+            r.exactSum = a.exactSum.add(b.exactSum);
+        }
+        return r;
+    }
+
+    /**
+     * @return {@code true} if the sum is also calculated exactly.
+     */
+    public boolean isExact() {
+        return exactSum != null;
+    }
+
+    /**
+     * @return {@link #n}
+     */
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @return {@link #min} which is {@link Double#POSITIVE_INFINITY} if there
+     * are no values.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return {@link #nMin}
+     */
+    public long getNMin() {
+        return nMin;
+    }
+
+    /**
+     * @return {@link #max} which is {@link Double#NEGATIVE_INFINITY} if there
+     * are no values.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return {@link #nMax}
+     */
+    public long getNMax() {
+        return nMax;
+    }
+
+    /**
+     * @return The compensated sum of the values.
+     */
+    public double getSum() {
+        return sum + compensation;
+    }
+
+    /**
+     * @return {@link #exactSum} which is {@code null} if the sum is not being
+     * calculated exactly.
+     */
+    public BigRational getExactSum() {
+        return exactSum;
+    }
+
+    /**
+     * @return {@link #mean} which is zero if there are no values.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The sample variance of the values or zero if there are fewer
+     * than two values.
+     */
+    public double getVariance() {
+        if (n < 2L) {
+            return 0d;
+        }
+        return m2 / (n - 1L);
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Sweep;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.memory.Grids_ChunkPins;
+
+/**
+ * For exporting grids to files in the grids binary raster format (see
+ * {@link Grids_BinaryGridImporter}). Int grids are written with int values
+ * and other grids with double values. The values are written a chunk row at a
+ * time using a {@link FileChannel}. With
+ * {@link Grids_BinaryGridImporter#LAYOUT_TILES} the tiles are
+ * the chunks of the grid.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_BinaryGridExporter extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a new instance.
+     *
+     * @param e The grids environment.
+     */
+    public Grids_BinaryGridExporter(Grids_Environment e) {
+        super(e);
+    }
+
+    /**
+     * Writes grid {@code g} to a file in the grids binary raster format with
+     * {@link Grids_BinaryGridImporter#LAYOUT_TILES} and returns the Path to
+     * the file.
+     *
+     * @param g Grid to export.
+     * @return The path to the file.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.Exception If encountered.
+     */
+    public Path toBinaryFile(Grids_GridNumber g) throws IOException,
+            Exception {
+        Path file = Paths.get(g.getDirectory().getParent().toString(),
+                g.getName() + "." + Grids_BinaryGridImporter.EXTENSION);
+        toBinaryFile(g, file, Grids_BinaryGridImporter.LAYOUT_TILES);
+        return file;
+    }
+
+    /**
+     * Writes grid {@code g} to {@code file} in the grids binary raster
+     * format.
+     *
+     * @param g Grid to export.
+     * @param file The file to export to.
+     * @param layout Either {@link Grids_BinaryGridImporter#LAYOUT_ROWS} or
+     * {@link Grids_BinaryGridImporter#LAYOUT_TILES}.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.Exception If encountered.
+     */
+    public void toBinaryFile(Grids_GridNumber g, Path file, byte layout)
+            throws IOException, Exception {
+        if (layout != Grids_BinaryGridImporter.LAYOUT_ROWS
+                && layout != Grids_BinaryGridImporter.LAYOUT_TILES) {
+            throw new IllegalArgumentException("layout " + layout);
+        }
+        env.initNotToClear();
+        env.checkAndMaybeFreeMemory();
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            write(fc, getHeader(g, layout));
+            Grids_ChunkPins pins = env.getPins();
+            int ncr = g.getNChunkRows();
+            int ncc = g.getNChunkCols();
+            boolean tiles = layout == Grids_BinaryGridImporter.LAYOUT_TILES;
+            /**
+             * Tiles are written from the bottom and rows from the top, so the
+             * sweep is ascending for tiles and otherwise descending.
+             */
+            Grids_Sweep sweep = new Grids_Sweep(0, 1, tiles);
+            try {
+                for (int k = 0; k < ncr; k++) {
+                    int cr = tiles ? k : ncr - 1 - k;
+                    g.prefetch(sweep, g.getRow(cr, tiles ? 0
+                            : g.getChunkNRows(cr) - 1));
+                    env.checkAndMaybeFreeMemory();
+                    List<Grids_2D_ID_int> ids = new ArrayList<>(ncc);
+                    for (int cc = 0; cc < ncc; cc++) {
+                        ids.add(new Grids_2D_ID_int(cr, cc));
+                    }
+                    pins.pin(g, ids);
+                    try {
+                        if (tiles) {
+                            writeTiles(fc, g, ids);
+                        } else {
+                            writeRows(fc, g, cr, ids);
+                        }
+                    } finally {
+                        pins.unpin(g, ids);
+                    }
+                }
+            } finally {
+                g.endSweep(sweep);
+            }
+        }
+        env.checkAndMaybeFreeMemory();
+    }
+
+    /**
+     * @param g The grid.
+     * @param layout The layout.
+     * @return A buffer containing the header ready to be written.
+     */
+    protected ByteBuffer getHeader(Grids_GridNumber g, byte layout) {
+        Grids_Dimensions d = g.getDimensions();
+        byte[][] ds = {toBytes(d.getXMin()), toBytes(d.getYMin()),
+            toBytes(d.getCellsize())};
+        int n = Grids_BinaryGridImporter.FIXED_HEADER_SIZE;
+        for (byte[] s : ds) {
+            n += Integer.BYTES + s.length;
+        }
+        int offset = (n + 7) / 8 * 8;
+        ByteBuffer b = ByteBuffer.allocate(offset)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(Grids_BinaryGridImporter.MAGIC);
+        b.putShort(Grids_BinaryGridImporter.VERSION);
+        boolean isInt = g instanceof Grids_GridInt;
+        if (isInt) {
+            b.put(Grids_BinaryGridImporter.TYPE_INT);
+        } else {
+            b.put(Grids_BinaryGridImporter.TYPE_DOUBLE);
+        }
+        b.put(layout);
+        b.putLong(g.getNRows());
+        b.putLong(g.getNCols());
+        if (layout == Grids_BinaryGridImporter.LAYOUT_TILES) {
+            b.putInt(g.getChunkNRows());
+            b.putInt(g.getChunkNCols());
+        } else {
+            b.putInt(0);
+            b.putInt(0);
+        }
+        if (isInt) {
+            b.putDouble(((Grids_GridInt) g).getNoDataValue());
+        } else {
+            b.putDouble(((Grids_GridDouble) g).getNoDataValue());
+        }
+        b.putInt(offset);
+        for (byte[] s : ds) {
+            b.putInt(s.length);
+            b.put(s);
+        }
+        return b.position(0);
+    }
+
+    /**
+     * @param x The value.
+     * @return The ASCII bytes of the numerator, a "/" and the denominator of
+     * {@code x}.
+     */
+    private static byte[] toBytes(BigRational x) {
+        return (x.getNumeratorBigInteger() + "/"
+                + x.getDenominatorBigInteger())
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes the rows of chunk row {@code cr} of {@code g} from the last row
+     * to the first.
+     *
+     * @param fc The channel.
+     * @param g The grid.
+     * @param cr The chunk row.
+     * @param ids The chunk IDs of the chunks in chunk row {@code cr}.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void writeRows(FileChannel fc, Grids_GridNumber g, int cr,
+            List<Grids_2D_ID_int> ids) throws IOException, Exception {
+        boolean isInt = g instanceof Grids_GridInt;
+        int w = isInt ? Integer.BYTES : Double.BYTES;
+        ByteBuffer b = ByteBuffer.allocate((int) g.getNCols() * w)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Grids_ChunkInt[] ics = new Grids_ChunkInt[ids.size()];
+        Grids_ChunkDouble[] dcs = new Grids_ChunkDouble[ids.size()];
+        getChunks(g, ids, ics, dcs);
+        for (int r = g.getChunkNRows(cr) - 1; r >= 0; r--) {
+            b.clear();
+            for (int cc = 0; cc < ids.size(); cc++) {
+                if (isInt) {
+                    Grids_ChunkInt c = ics[cc];
+                    int nccc = c.getChunkNCols();
+                    for (int col = 0; col < nccc; col++) {
+                        b.putInt(c.getCell(r, col));
+                    }
+                } else {
+                    Grids_ChunkDouble c = dcs[cc];
+                    int nccc = c.getChunkNCols();
+                    for (int col = 0; col < nccc; col++) {
+                        b.putDouble(c.getCell(r, col));
+                    }
+                }
+            }
+            write(fc, b.flip());
+        }
+    }
+
+    /**
+     * Writes the chunks with chunk IDs {@code ids} as tiles padding them with
+     * the no data value of {@code g}.
+     *
+     * @param fc The channel.
+     * @param g The grid.
+     * @param ids The chunk IDs of the chunks to write in order.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void writeTiles(FileChannel fc, Grids_GridNumber g,
+            List<Grids_2D_ID_int> ids) throws IOException, Exception {
+        boolean isInt = g instanceof Grids_GridInt;
+        int w = isInt ? Integer.BYTES : Double.BYTES;
+        int tnr = g.getChunkNRows();
+        int tnc = g.getChunkNCols();
+        ByteBuffer b = ByteBuffer.allocate(tnr * tnc * w)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Grids_ChunkInt[] ics = new Grids_ChunkInt[ids.size()];
+        Grids_ChunkDouble[] dcs = new Grids_ChunkDouble[ids.size()];
+        getChunks(g, ids, ics, dcs);
+        for (int cc = 0; cc < ids.size(); cc++) {
+            b.clear();
+            if (isInt) {
+                Grids_ChunkInt c = ics[cc];
+                int ndv = ((Grids_GridInt) g).getNoDataValue();
+                int ncr = c.getChunkNRows();
+                int nccc = c.getChunkNCols();
+                for (int r = 0; r < tnr; r++) {
+                    for (int col = 0; col < tnc; col++) {
+                        b.putInt(r < ncr && col < nccc ? c.getCell(r, col)
+                                : ndv);
+                    }
+                }
+            } else {
+                Grids_ChunkDouble c = dcs[cc];
+                double ndv = ((Grids_GridDouble) g).getNoDataValue();
+                int ncr = c.getChunkNRows();
+                int nccc = c.getChunkNCols();
+                for (int r = 0; r < tnr; r++) {
+                    for (int col = 0; col < tnc; col++) {
+                        b.putDouble(r < ncr && col < nccc ? c.getCell(r, col)
+                                : ndv);
+                    }
+                }
+            }
+            write(fc, b.flip());
+        }
+    }
+
+    /**
+     * Gets the chunks of {@code g} with chunk IDs {@code ids} into
+     * {@code ics} if {@code g} is an int grid and otherwise into {@code dcs}.
+     *
+     * @param g The grid.
+     * @param ids The chunk IDs.
+     * @param ics The int chunks.
+     * @param dcs The double chunks.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void getChunks(Grids_GridNumber g, List<Grids_2D_ID_int> ids,
+            Grids_ChunkInt[] ics, Grids_ChunkDouble[] dcs) throws IOException,
+            Exception {
+        for (int cc = 0; cc < ids.size(); cc++) {
+            if (g instanceof Grids_GridInt) {
+                ics[cc] = ((Grids_GridInt) g).getChunk(ids.get(cc));
+            } else {
+                dcs[cc] = ((Grids_GridDouble) g).getChunk(ids.get(cc));
+            }
+            env.checkAndMaybeFreeMemory();
+        }
+    }
+
+    /**
+     * Writes the bytes remaining in {@code b} to {@code fc}.
+     *
+     * @param fc The channel.
+     * @param b The bytes.
+     * @throws IOException If encountered.
+     */
+    private static void write(FileChannel fc, ByteBuffer b)
+            throws IOException {
+        while (b.hasRemaining()) {
+            fc.write(b);
+        }
+    }
+}
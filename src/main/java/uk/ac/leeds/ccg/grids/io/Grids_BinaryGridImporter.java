@@ -0,0 +1,425 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.io.IO_Path;
+
+/**
+ * For importing grids from files in the grids binary raster format. The file
+ * is memory mapped and values are copied from it in bulk. Files in this format
+ * are written by {@link Grids_BinaryGridExporter} and have the extension
+ * {@link #EXTENSION}.
+ *
+ * A file comprises a header followed by a payload of values. All numbers are
+ * little-endian. The header comprises:
+ * <ol>
+ * <li>{@link #MAGIC} (int);</li>
+ * <li>{@link #VERSION} (short);</li>
+ * <li>the type of the values: {@link #TYPE_INT} or {@link #TYPE_DOUBLE}
+ * (byte);</li>
+ * <li>the layout of the values: {@link #LAYOUT_ROWS} or
+ * {@link #LAYOUT_TILES} (byte);</li>
+ * <li>the number of rows (long);</li>
+ * <li>the number of columns (long);</li>
+ * <li>the number of rows and the number of columns in each tile, or zeros
+ * for {@link #LAYOUT_ROWS} (two ints);</li>
+ * <li>the no data value (double);</li>
+ * <li>the offset of the payload from the start of the file, which is a
+ * multiple of 8 (int);</li>
+ * <li>the x of the lower left corner, the y of the lower left corner and the
+ * cellsize, each as the number of bytes (int) followed by the ASCII
+ * characters of the numerator, a "/" and the denominator of the exact
+ * value.</li>
+ * </ol>
+ * The header is padded with zeros to the offset of the payload. The values
+ * are 4 byte ints or 8 byte doubles. For {@link #LAYOUT_ROWS} the values are
+ * in row major order starting with the top row, as in ESRI Asciigrid files.
+ * For {@link #LAYOUT_TILES} the grid is split into tiles like chunks starting
+ * with the tile in the bottom left corner. The tiles are in row major order
+ * and the values in each tile are in row major order starting with the bottom
+ * row of the tile. Each tile has the same number of values, the tiles in the
+ * last row and column of tiles being padded with the no data value.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_BinaryGridImporter extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The file extension.
+     */
+    public static final String EXTENSION = "gbr";
+
+    /**
+     * The first four bytes of every file.
+     */
+    public static final int MAGIC = 0x52424447;
+
+    /**
+     * The version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Indicates that the values are ints.
+     */
+    public static final byte TYPE_INT = 0;
+
+    /**
+     * Indicates that the values are doubles.
+     */
+    public static final byte TYPE_DOUBLE = 1;
+
+    /**
+     * Indicates that the values are in row major order.
+     */
+    public static final byte LAYOUT_ROWS = 0;
+
+    /**
+     * Indicates that the values are in tiles.
+     */
+    public static final byte LAYOUT_TILES = 1;
+
+    /**
+     * The number of bytes in the header before the dimensions.
+     */
+    protected static final int FIXED_HEADER_SIZE = 44;
+
+    /**
+     * For reading ints from {@link #payload}.
+     */
+    protected static final ValueLayout.OfInt INT
+            = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * For reading doubles from {@link #payload}.
+     */
+    protected static final ValueLayout.OfDouble DOUBLE
+            = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(
+                    ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The file.
+     */
+    protected final IO_Path file;
+
+    /**
+     * The header.
+     */
+    protected final Header header;
+
+    /**
+     * For {@link #payload}.
+     */
+    protected transient Arena arena;
+
+    /**
+     * The memory mapped payload.
+     */
+    protected transient MemorySegment payload;
+
+    /**
+     * Opens {@code f}, reads the header and maps the payload.
+     *
+     * @param e The grids environment.
+     * @param f The file.
+     * @throws IOException If {@code f} cannot be read or is not in the grids
+     * binary raster format.
+     */
+    public Grids_BinaryGridImporter(Grids_Environment e, IO_Path f)
+            throws IOException {
+        super(e);
+        file = f;
+        try (FileChannel fc = FileChannel.open(f.getPath(),
+                StandardOpenOption.READ)) {
+            header = readHeader(fc);
+            long n = header.getPayloadSize();
+            if (fc.size() < header.offset + n) {
+                throw new IOException("Truncated payload in " + f);
+            }
+            arena = Arena.ofShared();
+            payload = fc.map(FileChannel.MapMode.READ_ONLY, header.offset, n,
+                    arena);
+        }
+    }
+
+    /**
+     * @return {@link #header}
+     */
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * Reads the header from {@code fc}.
+     *
+     * @param fc The channel.
+     * @return The header.
+     * @throws IOException If the header is not valid.
+     */
+    private Header readHeader(FileChannel fc) throws IOException {
+        ByteBuffer b = read(fc, 0, FIXED_HEADER_SIZE);
+        if (b.getInt() != MAGIC) {
+            throw new IOException("Not a grids binary raster " + file);
+        }
+        short v = b.getShort();
+        if (v != VERSION) {
+            throw new IOException("Unsupported version " + v + " of " + file);
+        }
+        Header h = new Header();
+        h.type = b.get();
+        h.layout = b.get();
+        h.nrows = b.getLong();
+        h.ncols = b.getLong();
+        h.tileNRows = b.getInt();
+        h.tileNCols = b.getInt();
+        h.ndvDouble = b.getDouble();
+        h.offset = b.getInt();
+        if ((h.type != TYPE_INT && h.type != TYPE_DOUBLE)
+                || (h.layout != LAYOUT_ROWS && h.layout != LAYOUT_TILES)
+                || h.nrows < 0 || h.ncols < 0
+                || (h.layout == LAYOUT_TILES
+                && (h.tileNRows < 1 || h.tileNCols < 1))
+                || h.offset < FIXED_HEADER_SIZE || h.offset % 8 != 0) {
+            throw new IOException("Invalid header in " + file);
+        }
+        b = read(fc, FIXED_HEADER_SIZE, h.offset - FIXED_HEADER_SIZE);
+        h.xll = readBigRational(b);
+        h.yll = readBigRational(b);
+        h.cellsize = readBigRational(b);
+        h.ndv = BigRational.valueOf(h.ndvDouble);
+        return h;
+    }
+
+    /**
+     * @param fc The channel.
+     * @param position The position in {@code fc} to read from.
+     * @param n The number of bytes to read.
+     * @return A little-endian buffer of the {@code n} bytes read.
+     * @throws IOException If encountered or if there are fewer than {@code n}
+     * bytes.
+     */
+    private ByteBuffer read(FileChannel fc, long position, int n)
+            throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(n).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (fc.read(b, position + b.position()) < 0) {
+                throw new IOException("Truncated header in " + file);
+            }
+        }
+        return b.flip();
+    }
+
+    /**
+     * @param b The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the value is not valid.
+     */
+    private BigRational readBigRational(ByteBuffer b) throws IOException {
+        try {
+            int n = b.getInt();
+            byte[] s = new byte[n];
+            b.get(s);
+            String[] nd = new String(s, StandardCharsets.US_ASCII).split("/");
+            return BigRational.valueOf(new BigInteger(nd[0]),
+                    new BigInteger(nd[1]));
+        } catch (RuntimeException ex) {
+            throw new IOException("Invalid dimensions in " + file, ex);
+        }
+    }
+
+    /**
+     * @param row The row (where row 0 is the bottom row).
+     * @param col The column.
+     * @return The index of the value in row {@code row}, column {@code col} in
+     * {@link #payload}.
+     */
+    protected long getIndex(long row, long col) {
+        if (header.layout == LAYOUT_ROWS) {
+            return (header.nrows - 1L - row) * header.ncols + col;
+        }
+        long tr = row / header.tileNRows;
+        long tc = col / header.tileNCols;
+        long ntc = (header.ncols + header.tileNCols - 1) / header.tileNCols;
+        return ((tr * ntc + tc) * header.tileNRows
+                + (row - tr * header.tileNRows)) * header.tileNCols
+                + (col - tc * header.tileNCols);
+    }
+
+    /**
+     * @param col The column.
+     * @return The number of values that are contiguous in {@link #payload}
+     * in a row from column {@code col}.
+     */
+    private long getRun(long col) {
+        if (header.layout == LAYOUT_ROWS) {
+            return header.ncols - col;
+        }
+        return header.tileNCols - col % header.tileNCols;
+    }
+
+    /**
+     * Copies {@code n} values from row {@code row} starting at column
+     * {@code col} into {@code dst}. Int values are converted to doubles.
+     *
+     * @param row The row (where row 0 is the bottom row).
+     * @param col The first column.
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} to copy the first value to.
+     * @param n The number of values to copy.
+     */
+    public void readRow(long row, long col, double[] dst, int off, int n) {
+        while (n > 0) {
+            int m = (int) Math.min(n, getRun(col));
+            long i = getIndex(row, col);
+            if (header.type == TYPE_DOUBLE) {
+                MemorySegment.copy(payload, DOUBLE, i * Double.BYTES, dst,
+                        off, m);
+            } else {
+                for (int k = 0; k < m; k++) {
+                    dst[off + k] = payload.getAtIndex(INT, i + k);
+                }
+            }
+            col += m;
+            off += m;
+            n -= m;
+        }
+    }
+
+    /**
+     * Copies {@code n} values from row {@code row} starting at column
+     * {@code col} into {@code dst}. Double values are cast to ints.
+     *
+     * @param row The row (where row 0 is the bottom row).
+     * @param col The first column.
+     * @param dst The array to copy into.
+     * @param off The index in {@code dst} to copy the first value to.
+     * @param n The number of values to copy.
+     */
+    public void readRow(long row, long col, int[] dst, int off, int n) {
+        while (n > 0) {
+            int m = (int) Math.min(n, getRun(col));
+            long i = getIndex(row, col);
+            if (header.type == TYPE_INT) {
+                MemorySegment.copy(payload, INT, i * Integer.BYTES, dst, off,
+                        m);
+            } else {
+                for (int k = 0; k < m; k++) {
+                    dst[off + k] = (int) payload.getAtIndex(DOUBLE, i + k);
+                }
+            }
+            col += m;
+            off += m;
+            n -= m;
+        }
+    }
+
+    /**
+     * Unmaps the payload.
+     */
+    public void close() {
+        if (arena != null) {
+            arena.close();
+            arena = null;
+            payload = null;
+        }
+    }
+
+    /**
+     * The header of a grids binary raster file. The no data value is held
+     * both as {@link #ndvDouble} and as {@link #ndv}.
+     */
+    public static class Header extends Grids_ESRIAsciiGridImporter.Header {
+
+        /**
+         * The type of the values: {@link #TYPE_INT} or {@link #TYPE_DOUBLE}.
+         */
+        public byte type;
+
+        /**
+         * The layout of the values: {@link #LAYOUT_ROWS} or
+         * {@link #LAYOUT_TILES}.
+         */
+        public byte layout;
+
+        /**
+         * The number of rows in each tile.
+         */
+        public int tileNRows;
+
+        /**
+         * The number of columns in each tile.
+         */
+        public int tileNCols;
+
+        /**
+         * The no data value.
+         */
+        public double ndvDouble;
+
+        /**
+         * The offset of the payload from the start of the file.
+         */
+        public int offset;
+
+        /**
+         * Create a new instance.
+         */
+        public Header() {
+        }
+
+        /**
+         * @return The number of bytes of each value.
+         */
+        public int getValueSize() {
+            return type == TYPE_INT ? Integer.BYTES : Double.BYTES;
+        }
+
+        /**
+         * @return The number of values in the payload including any padding.
+         */
+        public long getNValues() {
+            if (layout == LAYOUT_ROWS) {
+                return nrows * ncols;
+            }
+            long ntr = (nrows + tileNRows - 1) / tileNRows;
+            long ntc = (ncols + tileNCols - 1) / tileNCols;
+            return ntr * ntc * tileNRows * tileNCols;
+        }
+
+        /**
+         * @return The number of bytes in the payload.
+         */
+        public long getPayloadSize() {
+            return getNValues() * getValueSize();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Sweep;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
@@ -116,68 +117,69 @@ public class Grids_ESRIAsciiGridExporter extends Grids_Object {
             long row;
             long col;
             int chunkRow0 = g.getChunkRow(nrows_minus_1);
-            env.addToNotToClear(g, chunkRow0);
-            int chunkRow;
-            if (g.getClass() == Grids_GridInt.class) {
-                Grids_GridInt gridInt = (Grids_GridInt) g;
-                int gridNoDataValue = gridInt.getNoDataValue();
-                pw.println("NODATA_Value " + ndv);
-                for (row = nrows_minus_1; row >= 0; row--) {
-                    chunkRow = g.getChunkRow(row);
-                    if (chunkRow0 != chunkRow) {
-                        env.removeFromNotToClear(g, chunkRow0);
-                        env.addToNotToClear(g, chunkRow);
-                        env.checkAndMaybeFreeMemory();
-                        chunkRow0 = chunkRow;
-                    }
-                    for (col = 0; col < ncols; col++) {
-                        int v = gridInt.getCell(row, col);
-                        if (v == gridNoDataValue) {
-                            pw.print(ndv + " ");
-                        } else {
-                            pw.print(v + " ");
-                        }
-                    }
-                    pw.println("");
-                }
-            } else {
-                Grids_GridDouble gridDouble = (Grids_GridDouble) g;
-                double gridNoDataValue = gridDouble.getNoDataValue();
-                if (!Double.isFinite(gridNoDataValue)) {
-                    System.out.println(
-                            "Warning!!! noDataValue not finite in "
-                            + "ESRIAsciigridExporter.toAsciiFile("
-                            + gridDouble.getClass().getName()
-                            + "(" + gridDouble.toString() + "),"
-                            + "File(" + file.toString() + "))");
-                }
-                pw.println("NODATA_Value " + ndv);
-                for (row = nrows_minus_1; row >= 0; row--) {
-                    for (col = 0; col < ncols; col++) {
+            // Rows are written from the top so the sweep is descending.
+            Grids_Sweep sweep = new Grids_Sweep(0, 1, false);
+            try {
+                g.prefetch(sweep, nrows_minus_1);
+                int chunkRow;
+                if (g.getClass() == Grids_GridInt.class) {
+                    Grids_GridInt gridInt = (Grids_GridInt) g;
+                    int gridNoDataValue = gridInt.getNoDataValue();
+                    pw.println("NODATA_Value " + ndv);
+                    for (row = nrows_minus_1; row >= 0; row--) {
                         chunkRow = g.getChunkRow(row);
                         if (chunkRow0 != chunkRow) {
-                            env.removeFromNotToClear(g, chunkRow0);
-                            env.addToNotToClear(g, chunkRow);
+                            g.prefetch(sweep, row);
                             env.checkAndMaybeFreeMemory();
                             chunkRow0 = chunkRow;
                         }
-//                        try {
-                        //pw.print( grid.getCell( row, col ) + " " );
-                        double v = gridDouble.getCell(row, col);
-                        if (!Double.isFinite(v)) {
-                            pw.print(ndv + " ");
-                            System.out.println(
-                                    "Warning!!! Infinitity or NaN encountered at "
-                                    + "row " + row + ","
-                                    + " column " + col + ""
-                                    + " set to noDataValue " + ndv + ".");
-                        } else {
+                        for (col = 0; col < ncols; col++) {
+                            int v = gridInt.getCell(row, col);
                             if (v == gridNoDataValue) {
                                 pw.print(ndv + " ");
                             } else {
                                 pw.print(v + " ");
                             }
                         }
+                        pw.println("");
+                    }
+                } else {
+                    Grids_GridDouble gridDouble = (Grids_GridDouble) g;
+                    double gridNoDataValue = gridDouble.getNoDataValue();
+                    if (!Double.isFinite(gridNoDataValue)) {
+                        System.out.println(
+                                "Warning!!! noDataValue not finite in "
+                                + "ESRIAsciigridExporter.toAsciiFile("
+                                + gridDouble.getClass().getName()
+                                + "(" + gridDouble.toString() + "),"
+                                + "File(" + file.toString() + "))");
+                    }
+                    pw.println("NODATA_Value " + ndv);
+                    for (row = nrows_minus_1; row >= 0; row--) {
+                        chunkRow = g.getChunkRow(row);
+                        if (chunkRow0 != chunkRow) {
+                            g.prefetch(sweep, row);
+                            env.checkAndMaybeFreeMemory();
+                            chunkRow0 = chunkRow;
+                        }
+                        for (col = 0; col < ncols; col++) {
+//                        try {
+                            //pw.print( grid.getCell( row, col ) + " " );
+                            double v = gridDouble.getCell(row, col);
+                            if (!Double.isFinite(v)) {
+                                pw.print(ndv + " ");
+                                System.out.println(
+                                        "Warning!!! Infinitity or NaN encountered at "
+                                        + "row " + row + ","
+                                        + " column " + col + ""
+                                        + " set to noDataValue " + ndv + ".");
+                            } else {
+                                if (v == gridNoDataValue) {
+                                    pw.print(ndv + " ");
+                                } else {
+                                    pw.print(v + " ");
+                                }
+                            }
 //                        } catch (OutOfMemoryError e) {
 //                            g.env.clearMemoryReserve();
 //                            Grids_2D_ID_int chunkID = new Grids_2D_ID_int(
@@ -200,9 +202,12 @@ public class Grids_ESRIAsciiGridExporter extends Grids_Object {
 //                                pw.print(value + " ");
 //                            }
 //                        }
+                        }
+                        pw.println("");
                     }
-                    pw.println("");
                 }
+            } finally {
+                g.endSweep(sweep);
             }
             // Flush output
             pw.flush();
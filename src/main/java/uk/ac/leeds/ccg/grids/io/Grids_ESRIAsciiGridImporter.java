@@ -76,7 +76,7 @@ public class Grids_ESRIAsciiGridImporter extends Grids_Object {
     /**
      * Class for the header.
      */
-    public class Header {
+    public static class Header {
 
         /**
          * For storing the number of columns.
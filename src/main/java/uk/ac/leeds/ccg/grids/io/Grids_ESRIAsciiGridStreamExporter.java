@@ -0,0 +1,474 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Sweep;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.memory.Grids_ChunkPins;
+
+/**
+ * For exporting ESRI Asciigrid files quickly. The output is the same as that
+ * of {@link Grids_ESRIAsciiGridExporter}, but rather than each value being
+ * printed in turn, the rows of each chunk row are formatted into bytes in
+ * parallel on the threads of {@link #pool} and the bytes are then written in
+ * order using a {@link FileChannel}. Only the chunks of the chunk row being
+ * formatted and the chunk rows being prefetched are held in memory.
+ *
+ * Values are formatted without creating any objects where possible (see
+ * {@link #format(double, byte[], int)}). The formatted values are the same as
+ * those of {@link Double#toString(double)} and {@link Integer#toString(int)}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ESRIAsciiGridStreamExporter
+        extends Grids_ESRIAsciiGridExporter {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of bytes a formatted double or int takes.
+     */
+    private static final int MAX_VALUE_LENGTH = 32;
+
+    /**
+     * Exact powers of ten for {@link #format(double, byte[], int)}.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18};
+
+    /**
+     * Powers of ten for {@link #format(double, byte[], int)}.
+     */
+    private static final long[] LONG_POWERS_OF_TEN = {1L, 10L, 100L, 1000L,
+        10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+        10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+        100000000000000L, 1000000000000000L, 10000000000000000L,
+        100000000000000000L, 1000000000000000000L};
+
+    /**
+     * For formatting the rows of a chunk row in parallel.
+     */
+    protected transient ForkJoinPool pool;
+
+    /**
+     * Create a new instance that uses {@link ForkJoinPool#commonPool()}.
+     *
+     * @param e The grids environment.
+     */
+    public Grids_ESRIAsciiGridStreamExporter(Grids_Environment e) {
+        this(e, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param e The grids environment.
+     * @param pool What {@link #pool} is set to.
+     */
+    public Grids_ESRIAsciiGridStreamExporter(Grids_Environment e,
+            ForkJoinPool pool) {
+        super(e);
+        this.pool = pool;
+    }
+
+    /**
+     * @return {@link #pool}
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Writes grid out to file in ESRI Asciigrid format a chunk row at a time.
+     *
+     * @param g Grid for export.
+     * @param file The File to export to.
+     * @param ndv The value to be used or substituted as a noDataValue for g.
+     * @throws java.io.IOException If encountered.
+     * @throws java.lang.ClassNotFoundException If encountered.
+     * @throws java.lang.Exception If encountered.
+     */
+    @Override
+    public void toAsciiFile(Grids_GridNumber g, Path file, String ndv)
+            throws IOException, Exception, ClassNotFoundException {
+        env.initNotToClear();
+        env.checkAndMaybeFreeMemory();
+        String nl = System.lineSeparator();
+        byte[] ndvb = (ndv + " ").getBytes(StandardCharsets.UTF_8);
+        byte[] nlb = nl.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            Grids_Dimensions d = g.getDimensions();
+            long nrows = g.getNRows();
+            long ncols = g.getNCols();
+            String h = "ncols " + ncols + nl
+                    + "nrows " + nrows + nl
+                    + "xllcorner " + d.getXMin().toString() + nl
+                    + "yllcorner " + d.getYMin().toString() + nl
+                    + "cellsize " + d.getCellsize().toString() + nl
+                    + "NODATA_Value " + ndv + nl;
+            if (g.getClass() != Grids_GridInt.class) {
+                double gndv = ((Grids_GridDouble) g).getNoDataValue();
+                if (!Double.isFinite(gndv)) {
+                    env.env.log("Warning!!! noDataValue not finite in "
+                            + "ESRIAsciigridExporter.toAsciiFile("
+                            + g.getClass().getName()
+                            + "(" + g.toString() + "),"
+                            + "File(" + file.toString() + "))");
+                }
+            }
+            byte[] hb = h.getBytes(StandardCharsets.UTF_8);
+            write(fc, hb, hb.length);
+            // Rows are written from the top so the sweep is descending.
+            Grids_Sweep sweep = new Grids_Sweep(0, 1, false);
+            Grids_ChunkPins pins = env.getPins();
+            int ncc = g.getNChunkCols();
+            try {
+                for (int cr = g.getNChunkRows() - 1; cr >= 0; cr--) {
+                    int ncrr = g.getChunkNRows(cr);
+                    g.prefetch(sweep, g.getRow(cr, ncrr - 1));
+                    env.checkAndMaybeFreeMemory();
+                    List<Grids_2D_ID_int> ids = new ArrayList<>(ncc);
+                    for (int cc = 0; cc < ncc; cc++) {
+                        ids.add(new Grids_2D_ID_int(cr, cc));
+                    }
+                    pins.pin(g, ids);
+                    try {
+                        for (byte[] b : format(g, cr, ids, ndvb, nlb)) {
+                            write(fc, b, b.length);
+                        }
+                    } finally {
+                        pins.unpin(g, ids);
+                    }
+                }
+            } finally {
+                g.endSweep(sweep);
+            }
+        }
+        env.checkAndMaybeFreeMemory();
+    }
+
+    /**
+     * Formats the rows of chunk row {@code cr} of {@code g} from the last row
+     * to the first in parallel. The rows are split into as many contiguous
+     * parts as the parallelism of {@link #pool}.
+     *
+     * @param g The grid.
+     * @param cr The chunk row.
+     * @param ids The chunk IDs of the chunks in chunk row {@code cr} which are
+     * pinned.
+     * @param ndv The bytes written for noDataValues.
+     * @param nl The bytes of the line separator.
+     * @return The formatted parts in order.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected List<byte[]> format(Grids_GridNumber g, int cr,
+            List<Grids_2D_ID_int> ids, byte[] ndv, byte[] nl)
+            throws IOException, Exception {
+        int ncc = ids.size();
+        boolean isInt = g.getClass() == Grids_GridInt.class;
+        Grids_ChunkInt[] ics = new Grids_ChunkInt[ncc];
+        Grids_ChunkDouble[] dcs = new Grids_ChunkDouble[ncc];
+        for (int cc = 0; cc < ncc; cc++) {
+            if (isInt) {
+                ics[cc] = ((Grids_GridInt) g).getChunk(ids.get(cc));
+            } else {
+                dcs[cc] = ((Grids_GridDouble) g).getChunk(ids.get(cc));
+            }
+            env.checkAndMaybeFreeMemory();
+        }
+        int ncrr = g.getChunkNRows(cr);
+        int n = Math.max(1, Math.min(ncrr, pool.getParallelism()));
+        List<Callable<byte[]>> tasks = new ArrayList<>(n);
+        for (int t = 0; t < n; t++) {
+            // Chunk cell rows are formatted from r0 down to r1 exclusive.
+            int r0 = ncrr - 1 - (int) ((long) t * ncrr / n);
+            int r1 = ncrr - 1 - (int) ((long) (t + 1) * ncrr / n);
+            if (isInt) {
+                int gndv = ((Grids_GridInt) g).getNoDataValue();
+                tasks.add(() -> format(g, ics, gndv, r0, r1, ndv, nl));
+            } else {
+                double gndv = ((Grids_GridDouble) g).getNoDataValue();
+                tasks.add(() -> format(g, cr, dcs, gndv, r0, r1, ndv, nl));
+            }
+        }
+        List<byte[]> r = new ArrayList<>(n);
+        for (Future<byte[]> f : pool.invokeAll(tasks)) {
+            try {
+                r.add(f.get());
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof Exception) {
+                    throw (Exception) t;
+                }
+                throw e;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param g The grid.
+     * @param cs The chunks of a chunk row of {@code g}.
+     * @param gndv The noDataValue of {@code g}.
+     * @param r0 The first chunk cell row to format.
+     * @param r1 The chunk cell row to stop at.
+     * @param ndv The bytes written for noDataValues.
+     * @param nl The bytes of the line separator.
+     * @return The formatted rows.
+     */
+    private static byte[] format(Grids_GridNumber g, Grids_ChunkInt[] cs,
+            int gndv, int r0, int r1, byte[] ndv, byte[] nl) {
+        int ncols = (int) g.getNCols();
+        byte[] b = new byte[(r0 - r1) * (ncols * 8 + nl.length)];
+        int off = 0;
+        for (int r = r0; r > r1; r--) {
+            for (Grids_ChunkInt c : cs) {
+                int nccc = c.getChunkNCols();
+                b = ensure(b, off, nccc * Math.max(ndv.length,
+                        MAX_VALUE_LENGTH) + nl.length);
+                for (int col = 0; col < nccc; col++) {
+                    int v = c.getCell(r, col);
+                    if (v == gndv) {
+                        System.arraycopy(ndv, 0, b, off, ndv.length);
+                        off += ndv.length;
+                    } else {
+                        off = format(v, b, off);
+                        b[off++] = ' ';
+                    }
+                }
+            }
+            System.arraycopy(nl, 0, b, off, nl.length);
+            off += nl.length;
+        }
+        return Arrays.copyOf(b, off);
+    }
+
+    /**
+     * @param g The grid.
+     * @param cr The chunk row.
+     * @param cs The chunks of chunk row {@code cr} of {@code g}.
+     * @param gndv The noDataValue of {@code g}.
+     * @param r0 The first chunk cell row to format.
+     * @param r1 The chunk cell row to stop at.
+     * @param ndv The bytes written for noDataValues.
+     * @param nl The bytes of the line separator.
+     * @return The formatted rows.
+     */
+    private byte[] format(Grids_GridNumber g, int cr,
+            Grids_ChunkDouble[] cs, double gndv, int r0, int r1, byte[] ndv,
+            byte[] nl) {
+        int ncols = (int) g.getNCols();
+        byte[] b = new byte[(r0 - r1) * (ncols * 12 + nl.length)];
+        int off = 0;
+        for (int r = r0; r > r1; r--) {
+            long col0 = 0L;
+            for (Grids_ChunkDouble c : cs) {
+                int nccc = c.getChunkNCols();
+                b = ensure(b, off, nccc * Math.max(ndv.length,
+                        MAX_VALUE_LENGTH) + nl.length);
+                for (int col = 0; col < nccc; col++) {
+                    double v = c.getCell(r, col);
+                    if (!Double.isFinite(v)) {
+                        System.arraycopy(ndv, 0, b, off, ndv.length);
+                        off += ndv.length;
+                        env.env.log(
+                                "Warning!!! Infinitity or NaN encountered at "
+                                + "row " + g.getRow(cr, r) + ","
+                                + " column " + (col0 + col) + ""
+                                + " set to noDataValue "
+                                + new String(ndv, 0, ndv.length - 1,
+                                        StandardCharsets.UTF_8) + ".");
+                    } else if (v == gndv) {
+                        System.arraycopy(ndv, 0, b, off, ndv.length);
+                        off += ndv.length;
+                    } else {
+                        off = format(v, b, off);
+                        b[off++] = ' ';
+                    }
+                }
+                col0 += nccc;
+            }
+            System.arraycopy(nl, 0, b, off, nl.length);
+            off += nl.length;
+        }
+        return Arrays.copyOf(b, off);
+    }
+
+    /**
+     * @param b The bytes.
+     * @param off The number of bytes used.
+     * @param n The number of bytes wanted after {@code off}.
+     * @return {@code b} or a larger copy of it with at least {@code n} bytes
+     * after {@code off}.
+     */
+    private static byte[] ensure(byte[] b, int off, int n) {
+        if (b.length - off >= n) {
+            return b;
+        }
+        return Arrays.copyOf(b, Math.max(b.length * 2, off + n));
+    }
+
+    /**
+     * Writes the first {@code n} bytes of {@code b} to {@code fc}.
+     *
+     * @param fc The channel.
+     * @param b The bytes.
+     * @param n The number of bytes to write.
+     * @throws IOException If encountered.
+     */
+    private static void write(FileChannel fc, byte[] b, int n)
+            throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(b, 0, n);
+        while (bb.hasRemaining()) {
+            fc.write(bb);
+        }
+    }
+
+    /**
+     * Writes the characters of {@code v} as {@link Integer#toString(int)}
+     * would into {@code b}.
+     *
+     * @param v The value.
+     * @param b The bytes to write to which must have room for at least 11
+     * bytes from {@code off}.
+     * @param off The index in {@code b} to write from.
+     * @return The index in {@code b} after the last byte written.
+     */
+    public static int format(int v, byte[] b, int off) {
+        if (v == Integer.MIN_VALUE) {
+            return put(Integer.toString(v), b, off);
+        }
+        if (v < 0) {
+            b[off++] = '-';
+            v = -v;
+        }
+        return putDigits(v, b, off, digits(v));
+    }
+
+    /**
+     * Writes the characters of {@code v} as {@link Double#toString(double)}
+     * would into {@code b}. For finite values with a magnitude of at least
+     * 10<sup>-3</sup> and less than 10<sup>7</sup> that are represented by a
+     * decimal with no more than 15 significant digits, the shortest such
+     * decimal is found without creating any objects. The decimal is the same
+     * as that of {@link Double#toString(double)} as there is no other decimal
+     * with as few digits that rounds to {@code v}. Other values are formatted
+     * using {@link Double#toString(double)}.
+     *
+     * @param v The value.
+     * @param b The bytes to write to which must have room for at least 25
+     * bytes from {@code off}.
+     * @param off The index in {@code b} to write from.
+     * @return The index in {@code b} after the last byte written.
+     */
+    public static int format(double v, byte[] b, int off) {
+        double a = Math.abs(v);
+        if (a >= 1e-3 && a < 1e7) {
+            for (int k = 0; k < POWERS_OF_TEN.length; k++) {
+                double s = a * POWERS_OF_TEN[k];
+                if (s >= 1e15) {
+                    break;
+                }
+                long m = Math.round(s);
+                if (m / POWERS_OF_TEN[k] == a) {
+                    if (v < 0) {
+                        b[off++] = '-';
+                    }
+                    long p = LONG_POWERS_OF_TEN[k];
+                    long ip = m / p;
+                    off = putDigits(ip, b, off, digits(ip));
+                    b[off++] = '.';
+                    if (k == 0) {
+                        b[off++] = '0';
+                        return off;
+                    }
+                    return putDigits(m - ip * p, b, off, k);
+                }
+            }
+        }
+        return put(Double.toString(v), b, off);
+    }
+
+    /**
+     * @param v A non-negative value.
+     * @return The number of decimal digits of {@code v}.
+     */
+    private static int digits(long v) {
+        int n = 1;
+        while (n < LONG_POWERS_OF_TEN.length && v >= LONG_POWERS_OF_TEN[n]) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the last {@code n} decimal digits of {@code v} padded with
+     * leading zeros into {@code b}.
+     *
+     * @param v A non-negative value.
+     * @param b The bytes to write to.
+     * @param off The index in {@code b} to write from.
+     * @param n The number of digits to write.
+     * @return The index in {@code b} after the last byte written.
+     */
+    private static int putDigits(long v, byte[] b, int off, int n) {
+        for (int i = off + n - 1; i >= off; i--) {
+            b[i] = (byte) ('0' + (v % 10L));
+            v /= 10L;
+        }
+        return off + n;
+    }
+
+    /**
+     * Writes the characters of {@code s}, which are all ASCII, into {@code b}.
+     *
+     * @param s The string.
+     * @param b The bytes to write to.
+     * @param off The index in {@code b} to write from.
+     * @return The index in {@code b} after the last byte written.
+     */
+    private static int put(String s, byte[] b, int off) {
+        for (int i = 0; i < s.length(); i++) {
+            b[off++] = (byte) s.charAt(i);
+        }
+        return off;
+    }
+}
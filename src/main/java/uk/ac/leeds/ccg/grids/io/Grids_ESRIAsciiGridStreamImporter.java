@@ -0,0 +1,661 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridImporter.Header;
+import uk.ac.leeds.ccg.io.IO_Path;
+
+/**
+ * For importing ESRI Asciigrid files quickly. The file is read in large blocks
+ * of bytes using a {@link FileChannel} and values are parsed directly from the
+ * bytes without creating any objects (except for the rare values that cannot
+ * be parsed exactly by {@link #parseDouble(byte[], int, int)}).
+ *
+ * Values are read a row at a time or a band of rows at a time. If
+ * {@link #pool} is not {@code null}, then the rows of a band are parsed in
+ * parallel on the threads of {@link #pool}. This requires each row of values
+ * to be on a single line of the file, which is usual. Otherwise values are
+ * read in turn and may be spread over lines in any way.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ESRIAsciiGridStreamImporter extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default initial size of {@link #b}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Exact powers of ten for {@link #parseDouble(byte[], int, int)}.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * The file.
+     */
+    protected final IO_Path file;
+
+    /**
+     * For reading {@link #file}.
+     */
+    protected transient FileChannel fc;
+
+    /**
+     * The bytes read from {@link #fc} that have not all been parsed.
+     */
+    protected transient byte[] b;
+
+    /**
+     * The index in {@link #b} of the next byte to parse.
+     */
+    protected transient int pos;
+
+    /**
+     * The index in {@link #b} after the last byte read.
+     */
+    protected transient int lim;
+
+    /**
+     * Set to {@code true} when the end of {@link #file} has been read.
+     */
+    protected transient boolean eof;
+
+    /**
+     * The index in {@link #b} after the last byte of the token found by
+     * {@link #next()}.
+     */
+    protected transient int end;
+
+    /**
+     * For parsing rows in parallel. If this is {@code null} rows are parsed
+     * in turn.
+     */
+    protected transient ForkJoinPool pool;
+
+    /**
+     * For storing the header.
+     */
+    protected Header header;
+
+    /**
+     * Creates a new instance and reads the header.
+     *
+     * @param e The grids environment.
+     * @param f What {@link #file} is set to.
+     * @throws IOException If encountered.
+     */
+    public Grids_ESRIAsciiGridStreamImporter(Grids_Environment e, IO_Path f)
+            throws IOException {
+        this(e, f, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance and reads the header.
+     *
+     * @param e The grids environment.
+     * @param f What {@link #file} is set to.
+     * @param bufferSize The initial size of {@link #b}.
+     * @throws IOException If encountered.
+     */
+    public Grids_ESRIAsciiGridStreamImporter(Grids_Environment e, IO_Path f,
+            int bufferSize) throws IOException {
+        super(e);
+        file = f;
+        fc = FileChannel.open(f.getPath(), StandardOpenOption.READ);
+        b = new byte[Math.max(bufferSize, 64)];
+        readHeader();
+    }
+
+    /**
+     * @return {@link #header}
+     */
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * @return {@link #pool}
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param p What {@link #pool} is set to.
+     */
+    public void setPool(ForkJoinPool p) {
+        pool = p;
+    }
+
+    /**
+     * Moves the unparsed bytes to the start of {@link #b} and reads more
+     * bytes after them. If {@link #b} is full of unparsed bytes then it is
+     * enlarged first.
+     *
+     * @return The number of positions the unparsed bytes moved.
+     * @throws IOException If encountered.
+     */
+    private int fill() throws IOException {
+        int shift = pos;
+        if (shift > 0) {
+            System.arraycopy(b, pos, b, 0, lim - pos);
+            lim -= pos;
+            pos = 0;
+        } else if (lim == b.length) {
+            byte[] b2 = new byte[b.length * 2];
+            System.arraycopy(b, 0, b2, 0, lim);
+            b = b2;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(b, lim, b.length - lim);
+        int n = fc.read(bb);
+        if (n < 0) {
+            eof = true;
+        } else {
+            lim += n;
+        }
+        return shift;
+    }
+
+    /**
+     * Finds the next token. Tokens are separated by bytes with values up to
+     * that of a space.
+     *
+     * @return The index in {@link #b} of the first byte of the token or
+     * {@code -1} if there are no more tokens. {@link #end} is set to the index
+     * after the last byte of the token.
+     * @throws IOException If encountered.
+     */
+    private int next() throws IOException {
+        while (true) {
+            while (pos < lim && b[pos] <= ' ') {
+                pos++;
+            }
+            if (pos < lim) {
+                break;
+            }
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        int e = pos;
+        while (true) {
+            while (e < lim && b[e] > ' ') {
+                e++;
+            }
+            if (e < lim || eof) {
+                break;
+            }
+            e -= fill();
+        }
+        int s = pos;
+        end = e;
+        pos = e;
+        return s;
+    }
+
+    /**
+     * @param s The index of the first byte.
+     * @return The token from {@code s} to {@link #end} as a String.
+     */
+    private String toString(int s) {
+        return new String(b, s, end - s, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads {@link #header}. The header comprises keyword value pairs
+     * (keywords are not case sensitive) which end with the first token that
+     * does not start with a letter.
+     *
+     * @throws IOException If encountered.
+     */
+    private void readHeader() throws IOException {
+        header = new Header();
+        header.ndv = BigRational.valueOf(-Double.MAX_VALUE);
+        boolean xllCentre = false;
+        boolean yllCentre = false;
+        while (true) {
+            int s = next();
+            if (s < 0) {
+                break;
+            }
+            if (!Character.isLetter(b[s])) {
+                pos = s;
+                break;
+            }
+            String k = toString(s).toLowerCase();
+            int vs = next();
+            if (vs < 0) {
+                throw new EOFException("No value for " + k + " in " + file);
+            }
+            String v = toString(vs);
+            switch (k) {
+                case "ncols":
+                    header.ncols = Long.parseLong(v);
+                    break;
+                case "nrows":
+                    header.nrows = Long.parseLong(v);
+                    break;
+                case "xllcorner":
+                    header.xll = BigRational.valueOf(v);
+                    break;
+                case "xllcenter":
+                case "xllcentre":
+                    header.xll = BigRational.valueOf(v);
+                    xllCentre = true;
+                    break;
+                case "yllcorner":
+                    header.yll = BigRational.valueOf(v);
+                    break;
+                case "yllcenter":
+                case "yllcentre":
+                    header.yll = BigRational.valueOf(v);
+                    yllCentre = true;
+                    break;
+                case "cellsize":
+                    header.cellsize = BigRational.valueOf(v);
+                    break;
+                case "nodata_value":
+                    header.ndv = BigRational.valueOf(parseDouble(b, vs, end));
+                    break;
+                default:
+                    env.env.log("Ignoring " + k + " in header of " + file);
+            }
+        }
+        if (header.cellsize == null || header.xll == null
+                || header.yll == null) {
+            throw new IOException("Incomplete header in " + file);
+        }
+        BigRational halfCellsize = header.cellsize.divide(2);
+        if (xllCentre) {
+            header.xll = header.xll.subtract(halfCellsize);
+        }
+        if (yllCentre) {
+            header.yll = header.yll.subtract(halfCellsize);
+        }
+    }
+
+    /**
+     * Reads the next {@code n} values into {@code r} from index {@code off}.
+     *
+     * @param r The array to read into.
+     * @param off The index in {@code r} for the first value.
+     * @param n The number of values to read.
+     * @throws IOException If encountered.
+     */
+    public void readRow(double[] r, int off, int n) throws IOException {
+        for (int k = 0; k < n; k++) {
+            int s = next();
+            if (s < 0) {
+                throw new EOFException("Too few values in " + file);
+            }
+            r[off + k] = parseDouble(b, s, end);
+        }
+    }
+
+    /**
+     * Reads the next {@code n} values into {@code r} from index {@code off}.
+     *
+     * @param r The array to read into.
+     * @param off The index in {@code r} for the first value.
+     * @param n The number of values to read.
+     * @throws IOException If encountered.
+     */
+    public void readRow(int[] r, int off, int n) throws IOException {
+        for (int k = 0; k < n; k++) {
+            int s = next();
+            if (s < 0) {
+                throw new EOFException("Too few values in " + file);
+            }
+            r[off + k] = parseInt(b, s, end);
+        }
+    }
+
+    /**
+     * Reads the next {@code n} rows of {@link Header#ncols} values into
+     * {@code rows}.
+     *
+     * @param rows The arrays to read into.
+     * @param n The number of rows to read.
+     * @throws IOException If encountered.
+     */
+    public void readRows(double[][] rows, int n) throws IOException {
+        int ncols = (int) header.ncols;
+        if (pool == null || n < 2) {
+            for (int k = 0; k < n; k++) {
+                readRow(rows[k], 0, ncols);
+            }
+            return;
+        }
+        int[] ls = readLines(n);
+        List<Callable<Void>> tasks = new ArrayList<>(n);
+        byte[] bs = b;
+        for (int k = 0; k < n; k++) {
+            double[] r = rows[k];
+            int s = ls[2 * k];
+            int e = ls[2 * k + 1];
+            tasks.add(() -> {
+                int c = 0;
+                int p = s;
+                while (p < e) {
+                    while (p < e && bs[p] <= ' ') {
+                        p++;
+                    }
+                    if (p == e) {
+                        break;
+                    }
+                    int q = p;
+                    while (q < e && bs[q] > ' ') {
+                        q++;
+                    }
+                    if (c == ncols) {
+                        c++;
+                        break;
+                    }
+                    r[c++] = parseDouble(bs, p, q);
+                    p = q;
+                }
+                checkLine(c, ncols);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Reads the next {@code n} rows of {@link Header#ncols} values into
+     * {@code rows}.
+     *
+     * @param rows The arrays to read into.
+     * @param n The number of rows to read.
+     * @throws IOException If encountered.
+     */
+    public void readRows(int[][] rows, int n) throws IOException {
+        int ncols = (int) header.ncols;
+        if (pool == null || n < 2) {
+            for (int k = 0; k < n; k++) {
+                readRow(rows[k], 0, ncols);
+            }
+            return;
+        }
+        int[] ls = readLines(n);
+        List<Callable<Void>> tasks = new ArrayList<>(n);
+        byte[] bs = b;
+        for (int k = 0; k < n; k++) {
+            int[] r = rows[k];
+            int s = ls[2 * k];
+            int e = ls[2 * k + 1];
+            tasks.add(() -> {
+                int c = 0;
+                int p = s;
+                while (p < e) {
+                    while (p < e && bs[p] <= ' ') {
+                        p++;
+                    }
+                    if (p == e) {
+                        break;
+                    }
+                    int q = p;
+                    while (q < e && bs[q] > ' ') {
+                        q++;
+                    }
+                    if (c == ncols) {
+                        c++;
+                        break;
+                    }
+                    r[c++] = parseInt(bs, p, q);
+                    p = q;
+                }
+                checkLine(c, ncols);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * @param c The number of values on a line.
+     * @param ncols The number of values expected.
+     * @throws IOException If {@code c} is not {@code ncols}.
+     */
+    private void checkLine(int c, int ncols) throws IOException {
+        if (c != ncols) {
+            throw new IOException("A line of " + file + " does not have "
+                    + ncols + " values, so it cannot be read in parallel");
+        }
+    }
+
+    /**
+     * Runs {@code tasks} on {@link #pool} and waits for them to complete.
+     *
+     * @param tasks The tasks.
+     * @throws IOException If any of the tasks fail.
+     */
+    private void invokeAll(List<Callable<Void>> tasks) throws IOException {
+        for (Future<Void> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                throw new IOException(t);
+            }
+        }
+    }
+
+    /**
+     * Makes sure that the next {@code n} lines that are not blank are in
+     * {@link #b} and moves {@link #pos} to after them.
+     *
+     * @param n The number of lines.
+     * @return The start and end indexes in {@link #b} of each line.
+     * @throws IOException If there are fewer than {@code n} lines.
+     */
+    private int[] readLines(int n) throws IOException {
+        int[] r = new int[2 * n];
+        int k = 0;
+        int p = pos;
+        while (k < n) {
+            while (p < lim && b[p] <= ' ') {
+                p++;
+            }
+            int e = p;
+            while (e < lim && b[e] != '\n' && b[e] != '\r') {
+                e++;
+            }
+            if (e == lim && !eof) {
+                // Read more keeping all the lines found so far.
+                int shift = fill();
+                for (int j = 0; j < 2 * k; j++) {
+                    r[j] -= shift;
+                }
+                p -= shift;
+                continue;
+            }
+            if (p == e) {
+                throw new EOFException("Too few lines in " + file);
+            }
+            r[2 * k] = p;
+            r[2 * k + 1] = e;
+            k++;
+            p = e;
+        }
+        pos = p;
+        return r;
+    }
+
+    /**
+     * Parses a double from the bytes of {@code b} from index {@code s} to
+     * index {@code e}. Numbers with up to 15 significant digits and a decimal
+     * exponent of up to 22 in magnitude (after allowing for the digits after
+     * the decimal point) are parsed exactly without creating any objects.
+     * Exponents may be marked with {@code e}, {@code E}, {@code d} or
+     * {@code D}. Other numbers are parsed using
+     * {@link Double#parseDouble(java.lang.String)}.
+     *
+     * @param b The bytes.
+     * @param s The index of the first byte.
+     * @param e The index after the last byte.
+     * @return The value parsed.
+     * @throws NumberFormatException If the bytes are not a number.
+     */
+    public static double parseDouble(byte[] b, int s, int e) {
+        int p = s;
+        boolean negative = false;
+        if (p < e && (b[p] == '-' || b[p] == '+')) {
+            negative = b[p] == '-';
+            p++;
+        }
+        long m = 0L;
+        int nd = 0;
+        int exp = 0;
+        boolean digits = false;
+        boolean truncated = false;
+        while (p < e && b[p] >= '0' && b[p] <= '9') {
+            digits = true;
+            if (nd < 18) {
+                m = m * 10 + (b[p] - '0');
+                if (m > 0) {
+                    nd++;
+                }
+            } else {
+                truncated |= b[p] != '0';
+                exp++;
+            }
+            p++;
+        }
+        if (p < e && b[p] == '.') {
+            p++;
+            while (p < e && b[p] >= '0' && b[p] <= '9') {
+                digits = true;
+                if (nd < 18) {
+                    m = m * 10 + (b[p] - '0');
+                    if (m > 0) {
+                        nd++;
+                    }
+                    exp--;
+                } else {
+                    truncated |= b[p] != '0';
+                }
+                p++;
+            }
+        }
+        if (digits && p < e && (b[p] == 'e' || b[p] == 'E' || b[p] == 'd'
+                || b[p] == 'D')) {
+            p++;
+            boolean ne = false;
+            if (p < e && (b[p] == '-' || b[p] == '+')) {
+                ne = b[p] == '-';
+                p++;
+            }
+            int x = 0;
+            boolean xdigits = false;
+            while (p < e && b[p] >= '0' && b[p] <= '9') {
+                xdigits = true;
+                if (x < 100000) {
+                    x = x * 10 + (b[p] - '0');
+                }
+                p++;
+            }
+            if (!xdigits) {
+                digits = false;
+            }
+            exp += ne ? -x : x;
+        }
+        if (digits && p == e && !truncated && m < (1L << 53)
+                && exp >= -22 && exp <= 22) {
+            double r = m;
+            if (exp < 0) {
+                r /= POWERS_OF_TEN[-exp];
+            } else {
+                r *= POWERS_OF_TEN[exp];
+            }
+            return negative ? -r : r;
+        }
+        String t = new String(b, s, e - s, StandardCharsets.US_ASCII)
+                .replace('d', 'e').replace('D', 'e');
+        return Double.parseDouble(t);
+    }
+
+    /**
+     * Parses an int from the bytes of {@code b} from index {@code s} to index
+     * {@code e}. If the bytes are not an integer then they are parsed using
+     * {@link #parseDouble(byte[], int, int)} and the result is cast to an
+     * int.
+     *
+     * @param b The bytes.
+     * @param s The index of the first byte.
+     * @param e The index after the last byte.
+     * @return The value parsed.
+     * @throws NumberFormatException If the bytes are not a number.
+     */
+    public static int parseInt(byte[] b, int s, int e) {
+        int p = s;
+        boolean negative = false;
+        if (p < e && (b[p] == '-' || b[p] == '+')) {
+            negative = b[p] == '-';
+            p++;
+        }
+        long r = 0L;
+        int n = p;
+        while (p < e && b[p] >= '0' && b[p] <= '9' && r <= Integer.MAX_VALUE) {
+            r = r * 10 + (b[p] - '0');
+            p++;
+        }
+        if (p == e && p > n) {
+            r = negative ? -r : r;
+            if (r >= Integer.MIN_VALUE && r <= Integer.MAX_VALUE) {
+                return (int) r;
+            }
+        }
+        return (int) parseDouble(b, s, e);
+    }
+
+    /**
+     * Closes {@link #fc}.
+     *
+     * @throws IOException If encountered.
+     */
+    public void close() throws IOException {
+        fc.close();
+    }
+}
@@ -38,6 +38,12 @@ public class Grids_AccountDetail {
      */
     public boolean success;
 
+    /**
+     * An estimate of the number of bytes saved by changing the representation
+     * of chunks.
+     */
+    public long bytesSaved;
+
     /**
      * Create a new instance.
      */
@@ -65,6 +71,7 @@ public class Grids_AccountDetail {
                 }
             }
         }
+        a.bytesSaved += bytesSaved;
         success = a.success;
     }
 
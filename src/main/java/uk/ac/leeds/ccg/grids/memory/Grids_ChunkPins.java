@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * For pinning chunks so that they are not swapped. Unlike the notToClear map
+ * of the environment, pins can be added and removed by any thread and are
+ * counted, so a chunk stays pinned until each pin on it has been removed. This
+ * allows different tasks that use the same chunk to pin and unpin it
+ * independently.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_ChunkPins {
+
+    /**
+     * For storing the number of pins on each pinned chunk of each grid.
+     */
+    protected final ConcurrentHashMap<Grids_Grid, ConcurrentHashMap<Grids_2D_ID_int, AtomicInteger>> pins;
+
+    /**
+     * Create a new instance.
+     */
+    public Grids_ChunkPins() {
+        pins = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a pin to the chunk of {@code g} with chunk ID {@code i}.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     */
+    public void pin(Grids_Grid g, Grids_2D_ID_int i) {
+        pins.computeIfAbsent(g, k -> new ConcurrentHashMap<>())
+                .compute(i, (k, n) -> {
+                    if (n == null) {
+                        return new AtomicInteger(1);
+                    }
+                    n.incrementAndGet();
+                    return n;
+                });
+    }
+
+    /**
+     * Adds a pin to each chunk of {@code g} with a chunk ID in {@code s}.
+     *
+     * @param g The grid.
+     * @param s The chunk IDs.
+     */
+    public void pin(Grids_Grid g, Collection<Grids_2D_ID_int> s) {
+        s.forEach(i -> pin(g, i));
+    }
+
+    /**
+     * Removes a pin from the chunk of {@code g} with chunk ID {@code i}. If
+     * the chunk is not pinned, then nothing is done.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     */
+    public void unpin(Grids_Grid g, Grids_2D_ID_int i) {
+        ConcurrentHashMap<Grids_2D_ID_int, AtomicInteger> m = pins.get(g);
+        if (m != null) {
+            m.computeIfPresent(i, (k, n) -> n.decrementAndGet() < 1 ? null : n);
+        }
+    }
+
+    /**
+     * Removes a pin from each chunk of {@code g} with a chunk ID in
+     * {@code s}.
+     *
+     * @param g The grid.
+     * @param s The chunk IDs.
+     */
+    public void unpin(Grids_Grid g, Collection<Grids_2D_ID_int> s) {
+        s.forEach(i -> unpin(g, i));
+    }
+
+    /**
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @return {@code true} iff the chunk of {@code g} with chunk ID {@code i}
+     * is pinned.
+     */
+    public boolean isPinned(Grids_Grid g, Grids_2D_ID_int i) {
+        ConcurrentHashMap<Grids_2D_ID_int, AtomicInteger> m = pins.get(g);
+        return m != null && m.containsKey(i);
+    }
+
+    /**
+     * @param g The grid.
+     * @return {@code true} iff any chunk of {@code g} is pinned.
+     */
+    public boolean isPinned(Grids_Grid g) {
+        ConcurrentHashMap<Grids_2D_ID_int, AtomicInteger> m = pins.get(g);
+        return m != null && !m.isEmpty();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCompressor;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * For holding compressed chunks in memory. Chunks that are swapped can be
+ * demoted into this tier rather than being written, so that they take up less
+ * memory but can be loaded again without reading them from disk. When the
+ * number of bytes of the compressed chunks exceeds {@link #maxBytes}, the
+ * chunks that have been in the tier the longest are written (unless their
+ * cache is already up to date) and removed.
+ *
+ * The lock for a chunk (see {@link Grids_Grid#getLock(Grids_2D_ID_int)}) is
+ * held whilst it is written and removed from the tier, so a chunk is never
+ * loaded from disk whilst a newer version of it is being written. The lock is
+ * not waited for, if it is held by another thread then the next chunk is
+ * written instead.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_CompressedTier {
+
+    /**
+     * The default for {@link #maxBytes}.
+     */
+    public static final long DEFAULT_MAX_BYTES = 1L << 28;
+
+    /**
+     * The maximum number of bytes of compressed chunks held.
+     */
+    protected final long maxBytes;
+
+    /**
+     * For compressing chunks.
+     */
+    protected final Grids_ChunkCompressor compressor;
+
+    /**
+     * The number of bytes of compressed chunks held.
+     */
+    protected long bytes;
+
+    /**
+     * The compressed chunks in the order they were added.
+     */
+    protected final LinkedHashMap<Map.Entry<Grids_Grid, Grids_2D_ID_int>, Entry> entries;
+
+    /**
+     * Creates a new instance with {@link #DEFAULT_MAX_BYTES} and a new
+     * {@link Grids_ChunkCompressor}.
+     */
+    public Grids_CompressedTier() {
+        this(DEFAULT_MAX_BYTES, new Grids_ChunkCompressor());
+    }
+
+    /**
+     * @param maxBytes What {@link #maxBytes} is set to.
+     * @param compressor What {@link #compressor} is set to.
+     */
+    public Grids_CompressedTier(long maxBytes,
+            Grids_ChunkCompressor compressor) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes < 0");
+        }
+        this.maxBytes = maxBytes;
+        this.compressor = compressor;
+        entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return {@link #maxBytes}
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return {@link #compressor}
+     */
+    public Grids_ChunkCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * @return {@link #bytes}
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @return A key for {@link #entries}.
+     */
+    private static Map.Entry<Grids_Grid, Grids_2D_ID_int> key(Grids_Grid g,
+            Grids_2D_ID_int i) {
+        return new AbstractMap.SimpleImmutableEntry<>(g, i);
+    }
+
+    /**
+     * Adds the compressed chunk {@code b} of {@code g} with chunk ID
+     * {@code i} replacing any already held, then writes and removes chunks
+     * until there are no more than {@link #maxBytes} bytes held.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @param b The compressed chunk.
+     * @param cached {@code true} iff the chunk cache is up to date.
+     * @throws IOException If encountered.
+     */
+    public void put(Grids_Grid g, Grids_2D_ID_int i, byte[] b, boolean cached)
+            throws IOException {
+        synchronized (this) {
+            Entry e = entries.put(key(g, i), new Entry(g, i, b, cached));
+            if (e != null) {
+                bytes -= e.bytes.length;
+            }
+            bytes += b.length;
+        }
+        demote(maxBytes);
+    }
+
+    /**
+     * Removes and returns the compressed chunk of {@code g} with chunk ID
+     * {@code i}. This should be called whilst holding the lock for the chunk.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @return The entry for the chunk or {@code null} if it is not held.
+     */
+    public synchronized Entry take(Grids_Grid g, Grids_2D_ID_int i) {
+        Entry e = entries.remove(key(g, i));
+        if (e != null) {
+            bytes -= e.bytes.length;
+        }
+        return e;
+    }
+
+    /**
+     * Removes {@code e} if it is still held.
+     *
+     * @param e The entry.
+     * @return {@code true} iff {@code e} was removed.
+     */
+    private synchronized boolean remove(Entry e) {
+        if (entries.remove(key(e.g, e.i), e)) {
+            bytes -= e.bytes.length;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @return {@code true} iff the chunk of {@code g} with chunk ID {@code i}
+     * is held.
+     */
+    public synchronized boolean contains(Grids_Grid g, Grids_2D_ID_int i) {
+        return entries.containsKey(key(g, i));
+    }
+
+    /**
+     * Writes and removes chunks in the order they were added until there are
+     * no more than {@code max} bytes held or until there are no more chunks
+     * that can be locked.
+     *
+     * @param max The maximum number of bytes to leave held.
+     * @throws IOException If encountered.
+     */
+    public void demote(long max) throws IOException {
+        while (true) {
+            Entry e = null;
+            ReentrantLock l = null;
+            synchronized (this) {
+                if (bytes <= max) {
+                    return;
+                }
+                for (Entry x : entries.values()) {
+                    ReentrantLock xl = x.g.getLock(x.i);
+                    if (xl.tryLock()) {
+                        e = x;
+                        l = xl;
+                        break;
+                    }
+                }
+                if (e == null) {
+                    return;
+                }
+                entries.remove(key(e.g, e.i));
+                bytes -= e.bytes.length;
+            }
+            try {
+                write(e);
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes and removes all the chunks of {@code g}. This waits for the lock
+     * of each chunk.
+     *
+     * @param g The grid.
+     * @throws IOException If encountered.
+     */
+    public void flush(Grids_Grid g) throws IOException {
+        List<Entry> s = new ArrayList<>();
+        synchronized (this) {
+            for (Entry e : entries.values()) {
+                if (e.g == g) {
+                    s.add(e);
+                }
+            }
+        }
+        for (Entry e : s) {
+            ReentrantLock l = g.getLock(e.i);
+            l.lock();
+            try {
+                if (remove(e)) {
+                    write(e);
+                }
+            } finally {
+                l.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes and removes all the chunks held.
+     *
+     * @throws IOException If encountered.
+     */
+    public void flush() throws IOException {
+        List<Grids_Grid> gs = new ArrayList<>();
+        synchronized (this) {
+            for (Entry e : entries.values()) {
+                if (!gs.contains(e.g)) {
+                    gs.add(e.g);
+                }
+            }
+        }
+        for (Grids_Grid g : gs) {
+            flush(g);
+        }
+    }
+
+    /**
+     * Writes the chunk of {@code e} unless its cache is up to date. If this
+     * fails, {@code e} is put back so that the chunk is not lost.
+     *
+     * @param e The entry.
+     * @throws IOException If encountered.
+     */
+    private void write(Entry e) throws IOException {
+        if (e.cached) {
+            return;
+        }
+        try {
+            e.g.write(e.i, e.bytes);
+        } catch (IOException | RuntimeException ex) {
+            synchronized (this) {
+                if (entries.putIfAbsent(key(e.g, e.i), e) == null) {
+                    bytes += e.bytes.length;
+                }
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * A compressed chunk.
+     */
+    public static class Entry {
+
+        /**
+         * The grid.
+         */
+        public final Grids_Grid g;
+
+        /**
+         * The chunk ID.
+         */
+        public final Grids_2D_ID_int i;
+
+        /**
+         * The compressed chunk.
+         */
+        public final byte[] bytes;
+
+        /**
+         * {@code true} iff the chunk cache is up to date.
+         */
+        public final boolean cached;
+
+        /**
+         * @param g What {@link #g} is set to.
+         * @param i What {@link #i} is set to.
+         * @param bytes What {@link #bytes} is set to.
+         * @param cached What {@link #cached} is set to.
+         */
+        public Entry(Grids_Grid g, Grids_2D_ID_int i, byte[] bytes,
+                boolean cached) {
+            this.g = g;
+            this.i = i;
+            this.bytes = bytes;
+            this.cached = cached;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * For selecting which chunk to swap out of the fast access memory. Selections
+ * are made from chunks that are worth swapping (see
+ * {@link Grids_Grid#getWorthSwapping()}) and are based on the access stamps
+ * recorded each time a chunk is got (see
+ * {@link Grids_Grid#getAccessStamp(int, int)}).
+ *
+ * Policies are told when chunks are loaded into, got from and evicted from
+ * the fast access memory (see {@link #loaded(Grids_Grid, Grids_2D_ID_int)},
+ * {@link #accessed(Grids_Grid, int, int)} and
+ * {@link #evicted(Grids_Grid, Grids_2D_ID_int)}) so they can maintain an
+ * ordering of the chunks incrementally rather than scanning every chunk for
+ * each selection. Policies that do so keep a {@link Node} for each chunk in
+ * {@link #nodes}.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public abstract class Grids_EvictionPolicy {
+
+    /**
+     * For storing for each grid the nodes of its chunks indexed by
+     * {@code chunkRow * nChunkCols + chunkCol}.
+     */
+    protected final Map<Grids_Grid, Node[]> nodes = new WeakHashMap<>();
+
+    /**
+     * Create a new instance.
+     */
+    protected Grids_EvictionPolicy() {
+    }
+
+    /**
+     * Called when the chunk of {@code g} with ID {@code i} is put into the
+     * fast access memory. This implementation does nothing.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     */
+    public void loaded(Grids_Grid g, Grids_2D_ID_int i) {
+    }
+
+    /**
+     * Called when the chunk of {@code g} in chunk row {@code cr}, chunk
+     * column {@code cc} is got. This implementation does nothing.
+     *
+     * @param g The grid.
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     */
+    public void accessed(Grids_Grid g, int cr, int cc) {
+    }
+
+    /**
+     * Called when the chunk of {@code g} with ID {@code i} is cleared from the
+     * fast access memory. This implementation does nothing.
+     *
+     * @param g The grid.
+     * @param i The chunk ID.
+     */
+    public void evicted(Grids_Grid g, Grids_2D_ID_int i) {
+    }
+
+    /**
+     * Called when {@code g} is removed from the environment. This
+     * implementation removes the nodes of {@code g} from {@link #nodes}.
+     *
+     * @param g The grid.
+     */
+    public synchronized void removed(Grids_Grid g) {
+        nodes.remove(g);
+    }
+
+    /**
+     * @param g The grid.
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     * @param create If {@code true} then the node is created if there is not
+     * one.
+     * @return The node in {@link #nodes} for the chunk of {@code g} in chunk
+     * row {@code cr}, chunk column {@code cc} or {@code null} if there is no
+     * such chunk or {@code create} is {@code false} and there is no node for
+     * it.
+     */
+    protected Node getNode(Grids_Grid g, int cr, int cc, boolean create) {
+        int ncr = g.getNChunkRows();
+        int ncc = g.getNChunkCols();
+        if (cr < 0 || cc < 0 || cr >= ncr || cc >= ncc) {
+            return null;
+        }
+        Node[] ns = nodes.get(g);
+        if (ns == null) {
+            if (!create) {
+                return null;
+            }
+            ns = new Node[ncr * ncc];
+            nodes.put(g, ns);
+        }
+        int k = cr * ncc + cc;
+        Node n = ns[k];
+        if (n == null && create) {
+            n = new Node(g, new Grids_2D_ID_int(cr, cc));
+            ns[k] = n;
+        }
+        return n;
+    }
+
+    /**
+     * @param grids The grids from which a chunk may be selected.
+     * @param except Identifies chunks not to select. May be {@code null}.
+     * @param n The node.
+     * @return {@code true} iff the chunk of {@code n} may be selected.
+     */
+    protected static boolean isCandidate(Collection<Grids_Grid> grids,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> except, Node n) {
+        return grids.contains(n.g) && n.g.getWorthSwapping().contains(n.i)
+                && !isExcluded(except, n.g, n.i);
+    }
+
+    /**
+     * Selects a chunk to swap from any of the {@code grids} that is not in
+     * {@code except}.
+     *
+     * @param grids The grids from which a chunk may be selected.
+     * @param except Identifies chunks not to select. May be {@code null}.
+     * @return The chunk selected or {@code null} if there is no chunk to
+     * select.
+     */
+    public abstract Victim select(Collection<Grids_Grid> grids,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> except);
+
+    /**
+     * Selects a chunk to swap from {@code g} that is not in {@code except}.
+     *
+     * @param g The grid from which a chunk may be selected.
+     * @param except The chunk IDs not to select. May be {@code null}.
+     * @return The chunk ID of the chunk selected or {@code null} if there is
+     * no chunk to select.
+     */
+    public Grids_2D_ID_int select(Grids_Grid g, Set<Grids_2D_ID_int> except) {
+        Victim v;
+        if (except == null) {
+            v = select(Collections.singleton(g), null);
+        } else {
+            v = select(Collections.singleton(g),
+                    Collections.singletonMap(g, except));
+        }
+        return v == null ? null : v.i;
+    }
+
+    /**
+     * @param except Identifies chunks not to select. May be {@code null}.
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @return {@code true} iff the chunk of {@code g} with ID {@code i} is in
+     * {@code except} or is pinned.
+     */
+    protected static boolean isExcluded(
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> except, Grids_Grid g,
+            Grids_2D_ID_int i) {
+        if (g.isPinned(i)) {
+            return true;
+        }
+        if (except == null) {
+            return false;
+        }
+        Set<Grids_2D_ID_int> s = except.get(g);
+        return s != null && s.contains(i);
+    }
+
+    /**
+     * A node of a circular doubly linked list of chunks. A node that is not
+     * in a list links to itself.
+     */
+    protected static class Node {
+
+        /**
+         * The grid.
+         */
+        protected final Grids_Grid g;
+
+        /**
+         * The chunk ID.
+         */
+        protected final Grids_2D_ID_int i;
+
+        /**
+         * The previous node.
+         */
+        protected Node prev;
+
+        /**
+         * The next node.
+         */
+        protected Node next;
+
+        /**
+         * For policies that record whether the chunk has been got.
+         */
+        protected volatile boolean referenced;
+
+        /**
+         * @param g What {@link #g} is set to.
+         * @param i What {@link #i} is set to.
+         */
+        protected Node(Grids_Grid g, Grids_2D_ID_int i) {
+            this.g = g;
+            this.i = i;
+            prev = this;
+            next = this;
+        }
+
+        /**
+         * @return {@code true} iff this is in a list.
+         */
+        protected boolean isLinked() {
+            return next != this;
+        }
+
+        /**
+         * Inserts this before {@code n}. This must not be in a list.
+         *
+         * @param n The node to insert this before.
+         */
+        protected void linkBefore(Node n) {
+            prev = n.prev;
+            next = n;
+            n.prev.next = this;
+            n.prev = this;
+        }
+
+        /**
+         * Removes this from the list it is in.
+         */
+        protected void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+
+    /**
+     * A chunk selected to be swapped.
+     */
+    public static class Victim {
+
+        /**
+         * The grid.
+         */
+        public final Grids_Grid g;
+
+        /**
+         * The chunk ID.
+         */
+        public final Grids_2D_ID_int i;
+
+        /**
+         * @param g What {@link #g} is set to.
+         * @param i What {@link #i} is set to.
+         */
+        public Victim(Grids_Grid g, Grids_2D_ID_int i) {
+            this.g = g;
+            this.i = i;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * CLOCK (second chance) eviction policy. The chunks in the fast access memory
+ * are kept in a ring. A chunk is put in the ring just behind the hand when it
+ * is loaded, is marked as referenced when it is got and is removed from the
+ * ring when it is evicted. The hand sweeps around the ring from where it last
+ * stopped. A referenced chunk has its reference cleared and is passed over,
+ * otherwise it is selected. This approximates
+ * {@link Grids_EvictionPolicyLRU} without reordering chunks each time they
+ * are got.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_EvictionPolicyCLOCK extends Grids_EvictionPolicy {
+
+    /**
+     * The sentinel of the ring which the hand passes over.
+     */
+    protected final Node ring = new Node(null, null);
+
+    /**
+     * The hand. This is the next node to consider.
+     */
+    protected Node hand = ring;
+
+    /**
+     * The number of chunks in the ring.
+     */
+    protected int size;
+
+    /**
+     * Create a new instance.
+     */
+    public Grids_EvictionPolicyCLOCK() {
+    }
+
+    @Override
+    public synchronized void loaded(Grids_Grid g, Grids_2D_ID_int i) {
+        Node n = getNode(g, i.getRow(), i.getCol(), true);
+        if (n != null) {
+            n.referenced = true;
+            if (!n.isLinked()) {
+                n.linkBefore(hand);
+                size++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void accessed(Grids_Grid g, int cr, int cc) {
+        Node n = getNode(g, cr, cc, true);
+        if (n != null) {
+            n.referenced = true;
+            if (!n.isLinked()) {
+                n.linkBefore(hand);
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Removes {@code n} from the ring moving the hand on if it is at
+     * {@code n}.
+     *
+     * @param n The node.
+     */
+    private void unlink(Node n) {
+        if (n != null && n.isLinked()) {
+            if (hand == n) {
+                hand = n.next;
+            }
+            n.unlink();
+            size--;
+        }
+    }
+
+    @Override
+    public synchronized void evicted(Grids_Grid g, Grids_2D_ID_int i) {
+        unlink(getNode(g, i.getRow(), i.getCol(), false));
+    }
+
+    @Override
+    public synchronized void removed(Grids_Grid g) {
+        Node[] ns = nodes.get(g);
+        if (ns != null) {
+            for (Node n : ns) {
+                unlink(n);
+            }
+        }
+        super.removed(g);
+    }
+
+    @Override
+    public synchronized Victim select(Collection<Grids_Grid> grids,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> except) {
+        /**
+         * Sweep at most twice around the ring. In the first sweep every
+         * candidate may be passed over, but not in the second.
+         */
+        for (int k = 2 * (size + 1); k > 0; k--) {
+            Node n = hand;
+            hand = n.next;
+            if (n != ring && isCandidate(grids, except, n)) {
+                if (n.referenced) {
+                    n.referenced = false;
+                } else {
+                    return new Victim(n.g, n.i);
+                }
+            }
+        }
+        return null;
+    }
+}
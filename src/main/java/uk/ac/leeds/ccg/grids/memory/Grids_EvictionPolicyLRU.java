@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * Least recently used eviction policy. The chunks in the fast access memory
+ * are kept in a list ordered by when they were last loaded or got. A chunk is
+ * moved to the front of the list when it is loaded or got and is removed from
+ * the list when it is evicted. The chunk selected is the first candidate
+ * found walking from the back of the list.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_EvictionPolicyLRU extends Grids_EvictionPolicy {
+
+    /**
+     * The sentinel of the list. {@code head.next} is the most recently used
+     * chunk and {@code head.prev} is the least recently used chunk.
+     */
+    protected final Node head = new Node(null, null);
+
+    /**
+     * Create a new instance.
+     */
+    public Grids_EvictionPolicyLRU() {
+    }
+
+    /**
+     * Moves {@code n} to the front of the list.
+     *
+     * @param n The node.
+     */
+    private void toFront(Node n) {
+        if (n != null && head.next != n) {
+            if (n.isLinked()) {
+                n.unlink();
+            }
+            n.linkBefore(head.next);
+        }
+    }
+
+    @Override
+    public synchronized void loaded(Grids_Grid g, Grids_2D_ID_int i) {
+        toFront(getNode(g, i.getRow(), i.getCol(), true));
+    }
+
+    @Override
+    public synchronized void accessed(Grids_Grid g, int cr, int cc) {
+        toFront(getNode(g, cr, cc, true));
+    }
+
+    @Override
+    public synchronized void evicted(Grids_Grid g, Grids_2D_ID_int i) {
+        Node n = getNode(g, i.getRow(), i.getCol(), false);
+        if (n != null && n.isLinked()) {
+            n.unlink();
+        }
+    }
+
+    @Override
+    public synchronized void removed(Grids_Grid g) {
+        Node[] ns = nodes.get(g);
+        if (ns != null) {
+            for (Node n : ns) {
+                if (n != null && n.isLinked()) {
+                    n.unlink();
+                }
+            }
+        }
+        super.removed(g);
+    }
+
+    @Override
+    public synchronized Victim select(Collection<Grids_Grid> grids,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> except) {
+        for (Node n = head.prev; n != head; n = n.prev) {
+            if (isCandidate(grids, except, n)) {
+                return new Victim(n.g, n.i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+
+/**
+ * Size weighted eviction policy. The chunk selected is the one for which the
+ * product of the number of accesses since it was last got and its size (see
+ * {@link Grids_Chunk#getSize()}) is largest. So, between chunks that were last
+ * got at a similar time, larger chunks are selected in preference to smaller
+ * ones.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_EvictionPolicySizeWeighted extends Grids_EvictionPolicy {
+
+    /**
+     * Create a new instance.
+     */
+    public Grids_EvictionPolicySizeWeighted() {
+    }
+
+    @Override
+    public Victim select(Collection<Grids_Grid> grids,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> except) {
+        long now = 0L;
+        for (Grids_Grid g : grids) {
+            for (Grids_2D_ID_int i : g.getWorthSwapping()) {
+                now = Math.max(now, g.getAccessStamp(i.getRow(), i.getCol()));
+            }
+        }
+        Grids_Grid rg = null;
+        Grids_2D_ID_int ri = null;
+        double max = -1d;
+        for (Grids_Grid g : grids) {
+            Map<Grids_2D_ID_int, Grids_Chunk> data = g.getData();
+            for (Grids_2D_ID_int i : g.getWorthSwapping()) {
+                if (!isExcluded(except, g, i)) {
+                    Grids_Chunk c = data.get(i);
+                    if (c != null) {
+                        long age = now - g.getAccessStamp(i.getRow(),
+                                i.getCol()) + 1L;
+                        double score = (double) age * (double) c.getSize();
+                        if (score > max) {
+                            max = score;
+                            rg = g;
+                            ri = i;
+                        }
+                    }
+                }
+            }
+        }
+        return rg == null ? null : new Victim(rg, ri);
+    }
+}
@@ -18,7 +18,7 @@ package uk.ac.leeds.ccg.grids.memory;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import java.io.IOException;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import uk.ac.leeds.ccg.generic.memory.Generic_Memory;
 
@@ -91,7 +91,7 @@ public interface Grids_Memory extends Generic_Memory {
      * @throws Exception If encountered.
      */
     boolean checkAndMaybeFreeMemory(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap, boolean hoome)
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap, boolean hoome)
             throws IOException, Exception;
 
     /**
@@ -171,7 +171,7 @@ public interface Grids_Memory extends Generic_Memory {
      * @throws Exception If encountered.
      */
     Grids_Account checkAndMaybeFreeMemory_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
             boolean hoome) throws IOException, Exception;
 
     /**
@@ -250,7 +250,7 @@ public interface Grids_Memory extends Generic_Memory {
      * @throws Exception If encountered.
      */
     Grids_AccountDetail checkAndMaybeFreeMemory_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap, boolean hoome)
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap, boolean hoome)
             throws IOException, Exception;
 
     /**
@@ -322,7 +322,7 @@ public interface Grids_Memory extends Generic_Memory {
      * memory before calling this method again.
      * @throws java.io.IOException If encountered.
      */
-    void initMemoryReserve(HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
+    void initMemoryReserve(Map<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
             boolean hoome) throws IOException, Exception;
 
     /**
@@ -371,7 +371,7 @@ public interface Grids_Memory extends Generic_Memory {
      * @throws java.io.IOException If encountered.
      */
     Grids_Account initMemoryReserve_Account(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
             boolean hoome) throws IOException, Exception;
 
     /**
@@ -474,7 +474,7 @@ public interface Grids_Memory extends Generic_Memory {
      * @throws java.io.IOException If encountered.
      */
     Grids_AccountDetail initMemoryReserve_AccountDetail(
-            HashMap<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
+            Map<Grids_Grid, Set<Grids_2D_ID_int>> notToSwap,
             boolean hoome) throws IOException, Exception;
 
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * For writing chunks in the background so that computation can continue
+ * whilst chunks that are being swapped out are cached. Writes are run on a
+ * bounded pool of {@link #nThreads} virtual threads. The number of bytes of
+ * chunks that are queued or being written is limited by {@link #maxBytes}.
+ * If submitting a write would exceed this, then the submitting thread waits
+ * until enough writes have completed (backpressure).
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_WriteBehind {
+
+    /**
+     * The default for {@link #maxBytes}.
+     */
+    public static final long DEFAULT_MAX_BYTES = 1L << 28;
+
+    /**
+     * The number of threads writing.
+     */
+    protected final int nThreads;
+
+    /**
+     * The maximum number of bytes of chunks that can be queued or being
+     * written at any time.
+     */
+    protected final long maxBytes;
+
+    /**
+     * The number of bytes of chunks that are queued or being written.
+     */
+    protected long pendingBytes;
+
+    /**
+     * For running the writes.
+     */
+    protected final ExecutorService executor;
+
+    /**
+     * Creates a new instance with {@link #DEFAULT_MAX_BYTES} and one writing
+     * thread.
+     */
+    public Grids_WriteBehind() {
+        this(1, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param nThreads What {@link #nThreads} is set to.
+     * @param maxBytes What {@link #maxBytes} is set to.
+     */
+    public Grids_WriteBehind(int nThreads, long maxBytes) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("nThreads < 1");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes < 1");
+        }
+        this.nThreads = nThreads;
+        this.maxBytes = maxBytes;
+        executor = Executors.newFixedThreadPool(nThreads,
+                Thread.ofVirtual().name("grids-write-", 0).factory());
+    }
+
+    /**
+     * Submits {@code task} to be run in the background. If the sum of
+     * {@link #pendingBytes} and {@code bytes} exceeds {@link #maxBytes}, then
+     * this waits until enough of the previously submitted tasks have
+     * completed. A task with more than {@link #maxBytes} bytes is only
+     * submitted when there are no other pending bytes.
+     *
+     * @param <T> The type of result returned by {@code task}.
+     * @param bytes The number of bytes the task will release on completion.
+     * @param task The task.
+     * @return A future for the result of {@code task}.
+     * @throws InterruptedException If interrupted whilst waiting.
+     */
+    public <T> Future<T> submit(long bytes, Callable<T> task)
+            throws InterruptedException {
+        long b = Math.min(Math.max(bytes, 0L), maxBytes);
+        acquire(b);
+        try {
+            return executor.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    release(b);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(b);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until {@code bytes} can be added to {@link #pendingBytes} without
+     * exceeding {@link #maxBytes} and then adds them.
+     *
+     * @param bytes The number of bytes.
+     * @throws InterruptedException If interrupted whilst waiting.
+     */
+    private synchronized void acquire(long bytes) throws InterruptedException {
+        while (pendingBytes + bytes > maxBytes) {
+            wait();
+        }
+        pendingBytes += bytes;
+    }
+
+    /**
+     * Subtracts {@code bytes} from {@link #pendingBytes} and notifies any
+     * waiting threads.
+     *
+     * @param bytes The number of bytes.
+     */
+    private synchronized void release(long bytes) {
+        pendingBytes -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * @return {@link #pendingBytes}
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * @return {@link #maxBytes}
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return {@link #nThreads}
+     */
+    public int getNThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Waits until there are no pending bytes.
+     *
+     * @throws InterruptedException If interrupted whilst waiting.
+     */
+    public synchronized void await() throws InterruptedException {
+        while (pendingBytes > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Stops accepting new tasks and waits for those already submitted to
+     * complete.
+     *
+     * @throws InterruptedException If interrupted whilst waiting.
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+        }
+    }
+}
@@ -0,0 +1,827 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.IOException;
+import java.math.RoundingMode;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.util.Grids_Kernel;
+import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
+
+/**
+ * For applying a square kernel of weights to a grid. For each cell the
+ * weighted sum of the values in the window of cells around it and the sum of
+ * the weights of the cells in the window that have values are calculated.
+ * The weight {@code w[p][q]} of kernel {@code w} with radius {@code R} (so
+ * {@code w} has {@code 2R + 1} rows and columns) applies to the cell
+ * {@code p - R} rows and {@code q - R} columns from the cell, as for the
+ * windows of {@link Grids_Processor#getRowProcessData}. Cells with no data
+ * and cells outside the grid are ignored.
+ *
+ * The grid is processed in tiles. For each tile, the values in the window
+ * around the tile are read and the sums for the cells in the tile are
+ * calculated using one of the following strategies (see
+ * {@link #getStrategy(double[][])}):
+ * <ul>
+ * <li>{@link #BOX} for kernels with all weights the same uses summed-area
+ * tables so the cost for each cell does not depend on the radius.</li>
+ * <li>{@link #SEPARABLE} for kernels that are the outer product of a column
+ * and a row of weights applies these in two one dimensional passes so the
+ * cost for each cell is proportional to the radius.</li>
+ * <li>{@link #DIRECT} for other small kernels sums the products of the non
+ * zero weights and values.</li>
+ * <li>{@link #FFT} for other larger kernels (such as those of
+ * {@link Grids_Kernel} which are radially symmetric) multiplies the fast
+ * Fourier transforms of the window and the kernel. Each tile is the part of
+ * its window that is not affected by the wrap around of the cyclic
+ * convolution (the overlap-save method). The values and the indicators of
+ * which cells have values are transformed together as the real and imaginary
+ * parts of one complex transform.</li>
+ * </ul>
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_Convolver extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Indicates the direct strategy.
+     */
+    public static final int DIRECT = 0;
+
+    /**
+     * Indicates the summed-area table strategy for box kernels.
+     */
+    public static final int BOX = 1;
+
+    /**
+     * Indicates the two pass strategy for separable kernels.
+     */
+    public static final int SEPARABLE = 2;
+
+    /**
+     * Indicates the fast Fourier transform strategy.
+     */
+    public static final int FFT = 3;
+
+    /**
+     * The maximum number of non zero weights of a kernel that is applied
+     * directly.
+     */
+    public static final int MAX_DIRECT_WEIGHTS = 1024;
+
+    /**
+     * The default for {@link #tileSize}.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * The default for {@link #maxFFTSize}.
+     */
+    public static final int DEFAULT_MAX_FFT_SIZE = 8192;
+
+    /**
+     * The relative tolerance for testing if a kernel is separable and if a
+     * sum of weights calculated using {@link #FFT} is zero.
+     */
+    protected static final double TOLERANCE = 1.0e-9d;
+
+    /**
+     * The number of rows and columns of cells in each tile for the
+     * strategies other than {@link #FFT}.
+     */
+    protected final int tileSize;
+
+    /**
+     * The maximum number of rows and columns of the transforms for
+     * {@link #FFT}. A larger size means fewer tiles but more memory. The
+     * smallest size that fits the kernel is used if it is larger than this.
+     */
+    protected final int maxFFTSize;
+
+    /**
+     * Create a new instance with {@link #DEFAULT_TILE_SIZE} and
+     * {@link #DEFAULT_MAX_FFT_SIZE}.
+     *
+     * @param e The grids environment.
+     */
+    public Grids_Convolver(Grids_Environment e) {
+        this(e, DEFAULT_TILE_SIZE, DEFAULT_MAX_FFT_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param e The grids environment.
+     * @param tileSize What {@link #tileSize} is set to.
+     * @param maxFFTSize What {@link #maxFFTSize} is set to.
+     */
+    public Grids_Convolver(Grids_Environment e, int tileSize, int maxFFTSize) {
+        super(e);
+        if (tileSize < 1 || maxFFTSize < 1) {
+            throw new IllegalArgumentException("tileSize " + tileSize
+                    + " maxFFTSize " + maxFFTSize);
+        }
+        this.tileSize = tileSize;
+        this.maxFFTSize = maxFFTSize;
+    }
+
+    /**
+     * @return {@link #tileSize}
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return {@link #maxFFTSize}
+     */
+    public int getMaxFFTSize() {
+        return maxFFTSize;
+    }
+
+    /**
+     * Get the weights of the kernel of {@link Grids_Kernel} as doubles.
+     *
+     * @param g The grid.
+     * @param distance The distance.
+     * @param wi The weight intersect.
+     * @param wf The weight factor.
+     * @param oom The Order of Magnitude for the precision.
+     * @param rm The RoundingMode for any rounding.
+     * @return The kernel weights.
+     */
+    public static double[][] getKernel(Grids_GridNumber g,
+            Math_BigRationalSqrt distance, BigRational wi, int wf, int oom,
+            RoundingMode rm) {
+        BigRational[][] k = Grids_Kernel.getKernelWeights(g, distance, wi, wf,
+                oom, rm);
+        double[][] r = new double[k.length][];
+        for (int p = 0; p < k.length; p++) {
+            r[p] = new double[k[p].length];
+            for (int q = 0; q < k[p].length; q++) {
+                r[p][q] = k[p][q].doubleValue();
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param w The kernel.
+     * @return The radius of {@code w}.
+     * @throws IllegalArgumentException If {@code w} is not square with an odd
+     * number of rows and columns.
+     */
+    private static int getRadius(double[][] w) {
+        int n = w.length;
+        for (double[] wp : w) {
+            if (wp.length != n) {
+                n = 0;
+            }
+        }
+        if (n % 2 != 1) {
+            throw new IllegalArgumentException("The kernel must be square "
+                    + "with an odd number of rows and columns.");
+        }
+        return n / 2;
+    }
+
+    /**
+     * @param w The kernel.
+     * @return The best strategy for {@code w}: {@link #BOX} if all the
+     * weights are the same; otherwise {@link #SEPARABLE} if the kernel is
+     * separable; otherwise {@link #DIRECT} if there are no more than
+     * {@link #MAX_DIRECT_WEIGHTS} non zero weights; otherwise {@link #FFT}.
+     */
+    public static int getStrategy(double[][] w) {
+        int n = getRadius(w) * 2 + 1;
+        boolean box = true;
+        int nz = 0;
+        for (double[] wp : w) {
+            for (int q = 0; q < n; q++) {
+                if (wp[q] != w[0][0]) {
+                    box = false;
+                }
+                if (wp[q] != 0.0d) {
+                    nz++;
+                }
+            }
+        }
+        if (box) {
+            return BOX;
+        }
+        if (getSeparable(w) != null) {
+            return SEPARABLE;
+        }
+        if (nz <= MAX_DIRECT_WEIGHTS) {
+            return DIRECT;
+        }
+        return FFT;
+    }
+
+    /**
+     * @param w The kernel.
+     * @return {@code null} if {@code w} is not separable and otherwise the
+     * column weights and the row weights the outer product of which is
+     * {@code w}.
+     */
+    private static double[][] getSeparable(double[][] w) {
+        int n = w.length;
+        int p0 = 0;
+        int q0 = 0;
+        double max = 0.0d;
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q < n; q++) {
+                if (Math.abs(w[p][q]) > max) {
+                    max = Math.abs(w[p][q]);
+                    p0 = p;
+                    q0 = q;
+                }
+            }
+        }
+        if (max == 0.0d) {
+            return null;
+        }
+        double[] a = new double[n];
+        double[] b = new double[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = w[i][q0];
+            b[i] = w[p0][i] / w[p0][q0];
+        }
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q < n; q++) {
+                if (Math.abs(w[p][q] - a[p] * b[q]) > TOLERANCE * max) {
+                    return null;
+                }
+            }
+        }
+        return new double[][]{a, b};
+    }
+
+    /**
+     * Applies {@code w} to {@code g} using the strategy given by
+     * {@link #getStrategy(double[][])}.
+     *
+     * @param g The grid.
+     * @param w The kernel.
+     * @param gf The factory for creating the result grids.
+     * @return The grid of weighted sums and the grid of the sums of the
+     * weights of the cells that have values. In both grids, the cells for
+     * which no cells in the window with a non zero weight have values have no
+     * data.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public Grids_GridDouble[] convolve(Grids_GridDouble g, double[][] w,
+            Grids_GridDoubleFactory gf) throws IOException, Exception {
+        return convolve(g, w, gf, getStrategy(w));
+    }
+
+    /**
+     * Applies {@code w} to {@code g} using {@code strategy}.
+     *
+     * @param g The grid.
+     * @param w The kernel.
+     * @param gf The factory for creating the result grids.
+     * @param strategy The strategy which must be suitable for {@code w}.
+     * @return The grid of weighted sums and the grid of the sums of the
+     * weights of the cells that have values. In both grids, the cells for
+     * which no cells in the window with a non zero weight have values have no
+     * data.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public Grids_GridDouble[] convolve(Grids_GridDouble g, double[][] w,
+            Grids_GridDoubleFactory gf, int strategy) throws IOException,
+            Exception {
+        int R = getRadius(w);
+        int kw = R * 2 + 1;
+        double sumAbs = 0.0d;
+        for (double[] wp : w) {
+            for (double x : wp) {
+                sumAbs += Math.abs(x);
+            }
+        }
+        Tiler t;
+        switch (strategy) {
+            case DIRECT:
+                t = new Direct(w, R);
+                break;
+            case BOX:
+                if (getStrategy(w) != BOX) {
+                    throw new IllegalArgumentException("Not a box kernel");
+                }
+                t = new Box(w[0][0], R);
+                break;
+            case SEPARABLE:
+                double[][] ab = getSeparable(w);
+                if (ab == null) {
+                    throw new IllegalArgumentException("Not separable");
+                }
+                t = new Separable(ab[0], ab[1], R);
+                break;
+            case FFT:
+                t = new Transform(w, R, getFFTSize(kw, maxFFTSize));
+                break;
+            default:
+                throw new IllegalArgumentException("strategy " + strategy);
+        }
+        /**
+         * If the kernel has positive and negative weights then the sum of the
+         * weights can be zero where there are values, so these are told apart
+         * from where there are none by convolving the indicators of which
+         * cells have values with the indicators of which weights are non zero.
+         */
+        Tiler c = null;
+        if (strategy == DIRECT && hasMixedSigns(w)) {
+            c = new Direct(getIndicators(w), R);
+        } else if (strategy == SEPARABLE && hasMixedSigns(w)) {
+            double[][] ab = getSeparable(w);
+            c = new Separable(getIndicators(ab[0]), getIndicators(ab[1]), R);
+        }
+        double tol = strategy == FFT ? TOLERANCE * sumAbs : 0.0d;
+        int ts = strategy == FFT ? ((Transform) t).n - 2 * R : tileSize;
+        long nrows = g.getNRows();
+        long ncols = g.getNCols();
+        double ndv = g.getNoDataValue();
+        gf.setNoDataValue(ndv);
+        Grids_GridDouble sum = gf.create(nrows, ncols, g.getDimensions());
+        Grids_GridDouble sumWeight = gf.create(nrows, ncols,
+                g.getDimensions());
+        for (long r0 = 0; r0 < nrows; r0 += ts) {
+            int h = (int) Math.min(ts, nrows - r0);
+            for (long c0 = 0; c0 < ncols; c0 += ts) {
+                int wd = (int) Math.min(ts, ncols - c0);
+                int wr = h + 2 * R;
+                int wc = wd + 2 * R;
+                double[] x = new double[wr * wc];
+                double[] m = new double[wr * wc];
+                for (int i = 0; i < wr; i++) {
+                    for (int j = 0; j < wc; j++) {
+                        double v = g.getCell(r0 - R + i, c0 - R + j);
+                        if (v != ndv) {
+                            x[i * wc + j] = v;
+                            m[i * wc + j] = 1.0d;
+                        }
+                    }
+                }
+                double[] s = new double[h * wd];
+                double[] sw = new double[h * wd];
+                t.apply(x, m, wr, wc, s, sw);
+                double[] n = null;
+                if (c != null) {
+                    // The counts are calculated as both sums.
+                    n = new double[h * wd];
+                    c.apply(m, m, wr, wc, n, n);
+                }
+                for (int i = 0; i < h; i++) {
+                    for (int j = 0; j < wd; j++) {
+                        int k = i * wd + j;
+                        if (Math.abs(sw[k]) > tol
+                                || (n != null && n[k] != 0.0d)) {
+                            sum.setCell(r0 + i, c0 + j, s[k]);
+                            sumWeight.setCell(r0 + i, c0 + j, sw[k]);
+                        }
+                    }
+                }
+                env.checkAndMaybeFreeMemory();
+            }
+        }
+        return new Grids_GridDouble[]{sum, sumWeight};
+    }
+
+    /**
+     * @param w The kernel.
+     * @return {@code true} iff {@code w} has both positive and negative
+     * weights.
+     */
+    private static boolean hasMixedSigns(double[][] w) {
+        boolean positive = false;
+        boolean negative = false;
+        for (double[] wp : w) {
+            for (double x : wp) {
+                positive |= x > 0.0d;
+                negative |= x < 0.0d;
+            }
+        }
+        return positive && negative;
+    }
+
+    /**
+     * @param w The weights.
+     * @return An array the same size as {@code w} with ones where the
+     * weights are non zero and zeros elsewhere.
+     */
+    private static double[] getIndicators(double[] w) {
+        double[] r = new double[w.length];
+        for (int i = 0; i < w.length; i++) {
+            r[i] = w[i] != 0.0d ? 1.0d : 0.0d;
+        }
+        return r;
+    }
+
+    /**
+     * @param w The kernel.
+     * @return A kernel the same size as {@code w} with ones where the
+     * weights are non zero and zeros elsewhere.
+     */
+    private static double[][] getIndicators(double[][] w) {
+        double[][] r = new double[w.length][];
+        for (int p = 0; p < w.length; p++) {
+            r[p] = getIndicators(w[p]);
+        }
+        return r;
+    }
+
+    /**
+     * @param kw The number of rows and columns of the kernel.
+     * @param max The maximum size wanted.
+     * @return The power of two number of rows and columns of the transforms
+     * that fits the kernel with the lowest estimated cost for each cell.
+     */
+    static int getFFTSize(int kw, int max) {
+        int n = Integer.highestOneBit(kw);
+        if (n < kw) {
+            n <<= 1;
+        }
+        int r = n;
+        double best = Double.MAX_VALUE;
+        for (; n <= Math.max(r, max); n <<= 1) {
+            double t = n - kw + 1;
+            double cost = (double) n * n
+                    * (Integer.numberOfTrailingZeros(n) + 4) / (t * t);
+            if (cost < best) {
+                best = cost;
+                r = n;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * For calculating the sums for the cells of a tile.
+     */
+    private interface Tiler {
+
+        /**
+         * @param x The values in the window (zero where there are no
+         * values) in row major order.
+         * @param m The indicators of which cells in the window have values.
+         * @param wr The number of rows in the window.
+         * @param wc The number of columns in the window.
+         * @param s The weighted sums to set in row major order.
+         * @param sw The sums of the weights to set in row major order.
+         */
+        void apply(double[] x, double[] m, int wr, int wc, double[] s,
+                double[] sw);
+    }
+
+    /**
+     * For {@link #DIRECT}.
+     */
+    private static class Direct implements Tiler {
+
+        /**
+         * The row and column offsets of the non zero weights.
+         */
+        final int[] ps;
+        final int[] qs;
+
+        /**
+         * The non zero weights.
+         */
+        final double[] ws;
+
+        /**
+         * The radius.
+         */
+        final int R;
+
+        Direct(double[][] w, int R) {
+            this.R = R;
+            int n = 0;
+            for (double[] wp : w) {
+                for (double x : wp) {
+                    if (x != 0.0d) {
+                        n++;
+                    }
+                }
+            }
+            ps = new int[n];
+            qs = new int[n];
+            ws = new double[n];
+            n = 0;
+            for (int p = 0; p < w.length; p++) {
+                for (int q = 0; q < w.length; q++) {
+                    if (w[p][q] != 0.0d) {
+                        ps[n] = p;
+                        qs[n] = q;
+                        ws[n] = w[p][q];
+                        n++;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void apply(double[] x, double[] m, int wr, int wc, double[] s,
+                double[] sw) {
+            int h = wr - 2 * R;
+            int wd = wc - 2 * R;
+            for (int i = 0; i < h; i++) {
+                for (int j = 0; j < wd; j++) {
+                    double a = 0.0d;
+                    double b = 0.0d;
+                    for (int k = 0; k < ws.length; k++) {
+                        int o = (i + ps[k]) * wc + j + qs[k];
+                        a += ws[k] * x[o];
+                        b += ws[k] * m[o];
+                    }
+                    s[i * wd + j] = a;
+                    sw[i * wd + j] = b;
+                }
+            }
+        }
+    }
+
+    /**
+     * For {@link #BOX}.
+     */
+    private static class Box implements Tiler {
+
+        /**
+         * The weight.
+         */
+        final double w;
+
+        /**
+         * The radius.
+         */
+        final int R;
+
+        Box(double w, int R) {
+            this.w = w;
+            this.R = R;
+        }
+
+        @Override
+        public void apply(double[] x, double[] m, int wr, int wc, double[] s,
+                double[] sw) {
+            int kw = 2 * R + 1;
+            int h = wr - 2 * R;
+            int wd = wc - 2 * R;
+            int sc = wc + 1;
+            double[] sx = new double[(wr + 1) * sc];
+            double[] sm = new double[(wr + 1) * sc];
+            for (int i = 0; i < wr; i++) {
+                for (int j = 0; j < wc; j++) {
+                    int o = (i + 1) * sc + j + 1;
+                    sx[o] = x[i * wc + j] + sx[o - sc] + sx[o - 1]
+                            - sx[o - sc - 1];
+                    sm[o] = m[i * wc + j] + sm[o - sc] + sm[o - 1]
+                            - sm[o - sc - 1];
+                }
+            }
+            for (int i = 0; i < h; i++) {
+                for (int j = 0; j < wd; j++) {
+                    int o0 = i * sc + j;
+                    int o1 = (i + kw) * sc + j;
+                    s[i * wd + j] = w * (sx[o1 + kw] - sx[o0 + kw] - sx[o1]
+                            + sx[o0]);
+                    sw[i * wd + j] = w * (sm[o1 + kw] - sm[o0 + kw] - sm[o1]
+                            + sm[o0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * For {@link #SEPARABLE}.
+     */
+    private static class Separable implements Tiler {
+
+        /**
+         * The column weights.
+         */
+        final double[] a;
+
+        /**
+         * The row weights.
+         */
+        final double[] b;
+
+        /**
+         * The radius.
+         */
+        final int R;
+
+        Separable(double[] a, double[] b, int R) {
+            this.a = a;
+            this.b = b;
+            this.R = R;
+        }
+
+        @Override
+        public void apply(double[] x, double[] m, int wr, int wc, double[] s,
+                double[] sw) {
+            int kw = 2 * R + 1;
+            int h = wr - 2 * R;
+            int wd = wc - 2 * R;
+            // Apply the row weights to each row of the window.
+            double[] hx = new double[wr * wd];
+            double[] hm = new double[wr * wd];
+            for (int i = 0; i < wr; i++) {
+                for (int j = 0; j < wd; j++) {
+                    double u = 0.0d;
+                    double v = 0.0d;
+                    int o = i * wc + j;
+                    for (int q = 0; q < kw; q++) {
+                        u += b[q] * x[o + q];
+                        v += b[q] * m[o + q];
+                    }
+                    hx[i * wd + j] = u;
+                    hm[i * wd + j] = v;
+                }
+            }
+            // Apply the column weights.
+            for (int i = 0; i < h; i++) {
+                for (int j = 0; j < wd; j++) {
+                    double u = 0.0d;
+                    double v = 0.0d;
+                    for (int p = 0; p < kw; p++) {
+                        u += a[p] * hx[(i + p) * wd + j];
+                        v += a[p] * hm[(i + p) * wd + j];
+                    }
+                    s[i * wd + j] = u;
+                    sw[i * wd + j] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * For {@link #FFT}.
+     */
+    private static class Transform implements Tiler {
+
+        /**
+         * The number of rows and columns of the transforms.
+         */
+        final int n;
+
+        /**
+         * The radius.
+         */
+        final int R;
+
+        /**
+         * The transform of the reversed kernel.
+         */
+        final double[] kre;
+        final double[] kim;
+
+        /**
+         * The cosines and sines of the twiddle factors.
+         */
+        final double[] cos;
+        final double[] sin;
+
+        Transform(double[][] w, int R, int n) {
+            this.n = n;
+            this.R = R;
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int k = 0; k < n / 2; k++) {
+                cos[k] = Math.cos(2.0d * Math.PI * k / n);
+                sin[k] = Math.sin(2.0d * Math.PI * k / n);
+            }
+            int kw = 2 * R + 1;
+            kre = new double[n * n];
+            kim = new double[n * n];
+            for (int p = 0; p < kw; p++) {
+                for (int q = 0; q < kw; q++) {
+                    kre[(kw - 1 - p) * n + kw - 1 - q] = w[p][q];
+                }
+            }
+            fft2(kre, kim, false);
+        }
+
+        @Override
+        public void apply(double[] x, double[] m, int wr, int wc, double[] s,
+                double[] sw) {
+            int h = wr - 2 * R;
+            int wd = wc - 2 * R;
+            double[] re = new double[n * n];
+            double[] im = new double[n * n];
+            for (int i = 0; i < wr; i++) {
+                System.arraycopy(x, i * wc, re, i * n, wc);
+                System.arraycopy(m, i * wc, im, i * n, wc);
+            }
+            fft2(re, im, false);
+            for (int k = 0; k < n * n; k++) {
+                double a = re[k] * kre[k] - im[k] * kim[k];
+                im[k] = re[k] * kim[k] + im[k] * kre[k];
+                re[k] = a;
+            }
+            fft2(re, im, true);
+            double scale = 1.0d / ((double) n * n);
+            for (int i = 0; i < h; i++) {
+                int o = (i + 2 * R) * n + 2 * R;
+                for (int j = 0; j < wd; j++) {
+                    s[i * wd + j] = re[o + j] * scale;
+                    sw[i * wd + j] = im[o + j] * scale;
+                }
+            }
+        }
+
+        /**
+         * Transforms the rows and then the columns of {@code re} and
+         * {@code im} in place. The inverse transform is not scaled.
+         *
+         * @param re The real parts in row major order.
+         * @param im The imaginary parts in row major order.
+         * @param inverse If {@code true} the inverse transform is done.
+         */
+        void fft2(double[] re, double[] im, boolean inverse) {
+            for (int i = 0; i < n; i++) {
+                fft(re, im, i * n, inverse);
+            }
+            double[] cr = new double[n];
+            double[] ci = new double[n];
+            for (int j = 0; j < n; j++) {
+                for (int i = 0; i < n; i++) {
+                    cr[i] = re[i * n + j];
+                    ci[i] = im[i * n + j];
+                }
+                fft(cr, ci, 0, inverse);
+                for (int i = 0; i < n; i++) {
+                    re[i * n + j] = cr[i];
+                    im[i * n + j] = ci[i];
+                }
+            }
+        }
+
+        /**
+         * An iterative radix 2 transform of the {@link #n} values from
+         * {@code off} in {@code re} and {@code im} in place.
+         *
+         * @param re The real parts.
+         * @param im The imaginary parts.
+         * @param off The index of the first value.
+         * @param inverse If {@code true} the inverse transform is done.
+         */
+        void fft(double[] re, double[] im, int off, boolean inverse) {
+            int bits = Integer.numberOfTrailingZeros(n);
+            for (int i = 0; i < n; i++) {
+                int j = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+                if (j > i) {
+                    double t = re[off + i];
+                    re[off + i] = re[off + j];
+                    re[off + j] = t;
+                    t = im[off + i];
+                    im[off + i] = im[off + j];
+                    im[off + j] = t;
+                }
+            }
+            double sign = inverse ? 1.0d : -1.0d;
+            for (int len = 2; len <= n; len <<= 1) {
+                int half = len >> 1;
+                int step = n / len;
+                for (int i = 0; i < n; i += len) {
+                    for (int k = 0; k < half; k++) {
+                        double wr = cos[k * step];
+                        double wi = sign * sin[k * step];
+                        int a = off + i + k;
+                        int b = a + half;
+                        double tr = re[b] * wr - im[b] * wi;
+                        double ti = re[b] * wi + im[b] * wr;
+                        re[b] = re[a] - tr;
+                        im[b] = im[a] - ti;
+                        re[a] += tr;
+                        im[a] += ti;
+                    }
+                }
+            }
+        }
+    }
+}
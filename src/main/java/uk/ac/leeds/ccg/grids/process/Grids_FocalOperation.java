@@ -0,0 +1,520 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.util.Grids_Kernel;
+import uk.ac.leeds.ccg.grids.memory.Grids_ChunkPins;
+import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
+
+/**
+ * For focal (moving window) operations. For each cell of a grid, the values
+ * of the cells in a window around it that have data are reduced to a single
+ * value by a {@link Reducer} and this is the value of the cell in the result.
+ *
+ * A window is given as a square array of weights {@code w} with
+ * {@code 2R + 1} rows and columns where {@code R} is the radius. The weight
+ * {@code w[p][q]} is for the cell {@code p - R} rows and {@code q - R}
+ * columns from the cell, and cells with a weight of zero are not in the
+ * window. Windows for squares, circles, annuli and the kernels of
+ * {@link Grids_Kernel} can be got using {@link #square(int)},
+ * {@link #circle(double)}, {@link #annulus(double, double)} and
+ * {@link #kernel(Grids_GridNumber, Math_BigRationalSqrt, BigRational, int,
+ * int, RoundingMode)}.
+ *
+ * The chunks of the result grid are processed in batches in the same way as
+ * by {@link Grids_TileExecutor}. For each batch, the calling thread pins the
+ * chunks of the result, reads the values for each chunk and the halo of cells
+ * within {@code R} rows and columns of it from the input grid into an array,
+ * then the chunks are calculated in parallel on the threads of {@link #pool}.
+ * So only the calling thread does any memory management and the input and
+ * result grids do not need to have the same chunks.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_FocalOperation extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * For the weighted sum.
+     */
+    public static final Reducer SUM = (v, w, n) -> {
+        double r = 0.0d;
+        for (int i = 0; i < n; i++) {
+            r += v[i] * w[i];
+        }
+        return r;
+    };
+
+    /**
+     * For the weighted mean.
+     */
+    public static final Reducer MEAN = (v, w, n) -> {
+        double s = 0.0d;
+        double sw = 0.0d;
+        for (int i = 0; i < n; i++) {
+            s += v[i] * w[i];
+            sw += w[i];
+        }
+        return sw == 0.0d ? Double.NaN : s / sw;
+    };
+
+    /**
+     * For the minimum.
+     */
+    public static final Reducer MIN = (v, w, n) -> {
+        double r = v[0];
+        for (int i = 1; i < n; i++) {
+            r = Math.min(r, v[i]);
+        }
+        return r;
+    };
+
+    /**
+     * For the maximum.
+     */
+    public static final Reducer MAX = (v, w, n) -> {
+        double r = v[0];
+        for (int i = 1; i < n; i++) {
+            r = Math.max(r, v[i]);
+        }
+        return r;
+    };
+
+    /**
+     * For the weighted (population) variance.
+     */
+    public static final Reducer VARIANCE = (v, w, n) -> {
+        double m = MEAN.reduce(v, w, n);
+        if (Double.isNaN(m)) {
+            return m;
+        }
+        double s = 0.0d;
+        double sw = 0.0d;
+        for (int i = 0; i < n; i++) {
+            double d = v[i] - m;
+            s += d * d * w[i];
+            sw += w[i];
+        }
+        return s / sw;
+    };
+
+    /**
+     * For the median. The weights are ignored. If there are an even number of
+     * values the mean of the middle two is returned.
+     */
+    public static final Reducer MEDIAN = (v, w, n) -> {
+        double[] s = Arrays.copyOf(v, n);
+        Arrays.sort(s);
+        if (n % 2 == 1) {
+            return s[n / 2];
+        }
+        return (s[n / 2 - 1] + s[n / 2]) / 2.0d;
+    };
+
+    /**
+     * For the majority: the value with the largest sum of weights. If there
+     * is more than one such value, the smallest is returned.
+     */
+    public static final Reducer MAJORITY = (v, w, n) -> {
+        Map<Double, Double> m = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            m.merge(v[i], w[i], Double::sum);
+        }
+        double r = Double.NaN;
+        double max = -Double.MAX_VALUE;
+        for (Map.Entry<Double, Double> e : m.entrySet()) {
+            double k = e.getKey();
+            double s = e.getValue();
+            if (s > max || (s == max && k < r)) {
+                max = s;
+                r = k;
+            }
+        }
+        return r;
+    };
+
+    /**
+     * For running the calculations.
+     */
+    protected transient ForkJoinPool pool;
+
+    /**
+     * If {@code true} then cells that have no data in the input grid have no
+     * data in the result.
+     */
+    protected boolean skipNoData;
+
+    /**
+     * Create a new instance that uses {@link ForkJoinPool#commonPool()}.
+     *
+     * @param e The grids environment.
+     */
+    public Grids_FocalOperation(Grids_Environment e) {
+        this(e, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param e The grids environment.
+     * @param pool What {@link #pool} is set to.
+     */
+    public Grids_FocalOperation(Grids_Environment e, ForkJoinPool pool) {
+        super(e);
+        this.pool = pool;
+    }
+
+    /**
+     * @return {@link #pool}
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return {@link #skipNoData}
+     */
+    public boolean isSkipNoData() {
+        return skipNoData;
+    }
+
+    /**
+     * @param skipNoData What {@link #skipNoData} is set to.
+     */
+    public void setSkipNoData(boolean skipNoData) {
+        this.skipNoData = skipNoData;
+    }
+
+    /**
+     * @param radius The radius.
+     * @return A window of all the cells within {@code radius} rows and
+     * columns with weights of one.
+     */
+    public static double[][] square(int radius) {
+        int n = 2 * radius + 1;
+        double[][] r = new double[n][n];
+        for (double[] rp : r) {
+            Arrays.fill(rp, 1.0d);
+        }
+        return r;
+    }
+
+    /**
+     * @param radius The radius in cells.
+     * @return A window of the cells with centroids within {@code radius}
+     * cells of the centroid of the cell with weights of one.
+     */
+    public static double[][] circle(double radius) {
+        return annulus(0.0d, radius);
+    }
+
+    /**
+     * @param inner The inner radius in cells.
+     * @param outer The outer radius in cells.
+     * @return A window of the cells with centroids at least {@code inner} and
+     * at most {@code outer} cells from the centroid of the cell with weights
+     * of one.
+     */
+    public static double[][] annulus(double inner, double outer) {
+        int R = (int) Math.floor(outer);
+        int n = 2 * R + 1;
+        double[][] r = new double[n][n];
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q < n; q++) {
+                double d = Math.sqrt((double) (p - R) * (p - R)
+                        + (double) (q - R) * (q - R));
+                if (d >= inner && d <= outer) {
+                    r[p][q] = 1.0d;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param g The grid.
+     * @param distance The distance.
+     * @param wi The weight intersect.
+     * @param wf The weight factor.
+     * @param oom The Order of Magnitude for the precision.
+     * @param rm The RoundingMode for any rounding.
+     * @return A window with the weights of the kernel of
+     * {@link Grids_Kernel}.
+     */
+    public static double[][] kernel(Grids_GridNumber g,
+            Math_BigRationalSqrt distance, BigRational wi, int wf, int oom,
+            RoundingMode rm) {
+        return Grids_Convolver.getKernel(g, distance, wi, wf, oom, rm);
+    }
+
+    /**
+     * @param f A function of the values (not the weights).
+     * @return A reducer that applies {@code f} to an array of the values.
+     */
+    public static Reducer reducer(ToDoubleFunction<double[]> f) {
+        return (v, w, n) -> f.applyAsDouble(Arrays.copyOf(v, n));
+    }
+
+    /**
+     * Applies {@code reducer} to the window {@code w} of each cell of
+     * {@code g}.
+     *
+     * @param g The input grid.
+     * @param w The window.
+     * @param reducer The reducer which is called from different threads at
+     * the same time.
+     * @param gf The factory for creating the result grid.
+     * @return A grid of the results. Cells for which no cells in the window
+     * have data or for which the result is {@link Double#NaN} have no data.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public Grids_GridDouble apply(Grids_GridDouble g, double[][] w,
+            Reducer reducer, Grids_GridDoubleFactory gf) throws IOException,
+            Exception {
+        env.checkAndMaybeFreeMemory();
+        int n = w.length;
+        for (double[] wp : w) {
+            if (wp.length != n) {
+                n = 0;
+            }
+        }
+        if (n % 2 != 1) {
+            throw new IllegalArgumentException("The window must be square "
+                    + "with an odd number of rows and columns.");
+        }
+        int R = n / 2;
+        int nw = 0;
+        for (double[] wp : w) {
+            for (double x : wp) {
+                if (x != 0.0d) {
+                    nw++;
+                }
+            }
+        }
+        // The row and column offsets and weights of the cells in the window.
+        int[] ps = new int[nw];
+        int[] qs = new int[nw];
+        double[] ws = new double[nw];
+        nw = 0;
+        for (int p = 0; p < n; p++) {
+            for (int q = 0; q < n; q++) {
+                if (w[p][q] != 0.0d) {
+                    ps[nw] = p;
+                    qs[nw] = q;
+                    ws[nw] = w[p][q];
+                    nw++;
+                }
+            }
+        }
+        gf.setNoDataValue(g.getNoDataValue());
+        Grids_GridDouble r = gf.create(g.getNRows(), g.getNCols(),
+                g.getDimensions());
+        int bn = Math.max(1, pool.getParallelism()
+                * Grids_TileExecutor.BATCH_FACTOR);
+        List<Grids_2D_ID_int> batch = new ArrayList<>(bn);
+        int ncr = r.getNChunkRows();
+        int ncc = r.getNChunkCols();
+        for (int cr = 0; cr < ncr; cr++) {
+            for (int cc = 0; cc < ncc; cc++) {
+                batch.add(new Grids_2D_ID_int(cr, cc));
+                if (batch.size() == bn) {
+                    apply(g, r, R, ps, qs, ws, reducer, batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            apply(g, r, R, ps, qs, ws, reducer, batch);
+        }
+        r.getStats().changed();
+        env.checkAndMaybeFreeMemory();
+        return r;
+    }
+
+    /**
+     * Calculates the chunks of {@code r} with chunk IDs in {@code batch}.
+     *
+     * @param g The input grid.
+     * @param r The result grid.
+     * @param R The radius of the window.
+     * @param ps The row offsets of the cells in the window.
+     * @param qs The column offsets of the cells in the window.
+     * @param ws The weights of the cells in the window.
+     * @param reducer The reducer.
+     * @param batch The chunk IDs.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected void apply(Grids_GridDouble g, Grids_GridDouble r, int R,
+            int[] ps, int[] qs, double[] ws, Reducer reducer,
+            List<Grids_2D_ID_int> batch) throws IOException, Exception {
+        Grids_ChunkPins pins = env.getPins();
+        pins.pin(r, batch);
+        double ndv = g.getNoDataValue();
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+            for (Grids_2D_ID_int i : batch) {
+                int nr = r.getChunkNRows(i.getRow());
+                int nc = r.getChunkNCols(i.getCol());
+                int wc = nc + 2 * R;
+                double[] x = new double[(nr + 2 * R) * wc];
+                read(g, r.getRow(i.getRow(), 0) - R, r.getCol(i.getCol(), 0)
+                        - R, nr + 2 * R, wc, x);
+                Grids_ChunkDouble c = r.getWritableChunk(i);
+                env.checkAndMaybeFreeMemory();
+                tasks.add(() -> {
+                    double[] v = new double[ws.length];
+                    double[] vw = new double[ws.length];
+                    for (int ccr = 0; ccr < nr; ccr++) {
+                        for (int ccc = 0; ccc < nc; ccc++) {
+                            int o = ccr * wc + ccc;
+                            if (skipNoData) {
+                                double x0 = x[o + R * wc + R];
+                                if (x0 == ndv || Double.isNaN(x0)) {
+                                    continue;
+                                }
+                            }
+                            int k = 0;
+                            for (int j = 0; j < ws.length; j++) {
+                                double xj = x[o + ps[j] * wc + qs[j]];
+                                if (xj != ndv && !Double.isNaN(xj)) {
+                                    v[k] = xj;
+                                    vw[k] = ws[j];
+                                    k++;
+                                }
+                            }
+                            if (k > 0) {
+                                double y = reducer.reduce(v, vw, k);
+                                if (!Double.isNaN(y)) {
+                                    c.setCell(ccr, ccc, y);
+                                }
+                            }
+                        }
+                    }
+                    c.setCacheUpToDate(false);
+                    r.changed(i);
+                    return null;
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof Exception) {
+                        throw (Exception) t;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pins.unpin(r, batch);
+        }
+        env.checkAndMaybeFreeMemory();
+    }
+
+    /**
+     * Reads the values of the cells of {@code g} in {@code nr} rows from row
+     * {@code row0} and {@code nc} columns from column {@code col0} into
+     * {@code dst} in row major order. Cells that are not in {@code g} are
+     * given the no data value of {@code g}.
+     *
+     * @param g The grid.
+     * @param row0 The first row.
+     * @param col0 The first column.
+     * @param nr The number of rows.
+     * @param nc The number of columns.
+     * @param dst The array to read into.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected void read(Grids_GridDouble g, long row0, long col0, int nr,
+            int nc, double[] dst) throws IOException, Exception {
+        Arrays.fill(dst, g.getNoDataValue());
+        long ra = Math.max(row0, 0L);
+        long rb = Math.min(row0 + nr, g.getNRows());
+        long ca = Math.max(col0, 0L);
+        long cb = Math.min(col0 + nc, g.getNCols());
+        if (ra >= rb || ca >= cb) {
+            return;
+        }
+        int cr1 = g.getChunkRow(rb - 1L);
+        int cc1 = g.getChunkCol(cb - 1L);
+        for (int cr = g.getChunkRow(ra); cr <= cr1; cr++) {
+            long gr0 = g.getRow(cr, 0);
+            int ccr0 = (int) (Math.max(ra, gr0) - gr0);
+            int ccr1 = (int) (Math.min(rb, gr0 + g.getChunkNRows(cr)) - gr0);
+            for (int cc = g.getChunkCol(ca); cc <= cc1; cc++) {
+                long gc0 = g.getCol(cc, 0);
+                int ccc0 = (int) (Math.max(ca, gc0) - gc0);
+                int ccc1 = (int) (Math.min(cb, gc0 + g.getChunkNCols(cc))
+                        - gc0);
+                Grids_ChunkDouble c = (Grids_ChunkDouble) g.getChunk(cr, cc);
+                for (int ccr = ccr0; ccr < ccr1; ccr++) {
+                    int o = (int) ((gr0 + ccr - row0) * nc + gc0 - col0);
+                    if (c instanceof Grids_ChunkDoubleSinglet) {
+                        Arrays.fill(dst, o + ccc0, o + ccc1,
+                                ((Grids_ChunkDoubleSinglet) c).getV());
+                    } else if (c != null) {
+                        for (int ccc = ccc0; ccc < ccc1; ccc++) {
+                            dst[o + ccc] = c.getCell(ccr, ccc);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * For reducing the values of the cells in a window to a single value.
+     */
+    @FunctionalInterface
+    public interface Reducer {
+
+        /**
+         * @param v The values of the cells in the window that have data. Only
+         * the first {@code n} are for the window.
+         * @param w The weights for the values in {@code v}.
+         * @param n The number of values which is at least one.
+         * @return The result or {@link Double#NaN} if there is none.
+         */
+        double reduce(double[] v, double[] w, int n);
+    }
+}
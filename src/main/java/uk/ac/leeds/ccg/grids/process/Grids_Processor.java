@@ -26,14 +26,18 @@ import java.util.Iterator;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkNumber;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
 import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.core.Grids_Object;
@@ -43,10 +47,15 @@ import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactorySinglet;
 import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinaryFactory;
 import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsNumber;
 import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridExporter;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridStreamExporter;
 import uk.ac.leeds.ccg.grids.io.Grids_Files;
 import uk.ac.leeds.ccg.grids.io.Grids_ImageExporter;
 import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArrayPacked;
 import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBR;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRFactoryArray;
 import uk.ac.leeds.ccg.grids.d2.chunk.br.Grids_ChunkBRFactorySinglet;
 import uk.ac.leeds.ccg.grids.d2.grid.br.Grids_GridBRFactory;
@@ -98,6 +107,13 @@ public class Grids_Processor extends Grids_Object {
      */
     public Grids_GridBRFactory gridFactoryBR;
 
+    /**
+     * For processing grids that have the same dimensions and chunks a chunk
+     * at a time in parallel. This is initialised by
+     * {@link #getTileExecutor()}.
+     */
+    protected transient Grids_TileExecutor tileExecutor;
+
     /**
      * @param e The grids environment.
      * @throws java.lang.Exception If encountered.
@@ -152,6 +168,60 @@ public class Grids_Processor extends Grids_Object {
                 chunkNRows, chunkNCols);
     }
 
+    /**
+     * Sets the default chunk factories of {@link #gridFactoryDouble},
+     * {@link #gridFactoryInt} and {@link #gridFactoryBinary} to factories for
+     * chunks that store values in a single row major array rather than in an
+     * array of row arrays. Grids subsequently created by these factories use
+     * these chunks.
+     */
+    public void setFlatArrayChunkFactories() {
+        gridFactoryDouble.setDefaultChunkFactory(
+                new Grids_ChunkDoubleFactoryArrayFlat());
+        gridFactoryInt.setDefaultChunkFactory(
+                new Grids_ChunkIntFactoryArrayFlat());
+        gridFactoryBinary.factory = new Grids_ChunkBinaryFactoryArrayFlat();
+        gridFactoryBinary.defaultGridChunkBinaryFactory
+                = gridFactoryBinary.factory;
+    }
+
+    /**
+     * If {@link #tileExecutor} is {@code null}, then it is initialised to use
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+     *
+     * @return {@link #tileExecutor}
+     */
+    public Grids_TileExecutor getTileExecutor() {
+        if (tileExecutor == null) {
+            tileExecutor = new Grids_TileExecutor(env);
+        }
+        return tileExecutor;
+    }
+
+    /**
+     * @param t What {@link #tileExecutor} is set to.
+     */
+    public void setTileExecutor(Grids_TileExecutor t) {
+        tileExecutor = t;
+    }
+
+    /**
+     * Sets the chunk factories of {@link #gridFactoryBinary} and
+     * {@link #gridFactoryBoolean} to factories for chunks that store values
+     * as bits packed into longs. Grids subsequently created by these
+     * factories use these chunks which take an eighth of the memory of array
+     * chunks and support word at a time logical operations (see
+     * {@link uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary#and}).
+     */
+    public void setPackedChunkFactories() {
+        gridFactoryBinary.factory = new Grids_ChunkBinaryFactoryArrayPacked();
+        gridFactoryBinary.defaultGridChunkBinaryFactory
+                = gridFactoryBinary.factory;
+        gridFactoryBoolean.factory = new Grids_ChunkBooleanFactoryArrayPacked();
+        gridFactoryBoolean.defaultGridChunkBooleanFactory
+                = gridFactoryBoolean.factory;
+    }
+
     /**
      * @param dir dir
      * @param s s
@@ -192,13 +262,19 @@ public class Grids_Processor extends Grids_Object {
     public void mask(Grids_GridNumber g, Grids_GridNumber mask)
             throws IOException, ClassNotFoundException, Exception {
         env.checkAndMaybeFreeMemory();
+        if (Grids_TileExecutor.isAligned(g, mask)) {
+            getTileExecutor().execute(g, new Grids_Grid[]{mask},
+                    (i, c, cs) -> mask(g, (Grids_ChunkNumber) c, mask,
+                            (Grids_ChunkNumber) cs[0]));
+            return;
+        }
         if (g instanceof Grids_GridInt) {
             Grids_GridInt grid = (Grids_GridInt) g;
             int noDataValue = grid.getNoDataValue();
             if (mask instanceof Grids_GridInt) {
                 Grids_GridInt m = (Grids_GridInt) mask;
                 int maskNoDataValue = m.getNoDataValue();
-                Iterator<Grids_2D_ID_int> ite = m.iterator().getGridIterator();
+                Iterator<Grids_2D_ID_int> ite = m.getChunkIDs().iterator();
                 while (ite.hasNext()) {
                     Grids_ChunkInt maskIntChunk = m.getChunk(ite.next());
                     Grids_2D_ID_int i = maskIntChunk.getId();
@@ -213,8 +289,8 @@ public class Grids_Processor extends Grids_Object {
                         for (int ccc = 0; ccc < cnc; ccc++) {
                             int v = maskIntChunk.getCell(ccr, ccc);
                             if (v == maskNoDataValue) {
-                                long r = ((long) cr * (long) cnr) + (long) ccr;
-                                long c = ((long) cc * (long) cnc) + (long) ccc;
+                                long r = mask.getRow(cr, ccr);
+                                long c = mask.getCol(cc, ccc);
                                 grid.setCell(r, c, noDataValue);
                             }
                         }
@@ -226,7 +302,7 @@ public class Grids_Processor extends Grids_Object {
                 // ( mask.getClass() == Grids_GridDouble.class )
                 Grids_GridDouble m = (Grids_GridDouble) mask;
                 double maskNoDataValue = m.getNoDataValue();
-                Iterator<Grids_2D_ID_int> ite = m.iterator().getGridIterator();
+                Iterator<Grids_2D_ID_int> ite = m.getChunkIDs().iterator();
                 while (ite.hasNext()) {
                     Grids_ChunkDouble maskChunk = m.getChunk(ite.next());
                     Grids_2D_ID_int i = maskChunk.getId();
@@ -241,8 +317,8 @@ public class Grids_Processor extends Grids_Object {
                         for (int ccc = 0; ccc < cnc; ccc++) {
                             double v = maskChunk.getCell(ccr, ccc);
                             if (v == maskNoDataValue) {
-                                long r = ((long) cr * (long) cnr) + (long) ccr;
-                                long c = ((long) cc * (long) cnc) + (long) ccc;
+                                long r = mask.getRow(cr, ccr);
+                                long c = mask.getCol(cc, ccc);
                                 grid.setCell(r, c, noDataValue);
                             }
                         }
@@ -257,7 +333,7 @@ public class Grids_Processor extends Grids_Object {
             if (mask.getClass() == Grids_GridInt.class) {
                 Grids_GridInt maskInt = (Grids_GridInt) mask;
                 int maskNoDataValue = maskInt.getNoDataValue();
-                Iterator<Grids_2D_ID_int> ite = maskInt.iterator().getGridIterator();
+                Iterator<Grids_2D_ID_int> ite = maskInt.getChunkIDs().iterator();
                 while (ite.hasNext()) {
                     Grids_ChunkInt maskChunk = maskInt.getChunk(ite.next());
                     Grids_2D_ID_int i = maskChunk.getId();
@@ -272,8 +348,8 @@ public class Grids_Processor extends Grids_Object {
                         for (int ccc = 0; ccc < cnc; ccc++) {
                             int v = maskChunk.getCell(ccr, ccc);
                             if (v == maskNoDataValue) {
-                                long r = ((long) cr * (long) cnr) + (long) ccr;
-                                long c = ((long) cc * (long) cnc) + (long) ccc;
+                                long r = mask.getRow(cr, ccr);
+                                long c = mask.getCol(cc, ccc);
                                 grid.setCell(r, c, resultNoDataValue);
                             }
                         }
@@ -301,8 +377,8 @@ public class Grids_Processor extends Grids_Object {
                         for (int ccc = 0; ccc < cnc; ccc++) {
                             double value = maskChunk.getCell(ccr, ccc);
                             if (value == maskNoDataValue) {
-                                long r = ((long) cr * (long) cnr) + (long) ccr;
-                                long c = ((long) cc * (long) cnc) + (long) ccc;
+                                long r = mask.getRow(cr, ccr);
+                                long c = mask.getCol(cc, ccc);
                                 grid.setCell(r, c, resultNoDataValue);
                             }
                         }
@@ -327,56 +403,8 @@ public class Grids_Processor extends Grids_Object {
      */
     public void mask(Grids_GridNumber g, BigRational min, BigRational max)
             throws IOException, ClassNotFoundException, Exception {
-        env.checkAndMaybeFreeMemory();
-        if (g.getClass() == Grids_GridInt.class) {
-            Grids_GridInt gi = (Grids_GridInt) g;
-            int ndv = gi.getNoDataValue();
-            Iterator<Grids_2D_ID_int> ite = gi.iterator().getGridIterator();
-            while (ite.hasNext()) {
-                Grids_ChunkInt chunk = gi.getChunk(ite.next());
-                Grids_2D_ID_int i = chunk.getId();
-                int cr = i.getRow();
-                int cc = i.getCol();
-                env.addToNotToClear(g, i);
-                env.checkAndMaybeFreeMemory();
-                int cnr = gi.getChunkNRows(i);
-                int cnc = gi.getChunkNCols(i);
-                for (int ccr = 0; ccr < cnr; ccr++) {
-                    for (int ccc = 0; ccc < cnc; ccc++) {
-                        BigRational v = gi.getCellBigRational(chunk, cr, cc, ccr,
-                                ccc);
-                        if (v.compareTo(min) != -1 && v.compareTo(max) != 1) {
-                            gi.setCell(chunk, ccr, ccc, ndv);
-                        }
-                    }
-                }
-                env.removeFromNotToClear(g, i);
-            }
-        } else {
-            // ( grid.getClass() == Grids_GridDouble.class )
-            Grids_GridDouble gd = (Grids_GridDouble) g;
-            double ndv = gd.getNoDataValue();
-            Iterator<Grids_2D_ID_int> ite = gd.iterator().getGridIterator();
-            while (ite.hasNext()) {
-                Grids_ChunkDouble chunk = gd.getChunk(ite.next());
-                Grids_2D_ID_int i = chunk.getId();
-                int cr = i.getRow();
-                int cc = i.getCol();
-                env.addToNotToClear(g, i);
-                env.checkAndMaybeFreeMemory();
-                int cnr = g.getChunkNRows(i);
-                int cnc = g.getChunkNCols(i);
-                for (int ccr = 0; ccr < cnr; ccr++) {
-                    for (int ccc = 0; ccc < cnc; ccc++) {
-                        BigRational v = gd.getCellBigRational(chunk, cr, cc, ccr, ccc);
-                        if (v.compareTo(min) != -1 && v.compareTo(max) != 1) {
-                            gd.setCell(chunk, ccr, ccc, ndv);
-                        }
-                    }
-                }
-                env.removeFromNotToClear(g, i);
-            }
-        }
+        getTileExecutor().execute(g, new Grids_Grid[0],
+                (i, c, cs) -> mask((Grids_ChunkNumber) c, min, max));
         //grid.setName( grid.getName() + "_mask" );
         env.checkAndMaybeFreeMemory();
     }
@@ -440,7 +468,18 @@ public class Grids_Processor extends Grids_Object {
          * If range of either input or output range is zero return min for all
          * non noDataValues.
          */
-        if (rangeGrid == 0.0d || range == 0.0d) {
+        boolean constant = rangeGrid == 0.0d || range == 0.0d;
+        if ((constant || type == null) && Grids_TileExecutor.isAligned(r, g)) {
+            getTileExecutor().execute(r, new Grids_Grid[]{g},
+                    (i, c, cs) -> rescale((Grids_ChunkNumber) cs[0], ndv,
+                            (Grids_ChunkDouble) c, minGrid, rangeGrid, min,
+                            range));
+            if (!constant) {
+                r.setName(g.getName() + "_linearRescale");
+            }
+            return r;
+        }
+        if (constant) {
             /**
              * Better to go through chunks rather than rows. Though it does
              * assume that the chunk structure of the grid and outputGrid are
@@ -576,7 +615,18 @@ public class Grids_Processor extends Grids_Object {
          * If range of either input or output range is zero return min for all
          * non noDataValues.
          */
-        if (rangeGrid == 0.0d || range == 0.0d) {
+        boolean constant = rangeGrid == 0.0d || range == 0.0d;
+        if ((constant || type == null) && Grids_TileExecutor.isAligned(r, g)) {
+            getTileExecutor().execute(r, new Grids_Grid[]{g},
+                    (i, c, cs) -> rescale((Grids_ChunkNumber) cs[0], ndv,
+                            (Grids_ChunkDouble) c, minGrid, rangeGrid, min,
+                            range));
+            if (!constant) {
+                r.setName(g.getName() + "_linearRescale");
+            }
+            return r;
+        }
+        if (constant) {
             /**
              * Better to go through chunks rather than rows. Though it does
              * assume that the chunk structure of the grid and outputGrid are
@@ -748,22 +798,10 @@ public class Grids_Processor extends Grids_Object {
      */
     public void addToGrid(Grids_GridNumber g, BigRational v) throws IOException,
             ClassNotFoundException, Exception {
-        env.checkAndMaybeFreeMemory();
-        int ncr = g.getNChunkRows();
-        int ncc = g.getNChunkCols();
-        for (int cr = 0; cr < ncr; cr++) {
-            for (int cc = 0; cc < ncc; cc++) {
-                env.checkAndMaybeFreeMemory();
-                int cnr = g.getChunkNRows(cr);
-                int cnc = g.getChunkNCols(cc);
-                for (int ccr = 0; ccr < cnr; ccr++) {
-                    for (int ccc = 0; ccc < cnc; ccc++) {
-                        g.addToCell(cr, cc, ccr, ccc, v);
-                    }
-                }
-            }
+        if (v.compareTo(g.ndv) != 0) {
+            getTileExecutor().execute(g, new Grids_Grid[0],
+                    (i, c, cs) -> addToChunk((Grids_ChunkNumber) c, v));
         }
-        env.checkAndMaybeFreeMemory();
     }
 
     /**
@@ -801,7 +839,14 @@ public class Grids_Processor extends Grids_Object {
             throws IOException, ClassNotFoundException, Exception {
         env.checkAndMaybeFreeMemory();
         if (g2 != null) {
-            addToGrid(g, g2, 0L, 0L, g2.getNRows() - 1L, g2.getNCols() - 1L, w, oom);
+            if (Grids_TileExecutor.isAligned(g, g2)) {
+                getTileExecutor().execute(g, new Grids_Grid[]{g2},
+                        (i, c, cs) -> addToChunk((Grids_ChunkNumber) c,
+                                (Grids_ChunkNumber) cs[0], w));
+            } else {
+                addToGrid(g, g2, 0L, 0L, g2.getNRows() - 1L,
+                        g2.getNCols() - 1L, w, oom);
+            }
         }
     }
 
@@ -1135,36 +1180,10 @@ public class Grids_Processor extends Grids_Object {
                     /**
                      * Grids are coincident and have the same chunks.
                      */
-                    for (int cr = 0; cr < ncr; cr++) {
-                        for (int cc = 0; cc < ncc; cc++) {
-                            Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
-                            env.addToNotToClear(g0, i);
-                            env.addToNotToClear(g1, i);
-                            env.addToNotToClear(r, i);
-                            env.checkAndMaybeFreeMemory();
-                            int cnr = g0.getChunkNRows(cr);
-                            int cnc = g0.getChunkNCols(cc);
-                            for (int ccr = 0; ccr < cnr; ccr++) {
-                                for (int ccc = 0; ccc < cnc; ccc++) {
-                                    BigRational v0 = g0.getCellBigRational(cr, cc,
-                                            ccr, ccc);
-                                    if (v0.compareTo(ndv0) != 0) {
-                                        BigRational v1 = g1.getCellBigRational(cr,
-                                                cc, ccr, ccc);
-                                        if (v1.compareTo(ndv1) == 0) {
-                                            r.setCell(cr, cc, ccr, ccc, ndv0);
-                                        } else {
-                                            r.setCell(cr, cc, ccr, ccc,
-                                                    v0.multiply(v1));
-                                        }
-                                    }
-                                }
-                            }
-                            env.removeFromNotToClear(g0, i);
-                            env.removeFromNotToClear(g1, i);
-                            env.removeFromNotToClear(r, i);
-                        }
-                    }
+                    getTileExecutor().execute(r, new Grids_Grid[]{g0, g1},
+                            (i, c, cs) -> multiply((Grids_ChunkNumber) cs[0],
+                                    (Grids_ChunkNumber) cs[1],
+                                    (Grids_ChunkNumber) c));
                 } else {
                     /**
                      * Input grids are coincident and have the same chunks, but
@@ -1393,6 +1412,12 @@ public class Grids_Processor extends Grids_Object {
         long nRows = g0.getNRows();
         long nCols = g0.getNCols();
         r = gridFactoryDouble.create(g0, 0L, 0L, nRows - 1, nCols - 1);
+        if (Grids_TileExecutor.isAligned(r, g0, g1)) {
+            getTileExecutor().execute(r, new Grids_Grid[]{g0, g1},
+                    (i, c, cs) -> divide((Grids_ChunkDouble) cs[0],
+                            (Grids_ChunkDouble) cs[1], (Grids_ChunkDouble) c));
+            return r;
+        }
         double noDataValue0 = g0.getNoDataValue();
         double noDataValue1 = g1.getNoDataValue();
         for (long row = 0L; row < nRows; row++) {
@@ -1411,6 +1436,317 @@ public class Grids_Processor extends Grids_Object {
         return r;
     }
 
+    /**
+     * For getting a value from a chunk as a double.
+     *
+     * @param c The chunk.
+     * @param ccr The chunk cell row.
+     * @param ccc The chunk cell column.
+     * @return The value of the cell in {@code c} at chunk cell row {@code ccr}
+     * and chunk cell column {@code ccc} as a double.
+     */
+    protected static double getCellDouble(Grids_ChunkNumber c, int ccr,
+            int ccc) {
+        if (c instanceof Grids_ChunkDouble) {
+            return ((Grids_ChunkDouble) c).getCell(ccr, ccc);
+        } else if (c instanceof Grids_ChunkInt) {
+            return ((Grids_ChunkInt) c).getCell(ccr, ccc);
+        }
+        return c.getCellBigRational(ccr, ccc).doubleValue();
+    }
+
+    /**
+     * For setting a value in a chunk. The value is converted to the type of
+     * value stored in the chunk in the same way as it would be if it were set
+     * via the grid.
+     *
+     * @param c The chunk.
+     * @param ccr The chunk cell row.
+     * @param ccc The chunk cell column.
+     * @param v The value to set.
+     * @throws Exception If encountered.
+     */
+    protected static void setCell(Grids_ChunkNumber c, int ccr, int ccc,
+            BigRational v) throws Exception {
+        if (c instanceof Grids_ChunkDouble) {
+            ((Grids_ChunkDouble) c).setCell(ccr, ccc, v.doubleValue());
+        } else if (c instanceof Grids_ChunkInt) {
+            ((Grids_ChunkInt) c).setCell(ccr, ccc, v.intValue());
+        } else {
+            ((Grids_ChunkBR) c).setCell(ccr, ccc, v);
+        }
+    }
+
+    /**
+     * The kernel of {@link #mask(Grids_GridNumber, Grids_GridNumber)} for
+     * grids with the same dimensions and chunks. The cells of {@code c} for
+     * which the cells of {@code m} are no data values are set to the no data
+     * value of {@code g}.
+     *
+     * @param g The grid being masked.
+     * @param c The chunk of {@code g} being masked.
+     * @param mask The mask.
+     * @param m The chunk of {@code mask} with the same chunk ID as {@code c}.
+     * @throws Exception If encountered.
+     */
+    protected void mask(Grids_GridNumber g, Grids_ChunkNumber c,
+            Grids_GridNumber mask, Grids_ChunkNumber m) throws Exception {
+        Grids_2D_ID_int i = c.getId();
+        int cnr = g.getChunkNRows(i.getRow());
+        int cnc = g.getChunkNCols(i.getCol());
+        boolean[] b = new boolean[cnr * cnc];
+        int k = 0;
+        if (mask instanceof Grids_GridInt) {
+            int mndv = ((Grids_GridInt) mask).getNoDataValue();
+            Grids_ChunkInt mc = (Grids_ChunkInt) m;
+            for (int ccr = 0; ccr < cnr; ccr++) {
+                for (int ccc = 0; ccc < cnc; ccc++) {
+                    b[k++] = mc.getCell(ccr, ccc) == mndv;
+                }
+            }
+        } else {
+            double mndv = ((Grids_GridDouble) mask).getNoDataValue();
+            Grids_ChunkDouble mc = (Grids_ChunkDouble) m;
+            for (int ccr = 0; ccr < cnr; ccr++) {
+                for (int ccc = 0; ccc < cnc; ccc++) {
+                    b[k++] = mc.getCell(ccr, ccc) == mndv;
+                }
+            }
+        }
+        k = 0;
+        if (g instanceof Grids_GridInt) {
+            int ndv = ((Grids_GridInt) g).getNoDataValue();
+            Grids_ChunkInt gc = (Grids_ChunkInt) c;
+            for (int ccr = 0; ccr < cnr; ccr++) {
+                for (int ccc = 0; ccc < cnc; ccc++) {
+                    if (b[k++]) {
+                        gc.setCell(ccr, ccc, ndv);
+                    }
+                }
+            }
+        } else {
+            double ndv = ((Grids_GridDouble) g).getNoDataValue();
+            Grids_ChunkDouble gc = (Grids_ChunkDouble) c;
+            for (int ccr = 0; ccr < cnr; ccr++) {
+                for (int ccc = 0; ccc < cnc; ccc++) {
+                    if (b[k++]) {
+                        gc.setCell(ccr, ccc, ndv);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel of {@link #mask(Grids_GridNumber, BigRational, BigRational)}.
+     * The cells of {@code c} with values in the range [min,max] are set to the
+     * no data value of the grid of {@code c}.
+     *
+     * @param c The chunk being masked.
+     * @param min The minimum value in the range.
+     * @param max The maximum value in the range.
+     * @throws Exception If encountered.
+     */
+    protected void mask(Grids_ChunkNumber c, BigRational min, BigRational max)
+            throws Exception {
+        Grids_GridNumber g = c.getGrid();
+        Grids_2D_ID_int i = c.getId();
+        int cnr = g.getChunkNRows(i.getRow());
+        int cnc = g.getChunkNCols(i.getCol());
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                BigRational v = c.getCellBigRational(ccr, ccc);
+                if (v.compareTo(min) != -1 && v.compareTo(max) != 1) {
+                    setCell(c, ccr, ccc, g.ndv);
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel of the linear rescaling done by
+     * {@link #rescale(Grids_GridDouble, String, double, double)} and
+     * {@link #rescale(Grids_GridInt, String, double, double)} for grids with
+     * the same dimensions and chunks.
+     *
+     * @param c The chunk being rescaled.
+     * @param ndv The no data value of the grid of {@code c}.
+     * @param r The chunk of the result with the same chunk ID as {@code c}.
+     * @param minGrid The minimum value in the grid of {@code c}.
+     * @param rangeGrid The range of values in the grid of {@code c}.
+     * @param min The minimum value in the rescaled range.
+     * @param range The rescaled range.
+     * @throws Exception If encountered.
+     */
+    protected void rescale(Grids_ChunkNumber c, double ndv, Grids_ChunkDouble r,
+            double minGrid, double rangeGrid, double min, double range)
+            throws Exception {
+        Grids_GridNumber g = c.getGrid();
+        Grids_2D_ID_int i = c.getId();
+        int cnr = g.getChunkNRows(i.getRow());
+        int cnc = g.getChunkNCols(i.getCol());
+        boolean constant = rangeGrid == 0.0d || range == 0.0d;
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                double v = getCellDouble(c, ccr, ccc);
+                if (v != ndv) {
+                    if (constant) {
+                        r.setCell(ccr, ccc, min);
+                    } else {
+                        r.setCell(ccr, ccc,
+                                (((v - minGrid) / rangeGrid) * range) + min);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel of {@link #addToGrid(Grids_GridNumber, BigRational)}. Adds
+     * {@code v} to each cell of {@code c}. For double chunks, if {@code v} can
+     * be represented exactly as a double, then double arithmetic is used.
+     *
+     * @param c The chunk.
+     * @param v The value to add.
+     * @throws Exception If encountered.
+     */
+    protected void addToChunk(Grids_ChunkNumber c, BigRational v)
+            throws Exception {
+        Grids_GridNumber g = c.getGrid();
+        Grids_2D_ID_int i = c.getId();
+        int cnr = g.getChunkNRows(i.getRow());
+        int cnc = g.getChunkNCols(i.getCol());
+        if (c instanceof Grids_ChunkDouble) {
+            double dv = v.doubleValue();
+            if (BigRational.valueOf(dv).compareTo(v) == 0) {
+                Grids_ChunkDouble dc = (Grids_ChunkDouble) c;
+                double ndv = ((Grids_GridDouble) g).getNoDataValue();
+                for (int ccr = 0; ccr < cnr; ccr++) {
+                    for (int ccc = 0; ccc < cnc; ccc++) {
+                        double v2 = dc.getCell(ccr, ccc);
+                        if (v2 == ndv) {
+                            dc.setCell(ccr, ccc, dv);
+                        } else {
+                            dc.setCell(ccr, ccc, v2 + dv);
+                        }
+                    }
+                }
+                return;
+            }
+        }
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                BigRational v2 = c.getCellBigRational(ccr, ccc);
+                if (v2.compareTo(g.ndv) == 0) {
+                    setCell(c, ccr, ccc, v);
+                } else {
+                    setCell(c, ccr, ccc, v.add(v2));
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel of
+     * {@link #addToGrid(Grids_GridNumber, Grids_GridNumber, BigRational, int)}
+     * for grids with the same dimensions and chunks. Adds the values of
+     * {@code c2} multiplied by {@code w} to the values of {@code c}.
+     *
+     * @param c The chunk to add to.
+     * @param c2 The chunk with values to add.
+     * @param w The value that values of {@code c2} are multiplied by.
+     * @throws Exception If encountered.
+     */
+    protected void addToChunk(Grids_ChunkNumber c, Grids_ChunkNumber c2,
+            BigRational w) throws Exception {
+        Grids_GridNumber g = c.getGrid();
+        BigRational ndv = g.ndv;
+        BigRational ndv2 = c2.getGrid().ndv;
+        Grids_2D_ID_int i = c.getId();
+        int cnr = g.getChunkNRows(i.getRow());
+        int cnc = g.getChunkNCols(i.getCol());
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                BigRational v = c2.getCellBigRational(ccr, ccc);
+                if (v.compareTo(ndv2) != 0
+                        && v.compareTo(BigRational.ZERO) != 0) {
+                    v = v.multiply(w);
+                    if (v.compareTo(ndv) != 0) {
+                        BigRational v0 = c.getCellBigRational(ccr, ccc);
+                        if (v0.compareTo(ndv) == 0) {
+                            setCell(c, ccr, ccc, v);
+                        } else {
+                            setCell(c, ccr, ccc, v.add(v0));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel of
+     * {@link #multiply(Number, Grids_GridNumber, Grids_GridNumber, int)} for
+     * grids with the same dimensions and chunks.
+     *
+     * @param c0 The chunk of the first grid.
+     * @param c1 The chunk of the second grid.
+     * @param r The chunk of the result.
+     * @throws Exception If encountered.
+     */
+    protected void multiply(Grids_ChunkNumber c0, Grids_ChunkNumber c1,
+            Grids_ChunkNumber r) throws Exception {
+        Grids_GridNumber g0 = c0.getGrid();
+        BigRational ndv0 = g0.ndv;
+        BigRational ndv1 = c1.getGrid().ndv;
+        Grids_2D_ID_int i = c0.getId();
+        int cnr = g0.getChunkNRows(i.getRow());
+        int cnc = g0.getChunkNCols(i.getCol());
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                BigRational v0 = c0.getCellBigRational(ccr, ccc);
+                if (v0.compareTo(ndv0) != 0) {
+                    BigRational v1 = c1.getCellBigRational(ccr, ccc);
+                    if (v1.compareTo(ndv1) == 0) {
+                        setCell(r, ccr, ccc, ndv0);
+                    } else {
+                        setCell(r, ccr, ccc, v0.multiply(v1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel of {@link #divide(Grids_GridDouble, Grids_GridDouble)} for
+     * grids with the same dimensions and chunks.
+     *
+     * @param c0 The chunk of the numerator grid.
+     * @param c1 The chunk of the denominator grid.
+     * @param r The chunk of the result.
+     * @throws Exception If encountered.
+     */
+    protected void divide(Grids_ChunkDouble c0, Grids_ChunkDouble c1,
+            Grids_ChunkDouble r) throws Exception {
+        Grids_GridDouble g0 = c0.getGrid();
+        double ndv0 = g0.getNoDataValue();
+        double ndv1 = c1.getGrid().getNoDataValue();
+        Grids_2D_ID_int i = c0.getId();
+        int cnr = g0.getChunkNRows(i.getRow());
+        int cnc = g0.getChunkNCols(i.getCol());
+        for (int ccr = 0; ccr < cnr; ccr++) {
+            for (int ccc = 0; ccc < cnc; ccc++) {
+                double v0 = c0.getCell(ccr, ccc);
+                if (v0 != ndv0) {
+                    double v1 = c1.getCell(ccr, ccc);
+                    if (v1 != ndv1 && v1 != 0) {
+                        r.setCell(ccr, ccc, v0 / v1);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * For creating an aggregated Grids_GridDouble at a lower level of
      * resolution than the grid {@code g}. The result values are either the sum,
@@ -2359,7 +2695,7 @@ public class Grids_Processor extends Grids_Object {
             imageTypes[0] = "PNG";
         }
         if (eage == null) {
-            eage = new Grids_ESRIAsciiGridExporter(env);
+            eage = new Grids_ESRIAsciiGridStreamExporter(env);
         }
         //int _StringLength = 1000;
         String dotASC = ".asc";
@@ -2440,7 +2776,7 @@ public class Grids_Processor extends Grids_Object {
             Grids_ESRIAsciiGridExporter eage) throws IOException,
             ClassNotFoundException, Exception {
         if (eage == null) {
-            eage = new Grids_ESRIAsciiGridExporter(env);
+            eage = new Grids_ESRIAsciiGridStreamExporter(env);
         }
         String ndv = "-9999.0";
         String fn = g.getName() + ".asc";
@@ -22,6 +22,9 @@ import java.util.ArrayList;
 import java.util.List;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_NeighbourhoodCursor;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_SummedAreaTable;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Sweep;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
 import uk.ac.leeds.ccg.grids.core.Grids_Environment;
@@ -42,6 +45,14 @@ public class Grids_ProcessorGWS extends Grids_Processor {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * If {@code true} (the default) then region statistics are calculated
+     * using exact arithmetic. Otherwise they are calculated using double
+     * precision arithmetic with compensated sums which is much faster but
+     * may differ in the last few significant digits.
+     */
+    protected boolean exact = true;
+
     /**
      * Create a new instance.
      * @param e Grids_Environment
@@ -54,6 +65,20 @@ public class Grids_ProcessorGWS extends Grids_Processor {
         super(e);
     }
 
+    /**
+     * @return {@link #exact}
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @param exact What {@link #exact} is set to.
+     */
+    public void setExact(boolean exact) {
+        this.exact = exact;
+    }
+
     /**
      * For getting region uni-variate statistics.
      *
@@ -285,105 +310,197 @@ public class Grids_ProcessorGWS extends Grids_Processor {
             int q;
             BigRational[][] kernel = Grids_Kernel.getKernelWeights(grid,
                     distance, weightIntersect, weightFactor, oom, rm);
-            double[][] data = getRowProcessInitialData(grid, cellDistance, 0);
-            for (row = 0; row < nrows; row++) {
+            Grids_NeighbourhoodCursor cursor
+                    = new Grids_NeighbourhoodCursor(grid, cellDistance);
+            double[][] data;
+            int o;
+            // For the double precision mode.
+            int kw = cellDistance * 2 + 1;
+            double[] kernelD = toDouble(kernel, ndv);
+            double totalSumWeightD = totalSumWeight.doubleValue();
+            double totalCellsD = totalCells.doubleValue();
+            CompensatedSum sumWeightD = new CompensatedSum();
+            CompensatedSum sumCellsD = new CompensatedSum();
+            CompensatedSum sumD = new CompensatedSum();
+            CompensatedSum wSumD = new CompensatedSum();
+            CompensatedSum nWSumD = new CompensatedSum();
+            CompensatedSum wMeanD = new CompensatedSum();
+            Grids_Sweep sweep = new Grids_Sweep(cellDistance, 1, true);
+            try {
+                for (row = 0; row < nrows; row++) {
+                    grid.prefetch(sweep, row);
 //                //debug
 //                System.out.println("row " + row);
-                for (col = 0; col < ncols; col++) {
+                    for (col = 0; col < ncols; col++) {
 //                    //debug
 //                    if (row == 21) {
 //                        System.out.println("col " + col);
 //                    }
-                    if (!(row == 0 && col == 0)) {
-                        data = getRowProcessData(grid, data, cellDistance, row,
-                                col);
-                    }
-                    BigRational sumCells = BigRational.ZERO;
-                    BigRational sumWeight = BigRational.ZERO;
-                    BigRational sum = BigRational.ZERO;
-                    BigRational wSum = BigRational.ZERO;
-                    BigRational nWSum = BigRational.ZERO;
-                    BigRational wSumN = BigRational.ZERO;
-                    BigRational wMean = BigRational.ZERO;
-                    BigRational nWMean = BigRational.ZERO;
-                    //wMeanN = 0.0d;
-                    // Error thrown from here!
-                    // GC overhead limit exceeded
-                    // java.lang.OutOfMemoryError: GC overhead limit exceeded
-                    // There is probably a better doing way?
-                    BigRational cellX = grid.getCellX(col);
-                    BigRational cellY = grid.getCellY(row);
-                    // Calculate sumWeights and non-weighted stats
-                    for (p = 0; p <= cellDistance * 2; p++) {
-                        for (q = 0; q <= cellDistance * 2; q++) {
-                            double v = data[p][q];
-                            BigRational weight = kernel[p][q];
-                            if ((weight.compareTo(ndv) != 0) && v != ndvd) {
-                                sumWeight = sumWeight.add(weight);
-                                sumCells = sumCells.add(BigRational.ONE);
-                                sum = sum.add(BigRational.valueOf(v));
+                        cursor.moveTo(row, col);
+                        data = cursor.getRows();
+                        o = cursor.getOffset();
+                        if (!exact) {
+                            sumWeightD.reset();
+                            sumCellsD.reset();
+                            sumD.reset();
+                            wSumD.reset();
+                            nWSumD.reset();
+                            wMeanD.reset();
+                            for (p = 0; p <= cellDistance * 2; p++) {
+                                double[] dp = data[p];
+                                for (q = 0; q <= cellDistance * 2; q++) {
+                                    double v = dp[o + q];
+                                    double weight = kernelD[p * kw + q];
+                                    if (!Double.isNaN(weight) && v != ndvd) {
+                                        sumWeightD.add(weight);
+                                        sumCellsD.add(1.0d);
+                                        sumD.add(v);
+                                    }
+                                }
+                            }
+                            if (sumCellsD.get() > 0.0d
+                                    && sumWeightD.get() > 0.0d) {
+                                for (p = 0; p <= cellDistance * 2; p++) {
+                                    double[] dp = data[p];
+                                    for (q = 0; q <= cellDistance * 2; q++) {
+                                        double v = dp[o + q];
+                                        double weight = kernelD[p * kw + q];
+                                        if (!Double.isNaN(weight) && v != ndvd) {
+                                            sumWeightD.add(weight);
+                                            sumCellsD.add(1.0d);
+                                            sumD.add(v);
+                                            double sw = sumWeightD.get();
+                                            nWSumD.add(v * (sw / totalSumWeightD)
+                                                    * weight);
+                                            wSumD.add(v * weight);
+                                            wMeanD.add(v / sw * weight);
+                                        }
+                                    }
+                                }
+                                double sw = sumWeightD.get();
+                                double sc = sumCellsD.get();
+                                double sm = sumD.get();
+                                double ws = wSumD.get();
+                                double wm = wMeanD.get();
+                                sumWeightGrid.setCell(row, col,
+                                        sw / totalSumWeightD);
+                                if (doSum) {
+                                    sumGrid.setCell(row, col,
+                                            sm * sc / totalCellsD);
+                                }
+                                if (doWSum) {
+                                    wSumGrid.setCell(row, col, ws);
+                                }
+                                if (doNWSum) {
+                                    nWSumGrid.setCell(row, col, nWSumD.get());
+                                }
+                                if (doWSumN) {
+                                    wSumNGrid.setCell(row, col,
+                                            ws * sw / totalSumWeightD);
+                                }
+                                if (doMean) {
+                                    meanGrid.setCell(row, col, sm / sc);
+                                }
+                                if (doWMean1) {
+                                    wMean1Grid.setCell(row, col, ws / sw);
+                                }
+                                if (doWMean2) {
+                                    wMean2Grid.setCell(row, col, wm);
+                                }
+                                if (doNWMean) {
+                                    nWMeanGrid.setCell(row, col,
+                                            nWSumD.get() / sw);
+                                }
+                                if (doWMeanN) {
+                                    wMeanNGrid.setCell(row, col,
+                                            wm * sw / totalSumWeightD);
+                                }
                             }
+                            continue;
                         }
-                    }
-                    // Calculate weighted stats and store results
-                    if ((sumCells.compareTo(BigRational.ZERO) == 1)
-                            && (sumWeight.compareTo(BigRational.ZERO) == 1)) {
+                        BigRational sumCells = BigRational.ZERO;
+                        BigRational sumWeight = BigRational.ZERO;
+                        BigRational sum = BigRational.ZERO;
+                        BigRational wSum = BigRational.ZERO;
+                        BigRational nWSum = BigRational.ZERO;
+                        BigRational wSumN = BigRational.ZERO;
+                        BigRational wMean = BigRational.ZERO;
+                        BigRational nWMean = BigRational.ZERO;
+                        //wMeanN = 0.0d;
+                        // Calculate sumWeights and non-weighted stats
                         for (p = 0; p <= cellDistance * 2; p++) {
                             for (q = 0; q <= cellDistance * 2; q++) {
-                                double v = data[p][q];
+                                double v = data[p][o + q];
                                 BigRational weight = kernel[p][q];
                                 if ((weight.compareTo(ndv) != 0) && v != ndvd) {
-                                    BigRational vbd = BigRational.valueOf(v);
                                     sumWeight = sumWeight.add(weight);
                                     sumCells = sumCells.add(BigRational.ONE);
-                                    sum = sum.add(vbd);
+                                    sum = sum.add(BigRational.valueOf(v));
+                                }
+                            }
+                        }
+                        // Calculate weighted stats and store results
+                        if ((sumCells.compareTo(BigRational.ZERO) == 1)
+                                && (sumWeight.compareTo(BigRational.ZERO) == 1)) {
+                            for (p = 0; p <= cellDistance * 2; p++) {
+                                for (q = 0; q <= cellDistance * 2; q++) {
+                                    double v = data[p][o + q];
+                                    BigRational weight = kernel[p][q];
+                                    if ((weight.compareTo(ndv) != 0) && v != ndvd) {
+                                        BigRational vbd = BigRational.valueOf(v);
+                                        sumWeight = sumWeight.add(weight);
+                                        sumCells = sumCells.add(BigRational.ONE);
+                                        sum = sum.add(vbd);
 //                                    nWSum = nWSum.add(vbd.multiply(
 //                                            Math_BigDecimal
 //                                                    .divideRoundIfNecessary(
 //                                                            sumWeight, totalSumWeight, oom, rm)).multiply(weight));
-                                    nWSum = nWSum.add(vbd.multiply(
-                                            sumWeight.divide(totalSumWeight)).multiply(weight));
-                                    wSum = wSum.add(vbd.multiply(weight));
-                                    wMean = wMean.add(vbd.divide(sumWeight).multiply(weight));
+                                        nWSum = nWSum.add(vbd.multiply(
+                                                sumWeight.divide(totalSumWeight)).multiply(weight));
+                                        wSum = wSum.add(vbd.multiply(weight));
+                                        wMean = wMean.add(vbd.divide(sumWeight).multiply(weight));
+                                    }
                                 }
                             }
-                        }
-                        sumWeightGrid.setCell(row, col,
-                                sumWeight.doubleValue() / totalSumWeight.doubleValue());
-                        //if ( doSum ) { sumGrid.setCell( row, col, sum ); }
-                        if (doSum) {
-                            sumGrid.setCell(row, col,
-                                    sum.multiply(sumCells).doubleValue() / totalCells.doubleValue());
-                        }
-                        if (doWSum) {
-                            wSumGrid.setCell(row, col, wSum.doubleValue());
-                        }
-                        if (doNWSum) {
-                            nWSumGrid.setCell(row, col, nWSum.doubleValue());
-                        }
-                        if (doWSumN) {
-                            wSumNGrid.setCell(row, col,
-                                    wSum.multiply(sumWeight).doubleValue() / totalSumWeight.doubleValue());
-                        }
-                        if (doMean) {
-                            meanGrid.setCell(row, col, sum.doubleValue() / sumCells.doubleValue());
-                        }
-                        if (doWMean1) {
-                            wMean1Grid.setCell(row, col, wSum.doubleValue() / sumWeight.doubleValue());
-                        }
-                        if (doWMean2) {
-                            wMean2Grid.setCell(row, col, wMean.doubleValue());
-                        }
-                        if (doNWMean) {
-                            nWMeanGrid.setCell(row, col, nWSum.doubleValue() / sumWeight.doubleValue());
-                        }
-                        if (doWMeanN) {
-                            wMeanNGrid.setCell(row, col,
-                                    (wMean.multiply(sumWeight)).doubleValue() / totalSumWeight.doubleValue());
-                        }
+                            sumWeightGrid.setCell(row, col,
+                                    sumWeight.doubleValue() / totalSumWeight.doubleValue());
+                            //if ( doSum ) { sumGrid.setCell( row, col, sum ); }
+                            if (doSum) {
+                                sumGrid.setCell(row, col,
+                                        sum.multiply(sumCells).doubleValue() / totalCells.doubleValue());
+                            }
+                            if (doWSum) {
+                                wSumGrid.setCell(row, col, wSum.doubleValue());
+                            }
+                            if (doNWSum) {
+                                nWSumGrid.setCell(row, col, nWSum.doubleValue());
+                            }
+                            if (doWSumN) {
+                                wSumNGrid.setCell(row, col,
+                                        wSum.multiply(sumWeight).doubleValue() / totalSumWeight.doubleValue());
+                            }
+                            if (doMean) {
+                                meanGrid.setCell(row, col, sum.doubleValue() / sumCells.doubleValue());
+                            }
+                            if (doWMean1) {
+                                wMean1Grid.setCell(row, col, wSum.doubleValue() / sumWeight.doubleValue());
+                            }
+                            if (doWMean2) {
+                                wMean2Grid.setCell(row, col, wMean.doubleValue());
+                            }
+                            if (doNWMean) {
+                                nWMeanGrid.setCell(row, col, nWSum.doubleValue() / sumWeight.doubleValue());
+                            }
+                            if (doWMeanN) {
+                                wMeanNGrid.setCell(row, col,
+                                        (wMean.multiply(sumWeight)).doubleValue() / totalSumWeight.doubleValue());
+                            }
 
+                        }
                     }
                 }
+            } finally {
+                grid.endSweep(sweep);
             }
         }
 
@@ -431,17 +548,60 @@ public class Grids_ProcessorGWS extends Grids_Processor {
             int p;
             int q;
             BigRational[][] kernel = Grids_Kernel.getKernelWeights(grid, distance, weightIntersect, weightFactor, oom, rm);
-            double[][] data = getRowProcessInitialData(grid, cellDistance, 0);
-            //double[][] meanData = getRowProcessInitialData( meanGrid, cellDistance, 0 );
-            double[][] wMeanData = getRowProcessInitialData(wMean1Grid, cellDistance, 0);
+            Grids_NeighbourhoodCursor cursor
+                    = new Grids_NeighbourhoodCursor(grid, cellDistance);
+            Grids_NeighbourhoodCursor wMeanCursor
+                    = new Grids_NeighbourhoodCursor(wMean1Grid, cellDistance);
+            double[][] data;
+            double[][] wMeanData;
+            int o;
+            // For the double precision mode.
+            int kw = cellDistance * 2 + 1;
+            double[] kernelD = toDouble(kernel, ndv);
+            CompensatedSum sDWMeanD = new CompensatedSum();
+            CompensatedSum sDWMeanPow2D = new CompensatedSum();
+            CompensatedSum sDWMeanPow3D = new CompensatedSum();
+            CompensatedSum sDWMeanPow4D = new CompensatedSum();
+            CompensatedSum sumWeightD = new CompensatedSum();
             for (row = 0; row < nrows; row++) {
                 for (col = 0; col < ncols; col++) {
-                    if (row != 0 && col != 0) {
-                        data = getRowProcessData(
-                                grid, data, cellDistance, row, col);
-                        wMeanData = getRowProcessData(
-                                wMean1Grid, wMeanData, cellDistance, row, col);
-                        //meanData = getRowProcessData( meanGrid, meanData, cellDistance, row, col );
+                    cursor.moveTo(row, col);
+                    wMeanCursor.moveTo(row, col);
+                    data = cursor.getRows();
+                    wMeanData = wMeanCursor.getRows();
+                    o = cursor.getOffset();
+                    if (!exact) {
+                        sDWMeanD.reset();
+                        sDWMeanPow2D.reset();
+                        sDWMeanPow3D.reset();
+                        sDWMeanPow4D.reset();
+                        sumWeightD.reset();
+                        for (p = 0; p <= cellDistance * 2; p++) {
+                            double[] dp = data[p];
+                            double[] wp = wMeanData[p];
+                            for (q = 0; q <= cellDistance * 2; q++) {
+                                double v = dp[o + q];
+                                double weight = kernelD[p * kw + q];
+                                if (v != ndvd && !Double.isNaN(weight)) {
+                                    double d = v - wp[o + q];
+                                    double d2 = d * d;
+                                    sumWeightD.add(weight);
+                                    sDWMeanD.add(d * weight);
+                                    sDWMeanPow2D.add(d2 * weight);
+                                    sDWMeanPow3D.add(d2 * d * weight);
+                                    sDWMeanPow4D.add(d2 * d2 * weight);
+                                }
+                            }
+                        }
+                        double sw = sumWeightD.get();
+                        if (sw > 0.0d) {
+                            setSecondOrder(row, col, sDWMeanD.get() / sw,
+                                    sDWMeanPow2D.get() / sw,
+                                    sDWMeanPow3D.get() / sw, ndvd, wPropGrid,
+                                    wVarGrid, wSkewGrid, wCVarGrid,
+                                    wCSkewGrid);
+                        }
+                        continue;
                     }
                     //sDMean = 0.0d;
                     //sDMeanPow2 = 0.0d;
@@ -453,13 +613,11 @@ public class Grids_ProcessorGWS extends Grids_Processor {
                     BigRational sDWMeanPow3 = BigRational.ZERO;
                     BigRational sDWMeanPow4 = BigRational.ZERO;
                     BigRational sumWeight = BigRational.ZERO;
-                    BigRational cellX = grid.getCellX(col);
-                    BigRational cellY = grid.getCellY(row);
                     // Take moments
                     for (p = 0; p <= cellDistance * 2; p++) {
                         for (q = 0; q <= cellDistance * 2; q++) {
-                            double v = data[p][q];
-                            BigRational wMean = BigRational.valueOf(wMeanData[p][q]);
+                            double v = data[p][o + q];
+                            BigRational wMean = BigRational.valueOf(wMeanData[p][o + q]);
                             BigRational weight = kernel[p][q];
                             if (v != ndvd && (weight.compareTo(ndv) != 0)) {
                                 BigRational vbd = BigRational.valueOf(v);
@@ -1384,28 +1542,29 @@ public class Grids_ProcessorGWS extends Grids_Processor {
             //            g2.clear();
             //            g3.clear();
             // Step 2: Average over output region.
-            // 1. This is probably the slowest part of the algorithm and gets slower
-            //    with each iteration. Using alternative data structures and
-            //    processing strategies this step can probably be speeded up a lot.
+            // The sums over each region are got from a summed-area table of
+            // g6. As before, the cells of a region in the grid that have no
+            // data count with the no data value.
             //density = gridFactory.createGrid2DSquareCellDouble( nrows, ncols, 0.0d, 0.0d, cellsize, 0.0d );
+            Grids_SummedAreaTable sat = new Grids_SummedAreaTable(g6);
+            double ndv6 = g6.getNoDataValue();
             gridFactory.setNoDataValue(ndv);
             density = gridFactory.create(nrows, ncols, dimensions);
             for (row = 0; row < nrows; row += doubler) {
                 for (int p = 0; p < doubler; p++) {
                     for (col = 0; col < ncols; col += doubler) {
                         for (int q = 0; q < doubler; q++) {
-                            d1 = 0.0d;
+                            long r0 = row + p;
+                            long c0 = col + q;
+                            long r1 = Math.min(r0 + growth, nrows) - 1L;
+                            long c1 = Math.min(c0 + growth, ncols) - 1L;
                             d2 = 0.0d;
-                            for (int a = 0; a < growth; a++) {
-                                for (int b = 0; b < growth; b++) {
-                                    if (g6.isInGrid((row + p + a), (col + q + b))) {
-                                        d1 += g6.getCell((row + p + a),
-                                                (col + q + b));
-                                        d2 += 1.0d;
-                                    }
-                                }
+                            if (r0 <= r1 && c0 <= c1) {
+                                d2 = (double) ((r1 - r0 + 1L) * (c1 - c0 + 1L));
                             }
                             if (d2 != 0.0d) {
+                                d1 = sat.getSum(r0, c0, r1, c1) + ndv6
+                                        * (d2 - sat.getCount(r0, c0, r1, c1));
                                 //density.addToCell( ( row + p ), ( col + q ), ( d1 / d2 ) );
                                 //density.initCell( ( row + p ), ( col + q ), ( d1 / d2 ) );
                                 density.setCell((row + p), (col + q), (d1 / d2));
@@ -1417,6 +1576,7 @@ public class Grids_ProcessorGWS extends Grids_Processor {
                     }
                 }
             }
+            sat.close();
             //            g6.clear();
             result[iteration] = density;
             doubler *= 2;
@@ -2039,4 +2199,113 @@ public class Grids_ProcessorGWS extends Grids_Processor {
 
         return result;
     }
+
+    /**
+     * @param kernel The kernel weights.
+     * @param ndv The weight that indicates a cell is not in the kernel.
+     * @return The kernel weights in row major order as doubles with
+     * {@link Double#NaN} for cells not in the kernel.
+     */
+    private static double[] toDouble(BigRational[][] kernel, BigRational ndv) {
+        int n = kernel.length == 0 ? 0 : kernel[0].length;
+        double[] r = new double[kernel.length * n];
+        for (int p = 0; p < kernel.length; p++) {
+            for (int q = 0; q < n; q++) {
+                BigRational w = kernel[p][q];
+                r[p * n + q] = w.compareTo(ndv) != 0 ? w.doubleValue()
+                        : Double.NaN;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Sets the weighted second order statistics of the cell in row
+     * {@code row}, column {@code col} in those grids that are not
+     * {@code null}.
+     *
+     * @param row The row.
+     * @param col The column.
+     * @param wProp The weighted proportion.
+     * @param wVar The weighted variance.
+     * @param wPow3 The weighted mean of the cubed differences.
+     * @param ndv The no data value.
+     * @param wPropGrid The weighted proportion grid.
+     * @param wVarGrid The weighted variance grid.
+     * @param wSkewGrid The weighted skew grid.
+     * @param wCVarGrid The weighted coefficient of variation grid.
+     * @param wCSkewGrid The weighted coefficient of skew grid.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    private void setSecondOrder(long row, long col, double wProp, double wVar,
+            double wPow3, double ndv, Grids_GridDouble wPropGrid,
+            Grids_GridDouble wVarGrid, Grids_GridDouble wSkewGrid,
+            Grids_GridDouble wCVarGrid, Grids_GridDouble wCSkewGrid)
+            throws IOException, Exception {
+        if (wPropGrid != null) {
+            wPropGrid.setCell(row, col, wProp);
+        }
+        if (wVarGrid != null) {
+            wVarGrid.setCell(row, col, wVar);
+        }
+        // Math.cbrt is used as Math.pow does not do roots of negative numbers.
+        if (wSkewGrid != null) {
+            wSkewGrid.setCell(row, col, Math.cbrt(wPow3));
+        }
+        if (wVar > 0.0d && wVar != ndv) {
+            if (wCVarGrid != null && wProp != ndv) {
+                wCVarGrid.setCell(row, col, wProp / wVar);
+            }
+            if (wCSkewGrid != null) {
+                wCSkewGrid.setCell(row, col, wPow3 == 0.0d ? wPow3
+                        : Math.cbrt(wPow3) / wVar);
+            }
+        }
+    }
+
+    /**
+     * For summing doubles with Neumaier's variant of Kahan summation so that
+     * the rounding error does not grow with the number of values summed.
+     */
+    private static final class CompensatedSum {
+
+        /**
+         * The sum.
+         */
+        private double sum;
+
+        /**
+         * The compensation for lost low order bits.
+         */
+        private double c;
+
+        /**
+         * Resets the sum to zero.
+         */
+        void reset() {
+            sum = 0.0d;
+            c = 0.0d;
+        }
+
+        /**
+         * @param x The value to add.
+         */
+        void add(double x) {
+            double t = sum + x;
+            if (Math.abs(sum) >= Math.abs(x)) {
+                c += (sum - t) + x;
+            } else {
+                c += (x - t) + sum;
+            }
+            sum = t;
+        }
+
+        /**
+         * @return The sum.
+         */
+        double get() {
+            return sum + c;
+        }
+    }
 }
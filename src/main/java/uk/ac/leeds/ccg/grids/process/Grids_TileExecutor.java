@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Object;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.memory.Grids_ChunkPins;
+
+/**
+ * For processing grids that have the same dimensions and chunks a chunk at a
+ * time in parallel. Each chunk of the result grid is processed by a
+ * {@link Kernel} given that chunk and the chunks with the same chunk ID of
+ * the input grids. As the chunks with different chunk IDs are independent,
+ * the kernels can be run at the same time on the threads of {@link #pool}.
+ *
+ * The chunks are processed in batches. For each batch, the chunks are pinned
+ * and loaded by the calling thread so that only this thread does any memory
+ * management, then the kernels are run in parallel, then the chunks are
+ * unpinned and memory is checked and maybe freed before the next batch. The
+ * kernels must only get and set values in the chunks they are given.
+ *
+ * As the values in the chunks of the result grid are set directly, the
+ * statistics of the result grid are not kept up to date as the values are
+ * set. Once all the chunks are processed the {@code changed()} method of the
+ * statistics of the result grid is called.
+ *
+ * @author Andy Turner
+ * @version 1.0.0
+ */
+public class Grids_TileExecutor extends Grids_Object {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of chunks in a batch is this multiplied by the parallelism
+     * of {@link #pool}.
+     */
+    public static final int BATCH_FACTOR = 2;
+
+    /**
+     * For running the kernels.
+     */
+    protected transient ForkJoinPool pool;
+
+    /**
+     * Create a new instance that uses {@link ForkJoinPool#commonPool()}.
+     *
+     * @param e The grids environment.
+     */
+    public Grids_TileExecutor(Grids_Environment e) {
+        this(e, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param e The grids environment.
+     * @param pool What {@link #pool} is set to.
+     */
+    public Grids_TileExecutor(Grids_Environment e, ForkJoinPool pool) {
+        super(e);
+        this.pool = pool;
+    }
+
+    /**
+     * @return {@link #pool}
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param r The result grid.
+     * @param gs The input grids.
+     * @return {@code true} iff each grid in {@code gs} has the same dimensions
+     * and chunks as {@code r}.
+     */
+    public static boolean isAligned(Grids_Grid r, Grids_Grid... gs) {
+        for (Grids_Grid g : gs) {
+            if (!r.isSameDimensionsAndChunks(g)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies {@code k} to each chunk of {@code r}. Any grid in {@code gs} may
+     * also be {@code r}. The grids must be aligned as tested by
+     * {@link #isAligned(Grids_Grid, Grids_Grid...)}.
+     *
+     * @param r The result grid.
+     * @param gs The input grids.
+     * @param k The kernel.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    public void execute(Grids_Grid r, Grids_Grid[] gs, Kernel k)
+            throws IOException, Exception {
+        env.checkAndMaybeFreeMemory();
+        int n = Math.max(1, pool.getParallelism() * BATCH_FACTOR);
+        List<Grids_2D_ID_int> batch = new ArrayList<>(n);
+        int ncr = r.getNChunkRows();
+        int ncc = r.getNChunkCols();
+        for (int cr = 0; cr < ncr; cr++) {
+            for (int cc = 0; cc < ncc; cc++) {
+                batch.add(new Grids_2D_ID_int(cr, cc));
+                if (batch.size() == n) {
+                    execute(r, gs, k, batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            execute(r, gs, k, batch);
+        }
+        r.getStats().changed();
+        env.checkAndMaybeFreeMemory();
+    }
+
+    /**
+     * Applies {@code k} to each chunk of {@code r} with a chunk ID in
+     * {@code batch}. A chunk of {@code r} that cannot be got is skipped.
+     *
+     * @param r The result grid.
+     * @param gs The input grids.
+     * @param k The kernel.
+     * @param batch The chunk IDs.
+     * @throws IOException If encountered.
+     * @throws Exception If encountered.
+     */
+    protected void execute(Grids_Grid r, Grids_Grid[] gs, Kernel k,
+            List<Grids_2D_ID_int> batch) throws IOException, Exception {
+        Grids_ChunkPins pins = env.getPins();
+        pins.pin(r, batch);
+        for (Grids_Grid g : gs) {
+            pins.pin(g, batch);
+        }
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+            for (Grids_2D_ID_int i : batch) {
+                Grids_Chunk c = r.getWritableChunk(i);
+                Grids_Chunk[] cs = new Grids_Chunk[gs.length];
+                for (int j = 0; j < gs.length; j++) {
+                    cs[j] = gs[j].getChunk(i);
+                }
+                env.checkAndMaybeFreeMemory();
+                if (c != null) {
+                    tasks.add(() -> {
+                        k.apply(i, c, cs);
+                        c.setCacheUpToDate(false);
+                        r.changed(i);
+                        return null;
+                    });
+                }
+            }
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof Exception) {
+                        throw (Exception) t;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pins.unpin(r, batch);
+            for (Grids_Grid g : gs) {
+                pins.unpin(g, batch);
+            }
+        }
+        env.checkAndMaybeFreeMemory();
+    }
+
+    /**
+     * For processing a chunk.
+     */
+    @FunctionalInterface
+    public interface Kernel {
+
+        /**
+         * Sets the values in {@code r} from the values in {@code cs}.
+         *
+         * @param i The chunk ID.
+         * @param r The chunk of the result grid with chunk ID {@code i}.
+         * @param cs The chunks of the input grids with chunk ID {@code i} in
+         * the same order as the input grids.
+         * @throws Exception If encountered.
+         */
+        void apply(Grids_2D_ID_int i, Grids_Chunk r, Grids_Chunk[] cs)
+                throws Exception;
+    }
+}
@@ -23,20 +23,20 @@ module uk.ac.leeds.ccg.grids.test {
 
     opens uk.ac.leeds.ccg.grids.core.test to org.junit.platform.commons;
 //    opens uk.ac.leeds.ccg.grids.d2.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.d2.chunk.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.d2.chunk.test to org.junit.platform.commons;
 //    opens uk.ac.leeds.ccg.grids.d2.chunk.b.test to org.junit.platform.commons;
 //    opens uk.ac.leeds.ccg.grids.d2.chunk.bd.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.d2.chunk.d.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.d2.chunk.i.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.d2.chunk.d.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.d2.chunk.i.test to org.junit.platform.commons;
     opens uk.ac.leeds.ccg.grids.d2.grid.test to org.junit.platform.commons;
 //    opens uk.ac.leeds.ccg.grids.d2.grid.b.test to org.junit.platform.commons;
 //    opens uk.ac.leeds.ccg.grids.d2.grid.bd.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.d2.grid.d.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.d2.grid.d.test to org.junit.platform.commons;
 //    opens uk.ac.leeds.ccg.grids.d2.grid.i.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.d2.stats.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.d2.stats.test to org.junit.platform.commons;
     opens uk.ac.leeds.ccg.grids.d2.util.test to org.junit.platform.commons;
     //opens uk.ac.leeds.ccg.grids.d3.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.io.test to org.junit.platform.commons;
-//    opens uk.ac.leeds.ccg.grids.memory.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.io.test to org.junit.platform.commons;
+    opens uk.ac.leeds.ccg.grids.memory.test to org.junit.platform.commons;
     opens uk.ac.leeds.ccg.grids.process.test to org.junit.platform.commons;
 }
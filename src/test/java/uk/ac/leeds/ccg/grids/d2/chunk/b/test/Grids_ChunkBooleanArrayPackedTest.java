@@ -0,0 +1,278 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.b.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBoolean;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBoolean;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBooleanFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBooleanStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkBooleanArrayPacked.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkBooleanArrayPackedTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids.
+     */
+    static final long NROWS = 20L;
+
+    /**
+     * The number of columns of the test grids.
+     */
+    static final long NCOLS = 16L;
+
+    /**
+     * The numbers of rows and columns of the chunks tested. Chunks of 9 by 7
+     * and 3 by 5 cells do not fill the last word and chunks of 8 by 8 cells
+     * do. There are edge chunks with fewer cells for each.
+     */
+    static final int[][] CHUNK_SIZES = {{9, 7}, {8, 8}, {3, 5}};
+
+    public Grids_ChunkBooleanArrayPackedTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param random For the value.
+     * @return {@code null}, {@code true} or {@code false}.
+     */
+    private static Boolean nextValue(Random random) {
+        int k = random.nextInt(3);
+        return k == 0 ? null : k == 1;
+    }
+
+    /**
+     * @param chunkSize The number of rows and columns of the chunks.
+     * @param seed The seed for the values or {@code -1} to leave all values
+     * {@code null}.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in packed
+     * chunks with random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridBoolean getGrid(int[] chunkSize, long seed)
+            throws Exception {
+        Grids_GridBooleanFactory gfb = gp.gridFactoryBoolean;
+        gfb.setChunkNRows(chunkSize[0]);
+        gfb.setChunkNCols(chunkSize[1]);
+        Grids_GridBoolean g = gfb.create(new Grids_GridBooleanStatsNotUpdated(
+                ge), new Grids_ChunkBooleanFactoryArrayPacked(), NROWS, NCOLS,
+                new Grids_Dimensions(NROWS, NCOLS));
+        if (seed >= 0L) {
+            Random random = new Random(seed);
+            for (long row = 0L; row < NROWS; row++) {
+                for (long col = 0L; col < NCOLS; col++) {
+                    g.setCell(row, col, nextValue(random));
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param c The chunk.
+     * @return The values of {@code c}.
+     */
+    private static Boolean[][] getCells(Grids_ChunkBoolean c) {
+        Boolean[][] r = new Boolean[c.getChunkNRows()][c.getChunkNCols()];
+        for (int row = 0; row < r.length; row++) {
+            for (int col = 0; col < r[row].length; col++) {
+                r[row][col] = c.getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param e The expected values.
+     * @param c The chunk.
+     * @param m The message.
+     */
+    private static void assertChunk(Boolean[][] e, Grids_ChunkBoolean c,
+            String m) {
+        assertEquals(e.length, c.getChunkNRows(), m);
+        long n = 0L;
+        for (int row = 0; row < e.length; row++) {
+            assertEquals(e[row].length, c.getChunkNCols(), m);
+            for (int col = 0; col < e[row].length; col++) {
+                assertEquals(e[row][col], c.getCell(row, col),
+                        m + " row " + row + " col " + col);
+                if (e[row][col] != null) {
+                    n++;
+                }
+            }
+        }
+        // Only the popcount of packed chunks is checked as getN of the array
+        // chunks uses an iterator that starts at the second cell.
+        if (c instanceof Grids_ChunkBooleanArrayPacked) {
+            assertEquals(n, (long) c.getN(), m);
+        }
+    }
+
+    /**
+     * @param g The grid.
+     * @param i The chunk ID.
+     * @return The chunk of {@code g} with chunk ID {@code i}.
+     * @throws Exception If encountered.
+     */
+    private static Grids_ChunkBooleanArrayPacked getChunk(Grids_GridBoolean g,
+            Grids_2D_ID_int i) throws Exception {
+        return (Grids_ChunkBooleanArrayPacked) g.getChunk(i);
+    }
+
+    /**
+     * Test of getCell, setCell, initCell and getN methods, of class
+     * Grids_ChunkBooleanArrayPacked.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testSetCell() throws Exception {
+        System.out.println("setCell");
+        Random random = new Random(1);
+        for (int[] cs : CHUNK_SIZES) {
+            Grids_GridBoolean g = getGrid(cs, -1L);
+            for (Grids_2D_ID_int i : g.getChunkIDs()) {
+                Grids_ChunkBooleanArrayPacked c = getChunk(g, i);
+                Boolean[][] e = new Boolean[c.getChunkNRows()][
+                        c.getChunkNCols()];
+                assertChunk(e, c, "new " + i);
+                for (int k = 0; k < 300; k++) {
+                    int row = random.nextInt(e.length);
+                    int col = random.nextInt(e[0].length);
+                    Boolean v = nextValue(random);
+                    if (k % 2 == 0) {
+                        assertEquals(e[row][col], c.setCell(row, col, v));
+                    } else {
+                        c.initCell(row, col, v);
+                    }
+                    e[row][col] = v;
+                }
+                assertChunk(e, c, "chunk size " + cs[0] + " " + cs[1] + " "
+                        + i);
+            }
+        }
+    }
+
+    /**
+     * Test of fill method, of class Grids_ChunkBooleanArrayPacked. When all
+     * values are set to {@code true} or {@code false} the bits beyond the
+     * last cell are not set and so are not counted by getN.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testFill() throws Exception {
+        System.out.println("fill");
+        for (int[] cs : CHUNK_SIZES) {
+            Grids_GridBoolean g = getGrid(cs, 2L);
+            for (Grids_2D_ID_int i : g.getChunkIDs()) {
+                Grids_ChunkBooleanArrayPacked c = getChunk(g, i);
+                Boolean[][] e = new Boolean[c.getChunkNRows()][
+                        c.getChunkNCols()];
+                String m = "chunk size " + cs[0] + " " + cs[1] + " " + i;
+                long n = (long) c.getChunkNRows() * c.getChunkNCols();
+                c.fill(null);
+                assertChunk(e, c, m);
+                assertEquals(0L, (long) c.getN(), m);
+                for (Boolean v : new Boolean[]{true, false}) {
+                    c.fill(v);
+                    for (Boolean[] ep : e) {
+                        Arrays.fill(ep, v);
+                    }
+                    assertChunk(e, c, m + " " + v);
+                    assertEquals(n, (long) c.getN(), m + " " + v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that creating a packed chunk from another chunk copies the values,
+     * both from a packed chunk and from an array chunk, that the copy is
+     * independent and that an array chunk created from a packed chunk has the
+     * same values.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCopy() throws Exception {
+        System.out.println("copy");
+        Grids_ChunkBooleanFactoryArrayPacked f
+                = new Grids_ChunkBooleanFactoryArrayPacked();
+        Grids_ChunkBooleanFactoryArray fa
+                = new Grids_ChunkBooleanFactoryArray();
+        for (int[] cs : CHUNK_SIZES) {
+            Grids_GridBoolean g = getGrid(cs, 6L);
+            for (Grids_2D_ID_int i : g.getChunkIDs()) {
+                Grids_ChunkBooleanArrayPacked c = getChunk(g, i);
+                Boolean[][] e = getCells(c);
+                String m = "chunk size " + cs[0] + " " + cs[1] + " " + i;
+                Grids_ChunkBooleanArrayPacked c2 = f.create(c, i);
+                assertChunk(e, c2, m);
+                c2.setCell(0, 0, e[0][0] == null ? Boolean.TRUE : null);
+                assertEquals(e[0][0], c.getCell(0, 0), m);
+                Grids_ChunkBooleanArray ca = fa.create(c, i);
+                assertTrue(!(ca instanceof Grids_ChunkBooleanArrayPacked), m);
+                assertChunk(e, ca, m);
+                assertChunk(e, f.create(ca, i), m);
+                assertTrue(c.getSize() < ca.getSize(), m);
+            }
+        }
+    }
+}
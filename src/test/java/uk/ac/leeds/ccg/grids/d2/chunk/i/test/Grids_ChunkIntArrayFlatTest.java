@@ -0,0 +1,246 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.i.test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkIntArrayFlat.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkIntArrayFlatTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    public Grids_ChunkIntArrayFlatTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in flat array
+     * chunks of 4 by 4 cells with about one cell in five left as no data and
+     * the rest random.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridInt getGrid(long seed) throws Exception {
+        // Singlet chunks are converted by the default chunk factory of the
+        // processor of the environment.
+        gp.setFlatArrayChunkFactories();
+        ge.getProcessor().setFlatArrayChunkFactories();
+        Grids_GridIntFactory gfi = gp.gridFactoryInt;
+        gfi.setChunkNRows(4);
+        gfi.setChunkNCols(4);
+        Grids_GridInt g = (Grids_GridInt) gfi.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt());
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param g The grid.
+     * @return The values of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private int[][] getCells(Grids_GridInt g) throws Exception {
+        int[][] r = new int[(int) NROWS][(int) NCOLS];
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                r[row][col] = g.getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param e The expected values.
+     * @param c The chunk.
+     */
+    private void assertChunk(Grids_ChunkInt e, Grids_ChunkInt c) {
+        assertEquals(e.getChunkNRows(), c.getChunkNRows());
+        assertEquals(e.getChunkNCols(), c.getChunkNCols());
+        for (int row = 0; row < e.getChunkNRows(); row++) {
+            for (int col = 0; col < e.getChunkNCols(); col++) {
+                assertEquals(e.getCell(row, col), c.getCell(row, col),
+                        "row " + row + " col " + col);
+            }
+        }
+    }
+
+    /**
+     * Test that chunks, including edge chunks, are flat array chunks and that
+     * their values are the same after they are swapped and reloaded.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testSwap() throws Exception {
+        System.out.println("swap");
+        Grids_GridInt g = getGrid(1);
+        int[][] e = getCells(g);
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            assertEquals(Grids_ChunkIntArrayFlat.class,
+                    g.getChunk(i).getClass());
+            assertTrue(g.swapChunk(i));
+            assertFalse(g.isLoaded(i));
+        }
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                assertEquals(e[row][col], g.getCell(row, col),
+                        "row " + row + " col " + col);
+            }
+        }
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            assertEquals(Grids_ChunkIntArrayFlat.class,
+                    g.getChunk(i).getClass());
+        }
+    }
+
+    /**
+     * Test that encoding and decoding a chunk gives a flat array chunk with
+     * the same values.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCodec() throws Exception {
+        System.out.println("codec");
+        Grids_GridInt g = getGrid(2);
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            Grids_ChunkInt c = g.getChunk(i);
+            int n = Grids_ChunkIntCodec.INSTANCE.getSize(c);
+            ByteBuffer b = ByteBuffer.allocate(n);
+            Grids_ChunkIntCodec.INSTANCE.encodeWithHeader(c, b);
+            assertEquals(n, b.position());
+            b.flip();
+            Grids_ChunkInt c2 = (Grids_ChunkInt) Grids_ChunkCodec
+                    .decodeWithHeader(g, i, b);
+            assertEquals(Grids_ChunkIntArrayFlat.class, c2.getClass());
+            assertChunk(c, c2);
+        }
+    }
+
+    /**
+     * Test that creating a flat array chunk from another chunk copies the
+     * values and that the rows and arrays got from it match its cells.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCopy() throws Exception {
+        System.out.println("copy");
+        Grids_GridInt g = getGrid(3);
+        Grids_ChunkIntFactoryArrayFlat f
+                = new Grids_ChunkIntFactoryArrayFlat();
+        Grids_ChunkIntFactoryArray fa = new Grids_ChunkIntFactoryArray();
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            Grids_ChunkIntArrayFlat c = (Grids_ChunkIntArrayFlat) g
+                    .getChunk(i);
+            int nrows = c.getChunkNRows();
+            int ncols = c.getChunkNCols();
+            // From a flat array chunk.
+            Grids_ChunkIntArrayFlat c2 = f.create(c, i);
+            assertChunk(c, c2);
+            // The copy is independent of the original.
+            int v = c.getCell(0, 0);
+            c2.setCell(0, 0, v + 1);
+            assertEquals(v, c.getCell(0, 0));
+            // From and to an array chunk.
+            Grids_ChunkIntArray ca = fa.create(c, i);
+            assertChunk(c, ca);
+            assertChunk(c, f.create(ca, i));
+            int[] a = new int[nrows * ncols + 1];
+            c.copyTo(a, 1);
+            int[] r = new int[ncols + 1];
+            for (int row = 0; row < nrows; row++) {
+                c.getRow(row, r, 1);
+                for (int col = 0; col < ncols; col++) {
+                    assertEquals(c.getCell(row, col), a[row * ncols + col
+                            + 1]);
+                    assertEquals(c.getCell(row, col), r[col + 1]);
+                }
+                for (int col = 0; col < ncols; col++) {
+                    r[col + 1] = row * 10 + col;
+                }
+                c2.setRow(row, r, 1);
+                for (int col = 0; col < ncols; col++) {
+                    assertEquals(row * 10 + col, c2.getCell(row, col));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinary;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactorySinglet;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBoolean;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBooleanFactorySinglet;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryOffHeap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactorySinglet;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryOffHeap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactorySinglet;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBoolean;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkCodec.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkCodecTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    public Grids_ChunkCodecTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * Encode c with its codec and decode it again.
+     *
+     * @param g The grid.
+     * @param c The chunk.
+     * @return The decoded chunk.
+     * @throws IOException If encountered.
+     */
+    private Grids_Chunk roundTrip(Grids_Grid g, Grids_Chunk c)
+            throws IOException {
+        Grids_ChunkCodec codec = Grids_ChunkCodec.getCodec(c);
+        assertNotNull(codec, c.getClass().getName());
+        ByteBuffer b = ByteBuffer.allocate(codec.getSize(c));
+        codec.encodeWithHeader(c, b);
+        assertEquals(0, b.remaining());
+        b.flip();
+        Grids_Chunk r = Grids_ChunkCodec.decodeWithHeader(g, c.getId(), b);
+        assertSame(c.getClass(), r.getClass());
+        return r;
+    }
+
+    /**
+     * Test of getCodec method, of class Grids_ChunkCodec. The built-in codecs
+     * are registered without any chunk store having been opened.
+     */
+    @Test
+    public void testGetCodec() {
+        System.out.println("getCodec");
+        assertSame(Grids_ChunkDoubleCodec.INSTANCE, Grids_ChunkCodec.getCodec(
+                Grids_ChunkDoubleCodec.INSTANCE.id));
+        assertSame(Grids_ChunkIntCodec.INSTANCE, Grids_ChunkCodec.getCodec(
+                Grids_ChunkIntCodec.INSTANCE.id));
+        assertSame(Grids_ChunkBinaryCodec.INSTANCE, Grids_ChunkCodec.getCodec(
+                Grids_ChunkBinaryCodec.INSTANCE.id));
+        assertSame(Grids_ChunkBooleanCodec.INSTANCE, Grids_ChunkCodec.getCodec(
+                Grids_ChunkBooleanCodec.INSTANCE.id));
+    }
+
+    /**
+     * Test of encodeWithHeader and decodeWithHeader for each
+     * Grids_ChunkDouble type.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRoundTripDouble() throws Exception {
+        System.out.println("roundTripDouble");
+        Grids_GridDouble g = (Grids_GridDouble) gp.gridFactoryDouble.create(
+                7, 9);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(0, 0);
+        Grids_ChunkDoubleFactory[] fs = new Grids_ChunkDoubleFactory[]{
+            new Grids_ChunkDoubleFactoryArray(),
+            new Grids_ChunkDoubleFactoryArrayFlat(),
+            new Grids_ChunkDoubleFactoryOffHeap(),
+            new Grids_ChunkDoubleFactoryMap()};
+        for (Grids_ChunkDoubleFactory f : fs) {
+            Grids_ChunkDouble c = f.create(g, i);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    if ((r + col) % 5 != 0) {
+                        c.setCell(r, col, r * 0.1 + col / 3.0);
+                    }
+                }
+            }
+            c.setCell(6, 8, Double.MIN_VALUE);
+            Grids_ChunkDouble d = (Grids_ChunkDouble) roundTrip(g, c);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    assertEquals(c.getCell(r, col), d.getCell(r, col));
+                }
+            }
+        }
+        Grids_ChunkDouble s = new Grids_ChunkDoubleFactorySinglet(2.5d)
+                .create(g, i);
+        Grids_ChunkDouble d = (Grids_ChunkDouble) roundTrip(g, s);
+        assertEquals(2.5d, d.getCell(3, 4));
+    }
+
+    /**
+     * Test of encodeWithHeader and decodeWithHeader for each Grids_ChunkInt
+     * type.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRoundTripInt() throws Exception {
+        System.out.println("roundTripInt");
+        Grids_GridInt g = (Grids_GridInt) gp.gridFactoryInt.create(7, 9);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(0, 0);
+        Grids_ChunkIntFactory[] fs = new Grids_ChunkIntFactory[]{
+            new Grids_ChunkIntFactoryArray(),
+            new Grids_ChunkIntFactoryArrayFlat(),
+            new Grids_ChunkIntFactoryOffHeap(),
+            new Grids_ChunkIntFactoryMap()};
+        for (Grids_ChunkIntFactory f : fs) {
+            Grids_ChunkInt c = f.create(g, i);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    if ((r + col) % 5 != 0) {
+                        c.setCell(r, col, r * 100 - col);
+                    }
+                }
+            }
+            c.setCell(6, 8, Integer.MAX_VALUE);
+            Grids_ChunkInt d = (Grids_ChunkInt) roundTrip(g, c);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    assertEquals(c.getCell(r, col), d.getCell(r, col));
+                }
+            }
+        }
+        Grids_ChunkInt s = new Grids_ChunkIntFactorySinglet(-3).create(g, i);
+        Grids_ChunkInt d = (Grids_ChunkInt) roundTrip(g, s);
+        assertEquals(-3, d.getCell(3, 4));
+    }
+
+    /**
+     * Test of encodeWithHeader and decodeWithHeader for each
+     * Grids_ChunkBinary type.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRoundTripBinary() throws Exception {
+        System.out.println("roundTripBinary");
+        Grids_GridBinary g = (Grids_GridBinary) gp.gridFactoryBinary.create(
+                7, 9);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(0, 0);
+        Grids_ChunkBinaryFactory[] fs = new Grids_ChunkBinaryFactory[]{
+            new Grids_ChunkBinaryFactoryArray(),
+            new Grids_ChunkBinaryFactoryArrayFlat(),
+            new Grids_ChunkBinaryFactoryArrayPacked()};
+        for (Grids_ChunkBinaryFactory f : fs) {
+            Grids_ChunkBinary c = f.create(g, i);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    c.setCell(r, col, (r * 9 + col) % 3 == 0);
+                }
+            }
+            Grids_ChunkBinary d = (Grids_ChunkBinary) roundTrip(g, c);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    assertEquals(c.getCell(r, col), d.getCell(r, col));
+                }
+            }
+        }
+        Grids_ChunkBinary s = new Grids_ChunkBinaryFactorySinglet(true)
+                .create(g, i);
+        Grids_ChunkBinary d = (Grids_ChunkBinary) roundTrip(g, s);
+        assertTrue(d.getCell(3, 4));
+    }
+
+    /**
+     * Test of encodeWithHeader and decodeWithHeader for each
+     * Grids_ChunkBoolean type, including null cells.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRoundTripBoolean() throws Exception {
+        System.out.println("roundTripBoolean");
+        Grids_GridBoolean g = (Grids_GridBoolean) gp.gridFactoryBoolean.create(
+                7, 9);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(0, 0);
+        Grids_ChunkBooleanFactory[] fs = new Grids_ChunkBooleanFactory[]{
+            new Grids_ChunkBooleanFactoryArray(),
+            new Grids_ChunkBooleanFactoryArrayPacked()};
+        for (Grids_ChunkBooleanFactory f : fs) {
+            Grids_ChunkBoolean c = f.create(g, i);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    int k = (r * 9 + col) % 3;
+                    c.setCell(r, col, k == 0 ? null : k == 1);
+                }
+            }
+            Grids_ChunkBoolean d = (Grids_ChunkBoolean) roundTrip(g, c);
+            for (int r = 0; r < 7; r++) {
+                for (int col = 0; col < 9; col++) {
+                    assertEquals(c.getCell(r, col), d.getCell(r, col));
+                }
+            }
+        }
+        Grids_ChunkBoolean s = new Grids_ChunkBooleanFactorySinglet(false)
+                .create(g, i);
+        Grids_ChunkBoolean d = (Grids_ChunkBoolean) roundTrip(g, s);
+        assertEquals(Boolean.FALSE, d.getCell(3, 4));
+    }
+}
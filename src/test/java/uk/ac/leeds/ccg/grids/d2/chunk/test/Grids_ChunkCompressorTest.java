@@ -0,0 +1,323 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCompressor;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryOffHeap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryOffHeap;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkCompressor.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkCompressorTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * Compressors with each combination of transforms.
+     */
+    static final Grids_ChunkCompressor[] COMPRESSORS = {
+        new Grids_ChunkCompressor(),
+        new Grids_ChunkCompressor(Deflater.DEFAULT_COMPRESSION, false, false),
+        new Grids_ChunkCompressor(Deflater.BEST_COMPRESSION, true, false),
+        new Grids_ChunkCompressor(Deflater.NO_COMPRESSION, false, true)};
+
+    public Grids_ChunkCompressorTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param cf The factory for the chunks the cells are set in.
+     * @param seed The seed for the values or -1 to leave all the cells as no
+     * data so the chunks are singlets.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values including negative zero and subnormal values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(Grids_ChunkDoubleFactory cf, long seed)
+            throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        // Singlet chunks are converted by the default chunk factory of the
+        // processor of the environment.
+        ge.getProcessor().gridFactoryDouble.setDefaultChunkFactory(cf);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        if (seed < 0) {
+            return g;
+        }
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                switch (random.nextInt(10)) {
+                    case 0:
+                    case 1:
+                        break;
+                    case 2:
+                        g.setCell(row, col, -0d);
+                        break;
+                    case 3:
+                        g.setCell(row, col, Double.MIN_VALUE * row);
+                        break;
+                    default:
+                        g.setCell(row, col, random.nextGaussian() * 1e3d);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param cf The factory for the chunks the cells are set in.
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridInt getGrid(Grids_ChunkIntFactory cf, long seed)
+            throws Exception {
+        Grids_GridIntFactory gfi = gp.gridFactoryInt;
+        gfi.setChunkNRows(4);
+        gfi.setChunkNCols(4);
+        ge.getProcessor().gridFactoryInt.setDefaultChunkFactory(cf);
+        Grids_GridInt g = (Grids_GridInt) gfi.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt());
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Compresses and decompresses every chunk of {@code g} with each of
+     * {@link #COMPRESSORS} and checks that the encoded chunk and the values
+     * are unchanged.
+     *
+     * @param g The grid.
+     * @throws Exception If encountered.
+     */
+    private void assertRoundTrip(Grids_Grid g) throws Exception {
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            Grids_Chunk c = g.getChunk(i);
+            Grids_ChunkCodec codec = Grids_ChunkCodec.getCodec(c);
+            ByteBuffer e = ByteBuffer.allocate(codec.getSize(c));
+            codec.encodeWithHeader(c, e);
+            for (Grids_ChunkCompressor z : COMPRESSORS) {
+                byte[] b = z.compress(c);
+                assertTrue(Grids_ChunkCompressor.isCompressed(
+                        ByteBuffer.wrap(b)));
+                assertFalse(Grids_ChunkCompressor.isCompressed(
+                        ByteBuffer.wrap(e.array())));
+                ByteBuffer d = Grids_ChunkCompressor.decompress(
+                        ByteBuffer.wrap(b));
+                assertArrayEquals(e.array(), Arrays.copyOfRange(d.array(),
+                        d.position(), d.limit()));
+                Grids_Chunk c2 = Grids_ChunkCodec.decodeWithHeader(g, i,
+                        ByteBuffer.wrap(b));
+                assertEquals(c.getClass(), c2.getClass());
+                assertChunk(c, c2);
+            }
+        }
+    }
+
+    /**
+     * @param e The expected chunk.
+     * @param c The chunk to check.
+     */
+    private void assertChunk(Grids_Chunk e, Grids_Chunk c) {
+        for (int row = 0; row < e.getChunkNRows(); row++) {
+            for (int col = 0; col < e.getChunkNCols(); col++) {
+                if (e instanceof Grids_ChunkDouble) {
+                    // Compare bits so that -0 and 0 are distinguished.
+                    assertEquals(Double.doubleToRawLongBits(
+                            ((Grids_ChunkDouble) e).getCell(row, col)),
+                            Double.doubleToRawLongBits(
+                                    ((Grids_ChunkDouble) c).getCell(row, col)),
+                            "row " + row + " col " + col);
+                } else {
+                    assertEquals(((Grids_ChunkInt) e).getCell(row, col),
+                            ((Grids_ChunkInt) c).getCell(row, col),
+                            "row " + row + " col " + col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of compress and decompress methods, of class
+     * Grids_ChunkCompressor, for each type of double chunk including edge
+     * chunks.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCompress_Double() throws Exception {
+        System.out.println("compress double");
+        Grids_ChunkDoubleFactory[] cfs = {new Grids_ChunkDoubleFactoryArray(),
+            new Grids_ChunkDoubleFactoryArrayFlat(),
+            new Grids_ChunkDoubleFactoryMap(),
+            new Grids_ChunkDoubleFactoryOffHeap()};
+        for (int k = 0; k < cfs.length; k++) {
+            assertRoundTrip(getGrid(cfs[k], k));
+        }
+        assertRoundTrip(getGrid(cfs[0], -1L));
+    }
+
+    /**
+     * Test of compress and decompress methods, of class
+     * Grids_ChunkCompressor, for each type of int chunk including edge
+     * chunks.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCompress_Int() throws Exception {
+        System.out.println("compress int");
+        Grids_ChunkIntFactory[] cfs = {new Grids_ChunkIntFactoryArray(),
+            new Grids_ChunkIntFactoryArrayFlat(),
+            new Grids_ChunkIntFactoryMap(),
+            new Grids_ChunkIntFactoryOffHeap()};
+        for (int k = 0; k < cfs.length; k++) {
+            assertRoundTrip(getGrid(cfs[k], k));
+        }
+    }
+
+    /**
+     * Test that delta coding and shuffling make a smooth surface compress
+     * better than deflate alone.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCompress_Smooth() throws Exception {
+        System.out.println("compress smooth");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(64);
+        gfd.setChunkNCols(64);
+        ge.getProcessor().gridFactoryDouble.setDefaultChunkFactory(
+                new Grids_ChunkDoubleFactoryArrayFlat());
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(64, 64);
+        for (long row = 0L; row < 64L; row++) {
+            for (long col = 0L; col < 64L; col++) {
+                g.setCell(row, col, 100d + row * 0.5d + col * 0.25d);
+            }
+        }
+        Grids_Chunk c = g.getChunk(new Grids_2D_ID_int(0, 0));
+        int n = new Grids_ChunkCompressor().compress(c).length;
+        int n0 = new Grids_ChunkCompressor(Grids_ChunkCompressor.DEFAULT_LEVEL,
+                false, false).compress(c).length;
+        assertTrue(n < n0, n + " >= " + n0);
+    }
+
+    /**
+     * Test that decompressing a truncated or corrupt chunk throws an
+     * IOException.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testDecompress_Invalid() throws Exception {
+        System.out.println("decompress invalid");
+        Grids_GridDouble g = getGrid(new Grids_ChunkDoubleFactoryArray(), 1L);
+        byte[] b = new Grids_ChunkCompressor().compress(g.getChunk(
+                new Grids_2D_ID_int(0, 0)));
+        assertThrows(IOException.class, () -> Grids_ChunkCompressor
+                .decompress(ByteBuffer.wrap(Arrays.copyOf(b, b.length / 2))));
+        byte[] b2 = b.clone();
+        Arrays.fill(b2, Grids_ChunkCompressor.HEADER_SIZE, b2.length,
+                (byte) 0xFF);
+        assertThrows(IOException.class, () -> Grids_ChunkCompressor
+                .decompress(ByteBuffer.wrap(b2)));
+        assertThrows(IOException.class, () -> Grids_ChunkCompressor
+                .decompress(ByteBuffer.wrap(new byte[4])));
+    }
+}
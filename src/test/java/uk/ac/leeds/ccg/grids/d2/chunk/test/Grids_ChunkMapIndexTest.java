@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkMapIndex;
+
+/**
+ * Test class for Grids_ChunkMapIndex.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkMapIndexTest {
+
+    public Grids_ChunkMapIndexTest() {
+    }
+
+    /**
+     * @param e The expected mapping from position to slot.
+     * @param nSlots The number of slots.
+     * @param index The index to check.
+     */
+    private void assertIndex(Map<Integer, Integer> e, int nSlots,
+            Grids_ChunkMapIndex index) {
+        assertEquals(e.size(), index.size());
+        int[] counts = new int[nSlots];
+        for (Map.Entry<Integer, Integer> x : e.entrySet()) {
+            assertEquals((int) x.getValue(), index.getSlot(x.getKey()));
+            counts[x.getValue()]++;
+        }
+        for (int s = 0; s < nSlots; s++) {
+            assertEquals(counts[s], index.getCount(s));
+        }
+        Map<Integer, Integer> r = new HashMap<>();
+        index.forEach((p, s) -> r.put(p, s));
+        assertEquals(e, r);
+    }
+
+    /**
+     * Test of setSlot and getSlot method, of class Grids_ChunkMapIndex.
+     */
+    @Test
+    public void testSetSlot() {
+        System.out.println("setSlot");
+        Grids_ChunkMapIndex instance = new Grids_ChunkMapIndex();
+        int s0 = instance.newSlot();
+        int s1 = instance.newSlot();
+        assertEquals(Grids_ChunkMapIndex.NONE, instance.getSlot(5));
+        assertEquals(Grids_ChunkMapIndex.NONE, instance.setSlot(5, s0));
+        assertEquals(s0, instance.getSlot(5));
+        assertEquals(1, instance.getCount(s0));
+        // Remapping returns the old slot and moves the count.
+        assertEquals(s0, instance.setSlot(5, s1));
+        assertEquals(0, instance.getCount(s0));
+        assertEquals(1, instance.getCount(s1));
+        // Removing a cell that is not in the index does nothing.
+        assertEquals(Grids_ChunkMapIndex.NONE,
+                instance.setSlot(6, Grids_ChunkMapIndex.NONE));
+        assertEquals(1, instance.size());
+        assertEquals(s1, instance.setSlot(5, Grids_ChunkMapIndex.NONE));
+        assertEquals(Grids_ChunkMapIndex.NONE, instance.getSlot(5));
+        assertEquals(0, instance.getCount(s1));
+        assertEquals(0, instance.size());
+    }
+
+    /**
+     * Test that the index grows and that all cells are still found after it
+     * is rehashed.
+     */
+    @Test
+    public void testRehash() {
+        System.out.println("rehash");
+        Grids_ChunkMapIndex instance = new Grids_ChunkMapIndex();
+        int nSlots = 3;
+        for (int s = 0; s < nSlots; s++) {
+            assertEquals(s, instance.newSlot());
+        }
+        Map<Integer, Integer> e = new HashMap<>();
+        long size = instance.getSize();
+        // Positions of a 64 by 64 chunk that collide in a small table.
+        for (int p = 0; p < 4096; p += 64) {
+            int s = p % nSlots;
+            instance.setSlot(p, s);
+            e.put(p, s);
+        }
+        assertIndex(e, nSlots, instance);
+        assertEquals(true, instance.getSize() > size);
+    }
+
+    /**
+     * Test that removing cells keeps the other cells in the same probe
+     * sequence findable and that freed slots are reused.
+     */
+    @Test
+    public void testRemove() {
+        System.out.println("remove");
+        Random random = new Random(7);
+        Grids_ChunkMapIndex instance = new Grids_ChunkMapIndex();
+        int nSlots = 5;
+        for (int s = 0; s < nSlots; s++) {
+            instance.newSlot();
+        }
+        Map<Integer, Integer> e = new HashMap<>();
+        for (int n = 0; n < 10000; n++) {
+            int p = random.nextInt(256);
+            if (random.nextInt(3) == 0) {
+                Integer r = e.remove(p);
+                assertEquals(r == null ? Grids_ChunkMapIndex.NONE : (int) r,
+                        instance.setSlot(p, Grids_ChunkMapIndex.NONE));
+            } else {
+                int s = random.nextInt(nSlots);
+                Integer r = e.put(p, s);
+                assertEquals(r == null ? Grids_ChunkMapIndex.NONE : (int) r,
+                        instance.setSlot(p, s));
+            }
+            if (n % 500 == 0) {
+                assertIndex(e, nSlots, instance);
+            }
+        }
+        assertIndex(e, nSlots, instance);
+        for (Integer p : e.keySet()) {
+            instance.setSlot(p, Grids_ChunkMapIndex.NONE);
+        }
+        e.clear();
+        assertIndex(e, nSlots, instance);
+        // Freed slots are reused before new ones are allocated.
+        instance.freeSlot(2);
+        instance.freeSlot(4);
+        assertEquals(4, instance.newSlot());
+        assertEquals(2, instance.newSlot());
+        assertEquals(nSlots, instance.newSlot());
+        assertEquals(true, instance.getSlotsLength() > nSlots);
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinary;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinaryFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinaryStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.memory.Grids_AccountDetail;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkOptimizer.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkOptimizerTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows and columns in the double chunks. These are big
+     * enough for a map to be smaller than an array when there are only a few
+     * values that are not the default value.
+     */
+    static final int N = 64;
+
+    /**
+     * The chunk ID of the chunks tested.
+     */
+    static final Grids_2D_ID_int I = new Grids_2D_ID_int(0, 0);
+
+    public Grids_ChunkOptimizerTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param v The value of every cell.
+     * @return An array chunk of {@link #N} by {@link #N} cells with value
+     * {@code v}.
+     * @throws Exception If encountered.
+     */
+    private Grids_ChunkDoubleArray getArrayChunk(double v) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(N);
+        gfd.setChunkNCols(N);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(N, N);
+        Grids_ChunkDoubleArray r = new Grids_ChunkDoubleFactoryArray().create(
+                g.getChunk(I), I);
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < N; col++) {
+                r.setCell(row, col, v);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param e The chunk with the expected values.
+     * @param c The chunk.
+     */
+    private static void assertChunk(Grids_ChunkDouble e, Grids_ChunkDouble c) {
+        assertSame(e.getGrid(), c.getGrid());
+        assertEquals(e.getId(), c.getId());
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < N; col++) {
+                assertEquals(e.getCell(row, col), c.getCell(row, col),
+                        "row " + row + " col " + col);
+            }
+        }
+    }
+
+    /**
+     * Test that a chunk with a single value becomes a singlet.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testOptimize_Uniform() throws Exception {
+        System.out.println("optimize_Uniform");
+        Grids_ChunkDoubleArray c = getArrayChunk(1d);
+        Grids_AccountDetail a = new Grids_AccountDetail();
+        Grids_Chunk r = new Grids_ChunkOptimizer().optimize(c, a);
+        assertEquals(Grids_ChunkDoubleSinglet.class, r.getClass());
+        assertEquals(1d, ((Grids_ChunkDoubleSinglet) r).getV());
+        assertChunk(c, (Grids_ChunkDouble) r);
+        assertEquals(Grids_ChunkOptimizer.getArraySize(N, N, Double.BYTES),
+                a.bytesSaved);
+        assertTrue(a.detail.get(c.getGrid()).contains(I));
+        // A singlet is left as it is.
+        a = new Grids_AccountDetail();
+        assertSame(r, new Grids_ChunkOptimizer().optimize(r, a));
+        assertEquals(0L, a.bytesSaved);
+        assertTrue(a.detail.isEmpty());
+    }
+
+    /**
+     * Test that a chunk with only a few values that are not the most common
+     * value becomes a map with the most common value as the default value.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testOptimize_Sparse() throws Exception {
+        System.out.println("optimize_Sparse");
+        Grids_ChunkDoubleArray c = getArrayChunk(0d);
+        c.setCell(3, 5, 5d);
+        c.setCell(N - 1, N - 1, 6d);
+        Grids_AccountDetail a = new Grids_AccountDetail();
+        Grids_Chunk r = new Grids_ChunkOptimizer().optimize(c, a);
+        assertEquals(Grids_ChunkDoubleMap.class, r.getClass());
+        assertEquals(0d, ((Grids_ChunkDoubleMap) r).defaultValue);
+        assertChunk(c, (Grids_ChunkDouble) r);
+        assertEquals(Grids_ChunkOptimizer.getArraySize(N, N, Double.BYTES)
+                - Grids_ChunkOptimizer.getMapSize(2, 2, Double.BYTES),
+                a.bytesSaved);
+        assertTrue(a.detail.get(c.getGrid()).contains(I));
+        // The map is left as it is.
+        a = new Grids_AccountDetail();
+        assertSame(r, new Grids_ChunkOptimizer().optimize(r, a));
+        assertEquals(0L, a.bytesSaved);
+    }
+
+    /**
+     * Test that an array chunk with many different values is left as it is
+     * and that a map chunk with many different values becomes a flat array.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testOptimize_Dense() throws Exception {
+        System.out.println("optimize_Dense");
+        Grids_ChunkDoubleArray c = getArrayChunk(0d);
+        Random random = new Random(0);
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < N; col++) {
+                if (row > 0 || col > 0) {
+                    c.setCell(row, col, 1d + random.nextDouble());
+                }
+            }
+        }
+        Grids_AccountDetail a = new Grids_AccountDetail();
+        assertSame(c, new Grids_ChunkOptimizer().optimize(c, a));
+        assertEquals(0L, a.bytesSaved);
+        assertTrue(a.detail.isEmpty());
+        // A map with only cell (0, 0) having the default value.
+        Grids_ChunkDoubleMap m = new Grids_ChunkDoubleFactoryMap().create(c,
+                I, 0d);
+        assertEquals(1, m.getNumberOfDefaultValues(N * N));
+        Grids_Chunk r = new Grids_ChunkOptimizer().optimize(m, a);
+        assertEquals(Grids_ChunkDoubleArrayFlat.class, r.getClass());
+        assertChunk(c, (Grids_ChunkDouble) r);
+        assertEquals(Grids_ChunkOptimizer.getMapSize(N * N - 1, N * N - 1,
+                Double.BYTES) - Grids_ChunkOptimizer.getArraySize(N * N,
+                Double.BYTES), a.bytesSaved);
+        assertTrue(a.bytesSaved > 0L);
+        assertTrue(a.detail.get(c.getGrid()).contains(I));
+    }
+
+    /**
+     * Test that a binary array chunk, with a number of cells that is not a
+     * multiple of 64, becomes a packed chunk.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testOptimize_Binary() throws Exception {
+        System.out.println("optimize_Binary");
+        int nrows = 9;
+        int ncols = 7;
+        Grids_GridBinaryFactory gfb = gp.gridFactoryBinary;
+        gfb.setChunkNRows(nrows);
+        gfb.setChunkNCols(ncols);
+        Grids_GridBinary g = gfb.create(new Grids_GridBinaryStatsNotUpdated(
+                ge), new Grids_ChunkBinaryFactoryArray(), nrows, ncols,
+                new Grids_Dimensions(nrows, ncols));
+        Grids_ChunkBinaryArray c = new Grids_ChunkBinaryFactoryArray().create(
+                g.getChunk(I), I);
+        Random random = new Random(1);
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                c.setCell(row, col, random.nextBoolean());
+            }
+        }
+        Grids_AccountDetail a = new Grids_AccountDetail();
+        Grids_Chunk r = new Grids_ChunkOptimizer().optimize(c, a);
+        assertEquals(Grids_ChunkBinaryArrayPacked.class, r.getClass());
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                assertEquals(c.getCell(row, col),
+                        ((Grids_ChunkBinary) r).getCell(row, col));
+            }
+        }
+        assertEquals(Grids_ChunkOptimizer.getArraySize(nrows, ncols, 1)
+                - Grids_ChunkOptimizer.getArraySize(Grids_ChunkBinaryArrayPacked
+                        .getNWords(nrows * ncols), Long.BYTES), a.bytesSaved);
+        assertTrue(a.detail.get(g).contains(I));
+    }
+}
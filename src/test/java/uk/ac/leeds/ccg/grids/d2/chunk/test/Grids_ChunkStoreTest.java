@@ -0,0 +1,276 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.chunk.test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkStore;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkInt;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntCodec;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkStore.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkStoreTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * A grid of 2 by 2 chunks each of 4 by 4 cells.
+     */
+    Grids_GridInt g;
+
+    /**
+     * The slot size for the chunks of {@link #g}.
+     */
+    int slotSize;
+
+    public Grids_ChunkStoreTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+        Grids_GridIntFactory gfi = gp.gridFactoryInt;
+        gfi.setChunkNRows(4);
+        gfi.setChunkNCols(4);
+        g = (Grids_GridInt) gfi.create(8, 8);
+        slotSize = Grids_ChunkIntCodec.INSTANCE.getArraySize(4, 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @param v The value of the first cell which must be positive.
+     * @return A map chunk with every cell set to a value other than the
+     * default so its encoding overflows its slot.
+     * @throws Exception If encountered.
+     */
+    private Grids_ChunkInt getMap(Grids_2D_ID_int i, int v) throws Exception {
+        Grids_ChunkInt c = new Grids_ChunkIntFactoryMap().create(g, i);
+        for (int r = 0; r < 4; r++) {
+            for (int col = 0; col < 4; col++) {
+                c.setCell(r, col, v + r * 4 + col);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @param i The chunk ID.
+     * @param v The value of the first cell.
+     * @return An array chunk which fits its slot.
+     * @throws Exception If encountered.
+     */
+    private Grids_ChunkInt getArray(Grids_2D_ID_int i, int v)
+            throws Exception {
+        Grids_ChunkInt c = new Grids_ChunkIntFactoryArray().create(g, i);
+        for (int r = 0; r < 4; r++) {
+            for (int col = 0; col < 4; col++) {
+                c.setCell(r, col, v - r * 4 - col);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @param e The expected chunk.
+     * @param s The store.
+     * @param i The chunk ID.
+     * @throws Exception If encountered.
+     */
+    private void assertStored(Grids_ChunkInt e, Grids_ChunkStore s,
+            Grids_2D_ID_int i) throws Exception {
+        assertTrue(s.contains(i));
+        Grids_ChunkInt c = (Grids_ChunkInt) s.read(g, i);
+        assertNotNull(c);
+        assertEquals(e.getClass(), c.getClass());
+        for (int r = 0; r < 4; r++) {
+            for (int col = 0; col < 4; col++) {
+                assertEquals(e.getCell(r, col), c.getCell(r, col));
+            }
+        }
+    }
+
+    /**
+     * Test that chunks written to a store can be read after it is closed and
+     * reopened.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testReopen() throws Exception {
+        System.out.println("reopen");
+        Path f = Files.createTempDirectory("store").resolve("chunks");
+        Grids_2D_ID_int i00 = new Grids_2D_ID_int(0, 0);
+        Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+        Grids_2D_ID_int i11 = new Grids_2D_ID_int(1, 1);
+        Grids_ChunkInt a = getArray(i00, 100);
+        Grids_ChunkInt m = getMap(i11, 7);
+        int size = Grids_ChunkIntCodec.INSTANCE.getSize(m);
+        assertTrue(size > slotSize);
+        Grids_ChunkStore s = new Grids_ChunkStore(f, 2, 2, slotSize);
+        assertTrue(s.write(a, i00));
+        assertTrue(s.write(m, i11));
+        s.close();
+        s = new Grids_ChunkStore(f, 2, 2, slotSize);
+        assertStored(a, s, i00);
+        assertStored(m, s, i11);
+        assertFalse(s.contains(i01));
+        assertEquals(size, s.getOverflowSize());
+        assertEquals(0L, s.getFreeSize());
+        s.close();
+        // A store with a different layout is recreated.
+        s = new Grids_ChunkStore(f, 2, 3, slotSize);
+        assertFalse(s.contains(i00));
+        assertEquals(0L, s.getOverflowSize());
+        s.close();
+    }
+
+    /**
+     * Test that overflow extents are reused and the end of the overflow is
+     * truncated when chunks are removed or rewritten, including after the
+     * store is reopened.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testOverflow() throws Exception {
+        System.out.println("overflow");
+        Path f = Files.createTempDirectory("store").resolve("chunks");
+        Grids_2D_ID_int i00 = new Grids_2D_ID_int(0, 0);
+        Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+        Grids_2D_ID_int i10 = new Grids_2D_ID_int(1, 0);
+        Grids_2D_ID_int i11 = new Grids_2D_ID_int(1, 1);
+        Grids_ChunkStore s = new Grids_ChunkStore(f, 2, 2, slotSize);
+        int size = Grids_ChunkIntCodec.INSTANCE.getSize(getMap(i00, 1));
+        assertTrue(s.write(getMap(i00, 1), i00));
+        assertTrue(s.write(getMap(i01, 100), i01));
+        assertTrue(s.write(getMap(i10, 200), i10));
+        assertEquals(3L * size, s.getOverflowSize());
+        // Rewriting in place does not allocate.
+        assertTrue(s.write(getMap(i00, 2), i00));
+        assertEquals(3L * size, s.getOverflowSize());
+        // A removed extent is reused.
+        s.remove(i01);
+        assertFalse(s.contains(i01));
+        assertEquals(size, s.getFreeSize());
+        Grids_ChunkInt m11 = getMap(i11, 300);
+        assertTrue(s.write(m11, i11));
+        assertEquals(3L * size, s.getOverflowSize());
+        assertEquals(0L, s.getFreeSize());
+        assertStored(m11, s, i11);
+        // Removing the last extent truncates the overflow.
+        s.remove(i10);
+        assertEquals(2L * size, s.getOverflowSize());
+        // A chunk that moves into its slot releases its extent.
+        Grids_ChunkInt a00 = getArray(i00, 50);
+        assertTrue(s.write(a00, i00));
+        assertEquals(size, s.getFreeSize());
+        s.close();
+        s = new Grids_ChunkStore(f, 2, 2, slotSize);
+        assertEquals(2L * size, s.getOverflowSize());
+        assertEquals(size, s.getFreeSize());
+        assertStored(a00, s, i00);
+        assertStored(m11, s, i11);
+        // Removing the last extent also truncates any free extents before it.
+        s.remove(i11);
+        assertEquals(0L, s.getOverflowSize());
+        assertEquals(0L, s.getFreeSize());
+        s.close();
+    }
+
+    /**
+     * Test that removing a grid from the environment does not close its
+     * store.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRemoveGrid() throws Exception {
+        System.out.println("removeGrid");
+        Grids_2D_ID_int i = new Grids_2D_ID_int(1, 1);
+        g.setCell(5L, 6L, 3);
+        Grids_ChunkStore s = g.getChunkStore();
+        assertNotNull(s);
+        assertTrue(g.swapChunk(i));
+        ge.removeGrid(g);
+        assertFalse(ge.getGrids().contains(g));
+        assertSame(s, g.getChunkStore());
+        assertTrue(s.contains(i));
+        assertEquals(3, g.getCell(5L, 6L));
+        g.close();
+    }
+
+    /**
+     * Test that closing a grid in the environment removes it and closes its
+     * store.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCloseGrid() throws Exception {
+        System.out.println("closeGrid");
+        Grids_2D_ID_int i = new Grids_2D_ID_int(1, 1);
+        g.setCell(5L, 6L, 3);
+        Grids_ChunkStore s = g.getChunkStore();
+        assertNotNull(s);
+        assertTrue(g.swapChunk(i));
+        assertTrue(s.contains(i));
+        ge.closeGrid(g);
+        assertFalse(ge.getGrids().contains(g));
+        Grids_ChunkStore s2 = g.getChunkStore();
+        assertNotSame(s, s2);
+        assertTrue(s2.contains(i));
+        assertEquals(3, g.getCell(5L, 6L));
+        g.close();
+    }
+}
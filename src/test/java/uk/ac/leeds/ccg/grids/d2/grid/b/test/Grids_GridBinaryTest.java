@@ -0,0 +1,294 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid.b.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.b.Grids_ChunkBinaryFactoryArrayPacked;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinary;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinaryFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.b.Grids_GridBinaryStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_GridBinary.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_GridBinaryTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids.
+     */
+    static final long NROWS = 20L;
+
+    /**
+     * The number of columns of the test grids.
+     */
+    static final long NCOLS = 16L;
+
+    /**
+     * The numbers of rows and columns of the chunks tested. Chunks of 9 by 7
+     * cells are not a multiple of 64 cells and chunks of 8 by 8 cells are.
+     */
+    static final int[][] CHUNK_SIZES = {{9, 7}, {8, 8}};
+
+    /**
+     * The names of the operations.
+     */
+    static final String[] OPS = {"and", "or", "xor", "not"};
+
+    public Grids_GridBinaryTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param cf The chunk factory.
+     * @param chunkSize The number of rows and columns of the chunks.
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells with chunks
+     * created by {@code cf} and random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridBinary getGrid(Grids_ChunkBinaryFactory cf,
+            int[] chunkSize, long seed) throws Exception {
+        Grids_GridBinaryFactory gfb = gp.gridFactoryBinary;
+        gfb.setChunkNRows(chunkSize[0]);
+        gfb.setChunkNCols(chunkSize[1]);
+        Grids_GridBinary g = gfb.create(new Grids_GridBinaryStatsNotUpdated(
+                ge), cf, NROWS, NCOLS, new Grids_Dimensions(NROWS, NCOLS));
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                g.setCell(row, col, random.nextBoolean());
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param g The grid.
+     * @return The values of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private static boolean[][] getCells(Grids_GridBinary g) throws Exception {
+        boolean[][] r = new boolean[(int) NROWS][(int) NCOLS];
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                r[row][col] = g.getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Applies operation {@code op} to {@code g} and {@code g2}.
+     *
+     * @param g The grid changed.
+     * @param g2 The other grid.
+     * @param op The index of the operation in {@link #OPS}.
+     * @throws Exception If encountered.
+     */
+    private static void apply(Grids_GridBinary g, Grids_GridBinary g2,
+            int op) throws Exception {
+        switch (op) {
+            case 0:
+                g.and(g2);
+                break;
+            case 1:
+                g.or(g2);
+                break;
+            case 2:
+                g.xor(g2);
+                break;
+            default:
+                g.not();
+        }
+    }
+
+    /**
+     * @param v The value.
+     * @param v2 The other value.
+     * @param op The index of the operation in {@link #OPS}.
+     * @return The result of operation {@code op}.
+     */
+    private static boolean apply(boolean v, boolean v2, int op) {
+        switch (op) {
+            case 0:
+                return v && v2;
+            case 1:
+                return v || v2;
+            case 2:
+                return v ^ v2;
+            default:
+                return !v;
+        }
+    }
+
+    /**
+     * Test of and, or, xor and not methods, of class Grids_GridBinary, for
+     * grids of packed chunks, grids of array chunks and a grid of each, so
+     * that both the whole word operations and the cell by cell fallback are
+     * used.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testAndOrXorNot() throws Exception {
+        System.out.println("andOrXorNot");
+        Grids_ChunkBinaryFactory[] cfs = {
+            new Grids_ChunkBinaryFactoryArrayPacked(),
+            new Grids_ChunkBinaryFactoryArray()};
+        long seed = 0L;
+        for (int[] cs : CHUNK_SIZES) {
+            for (Grids_ChunkBinaryFactory cf : cfs) {
+                for (Grids_ChunkBinaryFactory cf2 : cfs) {
+                    for (int op = 0; op < OPS.length; op++) {
+                        Grids_GridBinary g = getGrid(cf, cs, seed++);
+                        Grids_GridBinary g2 = getGrid(cf2, cs, seed++);
+                        boolean packed = g.getChunk(new Grids_2D_ID_int(0, 0))
+                                instanceof Grids_ChunkBinaryArrayPacked;
+                        assertEquals(cf == cfs[0], packed);
+                        boolean[][] e = getCells(g);
+                        boolean[][] e2 = getCells(g2);
+                        apply(g, g2, op);
+                        String m = OPS[op] + " chunk size " + cs[0] + " "
+                                + cs[1] + " " + cf.getClass().getSimpleName()
+                                + " " + cf2.getClass().getSimpleName();
+                        for (int row = 0; row < NROWS; row++) {
+                            for (int col = 0; col < NCOLS; col++) {
+                                String mc = m + " row " + row + " col " + col;
+                                assertEquals(apply(e[row][col], e2[row][col],
+                                        op), g.getCell(row, col), mc);
+                                assertEquals(e2[row][col],
+                                        g2.getCell(row, col), mc);
+                            }
+                        }
+                        assertFalse(((Grids_GridBinaryStatsNotUpdated)
+                                g.getStats()).isUpToDate(), m);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of and and xor methods, of class Grids_GridBinary, with the same
+     * grid.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testAndXor_Self() throws Exception {
+        System.out.println("andXor_Self");
+        Grids_GridBinary g = getGrid(new Grids_ChunkBinaryFactoryArrayPacked(),
+                CHUNK_SIZES[0], 1L);
+        boolean[][] e = getCells(g);
+        g.and(g);
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                assertEquals(e[row][col], g.getCell(row, col));
+            }
+        }
+        g.xor(g);
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                assertFalse(g.getCell(row, col));
+            }
+        }
+    }
+
+    /**
+     * Test that chunks the caller had added to the notToClear of the
+     * environment are still there after an operation, that no others are
+     * left there and that no chunks are left pinned.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testAnd_NotToClear() throws Exception {
+        System.out.println("and_NotToClear");
+        Grids_GridBinary g = getGrid(new Grids_ChunkBinaryFactoryArrayPacked(),
+                CHUNK_SIZES[0], 2L);
+        Grids_GridBinary g2 = getGrid(new Grids_ChunkBinaryFactoryArray(),
+                CHUNK_SIZES[0], 3L);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(1, 1);
+        ge.addToNotToClear(g, i);
+        ge.addToNotToClear(g2, i);
+        g.and(g2);
+        g.not();
+        assertEquals(1, ge.getNotToClear().get(g).size());
+        assertTrue(ge.getNotToClear().get(g).contains(i));
+        assertEquals(1, ge.getNotToClear().get(g2).size());
+        assertTrue(ge.getNotToClear().get(g2).contains(i));
+        assertFalse(ge.getPins().isPinned(g));
+        assertFalse(ge.getPins().isPinned(g2));
+        ge.removeFromNotToClear(g, i);
+        ge.removeFromNotToClear(g2, i);
+    }
+
+    /**
+     * Test that grids with different chunks are rejected.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testAnd_Different() throws Exception {
+        System.out.println("and_Different");
+        Grids_GridBinary g = getGrid(new Grids_ChunkBinaryFactoryArrayPacked(),
+                CHUNK_SIZES[0], 4L);
+        Grids_GridBinary g2 = getGrid(new Grids_ChunkBinaryFactoryArrayPacked(),
+                CHUNK_SIZES[1], 5L);
+        assertThrows(IllegalArgumentException.class, () -> g.and(g2));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid.d.test;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStatsIncremental;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_GridDoubleStatsIncremental.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_GridDoubleStatsIncrementalTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+    Grids_2D_ID_int i10 = new Grids_2D_ID_int(1, 0);
+
+    public Grids_GridDoubleStatsIncrementalTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @return A grid of 2 by 2 chunks each of 4 by 4 cells with incremental
+     * stats and with every cell set to {@code 0.1 * (row + col)} except for a
+     * minimum of -5 in chunk (0, 0) and a maximum of 9 in chunk (1, 1).
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid() throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = gfd.create(
+                new Grids_GridDoubleStatsIncremental(ge),
+                gfd.gridChunkDoubleFactory, 8L, 8L, new Grids_Dimensions(8L, 8L));
+        for (long row = 0L; row < 8L; row++) {
+            for (long col = 0L; col < 8L; col++) {
+                g.setCell(row, col, 0.1d * (row + col));
+            }
+        }
+        g.setCell(1L, 1L, -5d);
+        g.setCell(6L, 6L, 9d);
+        return g;
+    }
+
+    /**
+     * @param g The grid.
+     * @return The exact sum of the values of {@code g} got cell by cell.
+     * @throws Exception If encountered.
+     */
+    private BigRational getSum(Grids_GridDouble g) throws Exception {
+        BigRational r = BigRational.ZERO;
+        for (long row = 0L; row < 8L; row++) {
+            for (long col = 0L; col < 8L; col++) {
+                double v = g.getCell(row, col);
+                if (v != g.getNoDataValue()) {
+                    r = r.add(BigRational.valueOf(v));
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Test that the statistics are kept up to date as values change and that
+     * the minimum, maximum and exact sum are calculated from cached chunk
+     * summaries without reloading swapped chunks.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testReplace() throws Exception {
+        System.out.println("replace");
+        Grids_GridDouble g = getGrid();
+        Grids_GridDoubleStatsIncremental s
+                = (Grids_GridDoubleStatsIncremental) g.getStats();
+        assertEquals(64L, s.getN());
+        assertEquals(-5d, (double) s.getMin(false));
+        assertEquals(9d, (double) s.getMax(false));
+        BigRational e = getSum(g);
+        assertEquals(e.doubleValue(), s.getDoubleSum(), 1e-12);
+        assertEquals(e, s.getSum(true));
+        // Chunks that changed after they were summarised are summarised
+        // again when they are swapped.
+        g.setCell(4L, 1L, -1d);
+        g.setCell(2L, 5L, 8d);
+        e = getSum(g);
+        assertTrue(g.swapChunk(i10));
+        assertTrue(g.swapChunk(i01));
+        // Replacing the last minimum and maximum means they are recalculated
+        // when next wanted.
+        g.setCell(1L, 1L, 0.2d);
+        g.setCell(6L, 6L, 1.2d);
+        e = e.subtract(BigRational.valueOf(-5d)).add(BigRational.valueOf(0.2d))
+                .subtract(BigRational.valueOf(9d)).add(BigRational.valueOf(1.2d));
+        assertEquals(-1d, (double) s.getMin(true));
+        assertEquals(8d, (double) s.getMax(true));
+        assertEquals(e, s.getSum(true));
+        assertFalse(g.isLoaded(i10));
+        assertFalse(g.isLoaded(i01));
+        assertEquals(e, getSum(g));
+        // Removing a value from a swapped chunk after it is reloaded.
+        g.setCell(4L, 1L, g.getNoDataValue());
+        assertTrue(g.swapChunk(i10));
+        assertEquals(63L, s.getN());
+        assertEquals(0d, (double) s.getMin(true));
+        assertEquals(e.add(BigRational.ONE), s.getSum(true));
+        assertFalse(g.isLoaded(i10));
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_ChunkTable;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ChunkTable.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ChunkTableTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * A grid of 3 by 4 chunks which are used to populate tables.
+     */
+    Grids_GridDouble g;
+
+    public Grids_ChunkTableTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        g = (Grids_GridDouble) gfd.create(12L, 16L);
+        for (long row = 0L; row < 12L; row++) {
+            for (long col = 0L; col < 16L; col++) {
+                g.setCell(row, col, row * 16L + col);
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param cr The chunk row.
+     * @param cc The chunk column.
+     * @return The chunk of {@link #g} in chunk row {@code cr}, chunk column
+     * {@code cc}.
+     * @throws Exception If encountered.
+     */
+    private Grids_Chunk getChunk(int cr, int cc) throws Exception {
+        return g.getChunk(new Grids_2D_ID_int(cr, cc));
+    }
+
+    /**
+     * Test of get, put, putIfAbsent, containsKey, remove and size methods,
+     * of class Grids_ChunkTable.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testPut() throws Exception {
+        System.out.println("put");
+        Grids_ChunkTable instance = new Grids_ChunkTable(3, 4);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(1, 2);
+        Grids_Chunk c = getChunk(1, 2);
+        assertNull(instance.get(i));
+        assertFalse(instance.containsKey(i));
+        assertNull(instance.put(i, c));
+        assertSame(c, instance.get(i));
+        assertSame(c, instance.get(1, 2));
+        assertSame(c, instance.get(new Grids_2D_ID_int(1, 2)));
+        assertTrue(instance.containsKey(i));
+        assertEquals(1, instance.size());
+        // A chunk ID can be mapped to null and still be a key.
+        assertSame(c, instance.put(i, null));
+        assertNull(instance.get(i));
+        assertTrue(instance.containsKey(i));
+        assertEquals(1, instance.size());
+        assertNull(instance.putIfAbsent(i, c));
+        assertSame(c, instance.putIfAbsent(i, getChunk(0, 0)));
+        assertSame(c, instance.get(i));
+        // Keys that are not chunk IDs or are outside the table.
+        assertNull(instance.get("1, 2"));
+        assertNull(instance.get(5, 5));
+        assertNull(instance.get(-1, 0));
+        assertFalse(instance.containsKey(new Grids_2D_ID_int(5, 5)));
+        assertThrows(IllegalArgumentException.class,
+                () -> instance.put(new Grids_2D_ID_int(-1, 0), c));
+        assertSame(c, instance.remove(i));
+        assertFalse(instance.containsKey(i));
+        assertEquals(0, instance.size());
+        assertNull(instance.remove(i));
+    }
+
+    /**
+     * Test of replace methods, of class Grids_ChunkTable.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testReplace() throws Exception {
+        System.out.println("replace");
+        Grids_ChunkTable instance = new Grids_ChunkTable(3, 4);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(2, 3);
+        Grids_Chunk c = getChunk(2, 3);
+        Grids_Chunk c2 = getChunk(0, 1);
+        // There is no mapping to replace.
+        assertNull(instance.replace(i, c));
+        assertFalse(instance.containsKey(i));
+        assertFalse(instance.replace(i, null, c));
+        assertFalse(instance.containsKey(i));
+        instance.put(i, null);
+        assertNull(instance.replace(i, c));
+        assertSame(c, instance.get(i));
+        assertFalse(instance.replace(i, c2, null));
+        assertSame(c, instance.get(i));
+        assertTrue(instance.replace(i, c, c2));
+        assertSame(c2, instance.get(i));
+        assertFalse(instance.remove(i, c));
+        assertTrue(instance.remove(i, c2));
+        assertEquals(0, instance.size());
+    }
+
+    /**
+     * Test of resize method, of class Grids_ChunkTable, and that put resizes
+     * the table to fit the chunk ID.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testResize() throws Exception {
+        System.out.println("resize");
+        Grids_ChunkTable instance = new Grids_ChunkTable();
+        Grids_Chunk[][] cs = new Grids_Chunk[3][4];
+        for (int cr = 0; cr < 3; cr++) {
+            for (int cc = 0; cc < 4; cc++) {
+                cs[cr][cc] = getChunk(cr, cc);
+            }
+        }
+        instance.put(new Grids_2D_ID_int(1, 3), cs[1][3]);
+        instance.put(new Grids_2D_ID_int(2, 0), cs[2][0]);
+        assertSame(cs[1][3], instance.get(1, 3));
+        assertSame(cs[2][0], instance.get(2, 0));
+        assertEquals(2, instance.size());
+        for (int cr = 0; cr < 3; cr++) {
+            for (int cc = 0; cc < 4; cc++) {
+                instance.put(new Grids_2D_ID_int(cr, cc), cs[cr][cc]);
+            }
+        }
+        assertEquals(12, instance.size());
+        // Growing keeps all mappings.
+        instance.resize(5, 6);
+        assertEquals(12, instance.size());
+        for (int cr = 0; cr < 3; cr++) {
+            for (int cc = 0; cc < 4; cc++) {
+                assertSame(cs[cr][cc], instance.get(cr, cc));
+            }
+        }
+        assertNull(instance.get(4, 5));
+        // Shrinking removes the mappings outside the new dimensions.
+        instance.resize(2, 3);
+        assertEquals(6, instance.size());
+        for (int cr = 0; cr < 3; cr++) {
+            for (int cc = 0; cc < 4; cc++) {
+                Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+                if (cr < 2 && cc < 3) {
+                    assertSame(cs[cr][cc], instance.get(i));
+                } else {
+                    assertNull(instance.get(i));
+                    assertFalse(instance.containsKey(i));
+                }
+            }
+        }
+        instance.clear();
+        assertEquals(0, instance.size());
+        assertNull(instance.get(0, 0));
+    }
+
+    /**
+     * Test that the chunk IDs put in the table are those returned by getID,
+     * method of class Grids_ChunkTable, and by the key iterator, so that chunk
+     * IDs are reused rather than allocated again.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testGetID() throws Exception {
+        System.out.println("getID");
+        Grids_ChunkTable instance = new Grids_ChunkTable(3, 4);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(2, 1);
+        assertNull(instance.getID(2, 1));
+        instance.put(i, getChunk(2, 1));
+        assertSame(i, instance.getID(2, 1));
+        // Putting with an equal chunk ID retains the first.
+        instance.put(new Grids_2D_ID_int(2, 1), null);
+        assertSame(i, instance.getID(2, 1));
+        assertSame(i, instance.keySet().iterator().next());
+        // After resizing the chunk ID is still the same.
+        instance.resize(4, 5);
+        assertSame(i, instance.getID(2, 1));
+        assertNull(instance.getID(9, 9));
+    }
+
+    /**
+     * Test of the iteration order, of class Grids_ChunkTable, which is the
+     * same as that of a TreeMap with the same chunk ID keys. This is
+     * descending as is the natural order of Grids_2D_ID_int. Also tests
+     * removal and setting values via the entry iterator.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testEntrySet() throws Exception {
+        System.out.println("entrySet");
+        Grids_ChunkTable instance = new Grids_ChunkTable(2, 2);
+        TreeMap<Grids_2D_ID_int, Grids_Chunk> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int k = 0; k < 8; k++) {
+            int cr = random.nextInt(3);
+            int cc = random.nextInt(4);
+            Grids_2D_ID_int i = new Grids_2D_ID_int(cr, cc);
+            Grids_Chunk c = random.nextBoolean() ? getChunk(cr, cc) : null;
+            instance.put(i, c);
+            expected.put(i, c);
+        }
+        assertEquals(expected.size(), instance.size());
+        assertEquals(new ArrayList<>(expected.keySet()),
+                new ArrayList<>(instance.keySet()));
+        assertEquals(expected, instance);
+        List<Grids_2D_ID_int> keys = new ArrayList<>(instance.keySet());
+        for (int k = 1; k < keys.size(); k++) {
+            assertTrue(keys.get(k - 1).compareTo(keys.get(k)) < 0);
+            Grids_2D_ID_int a = keys.get(k - 1);
+            Grids_2D_ID_int b = keys.get(k);
+            assertTrue(a.getRow() > b.getRow() || (a.getRow() == b.getRow()
+                    && a.getCol() > b.getCol()));
+        }
+        // Set every value via the entries and remove every other entry.
+        Grids_Chunk c = getChunk(0, 0);
+        Iterator<Map.Entry<Grids_2D_ID_int, Grids_Chunk>> ite
+                = instance.entrySet().iterator();
+        boolean remove = false;
+        while (ite.hasNext()) {
+            Map.Entry<Grids_2D_ID_int, Grids_Chunk> e = ite.next();
+            if (remove) {
+                ite.remove();
+                expected.remove(e.getKey());
+            } else {
+                e.setValue(c);
+                expected.put(e.getKey(), c);
+            }
+            remove = !remove;
+        }
+        assertThrows(IllegalStateException.class, () -> {
+            Iterator<Grids_2D_ID_int> ite2 = instance.keySet().iterator();
+            ite2.remove();
+        });
+        assertEquals(expected, instance);
+        assertEquals(expected.size(), instance.size());
+    }
+
+    /**
+     * Test that a table with chunk IDs mapped to {@code null} can be
+     * serialized and deserialized.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testSerialization() throws Exception {
+        System.out.println("serialization");
+        Grids_ChunkTable instance = new Grids_ChunkTable(3, 4);
+        instance.put(new Grids_2D_ID_int(0, 3), null);
+        instance.put(new Grids_2D_ID_int(2, 1), null);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(instance);
+        }
+        Grids_ChunkTable result;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(bos.toByteArray()))) {
+            result = (Grids_ChunkTable) ois.readObject();
+        }
+        assertEquals(instance, result);
+        assertEquals(2, result.size());
+        assertTrue(result.containsKey(new Grids_2D_ID_int(2, 1)));
+        assertNull(result.get(2, 1));
+    }
+
+    /**
+     * @param t The table.
+     * @return The sum of the sizes of the chunks in {@code t}.
+     */
+    private static long getSize(Grids_ChunkTable t) {
+        long r = 0L;
+        for (Grids_Chunk c : t.values()) {
+            if (c != null) {
+                r += c.getSize();
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Test of getBytes and updateSize methods, of class Grids_ChunkTable,
+     * that the bytes recorded are kept equal to the sum of the sizes of the
+     * chunks as chunks are put, replaced and removed, and as the table is
+     * resized and cleared.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testGetBytes() throws Exception {
+        System.out.println("getBytes");
+        Grids_ChunkTable instance = new Grids_ChunkTable(3, 4);
+        assertEquals(0L, instance.getBytes());
+        for (int cr = 0; cr < 3; cr++) {
+            for (int cc = 0; cc < 4; cc++) {
+                instance.put(new Grids_2D_ID_int(cr, cc), getChunk(cr, cc));
+            }
+        }
+        assertTrue(instance.getBytes() > 0L);
+        assertEquals(getSize(instance), instance.getBytes());
+        Grids_2D_ID_int i = new Grids_2D_ID_int(1, 1);
+        instance.put(i, null);
+        assertEquals(getSize(instance), instance.getBytes());
+        instance.replace(i, getChunk(1, 1));
+        assertEquals(getSize(instance), instance.getBytes());
+        instance.remove(new Grids_2D_ID_int(0, 0));
+        assertEquals(getSize(instance), instance.getBytes());
+        instance.resize(2, 3);
+        assertEquals(getSize(instance), instance.getBytes());
+        // A map chunk gets bigger as values are set.
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble g2 = gfd.create(new Grids_GridDoubleStatsNotUpdated(
+                ge), new Grids_ChunkDoubleFactoryMap(), 4L, 4L,
+                new Grids_Dimensions(4L, 4L));
+        Grids_2D_ID_int i2 = new Grids_2D_ID_int(0, 0);
+        Grids_Chunk c2 = g2.getChunk(i2);
+        instance.put(i2, c2);
+        long b = instance.getBytes();
+        assertEquals(0L, instance.updateSize(i2));
+        for (long row = 0L; row < 4L; row++) {
+            for (long col = 0L; col < 4L; col++) {
+                g2.setCell(row, col, row * 4L + col + 1d);
+            }
+        }
+        assertTrue(c2 == g2.getChunk(i2));
+        long d = instance.updateSize(i2);
+        assertTrue(d != 0L);
+        assertEquals(b + d, instance.getBytes());
+        assertEquals(getSize(instance), instance.getBytes());
+        assertEquals(0L, instance.updateSize(new Grids_2D_ID_int(9, 9)));
+        instance.clear();
+        assertEquals(0L, instance.getBytes());
+    }
+
+    /**
+     * Test of setGrid method, of class Grids_ChunkTable, that the bytes of a
+     * table are added to the resident bytes of the environment when the table
+     * is given a grid, that changes are then added too and that they are
+     * taken away again when the grid is unset.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testSetGrid() throws Exception {
+        System.out.println("setGrid");
+        Grids_ChunkTable instance = new Grids_ChunkTable(3, 4);
+        instance.put(new Grids_2D_ID_int(0, 0), getChunk(0, 0));
+        long b = instance.getBytes();
+        long r = ge.getResidentBytes();
+        instance.setGrid(g);
+        assertSame(g, instance.getGrid());
+        assertEquals(r + b, ge.getResidentBytes());
+        instance.put(new Grids_2D_ID_int(0, 1), getChunk(0, 1));
+        assertEquals(r + instance.getBytes(), ge.getResidentBytes());
+        instance.remove(new Grids_2D_ID_int(0, 0));
+        assertEquals(r + instance.getBytes(), ge.getResidentBytes());
+        instance.setGrid(null);
+        assertEquals(r, ge.getResidentBytes());
+    }
+}
@@ -19,8 +19,17 @@ import ch.obermuhlner.math.big.BigRational;
 import java.math.RoundingMode;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.jupiter.api.AfterEach;
@@ -31,6 +40,9 @@ import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import uk.ac.leeds.ccg.generic.core.Generic_Environment;
 import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
@@ -39,13 +51,22 @@ import uk.ac.leeds.ccg.grids.core.Grids_Environment;
 import uk.ac.leeds.ccg.grids.core.Grids_Strings;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
 import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_long;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_Chunk;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkOptimizer;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleMap;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleSinglet;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
 import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactorySinglet;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
 import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Sweep;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
 import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
 import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.memory.Grids_AccountDetail;
+import uk.ac.leeds.ccg.grids.memory.Grids_EvictionPolicy;
+import uk.ac.leeds.ccg.grids.memory.Grids_WriteBehind;
 import uk.ac.leeds.ccg.grids.process.Grids_Processor;
 import uk.ac.leeds.ccg.io.IO_Cache;
 import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
@@ -1473,7 +1494,57 @@ public class Grids_GridTest {
      */
     @Test
     public void testSwapChunk_0args() throws Exception {
-        // No test.
+        System.out.println("swapChunk");
+        // By default chunkNRows and chunkNCols are 512.
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(1000, 1000);
+        instance.setCell(0L, 0L, 1d);
+        instance.setCell(0L, 600L, 2d);
+        instance.setCell(600L, 0L, 3d);
+        instance.setCell(600L, 600L, 4d);
+        instance.getCell(0L, 0L);
+        // The least recently used chunk is swapped first.
+        Grids_2D_ID_int expResult = new Grids_2D_ID_int(0, 1);
+        Grids_2D_ID_int result = instance.swapChunk();
+        assertEquals(expResult, result);
+        assertTrue(!instance.isLoaded(result));
+        assertEquals(2d, instance.getCell(0L, 600L));
+    }
+
+    /**
+     * Test of swapChunk method, of class Grids_Grid, and swapChunk method, of
+     * class Grids_Environment, when the chunk the eviction policy selects
+     * first is pinned. The next chunk selected is swapped instead.
+     */
+    @Test
+    public void testSwapChunk_Pinned() throws Exception {
+        System.out.println("swapChunk_Pinned");
+        // By default chunkNRows and chunkNCols are 512.
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(1000, 1000);
+        instance.setCell(0L, 0L, 1d);
+        instance.setCell(0L, 600L, 2d);
+        instance.setCell(600L, 0L, 3d);
+        instance.setCell(600L, 600L, 4d);
+        instance.getCell(0L, 0L);
+        // The least recently used chunk is pinned.
+        Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+        Grids_2D_ID_int i10 = new Grids_2D_ID_int(1, 0);
+        Grids_2D_ID_int i11 = new Grids_2D_ID_int(1, 1);
+        ge.getPins().pin(instance, i01);
+        try {
+            assertEquals(i10, instance.swapChunk());
+            assertTrue(instance.isLoaded(i01));
+            assertTrue(!instance.isLoaded(i10));
+            assertTrue(ge.swapChunk(false));
+            assertTrue(instance.isLoaded(i01));
+            assertTrue(!instance.isLoaded(i11));
+        } finally {
+            ge.getPins().unpin(instance, i01);
+        }
+        assertEquals(2d, instance.getCell(0L, 600L));
+        assertEquals(3d, instance.getCell(600L, 0L));
+        assertEquals(4d, instance.getCell(600L, 600L));
     }
 
     /**
@@ -1685,11 +1756,33 @@ public class Grids_GridTest {
     }
 
     /**
-     * Test of swapChunkExcept method, of class Grids_Grid.
+     * Test of swapChunkExcept method, of class Grids_Grid. The least recently
+     * used chunk is excepted and the next is pinned, so the one after that is
+     * swapped.
      */
     @Test
     public void testSwapChunkExcept() throws Exception {
-        // No test.
+        System.out.println("swapChunkExcept");
+        // By default chunkNRows and chunkNCols are 512.
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(1000, 1000);
+        instance.setCell(0L, 0L, 1d);
+        instance.setCell(0L, 600L, 2d);
+        instance.setCell(600L, 0L, 3d);
+        instance.setCell(600L, 600L, 4d);
+        instance.getCell(0L, 0L);
+        Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+        Grids_2D_ID_int i10 = new Grids_2D_ID_int(1, 0);
+        Grids_2D_ID_int i11 = new Grids_2D_ID_int(1, 1);
+        ge.getPins().pin(instance, i10);
+        try {
+            assertTrue(instance.swapChunkExcept(i01));
+            assertTrue(instance.isLoaded(i01));
+            assertTrue(instance.isLoaded(i10));
+            assertTrue(!instance.isLoaded(i11));
+        } finally {
+            ge.getPins().unpin(instance, i10);
+        }
     }
 
     /**
@@ -1788,6 +1881,73 @@ public class Grids_GridTest {
         // No test.
     }
 
+    /**
+     * Test of compact method, of class Grids_Grid. A chunk with a single
+     * value becomes a singlet, a chunk with few values that are not the most
+     * common value becomes a map and the values are unchanged. Compacting
+     * again changes nothing.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        System.out.println("compact");
+        int n = 64;
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(n);
+        gfd.setChunkNCols(n);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(2 * n, 2 * n);
+        Random random = new Random(0);
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                // Chunk (0, 0) is uniform.
+                g.setCell(row, col, 1d);
+                // Chunk (0, 1) is sparse.
+                g.setCell(row, n + col, 0d);
+                // Chunk (1, 0) is dense.
+                g.setCell(n + row, col, random.nextDouble());
+            }
+        }
+        g.setCell(3, n + 5, 5d);
+        g.setCell(n - 1, 2 * n - 1, 6d);
+        double[][] e = new double[2 * n][2 * n];
+        for (int row = 0; row < 2 * n; row++) {
+            for (int col = 0; col < 2 * n; col++) {
+                e[row][col] = g.getCell(row, col);
+            }
+        }
+        // The expected chunk classes and account.
+        Grids_AccountDetail ea = new Grids_AccountDetail();
+        Map<Grids_2D_ID_int, Class<?>> ecs = new HashMap<>();
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            ecs.put(i, new Grids_ChunkOptimizer().optimize(g.getChunk(i), ea)
+                    .getClass());
+        }
+        Grids_2D_ID_int i00 = new Grids_2D_ID_int(0, 0);
+        Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+        assertEquals(Grids_ChunkDoubleSinglet.class, ecs.get(i00));
+        assertEquals(Grids_ChunkDoubleMap.class, ecs.get(i01));
+        Grids_AccountDetail a = g.compact();
+        assertTrue(a.success);
+        assertTrue(a.bytesSaved > 0L);
+        assertEquals(ea.bytesSaved, a.bytesSaved);
+        assertEquals(ea.detail.get(g), a.detail.get(g));
+        assertTrue(a.detail.get(g).contains(i00));
+        assertTrue(a.detail.get(g).contains(i01));
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            assertEquals(ecs.get(i), g.getChunk(i).getClass());
+        }
+        for (int row = 0; row < 2 * n; row++) {
+            for (int col = 0; col < 2 * n; col++) {
+                assertEquals(e[row][col], g.getCell(row, col),
+                        "row " + row + " col " + col);
+            }
+        }
+        a = g.compact();
+        assertEquals(0L, a.bytesSaved);
+        assertTrue(a.detail.isEmpty());
+    }
+
     /**
      * Test of clearChunks method, of class Grids_Grid.
      */
@@ -2146,7 +2306,230 @@ public class Grids_GridTest {
      */
     @Test
     public void testLoadChunk() throws Exception {
-        // No test.
+        System.out.println("loadChunk");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(1000, 1000);
+        instance.setCell(0L, 0L, 1d);
+        instance.setCell(600L, 600L, 4d);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(0, 0);
+        // Chunks are written in the background and read through if in flight.
+        Grids_WriteBehind w = new Grids_WriteBehind(1, 1L);
+        ge.setWriteBehind(w);
+        try {
+            assertTrue(instance.swapChunk(i));
+            assertTrue(!instance.isLoaded(i));
+            assertTrue(instance.loadChunk(i));
+            assertEquals(1d, instance.getCell(0L, 0L));
+            assertTrue(instance.swapChunk(i));
+            ge.awaitWrites();
+            assertTrue(!instance.isInFlight(i));
+            assertTrue(instance.isStored(i));
+            assertTrue(instance.loadChunk(i));
+            assertEquals(1d, instance.getCell(0L, 0L));
+        } finally {
+            ge.setWriteBehind(null);
+            w.shutdown();
+        }
+    }
+
+    /**
+     * Test of prefetch method, of class Grids_Grid.
+     */
+    @Test
+    public void testPrefetch_Grids_Sweep_long() throws Exception {
+        System.out.println("prefetch");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(1000, 1000);
+        instance.setCell(0L, 0L, 1d);
+        instance.setCell(600L, 0L, 3d);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(1, 0);
+        assertTrue(instance.swapChunk(i));
+        Grids_Sweep sweep = new Grids_Sweep(1, 1, true);
+        instance.prefetch(sweep, 0L);
+        assertTrue(!instance.isLoaded(i));
+        assertTrue(instance.loadChunk(i));
+        assertEquals(3d, instance.getCell(600L, 0L));
+        instance.endSweep(sweep);
+    }
+
+    /**
+     * Test that a sweep only removes chunks from the notToClear of the
+     * environment that it added.
+     */
+    @Test
+    public void testEndSweep() throws Exception {
+        System.out.println("endSweep");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(16, 4);
+        Grids_2D_ID_int i0 = new Grids_2D_ID_int(0, 0);
+        Grids_2D_ID_int i1 = new Grids_2D_ID_int(1, 0);
+        Grids_2D_ID_int i3 = new Grids_2D_ID_int(3, 0);
+        ge.addToNotToClear(instance, i0);
+        Grids_Sweep sweep = new Grids_Sweep(0, 1, true);
+        instance.prefetch(sweep, 0L);
+        assertTrue(ge.getNotToClear().get(instance).contains(i0));
+        assertTrue(ge.getNotToClear().get(instance).contains(i1));
+        // Moving on releases the chunks the sweep added.
+        instance.prefetch(sweep, 12L);
+        assertTrue(ge.getNotToClear().get(instance).contains(i0));
+        assertFalse(ge.getNotToClear().get(instance).contains(i1));
+        assertTrue(ge.getNotToClear().get(instance).contains(i3));
+        instance.endSweep(sweep);
+        assertTrue(ge.getNotToClear().get(instance).contains(i0));
+        assertFalse(ge.getNotToClear().get(instance).contains(i3));
+        // The chunk was added by the caller so is still there.
+        sweep = new Grids_Sweep(0, 1, true);
+        instance.prefetch(sweep, 0L);
+        instance.endSweep(sweep);
+        assertTrue(ge.getNotToClear().get(instance).contains(i0));
+        ge.removeFromNotToClear(instance, i0);
+    }
+
+    /**
+     * Test that prefetching is limited, that prefetched chunks are counted in
+     * the resident bytes and that they are dropped when taken, when dropped
+     * and when a sweep ends.
+     */
+    @Test
+    public void testPrefetch_Set() throws Exception {
+        System.out.println("prefetch");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(16, 4);
+        Set<Grids_2D_ID_int> s = new HashSet<>();
+        for (int cr = 0; cr < 4; cr++) {
+            instance.setCell(cr * 4L, 0L, cr + 1d);
+            Grids_2D_ID_int i = new Grids_2D_ID_int(cr, 0);
+            assertTrue(instance.swapChunk(i));
+            s.add(i);
+        }
+        long resident = ge.getResidentBytes();
+        ExecutorService x = Executors.newSingleThreadExecutor();
+        ge.setPrefetchExecutor(x);
+        ge.setPrefetchLimit(2);
+        try {
+            assertEquals(2, instance.prefetch(s));
+            assertEquals(2, instance.getPrefetchedCount());
+            x.shutdown();
+            assertTrue(x.awaitTermination(1, TimeUnit.MINUTES));
+            long b = instance.getPrefetchedBytes();
+            assertTrue(b > 0L);
+            assertEquals(resident + b, ge.getResidentBytes());
+            Iterator<Grids_2D_ID_int> ite = s.iterator();
+            Grids_2D_ID_int i = ite.next();
+            while (instance.getPrefetchedCount() == 2) {
+                instance.dropPrefetched(i);
+                i = ite.next();
+            }
+            assertEquals(1, instance.getPrefetchedCount());
+            assertTrue(instance.getPrefetchedBytes() < b);
+            for (Grids_2D_ID_int j : s) {
+                assertTrue(instance.loadChunk(j));
+            }
+            assertEquals(0, instance.getPrefetchedCount());
+            assertEquals(0L, instance.getPrefetchedBytes());
+            for (int cr = 0; cr < 4; cr++) {
+                assertEquals(cr + 1d, instance.getCell(cr * 4L, 0L));
+            }
+            ge.removeFromNotToClear(instance, s);
+            // A sweep drops the chunks it prefetched when it ends.
+            for (Grids_2D_ID_int j : s) {
+                assertTrue(instance.swapChunk(j));
+            }
+            ge.setPrefetchExecutor(null);
+            Grids_Sweep sweep = new Grids_Sweep(0, 2, true);
+            instance.prefetch(sweep, 0L);
+            assertTrue(instance.getPrefetchedCount() > 0);
+            instance.endSweep(sweep);
+            assertEquals(0, instance.getPrefetchedCount());
+            assertEquals(0L, instance.getPrefetchedBytes());
+        } finally {
+            ge.setPrefetchExecutor(null);
+            ge.setPrefetchLimit(Grids_Environment.DEFAULT_PREFETCH_LIMIT);
+        }
+    }
+
+    /**
+     * Test that the resident bytes of the environment are kept up to date as
+     * chunks are loaded, swapped and removed, that there is no memory budget
+     * by default and that reserve passes over a chunk it cannot swap.
+     */
+    @Test
+    public void testReserve() throws Exception {
+        System.out.println("reserve");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        // The chunk of g is used first so it is the first victim.
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(4, 4);
+        g.setCell(0L, 0L, 1d);
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(8, 8);
+        for (int cr = 0; cr < 2; cr++) {
+            for (int cc = 0; cc < 2; cc++) {
+                instance.setCell(cr * 4L, cc * 4L, cr + cc + 1d);
+            }
+        }
+        assertEquals(0L, ge.getMemoryBudget());
+        assertTrue(ge.reserve(Long.MAX_VALUE));
+        assertEquals(getResidentBytes(), ge.getResidentBytes());
+        assertTrue(instance.getData().getBytes() > 0L);
+        // Hold the lock of the first victim in another thread.
+        Grids_EvictionPolicy.Victim v = ge.getEvictionPolicy().select(
+                ge.getGrids(), ge.getNotToClear());
+        assertSame(g, v.g);
+        ReentrantLock l = g.getLock(v.i);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService x = Executors.newSingleThreadExecutor();
+        x.execute(() -> {
+            l.lock();
+            try {
+                locked.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                l.unlock();
+            }
+        });
+        try {
+            assertTrue(locked.await(1, TimeUnit.MINUTES));
+            ge.setMemoryBudget(1L);
+            assertFalse(ge.reserve(0L));
+            assertTrue(g.isLoaded(v.i));
+            for (Grids_2D_ID_int i : instance.getChunkIDs()) {
+                assertFalse(instance.isLoaded(i));
+            }
+            assertEquals(getResidentBytes(), ge.getResidentBytes());
+        } finally {
+            done.countDown();
+            x.shutdown();
+            assertTrue(x.awaitTermination(1, TimeUnit.MINUTES));
+            ge.setMemoryBudget(0L);
+        }
+        for (int cr = 0; cr < 2; cr++) {
+            for (int cc = 0; cc < 2; cc++) {
+                assertEquals(cr + cc + 1d, instance.getCell(cr * 4L, cc * 4L));
+            }
+        }
+        assertEquals(getResidentBytes(), ge.getResidentBytes());
+        ge.removeGrid(instance);
+        assertEquals(getResidentBytes(), ge.getResidentBytes());
+    }
+
+    /**
+     * @return The sum of the bytes recorded in the chunk tables of the grids
+     * of {@link #ge} and of the bytes of the chunks they have prefetched.
+     */
+    private long getResidentBytes() {
+        long r = 0L;
+        for (Grids_Grid g : ge.getGrids()) {
+            r += g.getData().getBytes() + g.getPrefetchedBytes();
+        }
+        return r;
     }
 
     /**
@@ -2154,7 +2537,19 @@ public class Grids_GridTest {
      */
     @Test
     public void testGetChunk_int_int() throws Exception {
-        // No test.
+        System.out.println("getChunk");
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        Grids_GridDouble instance = (Grids_GridDouble) gfd.create(1000, 1000);
+        instance.setCell(600L, 0L, 3d);
+        Grids_Chunk result = instance.getChunk(1, 0);
+        assertSame(instance.getData().get(new Grids_2D_ID_int(1, 0)), result);
+        assertSame(result, instance.getChunk(1, 0));
+        // A chunk that has been swapped is loaded.
+        assertTrue(instance.swapChunk(new Grids_2D_ID_int(1, 0)));
+        result = instance.getChunk(1, 0);
+        assertEquals(3d, ((Grids_ChunkDouble) result).getCell(88, 0));
+        // There are no chunks outside the grid.
+        assertNull(instance.getChunk(2, 0));
     }
 
     /**
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_NeighbourhoodCursor;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_NeighbourhoodCursor.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_NeighbourhoodCursorTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * The radii tested including radii that are larger than the chunks and
+     * the grid.
+     */
+    static final int[] RADII = {0, 1, 2, 5, 11};
+
+    /**
+     * For getting windows using getRowProcessData of
+     * {@link Grids_Processor}.
+     */
+    static class Processor extends Grids_Processor {
+
+        private static final long serialVersionUID = 1L;
+
+        Processor(Grids_Environment e) throws Exception {
+            super(e);
+        }
+
+        double[][] getWindow(Grids_GridDouble g, double[][] previous,
+                int cellDistance, long row, long col) throws Exception {
+            return getRowProcessData(g, previous, cellDistance, row, col);
+        }
+    }
+
+    public Grids_NeighbourhoodCursorTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values. The chunks are flat arrays, except that chunk (0, 0)
+     * is optimised to a single value chunk, chunk (1, 1) to a map and chunk
+     * (2, 0) is swapped out of memory.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = gfd.create(
+                new Grids_GridDoubleStatsNotUpdated(ge),
+                new Grids_ChunkDoubleFactoryArrayFlat(), NROWS, NCOLS,
+                gfd.getDimensions());
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (row < 4L && col < 4L) {
+                    g.setCell(row, col, 3d);
+                } else if (row >= 4L && row < 8L && col >= 4L && col < 8L) {
+                    if (row == col) {
+                        g.setCell(row, col, random.nextGaussian());
+                    }
+                } else if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextGaussian());
+                }
+            }
+        }
+        g.compact();
+        assertTrue(g.swapChunk(new Grids_2D_ID_int(2, 0)));
+        return g;
+    }
+
+    /**
+     * Test that a row major sweep gives the same windows as
+     * getRowProcessData of Grids_Processor.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testMoveTo_GetRowProcessData() throws Exception {
+        System.out.println("moveTo_GetRowProcessData");
+        Grids_GridDouble g = getGrid(1);
+        for (int radius : RADII) {
+            Grids_NeighbourhoodCursor c = new Grids_NeighbourhoodCursor(g,
+                    radius);
+            int n = 2 * radius + 1;
+            double[][] e = new double[n][n];
+            for (long row = 0L; row < NROWS; row++) {
+                for (long col = 0L; col < NCOLS; col++) {
+                    e = gp.getWindow(g, e, radius, row, col);
+                    c.moveTo(row, col);
+                    assertEquals(row, c.getRow());
+                    assertEquals(col, c.getCol());
+                    double[][] rows = c.getRows();
+                    int o = c.getOffset();
+                    assertEquals(n, rows.length);
+                    for (int p = 0; p < n; p++) {
+                        for (int q = 0; q < n; q++) {
+                            String m = "radius " + radius + " row " + row
+                                    + " col " + col + " p " + p + " q " + q;
+                            assertEquals(e[p][q], rows[p][o + q], m);
+                            assertEquals(e[p][q], c.get(p, q), m);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that moving the window to cells in any order gives the window of
+     * the cell, including after cells are changed and the cursor is moved to
+     * another row.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testMoveTo() throws Exception {
+        System.out.println("moveTo");
+        Grids_GridDouble g = getGrid(2);
+        Random random = new Random(3);
+        for (int radius : RADII) {
+            Grids_NeighbourhoodCursor c = new Grids_NeighbourhoodCursor(g,
+                    radius);
+            for (int k = 0; k < 200; k++) {
+                long row = random.nextInt((int) NROWS);
+                long col = random.nextInt((int) NCOLS);
+                if (k % 50 == 49) {
+                    // Rows are read again once the cursor has moved off them
+                    // (rows beyond the grid are no data).
+                    c.moveTo(row + 2 * radius + 1, col);
+                    g.setCell(row, col, k);
+                }
+                c.moveTo(row, col);
+                for (int p = 0; p <= 2 * radius; p++) {
+                    for (int q = 0; q <= 2 * radius; q++) {
+                        double v = g.getCell(row + p - radius,
+                                col + q - radius);
+                        assertEquals(v, c.get(p, q), "radius " + radius
+                                + " row " + row + " col " + col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a negative radius is rejected.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testNeighbourhoodCursor() throws Exception {
+        System.out.println("NeighbourhoodCursor");
+        Grids_GridDouble g = getGrid(4);
+        assertThrows(IllegalArgumentException.class,
+                () -> new Grids_NeighbourhoodCursor(g, -1));
+        assertEquals(2, new Grids_NeighbourhoodCursor(g, 2).radius);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.grid.test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_SummedAreaTable;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.memory.Grids_CompressedTier;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_SummedAreaTable.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_SummedAreaTableTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    public Grids_SummedAreaTableTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells that are flat arrays with about one cell in five left as no
+     * data and the rest set to small integer values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = gfd.create(
+                new Grids_GridDoubleStatsNotUpdated(ge),
+                new Grids_ChunkDoubleFactoryArrayFlat(), NROWS, NCOLS,
+                gfd.getDimensions());
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt(21) - 10);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Asserts that the counts, sums and sums of squares of {@code t} are the
+     * same as those got by going through the cells of every window of
+     * {@code g}, including windows that extend beyond {@code g}.
+     *
+     * @param g The grid.
+     * @param t The index of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private void assertWindows(Grids_GridDouble g, Grids_SummedAreaTable t)
+            throws Exception {
+        double ndv = g.getNoDataValue();
+        for (long r0 = -1L; r0 <= NROWS; r0++) {
+            for (long r1 = r0; r1 <= NROWS; r1++) {
+                for (long c0 = -1L; c0 <= NCOLS; c0++) {
+                    for (long c1 = c0; c1 <= NCOLS; c1++) {
+                        long n = 0L;
+                        double s = 0d;
+                        double q = 0d;
+                        for (long row = r0; row <= r1; row++) {
+                            for (long col = c0; col <= c1; col++) {
+                                double v = g.getCell(row, col);
+                                if (v != ndv) {
+                                    n++;
+                                    s += v;
+                                    q += v * v;
+                                }
+                            }
+                        }
+                        String m = r0 + " " + c0 + " " + r1 + " " + c1;
+                        assertEquals(n, t.getCount(r0, c0, r1, c1), m);
+                        assertEquals(s, t.getSum(r0, c0, r1, c1), m);
+                        assertEquals(q, t.getSumSquares(r0, c0, r1, c1), m);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of getCount, getSum and getSumSquares methods, of class
+     * Grids_SummedAreaTable.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testGet() throws Exception {
+        System.out.println("get");
+        Grids_GridDouble g = getGrid(1);
+        Grids_SummedAreaTable t = new Grids_SummedAreaTable(g);
+        try {
+            assertEquals(g, t.getGrid());
+            assertWindows(g, t);
+        } finally {
+            t.close();
+        }
+    }
+
+    /**
+     * Test that the index is updated after cells are set via the grid, rows
+     * of flat array chunks are set, chunks got using getWritableChunk are
+     * set, chunks are replaced by optimised chunks and chunks are taken back
+     * from the compressed tier.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        System.out.println("update");
+        Grids_GridDouble g = getGrid(2);
+        Grids_SummedAreaTable t = new Grids_SummedAreaTable(g);
+        try {
+            // setCell
+            long n = g.getNChanges();
+            g.setCell(5L, 5L, 100d);
+            assertTrue(g.getNChanges() > n);
+            assertWindows(g, t);
+            // setRow of a flat array chunk
+            Grids_2D_ID_int i = new Grids_2D_ID_int(1, 0);
+            Grids_ChunkDouble c = g.getChunk(i);
+            assertTrue(c instanceof Grids_ChunkDoubleArrayFlat);
+            double[] row = {1d, 2d, 3d, g.getNoDataValue()};
+            n = g.getNChanges();
+            ((Grids_ChunkDoubleArrayFlat) c).setRow(2, row, 0);
+            assertTrue(g.getNChanges() > n);
+            assertEquals(3d, g.getCell(6L, 2L));
+            assertWindows(g, t);
+            // getWritableChunk
+            i = new Grids_2D_ID_int(2, 2);
+            n = g.getNChanges();
+            c = g.getWritableChunk(i);
+            assertTrue(g.getNChanges() > n);
+            c.setCell(1, 0, -7d);
+            assertEquals(-7d, g.getCell(9L, 8L));
+            assertWindows(g, t);
+            // Replacing chunks with optimised chunks
+            for (long col = 0L; col < 4L; col++) {
+                for (long r = 0L; r < 4L; r++) {
+                    g.setCell(r, col, 1d);
+                }
+            }
+            t.update();
+            n = g.getNChanges();
+            g.compact();
+            assertTrue(g.getNChanges() > n);
+            assertWindows(g, t);
+            // The compressed tier
+            ge.setCompressedTier(new Grids_CompressedTier());
+            i = new Grids_2D_ID_int(0, 1);
+            double v = g.getCell(0L, 4L);
+            assertTrue(g.swapChunk(i));
+            n = g.getNChanges();
+            assertEquals(v, g.getCell(0L, 4L));
+            assertTrue(g.getNChanges() > n);
+            assertWindows(g, t);
+        } finally {
+            t.close();
+        }
+    }
+
+    /**
+     * Test of close method, of class Grids_SummedAreaTable.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testClose() throws Exception {
+        System.out.println("close");
+        Grids_GridDouble g = getGrid(3);
+        List<Grids_Grid> gs0 = new ArrayList<>(ge.getGrids());
+        Grids_SummedAreaTable t = new Grids_SummedAreaTable(g);
+        List<Grids_Grid> gs = new ArrayList<>(ge.getGrids());
+        gs.removeAll(gs0);
+        assertEquals(3, gs.size());
+        List<Path> dirs = new ArrayList<>();
+        for (Grids_Grid x : gs) {
+            // Make sure there are files to delete.
+            x.cache();
+            Path d = Paths.get(x.getDirectory().toString());
+            assertTrue(Files.exists(d));
+            dirs.add(d);
+        }
+        t.close();
+        for (int k = 0; k < gs.size(); k++) {
+            assertFalse(ge.getGrids().contains(gs.get(k)));
+            assertFalse(Files.exists(dirs.get(k)));
+        }
+        assertTrue(ge.getGrids().contains(g));
+        assertThrows(IllegalStateException.class,
+                () -> t.getSum(0L, 0L, 1L, 1L));
+        // Closing again does nothing.
+        t.close();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.d2.stats.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryMap;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStats;
+import uk.ac.leeds.ccg.grids.d2.stats.Grids_StatsDoubleSummary;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_StatsDoubleSummary.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_StatsDoubleSummaryTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    public Grids_StatsDoubleSummaryTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param e The expected summary.
+     * @param r The summary to check.
+     */
+    private void assertSummary(Grids_StatsDoubleSummary e,
+            Grids_StatsDoubleSummary r) {
+        assertEquals(e.getN(), r.getN());
+        assertEquals(e.getMin(), r.getMin());
+        assertEquals(e.getNMin(), r.getNMin());
+        assertEquals(e.getMax(), r.getMax());
+        assertEquals(e.getNMax(), r.getNMax());
+        assertEquals(e.getExactSum(), r.getExactSum());
+        assertEquals(e.getSum(), r.getSum(), Math.ulp(e.getSum()) * 4d);
+        assertEquals(e.getMean(), r.getMean(), 1e-12 * Math.abs(e.getMean()));
+        assertEquals(e.getVariance(), r.getVariance(),
+                1e-9 * e.getVariance());
+    }
+
+    /**
+     * Test that merging summaries of parts of some values gives the same
+     * summary as adding all the values to one summary.
+     */
+    @Test
+    public void testMerge() {
+        System.out.println("merge");
+        Random random = new Random(11);
+        Grids_StatsDoubleSummary all = new Grids_StatsDoubleSummary(true);
+        Grids_StatsDoubleSummary[] parts = new Grids_StatsDoubleSummary[7];
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = new Grids_StatsDoubleSummary(true);
+        }
+        for (int n = 0; n < 5000; n++) {
+            // Rounded so that the minimum and maximum repeat.
+            double v = Math.round(random.nextGaussian() * 1000d) / 10d + 1e6;
+            all.add(v);
+            parts[random.nextInt(parts.length)].add(v);
+        }
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(true);
+        for (Grids_StatsDoubleSummary p : parts) {
+            r = Grids_StatsDoubleSummary.merge(r, p);
+        }
+        assertTrue(all.getNMin() > 0L);
+        assertSummary(all, r);
+        // Merging in a different order gives the same result.
+        Grids_StatsDoubleSummary r2 = new Grids_StatsDoubleSummary(true);
+        for (int p = parts.length - 1; p >= 0; p--) {
+            r2 = Grids_StatsDoubleSummary.merge(parts[p], r2);
+        }
+        assertSummary(all, r2);
+        // The result is only exact if both parts are.
+        assertEquals(false, Grids_StatsDoubleSummary.merge(all,
+                new Grids_StatsDoubleSummary(false)).isExact());
+    }
+
+    /**
+     * Test that adding a count of a value is the same as adding the value
+     * that many times.
+     */
+    @Test
+    public void testAdd_double_long() {
+        System.out.println("add");
+        Grids_StatsDoubleSummary e = new Grids_StatsDoubleSummary(true);
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(true);
+        double[] vs = {0.1d, -3d, 0.1d, 7.25d, -3d};
+        long[] counts = {3L, 1L, 5L, 2L, 4L};
+        for (int i = 0; i < vs.length; i++) {
+            for (long c = 0L; c < counts[i]; c++) {
+                e.add(vs[i]);
+            }
+            r.add(vs[i], counts[i]);
+        }
+        r.add(100d, 0L);
+        assertSummary(e, r);
+        assertEquals(5L, r.getNMin());
+        assertEquals(2L, r.getNMax());
+    }
+
+    /**
+     * Test that the statistics of a grid calculated by merging cached chunk
+     * summaries are the same as those recomputed from all the cell values,
+     * including after chunks are swapped and a swapped chunk is changed.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testGridDoubleStats() throws Exception {
+        System.out.println("GridDoubleStats");
+        Grids_ChunkDoubleFactory[] cfs = {new Grids_ChunkDoubleFactoryArray(),
+            new Grids_ChunkDoubleFactoryMap()};
+        for (Grids_ChunkDoubleFactory cf : cfs) {
+            Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+            gfd.setChunkNRows(4);
+            gfd.setChunkNCols(4);
+            // Singlet chunks are converted by the default chunk factory of
+            // the processor of the environment.
+            ge.getProcessor().gridFactoryDouble.setDefaultChunkFactory(cf);
+            Grids_GridDouble g = gfd.create(new Grids_GridDoubleStats(ge),
+                    gfd.gridChunkDoubleFactory, 12L, 10L,
+                    new Grids_Dimensions(12L, 10L));
+            Random random = new Random(3);
+            for (long row = 0L; row < 12L; row++) {
+                for (long col = 0L; col < 10L; col++) {
+                    if (random.nextInt(4) > 0) {
+                        g.setCell(row, col, random.nextInt(20) / 4d - 2d);
+                    }
+                }
+            }
+            Grids_GridDoubleStats s = g.getStats();
+            s.update();
+            assertSummary(recompute(g), s.getSummary());
+            // Swapped chunks are merged from their retained summaries.
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(0, 0)));
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(2, 1)));
+            s.update();
+            assertSummary(recompute(g), s.getSummary());
+            // A change to a swapped chunk is picked up.
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(1, 2)));
+            g.setCell(5L, 9L, 1000d);
+            g.setCell(0L, 0L, g.getNoDataValue());
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(1, 2)));
+            s.update();
+            Grids_StatsDoubleSummary e = recompute(g);
+            assertSummary(e, s.getSummary());
+            assertEquals(cf.create(g, new Grids_2D_ID_int(0, 1)).getClass(),
+                    g.getChunk(new Grids_2D_ID_int(0, 1)).getClass());
+            assertEquals(1000d, (double) s.getMax(false));
+        }
+    }
+
+    /**
+     * @param g The grid.
+     * @return A summary of the values of {@code g} got cell by cell.
+     * @throws Exception If encountered.
+     */
+    private Grids_StatsDoubleSummary recompute(Grids_GridDouble g)
+            throws Exception {
+        Grids_StatsDoubleSummary r = new Grids_StatsDoubleSummary(true);
+        double ndv = g.getNoDataValue();
+        for (long row = 0L; row < g.getNRows(); row++) {
+            for (long col = 0L; col < g.getNCols(); col++) {
+                double v = g.getCell(row, col);
+                if (v != ndv) {
+                    r.add(v);
+                }
+            }
+        }
+        return r;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io.test;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArray;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Dimensions;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.io.Grids_BinaryGridExporter;
+import uk.ac.leeds.ccg.grids.io.Grids_BinaryGridImporter;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_BinaryGridExporter.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_BinaryGridExporterTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+    Path dataDir;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * The layouts.
+     */
+    static final byte[] LAYOUTS = {Grids_BinaryGridImporter.LAYOUT_ROWS,
+        Grids_BinaryGridImporter.LAYOUT_TILES};
+
+    public Grids_BinaryGridExporterTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @return Dimensions for a grid of {@link #NROWS} by {@link #NCOLS} cells
+     * with a lower left corner and cellsize that are not exact doubles.
+     */
+    private static Grids_Dimensions getDimensions() {
+        BigRational xMin = BigRational.valueOf(1, 3);
+        BigRational yMin = BigRational.valueOf(-5, 2);
+        BigRational cellsize = BigRational.valueOf(1, 7);
+        return new Grids_Dimensions(xMin,
+                xMin.add(cellsize.multiply((int) NCOLS)), yMin,
+                yMin.add(cellsize.multiply((int) NROWS)), cellsize);
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGridDouble(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = gfd.create(NROWS, NCOLS, getDimensions());
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextGaussian() * 1e3d);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridInt getGridInt(long seed) throws Exception {
+        Grids_GridIntFactory gfi = gp.gridFactoryInt;
+        gfi.setChunkNRows(4);
+        gfi.setChunkNCols(4);
+        Grids_GridInt g = gfi.create(NROWS, NCOLS, getDimensions());
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt(2001) - 1000);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param layout The layout.
+     * @return A file name with the extension of the format.
+     * @throws Exception If encountered.
+     */
+    private Path getFile(byte layout) throws Exception {
+        Files.createDirectories(dataDir);
+        return Files.createTempFile(dataDir, "layout" + layout,
+                "." + Grids_BinaryGridImporter.EXTENSION);
+    }
+
+    /**
+     * @param layout The layout.
+     * @param nValues The number of values in the payload.
+     * @param w The number of bytes of each value.
+     * @param p The file.
+     * @throws Exception If encountered.
+     */
+    private void assertHeader(byte layout, long nValues, int w, Path p)
+            throws Exception {
+        Grids_BinaryGridImporter r = new Grids_BinaryGridImporter(ge,
+                new IO_Path(p));
+        try {
+            Grids_BinaryGridImporter.Header h = r.getHeader();
+            assertEquals(layout, h.layout);
+            assertEquals(NROWS, h.nrows);
+            assertEquals(NCOLS, h.ncols);
+            assertEquals(0, h.offset % 8);
+            assertEquals(nValues, h.getNValues());
+            assertEquals(w, h.getValueSize());
+            assertEquals(h.offset + nValues * w, Files.size(p));
+            Grids_Dimensions d = getDimensions();
+            assertEquals(0, d.getXMin().compareTo(h.xll));
+            assertEquals(0, d.getYMin().compareTo(h.yll));
+            assertEquals(0, d.getCellsize().compareTo(h.cellsize));
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Test that a grid of doubles including no data values, edge chunks and
+     * a swapped chunk is written in both layouts and read back with the same
+     * dimensions and values and with a different no data value. Tiles are
+     * read back as chunks and rows are read into chunks of another size.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testToBinaryFile_Double() throws Exception {
+        System.out.println("toBinaryFile_Double");
+        Grids_BinaryGridExporter ex = new Grids_BinaryGridExporter(ge);
+        for (byte layout : LAYOUTS) {
+            Grids_GridDouble g = getGridDouble(layout);
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(1, 1)));
+            double ndv = g.getNoDataValue();
+            Path p = getFile(layout);
+            try {
+                ex.toBinaryFile(g, p, layout);
+                // Edge tiles are padded to full tiles.
+                assertHeader(layout, layout
+                        == Grids_BinaryGridImporter.LAYOUT_TILES ? 12L * 12L
+                                : NROWS * NCOLS, Double.BYTES, p);
+                Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+                // Grids read from rows are chunked as set in the factory that
+                // creates them and use its default chunk factory.
+                gfd.setChunkNRows(3);
+                gfd.setChunkNCols(5);
+                double ndv2 = -1.5d;
+                gfd.setNoDataValue(ndv2);
+                Grids_GridDouble r = gfd.create(new IO_Path(p));
+                gfd.setNoDataValue(ndv);
+                assertEquals(ndv2, r.getNoDataValue());
+                assertEquals(g.getDimensions(), r.getDimensions());
+                if (layout == Grids_BinaryGridImporter.LAYOUT_TILES) {
+                    assertEquals(4, r.getChunkNRows());
+                    assertEquals(4, r.getChunkNCols());
+                } else {
+                    assertEquals(3, r.getChunkNRows());
+                    assertEquals(5, r.getChunkNCols());
+                }
+                for (Grids_2D_ID_int i : r.getChunkIDs()) {
+                    assertEquals(Grids_ChunkDoubleArray.class,
+                            r.getChunk(i).getClass());
+                }
+                for (long row = 0L; row < NROWS; row++) {
+                    for (long col = 0L; col < NCOLS; col++) {
+                        double v = g.getCell(row, col);
+                        assertEquals(v == ndv ? ndv2 : v,
+                                (double) r.getCell(row, col),
+                                "row " + row + " col " + col);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Test that a grid of ints including no data values, edge chunks and a
+     * swapped chunk is written in both layouts and read back with the same
+     * dimensions and values and with a different no data value.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testToBinaryFile_Int() throws Exception {
+        System.out.println("toBinaryFile_Int");
+        Grids_BinaryGridExporter ex = new Grids_BinaryGridExporter(ge);
+        for (byte layout : LAYOUTS) {
+            Grids_GridInt g = getGridInt(layout);
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(2, 0)));
+            Path p = getFile(layout);
+            try {
+                ex.toBinaryFile(g, p, layout);
+                assertHeader(layout, layout
+                        == Grids_BinaryGridImporter.LAYOUT_TILES ? 12L * 12L
+                                : NROWS * NCOLS, Integer.BYTES, p);
+                Grids_GridIntFactory gfi = gp.gridFactoryInt;
+                gfi.setChunkNRows(5);
+                gfi.setChunkNCols(2);
+                int ndv = g.getNoDataValue();
+                int ndv2 = 5000;
+                gfi.setNoDataValue(ndv2);
+                Grids_GridInt r = gfi.create(new IO_Path(p));
+                gfi.setNoDataValue(ndv);
+                assertEquals(ndv2, r.getNoDataValue());
+                assertEquals(g.getDimensions(), r.getDimensions());
+                if (layout == Grids_BinaryGridImporter.LAYOUT_TILES) {
+                    assertEquals(4, r.getChunkNRows());
+                    assertEquals(4, r.getChunkNCols());
+                } else {
+                    assertEquals(5, r.getChunkNRows());
+                    assertEquals(2, r.getChunkNCols());
+                }
+                for (Grids_2D_ID_int i : r.getChunkIDs()) {
+                    assertEquals(Grids_ChunkIntArray.class,
+                            r.getChunk(i).getClass());
+                }
+                for (long row = 0L; row < NROWS; row++) {
+                    for (long col = 0L; col < NCOLS; col++) {
+                        int v = g.getCell(row, col);
+                        assertEquals(v == ndv ? ndv2 : v,
+                                (int) r.getCell(row, col),
+                                "row " + row + " col " + col);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Test that an unknown layout is rejected.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testToBinaryFile_Layout() throws Exception {
+        System.out.println("toBinaryFile_Layout");
+        Grids_GridDouble g = getGridDouble(1);
+        Path p = getFile((byte) 2);
+        try {
+            assertThrows(IllegalArgumentException.class, ()
+                    -> new Grids_BinaryGridExporter(ge).toBinaryFile(g, p,
+                            (byte) 2));
+        } finally {
+            Files.deleteIfExists(p);
+        }
+    }
+}
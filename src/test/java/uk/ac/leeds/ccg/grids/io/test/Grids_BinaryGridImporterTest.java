@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.io.Grids_BinaryGridExporter;
+import uk.ac.leeds.ccg.grids.io.Grids_BinaryGridImporter;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_BinaryGridImporter.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_BinaryGridImporterTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+    Path dataDir;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * The layouts.
+     */
+    static final byte[] LAYOUTS = {Grids_BinaryGridImporter.LAYOUT_ROWS,
+        Grids_BinaryGridImporter.LAYOUT_TILES};
+
+    public Grids_BinaryGridImporterTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGridDouble(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextGaussian() * 1e3d);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridInt getGridInt(long seed) throws Exception {
+        Grids_GridIntFactory gfi = gp.gridFactoryInt;
+        gfi.setChunkNRows(4);
+        gfi.setChunkNCols(4);
+        Grids_GridInt g = (Grids_GridInt) gfi.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt());
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param prefix The prefix of the file name.
+     * @return A new file with the extension of the format.
+     * @throws Exception If encountered.
+     */
+    private Path getFile(String prefix) throws Exception {
+        Files.createDirectories(dataDir);
+        return Files.createTempFile(dataDir, prefix,
+                "." + Grids_BinaryGridImporter.EXTENSION);
+    }
+
+    /**
+     * Test that every part of every row of a grid of doubles written in both
+     * layouts is read the same as the grid, including parts that span tiles
+     * and edge tiles, and that the values can be read as ints.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testReadRow_Double() throws Exception {
+        System.out.println("readRow_Double");
+        for (byte layout : LAYOUTS) {
+            Grids_GridDouble g = getGridDouble(layout + 1);
+            Path p = getFile("double");
+            try {
+                new Grids_BinaryGridExporter(ge).toBinaryFile(g, p, layout);
+                Grids_BinaryGridImporter r = new Grids_BinaryGridImporter(ge,
+                        new IO_Path(p));
+                try {
+                    Grids_BinaryGridImporter.Header h = r.getHeader();
+                    assertEquals(Grids_BinaryGridImporter.TYPE_DOUBLE, h.type);
+                    assertEquals(g.getNoDataValue(), h.ndvDouble);
+                    assertEquals(0, h.ndv.compareTo(g.ndv));
+                    if (layout == Grids_BinaryGridImporter.LAYOUT_TILES) {
+                        assertEquals(4, h.tileNRows);
+                        assertEquals(4, h.tileNCols);
+                    }
+                    double[] dst = new double[(int) NCOLS + 2];
+                    int[] idst = new int[(int) NCOLS + 2];
+                    for (long row = 0L; row < NROWS; row++) {
+                        for (long col = 0L; col < NCOLS; col++) {
+                            int n = (int) (NCOLS - col);
+                            Arrays.fill(dst, 7d);
+                            r.readRow(row, col, dst, 1, n);
+                            r.readRow(row, col, idst, 2, n);
+                            assertEquals(7d, dst[0]);
+                            assertEquals(7d, dst[n + 1]);
+                            for (int k = 0; k < n; k++) {
+                                double v = g.getCell(row, col + k);
+                                assertEquals(v, dst[1 + k],
+                                        "row " + row + " col " + (col + k));
+                                assertEquals((int) v, idst[2 + k]);
+                            }
+                        }
+                    }
+                } finally {
+                    r.close();
+                }
+            } finally {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Test that every part of every row of a grid of ints written in both
+     * layouts is read the same as the grid, including parts that span tiles
+     * and edge tiles, and that the values can be read as doubles.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testReadRow_Int() throws Exception {
+        System.out.println("readRow_Int");
+        for (byte layout : LAYOUTS) {
+            Grids_GridInt g = getGridInt(layout + 1);
+            Path p = getFile("int");
+            try {
+                new Grids_BinaryGridExporter(ge).toBinaryFile(g, p, layout);
+                Grids_BinaryGridImporter r = new Grids_BinaryGridImporter(ge,
+                        new IO_Path(p));
+                try {
+                    Grids_BinaryGridImporter.Header h = r.getHeader();
+                    assertEquals(Grids_BinaryGridImporter.TYPE_INT, h.type);
+                    assertEquals((double) g.getNoDataValue(), h.ndvDouble);
+                    int[] dst = new int[(int) NCOLS];
+                    double[] ddst = new double[(int) NCOLS];
+                    for (long row = 0L; row < NROWS; row++) {
+                        for (long col = 0L; col < NCOLS; col++) {
+                            int n = (int) (NCOLS - col);
+                            r.readRow(row, col, dst, 0, n);
+                            r.readRow(row, col, ddst, 0, n);
+                            for (int k = 0; k < n; k++) {
+                                int v = g.getCell(row, col + k);
+                                assertEquals(v, dst[k],
+                                        "row " + row + " col " + (col + k));
+                                assertEquals((double) v, ddst[k]);
+                            }
+                        }
+                    }
+                } finally {
+                    r.close();
+                }
+            } finally {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Test that files that are not in the format, have an invalid header or
+     * are truncated are rejected.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testInvalid() throws Exception {
+        System.out.println("invalid");
+        Grids_GridDouble g = getGridDouble(3);
+        Path p = getFile("valid");
+        Path q = getFile("invalid");
+        try {
+            new Grids_BinaryGridExporter(ge).toBinaryFile(g, p,
+                    Grids_BinaryGridImporter.LAYOUT_TILES);
+            byte[] b = Files.readAllBytes(p);
+            IO_Path iq = new IO_Path(q);
+            // Not the magic number.
+            byte[] b2 = b.clone();
+            b2[0] = 0;
+            Files.write(q, b2);
+            assertThrows(IOException.class,
+                    () -> new Grids_BinaryGridImporter(ge, iq));
+            // Another version.
+            b2 = b.clone();
+            b2[4] = 2;
+            Files.write(q, b2);
+            assertThrows(IOException.class,
+                    () -> new Grids_BinaryGridImporter(ge, iq));
+            // An unknown layout.
+            b2 = b.clone();
+            b2[7] = 2;
+            Files.write(q, b2);
+            assertThrows(IOException.class,
+                    () -> new Grids_BinaryGridImporter(ge, iq));
+            // Tiles with no rows.
+            b2 = b.clone();
+            Arrays.fill(b2, 24, 28, (byte) 0);
+            Files.write(q, b2);
+            assertThrows(IOException.class,
+                    () -> new Grids_BinaryGridImporter(ge, iq));
+            // A truncated payload.
+            Files.write(q, Arrays.copyOf(b, b.length - 1));
+            assertThrows(IOException.class,
+                    () -> new Grids_BinaryGridImporter(ge, iq));
+            // A truncated header.
+            Files.write(q, Arrays.copyOf(b, 20));
+            assertThrows(IOException.class,
+                    () -> new Grids_BinaryGridImporter(ge, iq));
+            // The valid file is read.
+            new Grids_BinaryGridImporter(ge, new IO_Path(p)).close();
+        } finally {
+            Files.deleteIfExists(p);
+            Files.deleteIfExists(q);
+        }
+    }
+}
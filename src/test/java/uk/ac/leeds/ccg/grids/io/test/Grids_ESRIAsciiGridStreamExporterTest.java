@@ -0,0 +1,297 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io.test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridExporter;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridStreamExporter;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ESRIAsciiGridStreamExporter.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ESRIAsciiGridStreamExporterTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+    Path dataDir;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    public Grids_ESRIAsciiGridStreamExporterTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param random For the values.
+     * @return A value that may need up to 17 significant digits to be read
+     * back or that is in the range formatted without creating objects.
+     */
+    private static double nextDouble(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                double v = Double.longBitsToDouble(random.nextLong());
+                return Double.isFinite(v) ? v : 0d;
+            case 1:
+                return random.nextDouble();
+            case 2:
+                return random.nextGaussian() * 1e5d;
+            case 3:
+                return random.nextInt(20001) / 100d - 100d;
+            case 4:
+                return 0.1d * random.nextInt(100);
+            default:
+                return (random.nextDouble() - 0.5d) * 1e-3d;
+        }
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to values that need from 1 to 17 significant digits.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGridDouble(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, nextDouble(random));
+                }
+            }
+        }
+        g.setCell(0L, 0L, 0.1d + 0.2d);
+        g.setCell(0L, 1L, -Double.MAX_VALUE / 3d);
+        g.setCell(0L, 2L, Double.MIN_VALUE);
+        g.setCell(NROWS - 1L, NCOLS - 1L, 1e7d);
+        g.setCell(NROWS - 1L, NCOLS - 2L, 1e-3d);
+        g.setCell(NROWS - 1L, NCOLS - 3L, 9999999.999999998d);
+        return g;
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values including the extremes.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridInt getGridInt(long seed) throws Exception {
+        Grids_GridIntFactory gfi = gp.gridFactoryInt;
+        gfi.setChunkNRows(4);
+        gfi.setChunkNCols(4);
+        Grids_GridInt g = (Grids_GridInt) gfi.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        int ndv = g.getNoDataValue();
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    int v = random.nextBoolean() ? random.nextInt()
+                            : random.nextInt(2001) - 1000;
+                    g.setCell(row, col, v == ndv ? 0 : v);
+                }
+            }
+        }
+        g.setCell(0L, 0L, Integer.MAX_VALUE);
+        g.setCell(NROWS - 1L, NCOLS - 1L,
+                ndv == Integer.MIN_VALUE ? Integer.MIN_VALUE + 1
+                        : Integer.MIN_VALUE);
+        return g;
+    }
+
+    /**
+     * Writes {@code g} with {@link Grids_ESRIAsciiGridExporter} and with
+     * {@link Grids_ESRIAsciiGridStreamExporter} using pools with different
+     * parallelism and asserts that the files are the same byte for byte.
+     *
+     * @param g The grid.
+     * @param ndv The no data value to write or {@code null} to write the no
+     * data value of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private void assertSameFile(Grids_GridNumber g, String ndv)
+            throws Exception {
+        Files.createDirectories(dataDir);
+        Path e = Files.createTempFile(dataDir, "expected", ".asc");
+        Path r = Files.createTempFile(dataDir, "stream", ".asc");
+        try {
+            Grids_ESRIAsciiGridExporter ee
+                    = new Grids_ESRIAsciiGridExporter(ge);
+            if (ndv == null) {
+                ee.toAsciiFile(g, e);
+            } else {
+                ee.toAsciiFile(g, e, ndv);
+            }
+            byte[] eb = Files.readAllBytes(e);
+            int[] parallelisms = {1, 3, 16};
+            for (int p : parallelisms) {
+                ForkJoinPool pool = new ForkJoinPool(p);
+                try {
+                    Grids_ESRIAsciiGridStreamExporter re
+                            = new Grids_ESRIAsciiGridStreamExporter(ge, pool);
+                    if (ndv == null) {
+                        re.toAsciiFile(g, r);
+                    } else {
+                        re.toAsciiFile(g, r, ndv);
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+                byte[] rb = Files.readAllBytes(r);
+                assertEquals(new String(eb, StandardCharsets.UTF_8),
+                        new String(rb, StandardCharsets.UTF_8));
+                assertArrayEquals(eb, rb);
+            }
+        } finally {
+            Files.deleteIfExists(e);
+            Files.deleteIfExists(r);
+        }
+    }
+
+    /**
+     * Test that a grid of doubles is written the same as by
+     * Grids_ESRIAsciiGridExporter, including no data values, edge chunks,
+     * swapped chunks and values that need 15 to 17 significant digits.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testToAsciiFile_Double() throws Exception {
+        System.out.println("toAsciiFile_Double");
+        for (long seed = 1L; seed < 4L; seed++) {
+            Grids_GridDouble g = getGridDouble(seed);
+            assertSameFile(g, null);
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(2, 2)));
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(0, 1)));
+            assertSameFile(g, "-9999");
+        }
+    }
+
+    /**
+     * Test that a grid of ints is written the same as by
+     * Grids_ESRIAsciiGridExporter, including no data values, edge chunks and
+     * the extreme values.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testToAsciiFile_Int() throws Exception {
+        System.out.println("toAsciiFile_Int");
+        for (long seed = 1L; seed < 4L; seed++) {
+            Grids_GridInt g = getGridInt(seed);
+            assertSameFile(g, null);
+            assertTrue(g.swapChunk(new Grids_2D_ID_int(1, 2)));
+            assertSameFile(g, "-9999");
+        }
+    }
+
+    /**
+     * Test of format method, of class Grids_ESRIAsciiGridStreamExporter.
+     */
+    @Test
+    public void testFormat() {
+        System.out.println("format");
+        byte[] b = new byte[40];
+        Random random = new Random(9);
+        for (int i = 0; i < 100000; i++) {
+            double v = nextDouble(random);
+            if (i % 2 == 1) {
+                v = -v;
+            }
+            int off = i % 5;
+            int end = Grids_ESRIAsciiGridStreamExporter.format(v, b, off);
+            assertEquals(Double.toString(v), new String(b, off, end - off,
+                    StandardCharsets.US_ASCII));
+            int iv = random.nextBoolean() ? random.nextInt()
+                    : random.nextInt(2001) - 1000;
+            end = Grids_ESRIAsciiGridStreamExporter.format(iv, b, off);
+            assertEquals(Integer.toString(iv), new String(b, off, end - off,
+                    StandardCharsets.US_ASCII));
+        }
+        double[] vs = {0d, -0d, 1d, 1e-3d, 9.999999999999998E-4d, 1e7d,
+            9999999.999999998d, 0.1d + 0.2d, Double.MIN_VALUE,
+            Double.MIN_NORMAL, Double.MAX_VALUE, Math.PI, 1d / 3d, 2d / 3d,
+            123456789012345.6d, 1.0000000000000002d, 0.30000000000000004d,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double v : vs) {
+            int end = Grids_ESRIAsciiGridStreamExporter.format(v, b, 1);
+            assertEquals(Double.toString(v), new String(b, 1, end - 1,
+                    StandardCharsets.US_ASCII));
+        }
+        int[] is = {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Integer.MIN_VALUE + 1, 1000000000, 999999999};
+        for (int iv : is) {
+            int end = Grids_ESRIAsciiGridStreamExporter.format(iv, b, 1);
+            assertEquals(Integer.toString(iv), new String(b, 1, end - 1,
+                    StandardCharsets.US_ASCII));
+        }
+    }
+}
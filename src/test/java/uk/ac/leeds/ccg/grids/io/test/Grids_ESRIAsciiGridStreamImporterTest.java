@@ -0,0 +1,387 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.io.test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArray;
+import uk.ac.leeds.ccg.grids.d2.chunk.i.Grids_ChunkIntFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridInt;
+import uk.ac.leeds.ccg.grids.d2.grid.i.Grids_GridIntFactory;
+import uk.ac.leeds.ccg.grids.io.Grids_ESRIAsciiGridStreamImporter;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_ESRIAsciiGridStreamImporter.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ESRIAsciiGridStreamImporterTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Path dataDir;
+
+    public Grids_ESRIAsciiGridStreamImporterTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param s The string to parse.
+     * @return The value parsed by
+     * {@link Grids_ESRIAsciiGridStreamImporter#parseDouble(byte[], int, int)}
+     * from the bytes of {@code s} placed part way along a larger array.
+     */
+    private static double parseDouble(String s) {
+        byte[] t = s.getBytes(StandardCharsets.US_ASCII);
+        byte[] b = new byte[t.length + 6];
+        b[0] = '9';
+        b[1] = '9';
+        b[2] = '9';
+        System.arraycopy(t, 0, b, 3, t.length);
+        b[t.length + 3] = '7';
+        b[t.length + 4] = 'e';
+        b[t.length + 5] = '7';
+        return Grids_ESRIAsciiGridStreamImporter.parseDouble(b, 3,
+                t.length + 3);
+    }
+
+    /**
+     * @param s The string to parse.
+     * @return The value parsed by
+     * {@link Grids_ESRIAsciiGridStreamImporter#parseInt(byte[], int, int)}
+     * from the bytes of {@code s} placed part way along a larger array.
+     */
+    private static int parseInt(String s) {
+        byte[] t = s.getBytes(StandardCharsets.US_ASCII);
+        byte[] b = new byte[t.length + 4];
+        b[0] = '9';
+        b[1] = '9';
+        System.arraycopy(t, 0, b, 2, t.length);
+        b[t.length + 2] = '9';
+        b[t.length + 3] = '9';
+        return Grids_ESRIAsciiGridStreamImporter.parseInt(b, 2,
+                t.length + 2);
+    }
+
+    /**
+     * @param s The string to parse.
+     */
+    private static void assertParseDouble(String s) {
+        double e = Double.parseDouble(s.replace('d', 'e').replace('D', 'e'));
+        assertEquals(Double.doubleToRawLongBits(e),
+                Double.doubleToRawLongBits(parseDouble(s)), s);
+    }
+
+    /**
+     * Test of parseDouble method, of class Grids_ESRIAsciiGridStreamImporter.
+     */
+    @Test
+    public void testParseDouble() {
+        System.out.println("parseDouble");
+        String[] ss = {"0", "-0", "+0", "0.0", "-0.0", "1", "-1", "+1",
+            "12.5", ".5", "-.5", "5.", "-9999", "0.1", "0.3", "-0.7",
+            "123456789012345", "1234567890.12345", "0.000123456789012345",
+            "000000000000000000000012.5", "0.00000000000000000000000000125",
+            // Exponents
+            "1e0", "1E5", "1e+5", "1e-5", "-2.5E-3", "1e22", "1e23", "1e-22",
+            "1e-23", "4.9e-324", "2.2250738585072014E-308",
+            "1.7976931348623157e308",
+            "1e309", "-1e309", "1e-400", "123e-20", "0.5e-22", "5e00022",
+            "1e0000000000000000000005", "1e-0000000000000000000005",
+            // d and D exponent markers
+            "1d0", "1D5", "1d+5", "1d-5", "-2.5D-3", "3.14159d2", "1D-300",
+            // 16 or more significant digits
+            "1234567890123456", "12345678901234567", "123456789012345678",
+            "1234567890123456789", "12345678901234567890123",
+            "9007199254740992", "9007199254740993", "9007199254740995",
+            "0.1000000000000000055511151231257827",
+            "3.141592653589793238462643383279",
+            "1234567890123456789.5", "-98765432109876543210e-10",
+            "100000000000000000000000", "100000000000000000000001",
+            "0.30000000000000004", "2.0000000000000004",
+            "17976931348623157e292", "2.4703282292062328E-324",
+            // Integer limits
+            "-2147483648", "2147483647", "2147483648", "-2147483649",
+            "9223372036854775807", "-9223372036854775808",
+            "9223372036854775808",
+            // Special values
+            "NaN", "Infinity", "-Infinity"};
+        for (String s : ss) {
+            assertParseDouble(s);
+        }
+        // Values printed with as many digits as needed to be read back.
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            double v;
+            switch (i % 4) {
+                case 0:
+                    v = random.nextGaussian() * 1e3d;
+                    break;
+                case 1:
+                    v = Double.longBitsToDouble(random.nextLong());
+                    if (Double.isNaN(v)) {
+                        v = 0d;
+                    }
+                    break;
+                case 2:
+                    v = random.nextInt(2000001) / 1000d - 1000d;
+                    break;
+                default:
+                    v = random.nextDouble();
+            }
+            String s = Double.toString(v);
+            assertParseDouble(s);
+            assertParseDouble(s.replace('E', 'D'));
+            assertParseDouble(new BigDecimal(v).toPlainString());
+            assertEquals(v, parseDouble(s), s);
+        }
+        // Not numbers.
+        String[] bad = {"", "-", "+", ".", "e5", "1e", "1e+", "1d", "1.2.3",
+            "1-2", "abc", "--1"};
+        for (String s : bad) {
+            assertThrows(NumberFormatException.class, () -> parseDouble(s));
+        }
+    }
+
+    /**
+     * Test of parseInt method, of class Grids_ESRIAsciiGridStreamImporter.
+     */
+    @Test
+    public void testParseInt() {
+        System.out.println("parseInt");
+        int[] is = {0, 1, -1, 7, -9999, 123456789, Integer.MAX_VALUE,
+            Integer.MIN_VALUE, Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1};
+        for (int i : is) {
+            assertEquals(i, parseInt(Integer.toString(i)));
+        }
+        assertEquals(5, parseInt("+5"));
+        assertEquals(0, parseInt("-0"));
+        assertEquals(12, parseInt("0000000000000000000000012"));
+        assertEquals(Integer.MIN_VALUE, parseInt("-0002147483648"));
+        // Values that are not ints are parsed as doubles and cast.
+        assertEquals(12, parseInt("12.7"));
+        assertEquals(-12, parseInt("-12.7"));
+        assertEquals(1500, parseInt("1.5e3"));
+        assertEquals(1500, parseInt("1.5D3"));
+        assertEquals(Integer.MAX_VALUE, parseInt("2147483648"));
+        assertEquals(Integer.MIN_VALUE, parseInt("-2147483649"));
+        assertEquals(Integer.MAX_VALUE, parseInt("99999999999999999999"));
+        assertEquals(Integer.MIN_VALUE, parseInt("-99999999999999999999"));
+        assertThrows(NumberFormatException.class, () -> parseInt(""));
+        assertThrows(NumberFormatException.class, () -> parseInt("-"));
+        assertThrows(NumberFormatException.class, () -> parseInt("1x"));
+    }
+
+    /**
+     * Test that rows are read the same with and without a pool and with a
+     * buffer that is smaller than a row, and that values are written in
+     * different ways across line ends and buffer refills.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testReadRows() throws Exception {
+        System.out.println("readRows");
+        int nrows = 7;
+        int ncols = 11;
+        Random random = new Random(5);
+        double[][] e = new double[nrows][ncols];
+        StringBuilder sb = new StringBuilder();
+        sb.append("NCOLS ").append(ncols).append("\n");
+        sb.append("nrows ").append(nrows).append("\r\n");
+        sb.append("xllcorner 0\nyllcorner 0\ncellsize 1\n");
+        sb.append("NODATA_value -9999\n");
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                double v;
+                String s;
+                switch (random.nextInt(4)) {
+                    case 0:
+                        v = -9999d;
+                        s = "-9999";
+                        break;
+                    case 1:
+                        v = random.nextGaussian() * 1e-5d;
+                        s = Double.toString(v).replace('E', 'd');
+                        break;
+                    default:
+                        v = random.nextGaussian() * 1e6d;
+                        s = Double.toString(v);
+                }
+                e[row][col] = v;
+                sb.append(s).append(col == ncols - 1 ? "" : " ");
+            }
+            sb.append(row % 2 == 0 ? "\n" : "\r\n");
+        }
+        Files.createDirectories(dataDir);
+        Path p = Files.createTempFile(dataDir, "stream", ".asc");
+        try {
+            Files.write(p, sb.toString().getBytes(StandardCharsets.US_ASCII));
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                for (int k = 0; k < 4; k++) {
+                    Grids_ESRIAsciiGridStreamImporter im
+                            = new Grids_ESRIAsciiGridStreamImporter(ge,
+                                    new IO_Path(p), k < 2 ? 64 : 1 << 16);
+                    try {
+                        assertEquals(nrows, im.getHeader().nrows);
+                        assertEquals(ncols, im.getHeader().ncols);
+                        assertEquals(-9999d, im.getHeader().ndv.doubleValue());
+                        if (k % 2 == 1) {
+                            im.setPool(pool);
+                        }
+                        double[][] r = new double[nrows][ncols];
+                        im.readRows(r, 3);
+                        double[][] r2 = new double[nrows - 3][];
+                        System.arraycopy(r, 3, r2, 0, nrows - 3);
+                        im.readRows(r2, nrows - 3);
+                        for (int row = 0; row < nrows; row++) {
+                            assertArrayEquals(e[row], r[row], 0d);
+                        }
+                    } finally {
+                        im.close();
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    /**
+     * Test that the create(IO_Path) methods of Grids_GridDoubleFactory and
+     * Grids_GridIntFactory, which use this importer, create chunks of the
+     * size set in the factory using the default chunk factory of the factory,
+     * and that the values are those in the file with the no data values
+     * replaced.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCreate() throws Exception {
+        System.out.println("create");
+        int nrows = 7;
+        int ncols = 11;
+        Random random = new Random(6);
+        int[][] e = new int[nrows][ncols];
+        StringBuilder sb = new StringBuilder();
+        sb.append("ncols ").append(ncols).append("\n");
+        sb.append("nrows ").append(nrows).append("\n");
+        sb.append("xllcorner 0\nyllcorner 0\ncellsize 1\n");
+        sb.append("NODATA_value -9999\n");
+        for (int row = 0; row < nrows; row++) {
+            for (int col = 0; col < ncols; col++) {
+                e[row][col] = random.nextInt(5) == 0 ? -9999
+                        : random.nextInt(1000);
+                sb.append(e[row][col]).append(col == ncols - 1 ? "" : " ");
+            }
+            sb.append("\n");
+        }
+        Files.createDirectories(dataDir);
+        Path p = Files.createTempFile(dataDir, "stream", ".asc");
+        try {
+            Files.write(p, sb.toString().getBytes(StandardCharsets.US_ASCII));
+            Grids_Processor gp = new Grids_Processor(ge);
+            Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+            gfd.setChunkNRows(3);
+            gfd.setChunkNCols(4);
+            Grids_GridIntFactory gfi = gp.gridFactoryInt;
+            gfi.setChunkNRows(3);
+            gfi.setChunkNCols(4);
+            for (int k = 0; k < 2; k++) {
+                if (k == 0) {
+                    gfd.setDefaultChunkFactory(
+                            new Grids_ChunkDoubleFactoryArray());
+                    gfi.setDefaultChunkFactory(
+                            new Grids_ChunkIntFactoryArray());
+                } else {
+                    gfd.setDefaultChunkFactory(
+                            new Grids_ChunkDoubleFactoryArrayFlat());
+                    gfi.setDefaultChunkFactory(
+                            new Grids_ChunkIntFactoryArrayFlat());
+                }
+                Grids_GridDouble gd = gfd.create(new IO_Path(p));
+                Grids_GridInt gi = gfi.create(new IO_Path(p));
+                assertEquals(3, gd.getChunkNRows());
+                assertEquals(4, gd.getChunkNCols());
+                assertEquals(3, gi.getChunkNRows());
+                assertEquals(4, gi.getChunkNCols());
+                for (Grids_2D_ID_int i : gd.getChunkIDs()) {
+                    assertEquals(k == 0 ? Grids_ChunkDoubleArray.class
+                            : Grids_ChunkDoubleArrayFlat.class,
+                            gd.getChunk(i).getClass());
+                    assertEquals(k == 0 ? Grids_ChunkIntArray.class
+                            : Grids_ChunkIntArrayFlat.class,
+                            gi.getChunk(i).getClass());
+                }
+                // The first row of the file is the last row of the grid.
+                for (int row = 0; row < nrows; row++) {
+                    for (int col = 0; col < ncols; col++) {
+                        int v = e[nrows - 1 - row][col];
+                        assertEquals(v == -9999 ? gd.getNoDataValue() : v,
+                                gd.getCell(row, col));
+                        assertEquals(v == -9999 ? gi.getNoDataValue() : v,
+                                gi.getCell(row, col));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(p);
+        }
+    }
+}
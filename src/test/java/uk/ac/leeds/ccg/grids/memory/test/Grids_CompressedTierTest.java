@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.Grids_ChunkCompressor;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.memory.Grids_CompressedTier;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_CompressedTier.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_CompressedTierTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    public Grids_CompressedTierTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        ge.setCompressedTier(null);
+        ge.setChunkCompressor(null);
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to random values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextGaussian() * 1e3d);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param g The grid.
+     * @return The values of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private double[][] getCells(Grids_GridDouble g) throws Exception {
+        double[][] r = new double[(int) NROWS][(int) NCOLS];
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                r[row][col] = g.getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param e The expected values.
+     * @param g The grid.
+     * @throws Exception If encountered.
+     */
+    private void assertCells(double[][] e, Grids_GridDouble g)
+            throws Exception {
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                assertEquals(e[row][col], g.getCell(row, col),
+                        "row " + row + " col " + col);
+            }
+        }
+    }
+
+    /**
+     * Test that swapped chunks, including edge chunks, are held compressed,
+     * are counted in the resident bytes and are loaded from the tier with the
+     * same values.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testSwap() throws Exception {
+        System.out.println("swap");
+        Grids_CompressedTier t = new Grids_CompressedTier();
+        ge.setCompressedTier(t);
+        Grids_GridDouble g = getGrid(1);
+        double[][] e = getCells(g);
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            assertTrue(g.swapChunk(i));
+            assertFalse(g.isLoaded(i));
+            assertTrue(t.contains(g, i));
+        }
+        assertTrue(t.getBytes() > 0L);
+        assertEquals(t.getBytes(), ge.getResidentBytes());
+        assertCells(e, g);
+        for (Grids_2D_ID_int i : g.getChunkIDs()) {
+            assertFalse(t.contains(g, i));
+        }
+        assertEquals(0L, t.getBytes());
+    }
+
+    /**
+     * Test that a change to a chunk loaded from the tier is kept when the
+     * chunk is swapped into the tier again and when it is flushed to disk.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testFlush() throws Exception {
+        System.out.println("flush");
+        Grids_CompressedTier t = new Grids_CompressedTier();
+        ge.setCompressedTier(t);
+        Grids_GridDouble g = getGrid(2);
+        double[][] e = getCells(g);
+        g.swapChunks();
+        e[9][8] = 12.5d;
+        g.setCell(9L, 8L, 12.5d);
+        Grids_2D_ID_int i = new Grids_2D_ID_int(2, 2);
+        assertTrue(g.swapChunk(i));
+        assertTrue(t.contains(g, i));
+        assertCells(e, g);
+        g.swapChunks();
+        t.flush(g);
+        assertEquals(0L, t.getBytes());
+        for (Grids_2D_ID_int j : g.getChunkIDs()) {
+            assertFalse(t.contains(g, j));
+            assertFalse(g.isLoaded(j));
+        }
+        assertCells(e, g);
+    }
+
+    /**
+     * Test that chunks are written to disk when the tier is full, both with
+     * and without a chunk compressor, and are read back with the same values.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testDemote() throws Exception {
+        System.out.println("demote");
+        Grids_ChunkCompressor[] zs = {null, new Grids_ChunkCompressor()};
+        for (int k = 0; k < zs.length; k++) {
+            ge.setChunkCompressor(zs[k]);
+            Grids_CompressedTier t = new Grids_CompressedTier(1L,
+                    new Grids_ChunkCompressor());
+            ge.setCompressedTier(t);
+            Grids_GridDouble g = getGrid(3 + k);
+            double[][] e = getCells(g);
+            for (Grids_2D_ID_int i : g.getChunkIDs()) {
+                assertTrue(g.swapChunk(i));
+                assertFalse(t.contains(g, i));
+            }
+            assertEquals(0L, t.getBytes());
+            assertCells(e, g);
+        }
+    }
+}
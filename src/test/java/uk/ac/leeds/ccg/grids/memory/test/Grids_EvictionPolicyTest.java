@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.memory.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.memory.Grids_EvictionPolicy;
+import uk.ac.leeds.ccg.grids.memory.Grids_EvictionPolicyCLOCK;
+import uk.ac.leeds.ccg.grids.memory.Grids_EvictionPolicyLRU;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_EvictionPolicyLRU and Grids_EvictionPolicyCLOCK.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_EvictionPolicyTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    Grids_2D_ID_int i00 = new Grids_2D_ID_int(0, 0);
+    Grids_2D_ID_int i01 = new Grids_2D_ID_int(0, 1);
+    Grids_2D_ID_int i10 = new Grids_2D_ID_int(1, 0);
+    Grids_2D_ID_int i11 = new Grids_2D_ID_int(1, 1);
+
+    public Grids_EvictionPolicyTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @return A grid of 2 by 2 chunks each of 4 by 4 cells with a value set in
+     * each chunk in the order (0, 0), (0, 1), (1, 0), (1, 1).
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid() throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(8, 8);
+        g.setCell(0L, 0L, 1d);
+        g.setCell(0L, 4L, 2d);
+        g.setCell(4L, 0L, 3d);
+        g.setCell(4L, 4L, 4d);
+        return g;
+    }
+
+    /**
+     * Test that the LRU policy selects chunks in the order they were last
+     * loaded or got and never selects an evicted chunk.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testLRU() throws Exception {
+        System.out.println("LRU");
+        Grids_GridDouble g = getGrid();
+        Grids_EvictionPolicy p = ge.getEvictionPolicy();
+        assertEquals(Grids_EvictionPolicyLRU.class, p.getClass());
+        assertEquals(1d, g.getCell(0L, 0L));
+        assertEquals(i01, g.swapChunk());
+        assertFalse(g.isLoaded(i01));
+        assertEquals(i10, p.select(g, null));
+        assertEquals(3d, g.getCell(4L, 0L));
+        assertEquals(i11, g.swapChunk());
+        // Reloading a chunk puts it at the front.
+        assertEquals(2d, g.getCell(0L, 4L));
+        assertEquals(i00, p.select(g, null));
+        assertEquals(i10, p.select(g, Set.of(i00)));
+        // Evicted chunks are not selected.
+        assertNull(p.select(g, Set.of(i00, i01, i10)));
+        // Setting a policy tells it about the chunks already loaded.
+        Grids_EvictionPolicyLRU p2 = new Grids_EvictionPolicyLRU();
+        ge.setEvictionPolicy(p2);
+        assertEquals(i00, p2.select(g, Set.of(i01, i10)));
+    }
+
+    /**
+     * Test that the CLOCK policy gives chunks that have been got since the
+     * hand last passed them a second chance.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testCLOCK() throws Exception {
+        System.out.println("CLOCK");
+        ge.setEvictionPolicy(new Grids_EvictionPolicyCLOCK());
+        Grids_GridDouble g = getGrid();
+        // Every chunk is referenced, so the first sweep clears them all.
+        assertEquals(i00, g.swapChunk());
+        assertEquals(2d, g.getCell(0L, 4L));
+        // (0, 1) is passed over as it was got after the hand last passed.
+        assertEquals(i10, g.swapChunk());
+        // (0, 0) is reloaded behind the hand so (1, 1) is next.
+        assertEquals(1d, g.getCell(0L, 0L));
+        assertEquals(i11, g.swapChunk());
+        assertNull(ge.getEvictionPolicy().select(g, Set.of(i00, i01)));
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.process.Grids_Convolver;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_Convolver.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ConvolverTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * A box kernel.
+     */
+    static final double[][] BOX = {{0.5d, 0.5d, 0.5d}, {0.5d, 0.5d, 0.5d},
+    {0.5d, 0.5d, 0.5d}};
+
+    /**
+     * A separable kernel with weights that sum to zero.
+     */
+    static final double[][] SOBEL = {{1d, 0d, -1d}, {2d, 0d, -2d},
+    {1d, 0d, -1d}};
+
+    /**
+     * A kernel that is not separable with weights that sum to zero.
+     */
+    static final double[][] LAPLACIAN = {{0d, 1d, 0d}, {1d, -4d, 1d},
+    {0d, 1d, 0d}};
+
+    public Grids_ConvolverTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in three left as no data and the rest
+     * set to values between -2 and 2 in steps of 0.5, except for rows 1 to 3
+     * and columns 1 to 3 which all have values.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(3) > 0 || (row > 0L && row < 4L
+                        && col > 0L && col < 4L)) {
+                    g.setCell(row, col, random.nextInt(9) / 2d - 2d);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param n The number of rows and columns.
+     * @param nz The number of weights to make non zero.
+     * @param seed The seed for the weights.
+     * @return A kernel of mostly positive weights that is not separable.
+     */
+    private static double[][] getKernel(int n, int nz, long seed) {
+        Random random = new Random(seed);
+        double[][] r = new double[n][n];
+        for (int k = 0; k < nz; k++) {
+            r[random.nextInt(n)][random.nextInt(n)] = random.nextDouble();
+        }
+        r[0][0] = 1d;
+        r[n - 1][0] = 0d;
+        r[n / 2][n / 2] = 2d;
+        return r;
+    }
+
+    /**
+     * Test of getStrategy method, of class Grids_Convolver.
+     */
+    @Test
+    public void testGetStrategy() {
+        System.out.println("getStrategy");
+        assertEquals(Grids_Convolver.BOX, Grids_Convolver.getStrategy(BOX));
+        assertEquals(Grids_Convolver.SEPARABLE,
+                Grids_Convolver.getStrategy(SOBEL));
+        assertEquals(Grids_Convolver.DIRECT,
+                Grids_Convolver.getStrategy(LAPLACIAN));
+        assertEquals(Grids_Convolver.DIRECT,
+                Grids_Convolver.getStrategy(getKernel(5, 12, 1)));
+        assertEquals(Grids_Convolver.FFT, Grids_Convolver.getStrategy(
+                getKernel(41, 41 * 41 * 4, 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> Grids_Convolver.getStrategy(new double[2][2]));
+    }
+
+    /**
+     * Convolves {@code g} with {@code w} cell by cell.
+     *
+     * @param g The grid.
+     * @param w The kernel.
+     * @return The weighted sums and the sums of the weights of the cells with
+     * values with {@code NaN} where no cells with non zero weights have
+     * values.
+     * @throws Exception If encountered.
+     */
+    private double[][][] convolve(Grids_GridDouble g, double[][] w)
+            throws Exception {
+        int R = w.length / 2;
+        double ndv = g.getNoDataValue();
+        double[][][] r = new double[2][(int) NROWS][(int) NCOLS];
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                double s = 0d;
+                double sw = 0d;
+                boolean hasValue = false;
+                for (int p = 0; p < w.length; p++) {
+                    for (int q = 0; q < w.length; q++) {
+                        double v = g.getCell(row - R + p, col - R + q);
+                        if (v != ndv && w[p][q] != 0d) {
+                            s += w[p][q] * v;
+                            sw += w[p][q];
+                            hasValue = true;
+                        }
+                    }
+                }
+                r[0][row][col] = hasValue ? s : Double.NaN;
+                r[1][row][col] = hasValue ? sw : Double.NaN;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param e The expected sums.
+     * @param r The result of the convolution.
+     * @param sumAbs The sum of the absolute weights.
+     * @param all If {@code true} then cells must have values where they are
+     * expected to, otherwise cells may be no data where the sum of the
+     * weights is zero.
+     * @param m The message.
+     */
+    private void assertSums(double[][][] e, Grids_GridDouble[] r,
+            double sumAbs, boolean all, String m) throws Exception {
+        double ndv = r[0].getNoDataValue();
+        double tol = 1e-9d * sumAbs * 2d;
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                String mc = m + " row " + row + " col " + col;
+                double s = r[0].getCell(row, col);
+                double sw = r[1].getCell(row, col);
+                assertEquals(s == ndv, sw == ndv, mc);
+                if (Double.isNaN(e[0][row][col])) {
+                    assertEquals(ndv, s, mc);
+                } else if (s != ndv || all) {
+                    assertEquals(e[0][row][col], s, tol, mc);
+                    assertEquals(e[1][row][col], sw, tol, mc);
+                } else {
+                    assertEquals(0d, e[1][row][col], tol, mc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the strategies give the same results as each other and as
+     * convolving cell by cell on a grid with no data values using tiles that
+     * are smaller than the grid. Where the weights sum to zero there are
+     * values if any cell with a non zero weight has a value, except with
+     * {@link Grids_Convolver#FFT} which cannot tell these cells apart from
+     * those where no cells have values.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testConvolve() throws Exception {
+        System.out.println("convolve");
+        Grids_GridDouble g = getGrid(1);
+        double[][][] ws = {BOX, SOBEL, LAPLACIAN, getKernel(5, 12, 2)};
+        Grids_Convolver[] cs = {new Grids_Convolver(ge),
+            new Grids_Convolver(ge, 4, 8)};
+        for (double[][] w : ws) {
+            double[][][] e = convolve(g, w);
+            double sumAbs = 0d;
+            for (double[] wp : w) {
+                for (double x : wp) {
+                    sumAbs += Math.abs(x);
+                }
+            }
+            int s = Grids_Convolver.getStrategy(w);
+            int[] strategies = {s, Grids_Convolver.DIRECT,
+                Grids_Convolver.FFT};
+            for (Grids_Convolver c : cs) {
+                for (int strategy : strategies) {
+                    Grids_GridDouble[] r = c.convolve(g, w,
+                            gp.gridFactoryDouble, strategy);
+                    assertSums(e, r, sumAbs,
+                            strategy != Grids_Convolver.FFT,
+                            "strategy " + strategy + " tile size "
+                            + c.getTileSize());
+                }
+            }
+        }
+        // The weights sum to zero where cells have values.
+        Grids_GridDouble[] r = new Grids_Convolver(ge).convolve(g, LAPLACIAN,
+                gp.gridFactoryDouble);
+        assertEquals(0d, (double) r[1].getCell(2L, 2L));
+        r = new Grids_Convolver(ge).convolve(g, SOBEL, gp.gridFactoryDouble);
+        assertEquals(0d, (double) r[1].getCell(2L, 2L));
+        assertTrue(r[0].getCell(2L, 2L) != r[0].getNoDataValue());
+    }
+
+    /**
+     * Test that a strategy that is not suitable for the kernel is rejected.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testConvolve_Strategy() throws Exception {
+        System.out.println("convolve_Strategy");
+        Grids_GridDouble g = getGrid(2);
+        Grids_Convolver c = new Grids_Convolver(ge);
+        assertThrows(IllegalArgumentException.class, () -> c.convolve(g,
+                SOBEL, gp.gridFactoryDouble, Grids_Convolver.BOX));
+        assertThrows(IllegalArgumentException.class, () -> c.convolve(g,
+                LAPLACIAN, gp.gridFactoryDouble, Grids_Convolver.SEPARABLE));
+        assertThrows(IllegalArgumentException.class, () -> c.convolve(g,
+                BOX, gp.gridFactoryDouble, 7));
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process.test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDoubleFactoryArrayFlat;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleStatsNotUpdated;
+import uk.ac.leeds.ccg.grids.process.Grids_FocalOperation;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+
+/**
+ * Test class for Grids_FocalOperation.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_FocalOperationTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * The reducers tested.
+     */
+    static final Grids_FocalOperation.Reducer[] REDUCERS = {
+        Grids_FocalOperation.SUM, Grids_FocalOperation.MEAN,
+        Grids_FocalOperation.MIN, Grids_FocalOperation.MAX,
+        Grids_FocalOperation.VARIANCE, Grids_FocalOperation.MEDIAN,
+        Grids_FocalOperation.MAJORITY,
+        Grids_FocalOperation.reducer(v -> v.length),
+        // No result unless there are at least three values.
+        (v, w, n) -> n < 3 ? Double.NaN : v[n - 1] - v[0]};
+
+    public Grids_FocalOperationTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells that are flat arrays with about one cell in five left as no
+     * data and the rest set to small integer values, except that chunk (0, 0)
+     * is optimised to a single value chunk and chunk (2, 0) is swapped out of
+     * memory.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(long seed) throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = gfd.create(
+                new Grids_GridDoubleStatsNotUpdated(ge),
+                new Grids_ChunkDoubleFactoryArrayFlat(), NROWS, NCOLS,
+                gfd.getDimensions());
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (row < 4L && col < 4L) {
+                    g.setCell(row, col, 2d);
+                } else if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt(5) - 2);
+                }
+            }
+        }
+        g.compact();
+        assertTrue(g.swapChunk(new Grids_2D_ID_int(2, 0)));
+        return g;
+    }
+
+    /**
+     * Asserts that {@code r} is the result of applying {@code reducer} to the
+     * window {@code w} of each cell of {@code g} worked out cell by cell.
+     *
+     * @param g The input grid.
+     * @param w The window.
+     * @param reducer The reducer.
+     * @param skipNoData If {@code true} then cells that have no data in
+     * {@code g} are expected to have no data in {@code r}.
+     * @param r The result.
+     * @param m The message.
+     * @throws Exception If encountered.
+     */
+    private void assertApply(Grids_GridDouble g, double[][] w,
+            Grids_FocalOperation.Reducer reducer, boolean skipNoData,
+            Grids_GridDouble r, String m) throws Exception {
+        int R = w.length / 2;
+        double ndv = g.getNoDataValue();
+        assertEquals(ndv, r.getNoDataValue(), m);
+        assertEquals(NROWS, r.getNRows(), m);
+        assertEquals(NCOLS, r.getNCols(), m);
+        double[] v = new double[w.length * w.length];
+        double[] vw = new double[v.length];
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                String mc = m + " row " + row + " col " + col;
+                double e = ndv;
+                if (!skipNoData || g.getCell(row, col) != ndv) {
+                    int n = 0;
+                    for (int p = 0; p < w.length; p++) {
+                        for (int q = 0; q < w.length; q++) {
+                            double x = g.getCell(row + p - R, col + q - R);
+                            if (w[p][q] != 0d && x != ndv) {
+                                v[n] = x;
+                                vw[n] = w[p][q];
+                                n++;
+                            }
+                        }
+                    }
+                    if (n > 0) {
+                        double y = reducer.reduce(v, vw, n);
+                        if (!Double.isNaN(y)) {
+                            e = y;
+                        }
+                    }
+                }
+                assertEquals(e, r.getCell(row, col), mc);
+            }
+        }
+    }
+
+    /**
+     * Test of the reducers, of class Grids_FocalOperation.
+     */
+    @Test
+    public void testReducers() {
+        System.out.println("reducers");
+        double[] v = {3d, 1d, 3d, 4d, 1d, 9d};
+        double[] w = {1d, 2d, 1d, 0.5d, 0.5d, 1d};
+        // Only the first 5 values are for the window.
+        int n = 5;
+        assertEquals(10.5d, Grids_FocalOperation.SUM.reduce(v, w, n));
+        assertEquals(2.1d, Grids_FocalOperation.MEAN.reduce(v, w, n), 1e-15d);
+        assertEquals(1d, Grids_FocalOperation.MIN.reduce(v, w, n));
+        assertEquals(4d, Grids_FocalOperation.MAX.reduce(v, w, n));
+        // ((0.9^2 * 2) + (1.1^2 * 2.5) + (1.9^2 * 0.5)) / 5
+        assertEquals(1.29d, Grids_FocalOperation.VARIANCE.reduce(v, w, n),
+                1e-14d);
+        assertEquals(3d, Grids_FocalOperation.MEDIAN.reduce(v, w, n));
+        assertEquals(3d, Grids_FocalOperation.MEDIAN.reduce(v, w, 4));
+        assertEquals(2d, Grids_FocalOperation.MEDIAN.reduce(v, w, 2));
+        // The weights of 1 sum to 2.5 and those of 3 to 2.
+        assertEquals(1d, Grids_FocalOperation.MAJORITY.reduce(v, w, n));
+        // The weights of 1 and 3 both sum to 2.
+        assertEquals(1d, Grids_FocalOperation.MAJORITY.reduce(v, w, 4));
+        assertEquals(3d, Grids_FocalOperation.MAJORITY.reduce(v,
+                new double[]{2d, 1d, 1d, 1d}, 4));
+        // Weights that sum to zero.
+        double[] w0 = {1d, -1d};
+        assertTrue(Double.isNaN(Grids_FocalOperation.MEAN.reduce(v, w0, 2)));
+        assertTrue(Double.isNaN(
+                Grids_FocalOperation.VARIANCE.reduce(v, w0, 2)));
+        // A single value.
+        assertEquals(0d, Grids_FocalOperation.VARIANCE.reduce(v, w, 1));
+        assertEquals(3d, Grids_FocalOperation.MEDIAN.reduce(v, w, 1));
+        // reducer is only given the values for the window.
+        Grids_FocalOperation.Reducer r = Grids_FocalOperation.reducer(
+                x -> x.length * 100d + x[x.length - 1]);
+        assertEquals(501d, r.reduce(v, w, n));
+    }
+
+    /**
+     * Test of square, circle and annulus methods, of class
+     * Grids_FocalOperation.
+     */
+    @Test
+    public void testWindows() {
+        System.out.println("windows");
+        double[][] s = Grids_FocalOperation.square(1);
+        assertEquals(3, s.length);
+        for (double[] sp : s) {
+            assertArrayEquals(new double[]{1d, 1d, 1d}, sp, 0d);
+        }
+        assertArrayEquals(new double[]{1d},
+                Grids_FocalOperation.square(0)[0], 0d);
+        double[][] c = Grids_FocalOperation.circle(1d);
+        assertEquals(3, c.length);
+        assertArrayEquals(new double[]{0d, 1d, 0d}, c[0], 0d);
+        assertArrayEquals(new double[]{1d, 1d, 1d}, c[1], 0d);
+        assertArrayEquals(new double[]{0d, 1d, 0d}, c[2], 0d);
+        c = Grids_FocalOperation.circle(1.5d);
+        for (double[] cp : c) {
+            assertArrayEquals(new double[]{1d, 1d, 1d}, cp, 0d);
+        }
+        double[][] a = Grids_FocalOperation.annulus(1d, 1d);
+        assertArrayEquals(new double[]{0d, 1d, 0d}, a[0], 0d);
+        assertArrayEquals(new double[]{1d, 0d, 1d}, a[1], 0d);
+        assertArrayEquals(new double[]{0d, 1d, 0d}, a[2], 0d);
+        a = Grids_FocalOperation.annulus(2d, 2.5d);
+        assertEquals(5, a.length);
+        assertEquals(0d, a[2][2]);
+        assertEquals(0d, a[1][1]);
+        assertEquals(1d, a[0][2]);
+        assertEquals(1d, a[0][1]);
+        assertEquals(0d, a[0][0]);
+    }
+
+    /**
+     * Test that applying each reducer with square, circle, annulus and
+     * weighted windows, with and without skipping cells that have no data
+     * and with pools of different sizes, gives the same result as working it
+     * out cell by cell. The result grids have chunks that are not the same
+     * shape as those of the input grid.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testApply() throws Exception {
+        System.out.println("apply");
+        Grids_GridDouble g = getGrid(1);
+        double[][] weighted = {{0d, 0.5d, 0d}, {1d, 2d, 3d},
+        {0d, 0.25d, 0d}};
+        double[][][] ws = {Grids_FocalOperation.square(0),
+            Grids_FocalOperation.square(1), Grids_FocalOperation.circle(2d),
+            Grids_FocalOperation.annulus(2d, 3d), weighted,
+            Grids_FocalOperation.square(6)};
+        ForkJoinPool[] pools = {new ForkJoinPool(1), new ForkJoinPool(3)};
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(3);
+        gfd.setChunkNCols(5);
+        try {
+            for (ForkJoinPool pool : pools) {
+                Grids_FocalOperation f = new Grids_FocalOperation(ge, pool);
+                assertEquals(pool, f.getPool());
+                assertFalse(f.isSkipNoData());
+                for (boolean skipNoData : new boolean[]{false, true}) {
+                    f.setSkipNoData(skipNoData);
+                    for (int i = 0; i < ws.length; i++) {
+                        for (int j = 0; j < REDUCERS.length; j++) {
+                            Grids_GridDouble r = f.apply(g, ws[i],
+                                    REDUCERS[j], gfd);
+                            assertApply(g, ws[i], REDUCERS[j], skipNoData,
+                                    r, "parallelism "
+                                    + pool.getParallelism() + " skipNoData "
+                                    + skipNoData + " window " + i
+                                    + " reducer " + j);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (ForkJoinPool pool : pools) {
+                pool.shutdown();
+            }
+        }
+        // The common pool.
+        Grids_FocalOperation f = new Grids_FocalOperation(ge);
+        assertEquals(ForkJoinPool.commonPool(), f.getPool());
+        Grids_GridDouble r = f.apply(g, Grids_FocalOperation.square(2),
+                Grids_FocalOperation.MEDIAN, gfd);
+        assertApply(g, Grids_FocalOperation.square(2),
+                Grids_FocalOperation.MEDIAN, false, r, "commonPool");
+    }
+
+    /**
+     * Test that windows that are not square or have an even number of rows
+     * and columns are rejected.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testApply_Window() throws Exception {
+        System.out.println("apply_Window");
+        Grids_GridDouble g = getGrid(2);
+        Grids_FocalOperation f = new Grids_FocalOperation(ge);
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        assertThrows(IllegalArgumentException.class, () -> f.apply(g,
+                new double[2][2], Grids_FocalOperation.SUM, gfd));
+        assertThrows(IllegalArgumentException.class, () -> f.apply(g,
+                new double[][]{{1d, 1d, 1d}, {1d}, {1d, 1d, 1d}},
+                Grids_FocalOperation.SUM, gfd));
+        assertThrows(IllegalArgumentException.class, () -> f.apply(g,
+                new double[3][5], Grids_FocalOperation.SUM, gfd));
+    }
+}
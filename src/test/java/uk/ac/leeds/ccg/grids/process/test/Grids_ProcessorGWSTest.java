@@ -0,0 +1,269 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process.test;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_GridNumber;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.d2.util.Grids_Kernel;
+import uk.ac.leeds.ccg.grids.process.Grids_ProcessorGWS;
+import uk.ac.leeds.ccg.math.number.Math_BigRationalSqrt;
+
+/**
+ * Test class for Grids_ProcessorGWS.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_ProcessorGWSTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_ProcessorGWS gp;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    /**
+     * The statistics calculated.
+     */
+    static final List<String> STATISTICS = Arrays.asList("Sum", "WSum",
+            "NWSum", "WSumN", "Mean", "WMean1", "WMean2", "NWMean", "WMeanN",
+            "WeightedSecondOrder");
+
+    public Grids_ProcessorGWSTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_ProcessorGWS(ge);
+    }
+
+    @AfterEach
+    public void tearDown() {
+    }
+
+    /**
+     * @param offset The value added to every value.
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells in chunks of 4
+     * by 4 cells with about one cell in five left as no data and the rest set
+     * to {@code offset} plus a random value.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(double offset, long seed)
+            throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(4);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, offset + random.nextGaussian());
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param r The statistics.
+     * @param name The name of a statistic.
+     * @return The grid of the statistic called {@code name} in {@code r}.
+     */
+    private static Grids_GridDouble get(List<Grids_GridNumber> r,
+            String name) {
+        for (Grids_GridNumber x : r) {
+            if (x.getName().startsWith(name + "_")) {
+                return (Grids_GridDouble) x;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /**
+     * @param g The grid.
+     * @param exact What {@link Grids_ProcessorGWS#exact} is set to.
+     * @return The statistics of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private List<Grids_GridNumber> getStatistics(Grids_GridDouble g,
+            boolean exact) throws Exception {
+        int oom = -10;
+        RoundingMode rm = RoundingMode.HALF_UP;
+        gp.setExact(exact);
+        return gp.regionUnivariateStatistics(g, STATISTICS,
+                new Math_BigRationalSqrt(BigRational.valueOf(4), oom, rm),
+                BigRational.ONE, 1, gp.gridFactoryDouble, oom, rm);
+    }
+
+    /**
+     * Test that the statistics calculated in double precision are the same
+     * as those calculated exactly to within a few units in the last place,
+     * including for values with a large offset, and are no data in the same
+     * cells.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRegionUnivariateStatistics() throws Exception {
+        System.out.println("regionUnivariateStatistics");
+        assertTrue(gp.isExact());
+        double[] offsets = {0d, 1e6d};
+        for (int k = 0; k < offsets.length; k++) {
+            Grids_GridDouble g = getGrid(offsets[k], k + 1);
+            List<Grids_GridNumber> e = getStatistics(g, true);
+            List<Grids_GridNumber> r = getStatistics(g, false);
+            assertFalse(gp.isExact());
+            assertEquals(e.size(), r.size());
+            for (int i = 0; i < e.size(); i++) {
+                Grids_GridDouble eg = (Grids_GridDouble) e.get(i);
+                Grids_GridDouble rg = (Grids_GridDouble) r.get(i);
+                assertEquals(eg.getName(), rg.getName());
+                double ndv = eg.getNoDataValue();
+                for (long row = 0L; row < NROWS; row++) {
+                    for (long col = 0L; col < NCOLS; col++) {
+                        double ev = eg.getCell(row, col);
+                        double rv = rg.getCell(row, col);
+                        String m = eg.getName() + " row " + row + " col "
+                                + col;
+                        assertEquals(ev == ndv, rv == ndv, m);
+                        if (ev != ndv) {
+                            assertEquals(ev, rv,
+                                    1e-14d * Math.max(1d, Math.abs(ev)), m);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the weighted second order statistics of the cells in row 0
+     * and column 0, where the windows used to be those of other cells, are
+     * calculated from the window of each cell. The expected values are
+     * calculated cell by cell from the kernel weights, the values and the
+     * weighted means.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testRegionUnivariateStatistics_SecondOrder() throws Exception {
+        System.out.println("regionUnivariateStatistics_SecondOrder");
+        int oom = -10;
+        RoundingMode rm = RoundingMode.HALF_UP;
+        Math_BigRationalSqrt distance = new Math_BigRationalSqrt(
+                BigRational.valueOf(4), oom, rm);
+        Grids_GridDouble g = getGrid(0d, 3);
+        double ndv = g.getNoDataValue();
+        BigRational[][] kernel = Grids_Kernel.getKernelWeights(g, distance,
+                BigRational.ONE, 1, oom, rm);
+        int cd = kernel.length / 2;
+        boolean[] exacts = {true, false};
+        for (boolean exact : exacts) {
+            gp.setExact(exact);
+            List<Grids_GridNumber> r = gp.regionUnivariateStatistics(g,
+                    Arrays.asList("WMean1", "WeightedSecondOrder"), distance,
+                    BigRational.ONE, 1, gp.gridFactoryDouble, oom, rm);
+            Grids_GridDouble wMean = get(r, "WMean1");
+            Grids_GridDouble wProp = get(r, "WProp");
+            Grids_GridDouble wVar = get(r, "WVar");
+            Grids_GridDouble wSkew = get(r, "WSkew");
+            for (long row = 0L; row < NROWS; row++) {
+                for (long col = 0L; col < NCOLS; col++) {
+                    if (row != 0L && col != 0L) {
+                        continue;
+                    }
+                    double sw = 0d;
+                    double s1 = 0d;
+                    double s2 = 0d;
+                    double s3 = 0d;
+                    for (int p = 0; p < kernel.length; p++) {
+                        for (int q = 0; q < kernel.length; q++) {
+                            long rr = row + p - cd;
+                            long cc = col + q - cd;
+                            double v = g.getCell(rr, cc);
+                            if (v != ndv && kernel[p][q].compareTo(g.ndv)
+                                    != 0) {
+                                double w = kernel[p][q].doubleValue();
+                                double d = v - wMean.getCell(rr, cc);
+                                sw += w;
+                                s1 += d * w;
+                                s2 += d * d * w;
+                                s3 += d * d * d * w;
+                            }
+                        }
+                    }
+                    String m = "exact " + exact + " row " + row + " col "
+                            + col;
+                    if (sw > 0d) {
+                        assertClose(s1 / sw, wProp.getCell(row, col), m);
+                        assertClose(s2 / sw, wVar.getCell(row, col), m);
+                        assertClose(Math.cbrt(s3 / sw),
+                                wSkew.getCell(row, col), m);
+                    } else {
+                        assertEquals(ndv, wProp.getCell(row, col), m);
+                        assertEquals(ndv, wVar.getCell(row, col), m);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param e The expected value.
+     * @param r The result.
+     * @param m The message.
+     */
+    private static void assertClose(double e, double r, String m) {
+        assertEquals(e, r, 1e-12d * Math.max(1d, Math.abs(e)), m);
+    }
+}
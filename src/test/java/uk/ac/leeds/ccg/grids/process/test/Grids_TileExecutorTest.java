@@ -0,0 +1,295 @@
+/*
+ * Copyright 2020 Andy Turner, University of Leeds.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.leeds.ccg.grids.process.test;
+
+import ch.obermuhlner.math.big.BigRational;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.ac.leeds.ccg.generic.core.Generic_Environment;
+import uk.ac.leeds.ccg.generic.io.Generic_Defaults;
+import uk.ac.leeds.ccg.io.IO_Path;
+import uk.ac.leeds.ccg.grids.core.Grids_Environment;
+import uk.ac.leeds.ccg.grids.core.Grids_Strings;
+import uk.ac.leeds.ccg.grids.d2.Grids_2D_ID_int;
+import uk.ac.leeds.ccg.grids.d2.chunk.d.Grids_ChunkDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.Grids_Grid;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDouble;
+import uk.ac.leeds.ccg.grids.d2.grid.d.Grids_GridDoubleFactory;
+import uk.ac.leeds.ccg.grids.process.Grids_Processor;
+import uk.ac.leeds.ccg.grids.process.Grids_TileExecutor;
+
+/**
+ * Test class for Grids_TileExecutor.
+ *
+ * @author Andy Turner
+ * @version 1.0
+ */
+public class Grids_TileExecutorTest {
+
+    Generic_Environment env;
+    Grids_Environment ge;
+    Grids_Processor gp;
+    ForkJoinPool pool;
+
+    /**
+     * The number of rows of the test grids which is not a multiple of the
+     * number of rows in a chunk.
+     */
+    static final long NROWS = 10L;
+
+    /**
+     * The number of columns of the test grids which is not a multiple of the
+     * number of columns in a chunk.
+     */
+    static final long NCOLS = 9L;
+
+    public Grids_TileExecutorTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path dataDir = Paths.get(System.getProperty("user.home"),
+                Grids_Strings.s_data);
+        env = new Generic_Environment(new Generic_Defaults(
+                Paths.get(dataDir.toString(), Grids_Strings.s_generic)));
+        IO_Path dir = new IO_Path(dataDir);
+        ge = new Grids_Environment(env, dir);
+        gp = new Grids_Processor(ge);
+        pool = new ForkJoinPool(3);
+        gp.setTileExecutor(new Grids_TileExecutor(ge, pool));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * @param chunkNRows The number of rows in a chunk.
+     * @param seed The seed for the values.
+     * @return A grid of {@link #NROWS} by {@link #NCOLS} cells with about one
+     * cell in five set to no data and the rest set to values between -2 and
+     * 2 in steps of 0.5.
+     * @throws Exception If encountered.
+     */
+    private Grids_GridDouble getGrid(int chunkNRows, long seed)
+            throws Exception {
+        Grids_GridDoubleFactory gfd = gp.gridFactoryDouble;
+        gfd.setChunkNRows(chunkNRows);
+        gfd.setChunkNCols(4);
+        Grids_GridDouble g = (Grids_GridDouble) gfd.create(NROWS, NCOLS);
+        Random random = new Random(seed);
+        for (long row = 0L; row < NROWS; row++) {
+            for (long col = 0L; col < NCOLS; col++) {
+                if (random.nextInt(5) > 0) {
+                    g.setCell(row, col, random.nextInt(9) / 2d - 2d);
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * @param g The grid.
+     * @return The values of {@code g}.
+     * @throws Exception If encountered.
+     */
+    private double[][] getCells(Grids_GridDouble g) throws Exception {
+        double[][] r = new double[(int) NROWS][(int) NCOLS];
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                r[row][col] = g.getCell(row, col);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @param e The expected values.
+     * @param g The grid.
+     * @throws Exception If encountered.
+     */
+    private void assertCells(double[][] e, Grids_GridDouble g)
+            throws Exception {
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                assertEquals(e[row][col], g.getCell(row, col),
+                        "row " + row + " col " + col);
+            }
+        }
+    }
+
+    /**
+     * Test of isAligned method, of class Grids_TileExecutor.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testIsAligned() throws Exception {
+        System.out.println("isAligned");
+        Grids_GridDouble g = getGrid(4, 1);
+        assertTrue(Grids_TileExecutor.isAligned(g));
+        assertTrue(Grids_TileExecutor.isAligned(g, getGrid(4, 2), g));
+        assertFalse(Grids_TileExecutor.isAligned(g, getGrid(3, 2)));
+    }
+
+    /**
+     * Test that a kernel is applied to every chunk including chunks that were
+     * swapped and edge chunks, and is given the chunks of the input grids
+     * with the same chunk ID.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testExecute() throws Exception {
+        System.out.println("execute");
+        Grids_GridDouble g = getGrid(4, 1);
+        Grids_GridDouble r = getGrid(4, 2);
+        double[][] e = getCells(g);
+        assertTrue(g.swapChunk(new Grids_2D_ID_int(1, 1)));
+        assertTrue(r.swapChunk(new Grids_2D_ID_int(2, 2)));
+        double ndv = g.getNoDataValue();
+        new Grids_TileExecutor(ge, pool).execute(r, new Grids_Grid[]{g},
+                (i, c, cs) -> {
+                    Grids_ChunkDouble rc = (Grids_ChunkDouble) c;
+                    Grids_ChunkDouble gc = (Grids_ChunkDouble) cs[0];
+                    assertEquals(i, gc.getId());
+                    int cnr = r.getChunkNRows(i.getRow());
+                    int cnc = r.getChunkNCols(i.getCol());
+                    for (int ccr = 0; ccr < cnr; ccr++) {
+                        for (int ccc = 0; ccc < cnc; ccc++) {
+                            double v = gc.getCell(ccr, ccc);
+                            rc.setCell(ccr, ccc, v == ndv ? ndv
+                                    : v + i.getRow() * 10 + i.getCol());
+                        }
+                    }
+                });
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                if (e[row][col] != ndv) {
+                    e[row][col] += (row / 4) * 10 + col / 4;
+                }
+            }
+        }
+        assertCells(e, r);
+    }
+
+    /**
+     * Test that masking by an aligned grid gives the same result as masking
+     * by a grid with different chunks which is done cell by cell.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testMask() throws Exception {
+        System.out.println("mask");
+        Grids_GridDouble g = getGrid(4, 1);
+        Grids_GridDouble g2 = getGrid(4, 1);
+        Grids_GridDouble m = getGrid(4, 3);
+        Grids_GridDouble m2 = getGrid(3, 3);
+        gp.mask(g, m);
+        gp.mask(g2, m2);
+        assertCells(getCells(g2), g);
+        double ndv = g.getNoDataValue();
+        double[][] e = getCells(getGrid(4, 1));
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                if (m.getCell(row, col) == ndv) {
+                    e[row][col] = ndv;
+                }
+            }
+        }
+        assertCells(e, g);
+        // Masking a range.
+        gp.mask(g, BigRational.valueOf(-1), BigRational.valueOf(0.5d));
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                if (e[row][col] >= -1d && e[row][col] <= 0.5d) {
+                    e[row][col] = ndv;
+                }
+            }
+        }
+        assertCells(e, g);
+    }
+
+    /**
+     * Test that adding a value and an aligned grid give the same result as
+     * adding cell by cell.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testAddToGrid() throws Exception {
+        System.out.println("addToGrid");
+        Grids_GridDouble g = getGrid(4, 1);
+        Grids_GridDouble g2 = getGrid(4, 2);
+        double ndv = g.getNoDataValue();
+        double[][] e = getCells(g);
+        gp.addToGrid(g, BigRational.valueOf(1.5d));
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                // As with addToCell, no data values are replaced.
+                e[row][col] = e[row][col] == ndv ? 1.5d : e[row][col] + 1.5d;
+            }
+        }
+        assertCells(e, g);
+        gp.addToGrid(g, g2, BigRational.valueOf(2), 10);
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                double v = g2.getCell(row, col);
+                if (v != ndv && v != 0d) {
+                    e[row][col] = e[row][col] == ndv ? v * 2d
+                            : e[row][col] + v * 2d;
+                }
+            }
+        }
+        assertCells(e, g);
+    }
+
+    /**
+     * Test that dividing aligned grids gives the same result as dividing cell
+     * by cell. The result is a copy of the numerator where the division is not
+     * done.
+     *
+     * @throws Exception If encountered.
+     */
+    @Test
+    public void testDivide() throws Exception {
+        System.out.println("divide");
+        Grids_GridDouble g0 = getGrid(4, 1);
+        Grids_GridDouble g1 = getGrid(4, 2);
+        Grids_GridDouble r = gp.divide(g0, g1);
+        double ndv = g0.getNoDataValue();
+        double[][] e = new double[(int) NROWS][(int) NCOLS];
+        for (int row = 0; row < NROWS; row++) {
+            for (int col = 0; col < NCOLS; col++) {
+                double v0 = g0.getCell(row, col);
+                double v1 = g1.getCell(row, col);
+                e[row][col] = (v0 == ndv || v1 == ndv || v1 == 0d) ? v0
+                        : v0 / v1;
+            }
+        }
+        assertCells(e, r);
+    }
+}